@@ -1,18 +1,21 @@
 package cn.org.imaginary.http;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import cn.org.imaginary.http.cookie.CookieJar;
+import cn.org.imaginary.util.URLUtils;
+
+import java.util.Collections;
 
 /**
- * a cookie pool which simulate the browser cookie
+ * a cookie pool which simulate the browser cookie,a view of {@link CookieJar#getDefault()} by host
  *
  * @author Imaginary
- * @see
+ * @see CookieJar
  * @since 1.0
+ * @deprecated use {@link CookieJar},which matches domain,path and expiry,or a jar per client with
+ * {@link HttpRequest#setCookieJar(CookieJar)}
  */
+@Deprecated
 public class CookiePool {
-    // key : host ,value : cookie
-    private static Map<String, String> cookies = new ConcurrentHashMap<>();
 
     /**
      * get cookie by host
@@ -21,17 +24,17 @@ public class CookiePool {
      * @return cookie website cookie
      */
     public static String get(String host) {
-        return cookies.get(host);
+        return CookieJar.getDefault().cookieHeader(URLUtils.url("http://" + host + "/"));
     }
 
     /**
      * set cookie to pool
      *
      * @param host   website host
-     * @param cookie website cookie
+     * @param cookie Set-Cookie value
      */
     public static void set(String host, String cookie) {
-        cookies.put(host, cookie);
+        CookieJar.getDefault().saveFromResponse(URLUtils.url("http://" + host + "/"), Collections.singletonList(cookie));
     }
 
 }
@@ -49,6 +49,10 @@ public enum Header {
      * 请求表示提交内容类型或返回返回内容的MIME类型
      */
     CONTENT_TYPE("Content-Type"),
+    /**
+     * 缓存的警告信息,如110表示响应已过期
+     */
+    WARNING("Warning"),
 
     //------------------------------------------------------------- 请求头域
     /**
@@ -87,6 +91,30 @@ public enum Header {
      * 请求的内容长度
      */
     CONTENT_LENGTH("Content-Length"),
+    /**
+     * 缓存的ETag与服务器的一致时,服务器返回304而不返回内容
+     */
+    IF_NONE_MATCH("If-None-Match"),
+    /**
+     * 资源在该时间之后没有修改时,服务器返回304而不返回内容
+     */
+    IF_MODIFIED_SINCE("If-Modified-Since"),
+    /**
+     * 只请求实体的一部分，指定范围
+     */
+    RANGE("Range"),
+    /**
+     * 实体未改变时才按Range发送部分，否则发送整个实体
+     */
+    IF_RANGE("If-Range"),
+    /**
+     * 访问资源的认证信息
+     */
+    AUTHORIZATION("Authorization"),
+    /**
+     * 连接代理的认证信息
+     */
+    PROXY_AUTHORIZATION("Proxy-Authorization"),
 
     //------------------------------------------------------------- 响应头域
     /**
@@ -101,6 +129,34 @@ public enum Header {
      * ETag
      */
     ETAG("ETag"),
+    /**
+     * 资源的最后修改时间
+     */
+    LAST_MODIFIED("Last-Modified"),
+    /**
+     * 响应过期的日期和时间
+     */
+    EXPIRES("Expires"),
+    /**
+     * 响应从源服务器产生以来经过的秒数
+     */
+    AGE("Age"),
+    /**
+     * 决定缓存的响应能否用于后续请求的请求头
+     */
+    VARY("Vary"),
+    /**
+     * 表明服务器是否支持指定范围请求
+     */
+    ACCEPT_RANGES("Accept-Ranges"),
+    /**
+     * 在整个返回体中本部分的字节位置
+     */
+    CONTENT_RANGE("Content-Range"),
+    /**
+     * 服务不可用或请求过多时，客户端应等待多久再重试，秒数或HTTP日期
+     */
+    RETRY_AFTER("Retry-After"),
     /**
      * 重定向指示到的URL
      */
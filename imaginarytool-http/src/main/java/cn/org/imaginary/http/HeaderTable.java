@@ -0,0 +1,366 @@
+package cn.org.imaginary.http;
+
+import java.util.*;
+
+/**
+ * the headers of a request or response,names are case insensitive<br>
+ * a name of {@link Header} is kept at its ordinal in a flat array and found without hashing,
+ * by its length and a case insensitive compare,other names are kept in a short list searched in order<br>
+ * a name with one value holds the string itself,a list is only built for the second value<br>
+ * iteration gives the names of {@link Header} in their canonical case first,then the others as they were first set
+ *
+ * @author Imaginary
+ * @see HttpBase
+ * @since 1.0
+ */
+public final class HeaderTable extends AbstractMap<String, List<String>> {
+    private static final Header[] HEADERS = Header.values();
+    // lowercase names of Header by ordinal
+    private static final char[][] LOWER_NAMES = new char[HEADERS.length][];
+    // ordinals of Header by the length of their names
+    private static final int[][] BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (Header header : HEADERS) {
+            LOWER_NAMES[header.ordinal()] = header.toString().toLowerCase().toCharArray();
+            maxLength = Math.max(maxLength, header.toString().length());
+        }
+        BY_LENGTH = new int[maxLength + 1][0];
+        for (Header header : HEADERS) {
+            final int length = header.toString().length();
+            BY_LENGTH[length] = Arrays.copyOf(BY_LENGTH[length], BY_LENGTH[length].length + 1);
+            BY_LENGTH[length][BY_LENGTH[length].length - 1] = header.ordinal();
+        }
+    }
+
+    // values of Header names by ordinal,a String or a List of them,null until the first one is set
+    private Object[] known;
+    // other names and their values,in the first size slots
+    private String[] names;
+    private Object[] values;
+    private int size;
+    // names with values
+    private int count;
+
+    public HeaderTable() {
+    }
+
+    /**
+     * copy headers,the lists of values are copied too
+     *
+     * @param headers headers to copy
+     */
+    public HeaderTable(HeaderTable headers) {
+        if (null != headers.known) {
+            known = copyValues(headers.known, headers.known.length);
+        }
+        if (null != headers.names) {
+            names = Arrays.copyOf(headers.names, headers.names.length);
+            values = copyValues(headers.values, headers.values.length);
+        }
+        size = headers.size;
+        count = headers.count;
+    }
+
+    private static Object[] copyValues(Object[] from, int length) {
+        final Object[] to = new Object[length];
+        for (int i = 0; i < length; i++) {
+            final Object value = from[i];
+            to[i] = value instanceof List ? new ArrayList<>(cast(value)) : value;
+        }
+        return to;
+    }
+
+    /**
+     * the {@link Header} of a name
+     *
+     * @param name header name in any case
+     * @return Header,null if it is not one
+     */
+    public static Header known(String name) {
+        if (name.length() >= BY_LENGTH.length) {
+            return null;
+        }
+        for (int ordinal : BY_LENGTH[name.length()]) {
+            if (equalsIgnoreCase(LOWER_NAMES[ordinal], name)) {
+                return HEADERS[ordinal];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * compare with a lowercase name of {@link Header},which has only ascii letters and '-'
+     */
+    private static boolean equalsIgnoreCase(char[] lower, String name) {
+        for (int i = 0; i < lower.length; i++) {
+            final char a = lower[i];
+            final char b = name.charAt(i);
+            // an uppercase letter folds to lowercase by its 0x20 bit,no other char folds to a letter
+            if (a != b && (a < 'a' || a != (b | 0x20))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the first value of a header
+     *
+     * @param name header name in any case
+     * @return value,null if none
+     */
+    public String first(String name) {
+        final Header header = known(name);
+        return null == header ? firstOf(slot(name)) : first(header);
+    }
+
+    public String first(Header name) {
+        return null == known ? null : firstOf(known[name.ordinal()]);
+    }
+
+    private String firstOf(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return null == value ? null : cast(value).get(0);
+    }
+
+    private Object slot(String name) {
+        final int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * set the only value of a header or add one more
+     *
+     * @param name       header name in any case
+     * @param value      value
+     * @param isOverride replace the values set before
+     */
+    public void add(String name, String value, boolean isOverride) {
+        final Header header = known(name);
+        if (null != header) {
+            add(header, value, isOverride);
+            return;
+        }
+        final int i = indexOf(name);
+        if (i >= 0) {
+            values[i] = isOverride ? value : append(values[i], value);
+            return;
+        }
+        if (null == names) {
+            names = new String[4];
+            values = new Object[4];
+        } else if (size == names.length) {
+            names = Arrays.copyOf(names, size << 1);
+            values = Arrays.copyOf(values, size << 1);
+        }
+        names[size] = name;
+        values[size++] = value;
+        count++;
+    }
+
+    public void add(Header name, String value, boolean isOverride) {
+        if (null == known) {
+            known = new Object[HEADERS.length];
+        }
+        final int i = name.ordinal();
+        final Object current = known[i];
+        if (null == current) {
+            count++;
+        }
+        known[i] = isOverride || null == current ? value : append(current, value);
+    }
+
+    private static Object append(Object current, String value) {
+        if (current instanceof String) {
+            final List<String> list = new ArrayList<>(2);
+            list.add((String) current);
+            list.add(value);
+            return list;
+        }
+        cast(current).add(value);
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> cast(Object value) {
+        return (List<String>) value;
+    }
+
+    private static List<String> view(Object value) {
+        if (value instanceof String) {
+            return Collections.singletonList((String) value);
+        }
+        return null == value ? null : Collections.unmodifiableList(cast(value));
+    }
+
+    /**
+     * remove a header
+     *
+     * @param name header name in any case
+     * @return true if it had values
+     */
+    public boolean removeHeader(String name) {
+        final Header header = known(name);
+        if (null != header) {
+            return removeHeader(header);
+        }
+        final int i = indexOf(name);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(names, i + 1, names, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        names[--size] = null;
+        values[size] = null;
+        count--;
+        return true;
+    }
+
+    public boolean removeHeader(Header name) {
+        if (null == known || null == known[name.ordinal()]) {
+            return false;
+        }
+        known[name.ordinal()] = null;
+        count--;
+        return true;
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final Header header = known((String) key);
+        if (null != header) {
+            return null == known ? null : view(known[header.ordinal()]);
+        }
+        return view(slot((String) key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return null != get(key);
+    }
+
+    /**
+     * replace the values of a header
+     *
+     * @param key    header name in any case
+     * @param values values,empty or null removes it
+     * @return values before,null if none
+     */
+    @Override
+    public List<String> put(String key, List<String> values) {
+        final List<String> before = get(key);
+        final List<String> copied = null == values ? null : new ArrayList<>(values);
+        if (null == before && (null == copied || copied.isEmpty())) {
+            return null;
+        }
+        removeHeader(key);
+        if (null != copied && !copied.isEmpty()) {
+            add(key, copied.get(0), true);
+            for (int i = 1; i < copied.size(); i++) {
+                add(key, copied.get(i), false);
+            }
+        }
+        return before;
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        final List<String> before = get(key);
+        if (null != before) {
+            removeHeader((String) key);
+        }
+        return before;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        known = null;
+        names = null;
+        values = null;
+        size = 0;
+        count = 0;
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        return new AbstractSet<Entry<String, List<String>>>() {
+            @Override
+            public Iterator<Entry<String, List<String>>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * the entries of Header names by ordinal,then the others
+     */
+    private final class EntryIterator implements Iterator<Entry<String, List<String>>> {
+        // next slot to look at,known slots first
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            final int knownLength = null == known ? 0 : known.length;
+            while (next < knownLength && null == known[next]) {
+                next++;
+            }
+            return next < knownLength + size;
+        }
+
+        @Override
+        public Entry<String, List<String>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            final int knownLength = null == known ? 0 : known.length;
+            if (last < knownLength) {
+                return new SimpleImmutableEntry<>(HEADERS[last].toString(), view(known[last]));
+            }
+            return new SimpleImmutableEntry<>(names[last - knownLength], view(values[last - knownLength]));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            final int knownLength = null == known ? 0 : known.length;
+            if (last < knownLength) {
+                removeHeader(HEADERS[last]);
+            } else {
+                removeHeader(names[last - knownLength]);
+                // the names behind moved one slot forward
+                next--;
+            }
+            last = -1;
+        }
+    }
+}
@@ -20,8 +20,14 @@ public abstract class HttpBase<T> {
     // http type
     public static final String HTTP_1_0 = "http/1.0";
     public static final String HTTP_1_1 = "http/1.1";
-    // store headers
-    protected Map<String, List<String>> headers = new HashMap<>();
+    // multiplexed over one connection per origin by the nio engine,h2c with prior knowledge or alpn over tls
+    public static final String HTTP_2 = "http/2";
+    // store headers,names are case insensitive
+    protected HeaderTable headers = new HeaderTable();
+    // headers are shared with a RequestTemplate,copied before the first change
+    protected boolean isSharedHeaders;
+    // headers but Content-Type and Content-Length are still those of the template
+    protected boolean isTemplateHeaders;
     // default charset
     protected String charset = CharsetUtils.UTF_8;
     // http version
@@ -39,8 +45,7 @@ public abstract class HttpBase<T> {
         if (StrUtils.isBlank(name)) {
             return null;
         }
-        List<String> values = headers.get(name.trim());
-        return CollectionUtils.isEmpty(values) ? null : values.get(0);
+        return headers.first(name.trim());
     }
 
     /**
@@ -50,7 +55,7 @@ public abstract class HttpBase<T> {
      * @return header value
      */
     public String getHeader(Header name) {
-        return getHeader(name.toString());
+        return headers.first(name);
     }
 
     /**
@@ -62,15 +67,8 @@ public abstract class HttpBase<T> {
      * @return this
      */
     public T header(String name, String value, boolean isOverride) {
-        if (!StrUtils.isEmpty(name, value)) {
-            List<String> values = headers.get(name);
-            if (isOverride || CollectionUtils.isEmpty(values)) {
-                List<String> valueList = new ArrayList<>();
-                valueList.add(value);
-                headers.put(name, valueList);
-            } else {
-                values.add(value);
-            }
+        if (StrUtils.isNotEmpty(name) && null != value) {
+            editHeaders(HeaderTable.known(name.trim())).add(name.trim(), value, isOverride);
         }
         return (T) this;
     }
@@ -84,7 +82,10 @@ public abstract class HttpBase<T> {
      * @return this
      */
     public T header(Header name, String value, boolean isOverride) {
-        return header(name.toString(), value, isOverride);
+        if (null != value) {
+            editHeaders(name).add(name, value, isOverride);
+        }
+        return (T) this;
     }
 
     /**
@@ -106,7 +107,7 @@ public abstract class HttpBase<T> {
      * @return this
      */
     public T header(Header name, String value) {
-        return header(name.toString(), value, true);
+        return header(name, value, true);
     }
 
     /**
@@ -137,7 +138,7 @@ public abstract class HttpBase<T> {
      */
     public T removeHeader(String name) {
         if (!StrUtils.isEmpty(name)) {
-            headers.remove(name.trim());
+            editHeaders(HeaderTable.known(name.trim())).removeHeader(name.trim());
         }
         return (T) this;
     }
@@ -149,11 +150,28 @@ public abstract class HttpBase<T> {
      * @return this
      */
     public T removeHeader(Header name) {
-        return removeHeader(name.toString());
+        editHeaders(name).removeHeader(name);
+        return (T) this;
+    }
+
+    /**
+     * the headers to change,a shared table is copied first
+     *
+     * @param name the header to change,null if it is not one of {@link Header}
+     */
+    private HeaderTable editHeaders(Header name) {
+        if (Header.CONTENT_TYPE != name && Header.CONTENT_LENGTH != name) {
+            isTemplateHeaders = false;
+        }
+        if (isSharedHeaders) {
+            headers = new HeaderTable(headers);
+            isSharedHeaders = false;
+        }
+        return headers;
     }
 
     /**
-     * get all headers
+     * get all headers,names are case insensitive
      *
      * @return Headers Map
      */
@@ -0,0 +1,26 @@
+package cn.org.imaginary.http;
+
+/**
+ * callback of an asynchronous http call
+ *
+ * @param <T> result type
+ * @author Imaginary
+ * @see HttpFuture
+ * @since 1.0
+ */
+public interface HttpCallback<T> {
+
+    /**
+     * called when the call completes
+     *
+     * @param result result
+     */
+    void completed(T result);
+
+    /**
+     * called when the call fails or is cancelled
+     *
+     * @param e cause,{@link java.util.concurrent.CancellationException} when cancelled
+     */
+    void failed(Throwable e);
+}
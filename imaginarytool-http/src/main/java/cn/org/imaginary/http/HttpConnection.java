@@ -1,5 +1,12 @@
 package cn.org.imaginary.http;
 
+import cn.org.imaginary.http.codec.ContentDecoder;
+import cn.org.imaginary.http.codec.InflaterPool;
+import cn.org.imaginary.http.cookie.CookieJar;
+import cn.org.imaginary.http.event.HttpEventListener;
+import cn.org.imaginary.http.pool.ConnectionPool;
+import cn.org.imaginary.http.pool.PoolEntry;
+import cn.org.imaginary.http.pool.Route;
 import cn.org.imaginary.http.ssl.SSLSocketFactoryBuilder;
 import cn.org.imaginary.http.ssl.TrustAnyHostnameVerifier;
 import cn.org.imaginary.lang.Validator;
@@ -10,12 +17,16 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.*;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -26,12 +37,37 @@ import java.util.Map;
  * @see
  * @since 1.0
  */
-public class HttpConnection {
+public class HttpConnection implements Closeable {
     private final static Logger logger = LoggerFactory.getLogger(HttpConnection.class);
+    // default headers of every request
+    public final static String DEFAULT_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+    public final static String DEFAULT_ACCEPT_ENCODING = "gzip, deflate";
+    public final static String DEFAULT_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    public final static String DEFAULT_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36 imaginary";
     private URL url;
     private HttpMethod httpMethod;
     private Proxy proxy;
     private HttpURLConnection connection;
+    // the pool to lease from,null means not pooled
+    private ConnectionPool pool;
+    // current lease of pool
+    private PoolEntry poolEntry;
+    // is connection header not close
+    private boolean isKeepAlive = true;
+    // cookies to send and store,null means no cookies
+    private CookieJar cookieJar = CookieJar.getDefault();
+    // cookies are added before the connection connects
+    private boolean isPrepared;
+    // phases of the exchange are reported to,null means not observed
+    private HttpEventListener listener;
+    // gzip and deflate bodies are decoded while read
+    private boolean isDecompress = true;
+    // the body stream decodes the Content-Encoding
+    private boolean isDecoded;
+    private boolean isConnected;
+    private boolean isRequestEnded;
+    private boolean isResponseStarted;
+    private boolean isResponseEnded;
 
     /**
      * build http connection
@@ -44,27 +80,45 @@ public class HttpConnection {
      * @param proxy            proxy
      */
     public HttpConnection(String urlStr, HttpMethod method, HostnameVerifier hostnameVerifier, SSLSocketFactory ssf, int timeout, Proxy proxy) {
-        if (StrUtils.isBlank(urlStr)) {
-            throw new HttpException("Url is empty");
-        }
-        if (!Validator.isUrl(urlStr)) {
-            throw new HttpException("{} is not a url", urlStr);
-        }
+        this(validUrl(urlStr), method, hostnameVerifier, ssf, timeout, proxy);
+        defaultHeaders();
+    }
 
-        this.url = URLUtils.url(urlStr);
+    /**
+     * build http connection of a url validated before,without the default headers,
+     * the caller sets every header as {@link RequestTemplate} does
+     *
+     * @param url              URL
+     * @param method           request method
+     * @param hostnameVerifier hostnameVerifier
+     * @param ssf              SSLSocketFactory
+     * @param timeout          timeout
+     * @param proxy            proxy
+     */
+    public HttpConnection(URL url, HttpMethod method, HostnameVerifier hostnameVerifier, SSLSocketFactory ssf, int timeout, Proxy proxy) {
+        this.url = url;
         this.httpMethod = ObjectUtils.isNull(method) ? HttpMethod.GET : method;
         this.proxy = proxy;
 
         try {
-            connection = HttpUtils.isHttps(urlStr) ? openHttps(hostnameVerifier, ssf) : openHttp();
+            connection = "https".equalsIgnoreCase(url.getProtocol()) ? openHttps(hostnameVerifier, ssf) : openHttp();
         } catch (Exception e) {
             throw new HttpException(e.getMessage(), e);
         }
         if (timeout > 0) {
             this.setConnectionAndReadTimeout(timeout);
         }
-        initConnection();
+        initMethod();
+    }
 
+    private static URL validUrl(String urlStr) {
+        if (StrUtils.isBlank(urlStr)) {
+            throw new HttpException("Url is empty");
+        }
+        if (!Validator.isUrl(urlStr)) {
+            throw new HttpException("{} is not a url", urlStr);
+        }
+        return URLUtils.url(urlStr);
     }
 
     /**
@@ -160,7 +214,7 @@ public class HttpConnection {
     private HttpsURLConnection openHttps(HostnameVerifier hostnameVerifier, SSLSocketFactory sslSocketFactory) throws IOException, KeyManagementException, NoSuchAlgorithmException {
         final HttpsURLConnection httpsURLConnection = (HttpsURLConnection) openConnection();
         httpsURLConnection.setHostnameVerifier(null != hostnameVerifier ? hostnameVerifier : new TrustAnyHostnameVerifier());
-        httpsURLConnection.setSSLSocketFactory(null != sslSocketFactory ? sslSocketFactory : SSLSocketFactoryBuilder.create().build());
+        httpsURLConnection.setSSLSocketFactory(null != sslSocketFactory ? sslSocketFactory : SSLSocketFactoryBuilder.create().buildShared());
         return httpsURLConnection;
     }
 
@@ -224,6 +278,49 @@ public class HttpConnection {
         return this;
     }
 
+    /**
+     * set the jar of cookies to send and store,null means no cookies
+     *
+     * @param cookieJar {@link CookieJar}
+     * @return {@link HttpConnection}
+     */
+    public HttpConnection setCookieJar(CookieJar cookieJar) {
+        this.cookieJar = cookieJar;
+        return this;
+    }
+
+    /**
+     * decode gzip and deflate bodies while they are read,true by default,
+     * false gives the bytes as sent with their Content-Encoding
+     *
+     * @param isDecompress decode or not
+     * @return {@link HttpConnection}
+     */
+    public HttpConnection setDecompress(boolean isDecompress) {
+        this.isDecompress = isDecompress;
+        return this;
+    }
+
+    /**
+     * is the body stream decoding the Content-Encoding,known once the stream is taken
+     *
+     * @return true if it is
+     */
+    public boolean isDecoded() {
+        return isDecoded;
+    }
+
+    /**
+     * set the listener of the phases of the exchange,null means not observed
+     *
+     * @param listener {@link HttpEventListener}
+     * @return {@link HttpConnection}
+     */
+    public HttpConnection setEventListener(HttpEventListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
     /**
      * set http header
      *
@@ -233,6 +330,9 @@ public class HttpConnection {
      * @return {@link HttpConnection}
      */
     public HttpConnection header(String header, String value, boolean isOverride) {
+        if (Header.CONNECTION.toString().equalsIgnoreCase(header)) {
+            isKeepAlive = !"close".equalsIgnoreCase(StrUtils.nullToEmpty(value).trim());
+        }
         if (null != connection) {
             if (isOverride) {
                 connection.setRequestProperty(header, value);
@@ -252,7 +352,7 @@ public class HttpConnection {
      * @return {@link HttpConnection}
      */
     public HttpConnection header(Header header, String value, boolean isOverride) {
-        return this.header(header, value, isOverride);
+        return this.header(header.toString(), value, isOverride);
     }
 
     /**
@@ -311,6 +411,15 @@ public class HttpConnection {
      * @return {@link HttpConnection}
      */
     public HttpConnection initConnection() {
+        initMethod();
+        defaultHeaders();
+        return this;
+    }
+
+    /**
+     * set request method and whether the request has a body
+     */
+    private void initMethod() {
         try {
             connection.setRequestMethod(this.httpMethod.toString());
         } catch (ProtocolException e) {
@@ -325,15 +434,13 @@ public class HttpConnection {
             connection.setDoOutput(true);
             connection.setUseCaches(false);
         }
+    }
 
-        // default header
-        header(Header.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8", true);
-        header(Header.ACCEPT_ENCODING, "gzip", true);
-        header(Header.CONTENT_TYPE, "application/x-www-form-urlencoded", true);
-        header(Header.USER_AGENT, "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.36 imaginary", true);
-        // set cookie
-        setCookie(CookiePool.get(url.getHost()));
-        return this;
+    private void defaultHeaders() {
+        header(Header.ACCEPT, DEFAULT_ACCEPT, true);
+        header(Header.ACCEPT_ENCODING, DEFAULT_ACCEPT_ENCODING, true);
+        header(Header.CONTENT_TYPE, DEFAULT_CONTENT_TYPE, true);
+        header(Header.USER_AGENT, DEFAULT_USER_AGENT, true);
     }
 
     /**
@@ -351,6 +458,17 @@ public class HttpConnection {
         return this;
     }
 
+    /**
+     * send the body of a known length without buffering it,Content-Length is set to the length
+     *
+     * @param contentLength body length
+     * @return {@link HttpConnection}
+     */
+    public HttpConnection setFixedLengthStreamingMode(long contentLength) {
+        connection.setFixedLengthStreamingMode(contentLength);
+        return this;
+    }
+
     /**
      * set auto 30x reforward
      *
@@ -362,6 +480,71 @@ public class HttpConnection {
         return this;
     }
 
+    /**
+     * bound the connections in use per route by a pool,the lease is given back when the response stream
+     * is read to the end or closed,or when {@link #close()} is called;
+     * the sockets are kept alive by the jdk keep-alive cache either way
+     *
+     * @param pool connection pool,null means not bounded
+     * @return {@link HttpConnection}
+     */
+    public HttpConnection setPool(ConnectionPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * get the pool to lease from
+     *
+     * @return {@link ConnectionPool}
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * get current lease of pool
+     *
+     * @return {@link PoolEntry} or null if not pooled or released
+     */
+    public PoolEntry getPoolEntry() {
+        return poolEntry;
+    }
+
+    /**
+     * add cookies of the jar and lease from pool before the connection really connects
+     */
+    private void prepare() {
+        if (!isPrepared) {
+            isPrepared = true;
+            // a Cookie header set by the caller wins
+            if (null != cookieJar && null == connection.getRequestProperty(Header.COOKIE.toString())) {
+                setCookie(cookieJar.cookieHeader(url));
+            }
+        }
+        if (null != pool && null == poolEntry) {
+            poolEntry = pool.lease(Route.of(url, proxy));
+        }
+    }
+
+    /**
+     * give back the lease,the socket of a response read to the end stays in the jdk keep-alive cache
+     * when both sides agree,otherwise it is closed<br>
+     * the pool only bounds the connections in use,it keeps no handle,
+     * the jdk may hand the socket to any other request which must not be closed by an eviction
+     *
+     * @param isReusable is the response read to the end
+     */
+    private void release(boolean isReusable) {
+        if (!isReusable || !isKeepAlive) {
+            connection.disconnect();
+        }
+        final PoolEntry entry = this.poolEntry;
+        if (null != entry && !entry.isReleased()) {
+            pool.release(entry, false, -1);
+        }
+    }
+
     /**
      * connect to server
      *
@@ -370,45 +553,159 @@ public class HttpConnection {
      */
     public HttpConnection connect() throws IOException {
         if (null != connection) {
-            connection.connect();
+            prepare();
+            try {
+                if (null == listener) {
+                    connection.connect();
+                } else {
+                    observeConnect();
+                }
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
         }
         return this;
     }
 
     /**
-     * connect to server
+     * connect once and report dns,connect and the connection acquired to the listener,
+     * the host is resolved first and HttpURLConnection finds it in the cache of the jvm;
+     * a socket taken from the jdk keep-alive cache can not be told apart,so it is reported as a new one
+     */
+    private void observeConnect() throws IOException {
+        if (isConnected) {
+            return;
+        }
+        isConnected = true;
+        final InetSocketAddress address;
+        if (null == proxy || Proxy.Type.DIRECT == proxy.type()) {
+            final String host = url.getHost();
+            listener.dnsStart(host);
+            final InetAddress[] addresses = InetAddress.getAllByName(host);
+            listener.dnsEnd(host, addresses);
+            address = new InetSocketAddress(addresses[0], -1 == url.getPort() ? url.getDefaultPort() : url.getPort());
+        } else {
+            address = (InetSocketAddress) proxy.address();
+        }
+        listener.connectStart(address);
+        connection.connect();
+        listener.connectEnd();
+        listener.connectionAcquired(false);
+    }
+
+    /**
+     * close the connection and give back the lease without keep-alive
      *
      * @return {@link HttpConnection}
      */
     public HttpConnection disconnect() {
         if (null != connection) {
-            connection.disconnect();
+            release(false);
         }
         return this;
     }
 
     /**
-     * get inputstream from HttpConnection
+     * give back the lease,the connection is kept alive if the response has been read to the end,
+     * otherwise it is disconnected
+     */
+    @Override
+    public void close() {
+        if (null == connection) {
+            return;
+        }
+        if (null == poolEntry) {
+            if (!isKeepAlive) {
+                connection.disconnect();
+            }
+        } else if (!poolEntry.isReleased()) {
+            release(false);
+        }
+    }
+
+    /**
+     * get inputstream from HttpConnection,the stream gives back the lease when read to the end or closed
      *
      * @return {@link InputStream}
      * @throws IOException a case of OPT IO error
      */
     public InputStream getInputStream() throws IOException {
-        final String cookie = getHeader(Header.SET_COOKIE);
-        if (!StrUtils.isBlank(cookie)) {
-            logger.debug("set cookie {} ", cookie);
-            CookiePool.set(url.getHost(), cookie);
+        if (null == connection) {
+            return null;
+        }
+        prepare();
+        final InputStream in;
+        try {
+            saveCookies();
+            in = connection.getInputStream();
+        } catch (IOException e) {
+            // the error stream is still readable,keep the lease until it is done
+            if (null == connection.getErrorStream()) {
+                release(false);
+            }
+            throw e;
+        }
+        return observe(decode(null == poolEntry ? in : new PooledInputStream(in)));
+    }
+
+    /**
+     * decode the body by its Content-Encoding,the lease is given back by the stream beneath
+     */
+    private InputStream decode(InputStream in) {
+        if (!isDecompress || null == in) {
+            return in;
+        }
+        final String encoding = connection.getContentEncoding();
+        if (!ContentDecoder.isSupported(encoding)) {
+            return in;
+        }
+        isDecoded = true;
+        return ContentDecoder.decode(in, encoding, InflaterPool.getDefault());
+    }
+
+    /**
+     * count the response body for the listener,decoding is counted in the time of the body
+     */
+    private InputStream observe(InputStream in) {
+        return null == listener || null == in ? in : new ObservedInputStream(in);
+    }
+
+    /**
+     * store every Set-Cookie header of the response in the jar
+     */
+    private void saveCookies() {
+        if (null == cookieJar) {
+            return;
+        }
+        List<String> cookies = null;
+        String name;
+        // header 0 may be the status line with a null name
+        for (int i = 0; null != (name = connection.getHeaderFieldKey(i)) || 0 == i; i++) {
+            if (Header.SET_COOKIE.toString().equalsIgnoreCase(name)) {
+                if (null == cookies) {
+                    cookies = new ArrayList<>();
+                }
+                cookies.add(connection.getHeaderField(i));
+            }
+        }
+        if (null != cookies) {
+            logger.debug("set cookie {} ", cookies);
+            cookieJar.saveFromResponse(url, cookies);
         }
-        return null != connection ? connection.getInputStream() : null;
     }
 
     /**
-     * get error stream
+     * get error stream,the stream gives back the lease when read to the end or closed
      *
      * @return {@link InputStream}
      */
     public InputStream getErrorStream() {
-        return null != connection ? connection.getErrorStream() : null;
+        if (null == connection) {
+            return null;
+        }
+        final InputStream in = connection.getErrorStream();
+        return observe(decode(null == in || null == poolEntry ? in : new PooledInputStream(in)));
     }
 
     /**
@@ -418,7 +715,20 @@ public class HttpConnection {
      * @throws IOException a case of OPT IO
      */
     public OutputStream getOutputSteam() throws IOException {
-        return null != connection ? connection.getOutputStream() : null;
+        if (null == connection) {
+            return null;
+        }
+        prepare();
+        try {
+            if (null == listener) {
+                return connection.getOutputStream();
+            }
+            observeConnect();
+            return new ObservedOutputStream(connection.getOutputStream());
+        } catch (IOException e) {
+            release(false);
+            throw e;
+        }
     }
 
     /**
@@ -428,7 +738,30 @@ public class HttpConnection {
      * @throws IOException a case of OPT conn
      */
     public int getResponseCode() throws IOException {
-        return null != connection ? connection.getResponseCode() : 0;
+        if (null == connection) {
+            return 0;
+        }
+        prepare();
+        try {
+            if (null == listener) {
+                return connection.getResponseCode();
+            }
+            observeConnect();
+            if (!isRequestEnded) {
+                // a request without body is written by getResponseCode
+                isRequestEnded = true;
+                listener.requestEnd(0);
+            }
+            final int code = connection.getResponseCode();
+            if (!isResponseStarted) {
+                isResponseStarted = true;
+                listener.responseStart();
+            }
+            return code;
+        } catch (IOException e) {
+            release(false);
+            throw e;
+        }
     }
 
     public String getCharset() {
@@ -469,4 +802,136 @@ public class HttpConnection {
         this.connection = connection;
     }
     // getter/setter end
+
+    /**
+     * a response stream which gives back the pool lease when it is read to the end or closed
+     */
+    private class PooledInputStream extends FilterInputStream {
+        private boolean isEof;
+
+        private PooledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (-1 == b) {
+                eof();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (-1 == n) {
+                eof();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!isEof) {
+                    isEof = true;
+                    // the rest of body is unknown,the socket is not kept alive
+                    release(false);
+                }
+            }
+        }
+
+        private void eof() throws IOException {
+            if (!isEof) {
+                isEof = true;
+                // closing the drained stream hands the socket to jdk keep-alive cache
+                super.close();
+                release(true);
+            }
+        }
+    }
+
+    /**
+     * a request body stream which reports its bytes to the listener when closed
+     */
+    private class ObservedOutputStream extends FilterOutputStream {
+        private long bytes;
+
+        private ObservedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!isRequestEnded) {
+                isRequestEnded = true;
+                listener.requestEnd(bytes);
+            }
+        }
+    }
+
+    /**
+     * a response body stream which reports its bytes to the listener when read to the end or closed
+     */
+    private class ObservedInputStream extends FilterInputStream {
+        private long bytes;
+
+        private ObservedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (-1 == b) {
+                end();
+            } else {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (-1 == n) {
+                end();
+            } else {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                end();
+            }
+        }
+
+        private void end() {
+            if (!isResponseEnded) {
+                isResponseEnded = true;
+                listener.responseEnd(bytes);
+            }
+        }
+    }
 }
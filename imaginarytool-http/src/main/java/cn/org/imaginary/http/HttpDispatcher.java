@@ -0,0 +1,460 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.util.StrUtils;
+import cn.org.imaginary.util.URLUtils;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * run {@link HttpRequest}s on a thread pool,at most maxRequests at once and maxRequestsPerHost for a host,
+ * the rest wait in a queue in order<br>
+ * usage:
+ * <pre>
+ * HttpFuture&lt;HttpResponse&gt; future = HttpRequest.get(url).executeAsync();
+ * HttpFuture&lt;HttpResponse&gt; future = HttpDispatcher.create().setMaxRequests(16).enqueue(HttpRequest.get(url));
+ * </pre>
+ * cancel a future to drop a queued request or abort the connection of a running one<br>
+ * for bulk calls {@link #createVirtual()} runs every request on a virtual thread of java 21+<br>
+ * a request given a {@link cn.org.imaginary.http.pool.ConnectionPool} is bounded by it as well,
+ * a call over the bound of its route counts as running here and waits for a lease in the pool,
+ * so size the pool per route at least as the caps of the dispatcher
+ *
+ * @author Imaginary
+ * @see HttpRequest#executeAsync()
+ * @since 1.0
+ */
+public class HttpDispatcher {
+    // default max requests running at once
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    // default max requests running at once for a host
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 8;
+    // default max requests running at once on virtual threads,globally and for a host
+    public static final int DEFAULT_MAX_VIRTUAL_REQUESTS = 1024;
+
+    // Executors.newVirtualThreadPerTaskExecutor of java 21,null before
+    private static final Method NEW_VIRTUAL_EXECUTOR;
+
+    static {
+        Method method;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        NEW_VIRTUAL_EXECUTOR = method;
+    }
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private ExecutorService executor;
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    // guarded by this
+    private final Deque<AsyncCall> readyCalls = new ArrayDeque<>();
+    private final Set<AsyncCall> runningCalls = new LinkedHashSet<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+
+    /**
+     * build dispatcher with a cached pool of daemon threads
+     */
+    public HttpDispatcher() {
+    }
+
+    /**
+     * build dispatcher
+     *
+     * @param executor runs the requests,it should not bound the threads below maxRequests
+     */
+    public HttpDispatcher(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * create dispatcher
+     *
+     * @return HttpDispatcher
+     */
+    public static HttpDispatcher create() {
+        return new HttpDispatcher();
+    }
+
+    /**
+     * create dispatcher running each request on a virtual thread,
+     * the module targets java 7 so it is looked up at runtime and daemon platform threads are used before java 21;
+     * requests with a connection pool are also bounded by its max per route,
+     * which is far below these caps by default
+     *
+     * @return HttpDispatcher with {@link #DEFAULT_MAX_VIRTUAL_REQUESTS} as both caps
+     */
+    public static HttpDispatcher createVirtual() {
+        final HttpDispatcher dispatcher = isVirtualThreadSupported() ? new HttpDispatcher(newVirtualExecutor()) : new HttpDispatcher();
+        dispatcher.maxRequests = DEFAULT_MAX_VIRTUAL_REQUESTS;
+        dispatcher.maxRequestsPerHost = DEFAULT_MAX_VIRTUAL_REQUESTS;
+        return dispatcher;
+    }
+
+    /**
+     * does the running jdk have virtual threads
+     *
+     * @return true on java 21+
+     */
+    public static boolean isVirtualThreadSupported() {
+        return null != NEW_VIRTUAL_EXECUTOR;
+    }
+
+    /**
+     * the shared dispatcher of {@link HttpRequest#executeAsync()}
+     *
+     * @return HttpDispatcher
+     */
+    public static HttpDispatcher getDefault() {
+        return DefaultHolder.DISPATCHER;
+    }
+
+    /**
+     * set max requests running at once
+     *
+     * @param maxRequests max requests
+     * @return HttpDispatcher
+     */
+    public HttpDispatcher setMaxRequests(int maxRequests) {
+        if (maxRequests <= 0) {
+            throw new IllegalArgumentException("maxRequests must be positive");
+        }
+        synchronized (this) {
+            this.maxRequests = maxRequests;
+        }
+        promote();
+        return this;
+    }
+
+    /**
+     * set max requests running at once for a host
+     *
+     * @param maxRequestsPerHost max requests of a host
+     * @return HttpDispatcher
+     */
+    public HttpDispatcher setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerHost must be positive");
+        }
+        synchronized (this) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+        promote();
+        return this;
+    }
+
+    public synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public synchronized int getQueuedCount() {
+        return readyCalls.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCalls.size();
+    }
+
+    /**
+     * queue a request,it runs when the limits allow
+     *
+     * @param request request
+     * @return {@link HttpFuture} of the response,cancel it to drop or abort the request
+     */
+    public HttpFuture<HttpResponse> enqueue(HttpRequest request) {
+        final HttpFuture<HttpResponse> future = new HttpFuture<>();
+        final String host;
+        try {
+            host = URLUtils.url(request.getRequestUrl()).getHost();
+        } catch (Exception e) {
+            future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+            return future;
+        }
+        final AsyncCall call = new AsyncCall(request, host, future);
+        future.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                cancel(call);
+            }
+        });
+        synchronized (this) {
+            if (!future.isDone()) {
+                readyCalls.add(call);
+            }
+        }
+        promote();
+        return future;
+    }
+
+    /**
+     * queue requests in order
+     *
+     * @param requests requests
+     * @return futures in the order of requests
+     */
+    public List<HttpFuture<HttpResponse>> enqueueAll(Collection<HttpRequest> requests) {
+        final List<HttpFuture<HttpResponse>> futures = new ArrayList<>(requests.size());
+        for (HttpRequest request : requests) {
+            futures.add(enqueue(request));
+        }
+        return futures;
+    }
+
+    /**
+     * run requests and wait for all of them
+     *
+     * @param requests requests
+     * @return responses in the order of requests
+     * @throws HttpException the first failure,the requests left are cancelled
+     */
+    public List<HttpResponse> executeAll(Collection<HttpRequest> requests) {
+        final List<HttpFuture<HttpResponse>> futures = enqueueAll(requests);
+        final List<HttpResponse> responses = new ArrayList<>(futures.size());
+        try {
+            for (HttpFuture<HttpResponse> future : futures) {
+                responses.add(future.join());
+            }
+        } catch (HttpException e) {
+            for (HttpFuture<HttpResponse> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+        return responses;
+    }
+
+    /**
+     * run requests and take them as they complete
+     *
+     * @param requests requests
+     * @return iterator of done futures in the order of completion,next blocks until one is done
+     */
+    public Iterator<HttpFuture<HttpResponse>> executeAsCompleted(Collection<HttpRequest> requests) {
+        final BlockingQueue<HttpFuture<HttpResponse>> done = new LinkedBlockingQueue<>();
+        final List<HttpFuture<HttpResponse>> futures = enqueueAll(requests);
+        for (final HttpFuture<HttpResponse> future : futures) {
+            future.addCallback(new HttpCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse result) {
+                    done.add(future);
+                }
+
+                @Override
+                public void failed(Throwable e) {
+                    done.add(future);
+                }
+            });
+        }
+        return new Iterator<HttpFuture<HttpResponse>>() {
+            private int taken;
+
+            @Override
+            public boolean hasNext() {
+                return taken < futures.size();
+            }
+
+            @Override
+            public HttpFuture<HttpResponse> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    final HttpFuture<HttpResponse> future = done.take();
+                    taken++;
+                    return future;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HttpException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * cancel every queued and running request
+     */
+    public void cancelAll() {
+        final List<AsyncCall> calls;
+        synchronized (this) {
+            calls = new ArrayList<>(readyCalls);
+            calls.addAll(runningCalls);
+        }
+        for (AsyncCall call : calls) {
+            call.future.cancel(true);
+        }
+    }
+
+    /**
+     * cancel the requests and stop the threads of the executor
+     */
+    public void shutdown() {
+        cancelAll();
+        synchronized (this) {
+            if (null != executor) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private void cancel(AsyncCall call) {
+        final boolean isRunning;
+        synchronized (this) {
+            isRunning = !readyCalls.remove(call) && runningCalls.contains(call);
+        }
+        if (isRunning) {
+            call.request.abort();
+        }
+        call.cancel();
+    }
+
+    /**
+     * move the calls allowed by the limits from the queue to the executor
+     */
+    private void promote() {
+        final List<AsyncCall> toRun = new ArrayList<>();
+        synchronized (this) {
+            final Iterator<AsyncCall> it = readyCalls.iterator();
+            while (it.hasNext() && runningCalls.size() < maxRequests) {
+                final AsyncCall call = it.next();
+                final Integer count = runningPerHost.get(call.host);
+                if (null != count && count >= maxRequestsPerHost) {
+                    continue;
+                }
+                it.remove();
+                runningCalls.add(call);
+                runningPerHost.put(call.host, null == count ? 1 : count + 1);
+                toRun.add(call);
+            }
+        }
+        for (AsyncCall call : toRun) {
+            try {
+                executor().execute(call);
+            } catch (RejectedExecutionException e) {
+                finished(call);
+                call.future.fail(new HttpException(e, "Dispatcher rejected request to {}", call.host));
+            }
+        }
+    }
+
+    private void finished(AsyncCall call) {
+        synchronized (this) {
+            if (runningCalls.remove(call)) {
+                final int count = runningPerHost.get(call.host) - 1;
+                if (0 == count) {
+                    runningPerHost.remove(call.host);
+                } else {
+                    runningPerHost.put(call.host, count);
+                }
+            }
+        }
+        promote();
+    }
+
+    private synchronized ExecutorService executor() {
+        if (null == executor) {
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, StrUtils.format("imaginary-dispatcher-{}", THREAD_ID.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new HttpException(e, "Create virtual thread executor error");
+        }
+    }
+
+    /**
+     * a queued request and its future
+     */
+    private final class AsyncCall implements Runnable {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+        private static final int DONE = 3;
+
+        private final HttpRequest request;
+        private final String host;
+        private final HttpFuture<HttpResponse> future;
+        // moved under the lock of the call,so a cancel interrupts the runner only while it runs this call
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        // the thread running it,guarded by this
+        private Thread runner;
+
+        private AsyncCall(HttpRequest request, String host, HttpFuture<HttpResponse> future) {
+            this.request = request;
+            this.host = host;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (future.isDone() || !state.compareAndSet(QUEUED, RUNNING)) {
+                        return;
+                    }
+                    runner = Thread.currentThread();
+                }
+                try {
+                    final HttpResponse response = request.execute();
+                    if (!future.complete(response)) {
+                        response.close();
+                    }
+                } finally {
+                    synchronized (this) {
+                        state.compareAndSet(RUNNING, DONE);
+                        runner = null;
+                    }
+                    // an interrupt of a cancel which raced with the end must not reach the next call of the thread
+                    Thread.interrupted();
+                }
+            } catch (Throwable e) {
+                future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+            } finally {
+                finished(this);
+            }
+        }
+
+        /**
+         * keep a queued call from running,or wake the thread of a running one waiting on an engine
+         */
+        private synchronized void cancel() {
+            if (state.compareAndSet(QUEUED, CANCELLED)) {
+                return;
+            }
+            if (state.compareAndSet(RUNNING, CANCELLED)) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * lazy holder of the shared dispatcher
+     */
+    private static class DefaultHolder {
+        private static final HttpDispatcher DISPATCHER = create();
+    }
+}
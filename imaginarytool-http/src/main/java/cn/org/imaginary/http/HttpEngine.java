@@ -0,0 +1,21 @@
+package cn.org.imaginary.http;
+
+/**
+ * the transport which sends a {@link HttpRequest} and reads its {@link HttpResponse}<br>
+ * a request without engine is executed by {@link HttpConnection}
+ *
+ * @author Imaginary
+ * @see HttpRequest#setEngine(HttpEngine)
+ * @since 1.0
+ */
+public interface HttpEngine {
+
+    /**
+     * execute request and read the response
+     *
+     * @param request request to send
+     * @return {@link HttpResponse}
+     * @throws HttpException a case of connection or IO error
+     */
+    HttpResponse execute(HttpRequest request);
+}
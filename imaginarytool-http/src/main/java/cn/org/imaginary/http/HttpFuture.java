@@ -0,0 +1,220 @@
+package cn.org.imaginary.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * the result of an asynchronous http call,completed by the transport and observable by callbacks
+ *
+ * @param <T> result type
+ * @author Imaginary
+ * @see HttpCallback
+ * @since 1.0
+ */
+public class HttpFuture<T> implements Future<T> {
+    private final static Logger logger = LoggerFactory.getLogger(HttpFuture.class);
+
+    private static final int RUNNING = 0;
+    private static final int COMPLETED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    // guarded by this
+    private int state = RUNNING;
+    private T result;
+    private Throwable cause;
+    private List<HttpCallback<T>> callbacks;
+    // called once when cancelled,to abort the underlying transport
+    private volatile Runnable cancelHook;
+
+    /**
+     * complete with result
+     *
+     * @param result result
+     * @return false if the future is already done
+     */
+    public boolean complete(T result) {
+        final List<HttpCallback<T>> toNotify;
+        synchronized (this) {
+            if (RUNNING != state) {
+                return false;
+            }
+            this.result = result;
+            this.state = COMPLETED;
+            toNotify = detachCallbacks();
+        }
+        latch.countDown();
+        notifyCallbacks(toNotify);
+        return true;
+    }
+
+    /**
+     * complete with error
+     *
+     * @param cause error
+     * @return false if the future is already done
+     */
+    public boolean fail(Throwable cause) {
+        final List<HttpCallback<T>> toNotify;
+        synchronized (this) {
+            if (RUNNING != state) {
+                return false;
+            }
+            this.cause = cause;
+            this.state = FAILED;
+            toNotify = detachCallbacks();
+        }
+        latch.countDown();
+        notifyCallbacks(toNotify);
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        final List<HttpCallback<T>> toNotify;
+        synchronized (this) {
+            if (RUNNING != state) {
+                return false;
+            }
+            this.cause = new CancellationException();
+            this.state = CANCELLED;
+            toNotify = detachCallbacks();
+        }
+        latch.countDown();
+        final Runnable hook = cancelHook;
+        if (null != hook) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                logger.debug("cancel hook error", e);
+            }
+        }
+        notifyCallbacks(toNotify);
+        return true;
+    }
+
+    /**
+     * set the action aborting the underlying transport when cancelled,it runs at once if already cancelled
+     *
+     * @param cancelHook abort action
+     * @return {@link HttpFuture}
+     */
+    public HttpFuture<T> onCancel(Runnable cancelHook) {
+        this.cancelHook = cancelHook;
+        if (isCancelled()) {
+            cancelHook.run();
+        }
+        return this;
+    }
+
+    /**
+     * add a callback,it is called at once if the future is already done
+     *
+     * @param callback callback
+     * @return {@link HttpFuture}
+     */
+    public HttpFuture<T> addCallback(HttpCallback<T> callback) {
+        synchronized (this) {
+            if (RUNNING == state) {
+                if (null == callbacks) {
+                    callbacks = new ArrayList<>(2);
+                }
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return CANCELLED == state;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return RUNNING != state;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    /**
+     * wait for the result and rethrow error as {@link HttpException}
+     *
+     * @return result
+     * @throws HttpException a case of error,cancel or interrupt
+     */
+    public T join() {
+        try {
+            return get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof HttpException ? (HttpException) cause : new HttpException(cause);
+        }
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if (COMPLETED == state) {
+            return result;
+        }
+        if (CANCELLED == state) {
+            throw (CancellationException) cause;
+        }
+        throw new ExecutionException(cause);
+    }
+
+    private List<HttpCallback<T>> detachCallbacks() {
+        final List<HttpCallback<T>> detached = callbacks;
+        callbacks = null;
+        return detached;
+    }
+
+    private void notifyCallbacks(List<HttpCallback<T>> toNotify) {
+        if (null != toNotify) {
+            for (HttpCallback<T> callback : toNotify) {
+                notify(callback);
+            }
+        }
+    }
+
+    private void notify(HttpCallback<T> callback) {
+        final int state;
+        final T result;
+        final Throwable cause;
+        synchronized (this) {
+            state = this.state;
+            result = this.result;
+            cause = this.cause;
+        }
+        try {
+            if (COMPLETED == state) {
+                callback.completed(result);
+            } else {
+                callback.failed(cause);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("http callback error", e);
+        }
+    }
+}
@@ -1,20 +1,49 @@
 package cn.org.imaginary.http;
 
-import cn.org.imaginary.convert.Convert;
+import cn.org.imaginary.http.body.BytesBody;
+import cn.org.imaginary.http.body.FileBody;
+import cn.org.imaginary.http.body.FormBody;
+import cn.org.imaginary.http.body.MultipartBody;
+import cn.org.imaginary.http.breaker.CircuitBreakerOpenException;
+import cn.org.imaginary.http.breaker.CircuitBreakerRegistry;
+import cn.org.imaginary.http.body.RequestBody;
+import cn.org.imaginary.http.body.StreamBody;
+import cn.org.imaginary.http.cache.HttpCache;
+import cn.org.imaginary.http.cookie.CookieJar;
+import cn.org.imaginary.http.event.HttpEventListener;
+import cn.org.imaginary.http.limit.RateLimiter;
+import cn.org.imaginary.http.limit.RateLimiterRegistry;
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import cn.org.imaginary.http.pool.ConnectionPool;
+import cn.org.imaginary.http.proxy.ProxyPool;
+import cn.org.imaginary.http.proxy.ProxyUnavailableException;
+import cn.org.imaginary.http.retry.HedgePolicy;
+import cn.org.imaginary.http.retry.RetryPolicy;
 import cn.org.imaginary.http.ssl.SSLSocketFactoryBuilder;
 import cn.org.imaginary.util.*;
 import com.alibaba.fastjson.JSONObject;
 
 import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.lang.reflect.Array;
-import java.lang.reflect.Proxy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * @author Imaginary
@@ -23,38 +52,73 @@ import java.util.Map;
  */
 public class HttpRequest extends HttpBase<HttpRequest> {
 
-    private static final String BOUNDARY = "--------------------Imaginary" + RandomUtils.randomString(16);
-    private static final byte[] BOUNDARY_END = StrUtils.format("--{}--\r\n", BOUNDARY).getBytes();
-    private static final String CONTENT_DISPOSITION_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"\r\n\r\n";
-    private static final String CONTENT_DISPOSITION_FILE_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"; filename=\"{}\"\r\n";
-
     private static final String CONTENT_TYPE_X_WWW_FORM_URLENCODED_PREFIX = "application/x-www-form-urlencoded;charset=";
-    private static final String CONTENT_TYPE_MULTIPART_PREFIX = "multipart/form-data; boundary=";
-    private static final String CONTENT_TYPE_FILE_TEMPLATE = "Content-Type: {}\r\n\r\n";
 
 
     private String url = "";
     private HttpMethod method = HttpMethod.GET;
     // default timeout
     private int timeout = -1;
-    // store form data
-    protected Map<String, Object> form;
+    // store form data in order,encoded while it is sent
+    protected FormBody form;
     // file form object for upload
     protected Map<String, File> fileForm;
-    // connection object
-    private HttpConnection httpConnection;
+    // body streamed to the connection
+    private RequestBody requestBody;
+    // connection object,read by the thread which aborts
+    private volatile HttpConnection httpConnection;
+    // aborted by another thread
+    private volatile boolean isAborted;
     // disabled cache
     private boolean isDisableCache;
     // redirect
     private Boolean isFollowRedirects;
+    // gzip and deflate responses are decoded
+    private boolean isDecompress = true;
     // redirect times
     private int redirectCount;
     // proxy
     private Proxy proxy;
+    // proxies each call takes one of,null means the proxy above
+    private ProxyPool proxyPool;
     // HostnameVerifier for https
     private HostnameVerifier hostnameVerifier;
     // SSLSocketFactory fro https
     private SSLSocketFactory socketFactory;
+    // SSLContext of the socket factory,null if it is not known and an engine can not use the factory
+    private SSLContext sslContext;
+    // bounds the connections in use per route,null means not bounded
+    private ConnectionPool pool;
+    // transport,null means HttpConnection
+    private HttpEngine engine;
+    // response cache,null means not cached
+    private HttpCache cache;
+    // cookies to send and store,null means no cookies
+    private CookieJar cookieJar = CookieJar.getDefault();
+    // when to send again after a failure,null means never
+    private RetryPolicy retryPolicy;
+    // when to send a duplicate of a slow request,null means never
+    private HedgePolicy hedgePolicy;
+    // circuit breakers guarding the calls,null means none
+    private CircuitBreakerRegistry circuitBreakers;
+    // key of the circuit breaker,null means the host
+    private String circuitBreakerKey;
+    // rate limiter of the request group,or the registry of per host limiters,null means none
+    private RateLimiter rateLimiter;
+    private RateLimiterRegistry rateLimiters;
+    // key of the limiter in the registry,null means the host
+    private String rateLimiterKey;
+    // permits a call takes
+    private int permits = 1;
+    // creates the listener of every exchange,null means not observed
+    private HttpEventListener.Factory eventListeners;
+    // attempts running,read by the thread which aborts
+    private volatile RetryCall retryCall;
+    // call of the engine sending the request,or the copy sent through another proxy,read by the thread which aborts
+    private volatile Future<?> engineCall;
+    private volatile HttpRequest sentCopy;
+    // template the request was made from,its encoded head is used while the request keeps its shape
+    RequestTemplate template;
 
     /**
      * build HttpRequest
@@ -158,7 +222,8 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * set long connection
+     * set long connection,a keep-alive connection goes back to pool for reuse when the response is read,
+     * otherwise it is closed
      *
      * @param isKeepAlive keep alive
      * @return {@link HttpRequest}
@@ -198,13 +263,28 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * set form data
+     * set form data,it replaces the value set before for the key
      *
      * @param key   form key
-     * @param value form data
+     * @param value form data,a list or array is sent joined by ','
      * @return {@link HttpRequest}
      */
     public HttpRequest form(String key, Object value) {
+        return form(key, value, true);
+    }
+
+    /**
+     * add form data,the key may be sent more than once
+     *
+     * @param key   form key
+     * @param value form data,a list or array is sent joined by ','
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest addForm(String key, Object value) {
+        return form(key, value, false);
+    }
+
+    private HttpRequest form(String key, Object value, boolean isOverride) {
         if (StrUtils.isBlank(key) || ObjectUtils.isNull(value)) {
             return this;
         }
@@ -212,21 +292,16 @@ public class HttpRequest extends HttpBase<HttpRequest> {
         super.body = null;
 
         if (value instanceof File) {
-
-        } else if (null == this.form) {
-            this.form = new HashMap<>();
+            return form(key, (File) value);
         }
-
-        String valuesStr;
-
-        if (value instanceof List) {
-            valuesStr = CollectionUtils.join((List<?>) value, ",");
-        } else if (value instanceof Array) {
-            valuesStr = ArrayUtils.join((Object[]) value, ",");
+        if (null == this.form) {
+            this.form = FormBody.create(Charset.forName(charset));
+        }
+        if (isOverride) {
+            this.form.set(key, value);
         } else {
-            valuesStr = Convert.toStr(value, null);
+            this.form.add(key, value);
         }
-        this.form.put(key, valuesStr);
         return this;
     }
 
@@ -261,7 +336,7 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * set file type form data
+     * set file type form data,the form is sent as multipart/form-data and files are streamed from disk
      *
      * @param key   form key
      * @param value form value
@@ -275,7 +350,7 @@ public class HttpRequest extends HttpBase<HttpRequest> {
             keepAlive(true);
         }
         if (null == this.fileForm) {
-            this.fileForm = new HashMap<>();
+            this.fileForm = new LinkedHashMap<>();
         }
         this.fileForm.put(key, value);
         return this;
@@ -284,10 +359,31 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     /**
      * get form
      *
-     * @return map type form data
+     * @return map type form data in order,the values of a key added more than once are a list
      */
     public Map<String, Object> getForm() {
-        return this.form;
+        if (null == this.form) {
+            return null;
+        }
+        final Map<String, Object> map = new LinkedHashMap<>();
+        // values of the keys added more than once
+        final Map<String, List<String>> lists = new HashMap<>();
+        for (int i = 0; i < form.size(); i++) {
+            final String key = form.name(i);
+            final List<String> values = lists.get(key);
+            if (null != values) {
+                values.add(form.value(i));
+            } else if (!map.containsKey(key)) {
+                map.put(key, form.value(i));
+            } else {
+                final List<String> created = new ArrayList<>();
+                created.add((String) map.get(key));
+                created.add(form.value(i));
+                lists.put(key, created);
+                map.put(key, created);
+            }
+        }
+        return map;
     }
 
     /**
@@ -298,12 +394,38 @@ public class HttpRequest extends HttpBase<HttpRequest> {
      */
     public HttpRequest body(String body) {
         this.body = body;
+        this.requestBody = null;
         // diabled form when body enabled
         this.form = null;
-        contentLength(body.length());
+        contentLength(byteLength(body, Charset.forName(charset)));
         return this;
     }
 
+    /**
+     * the bytes of a string in a charset,utf-8 is counted without encoding it
+     */
+    private static int byteLength(String str, Charset charset) {
+        if (!CharsetUtils.CHARSET_UTF_8.equals(charset)) {
+            return str.getBytes(charset).length;
+        }
+        int length = 0;
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // an unpaired surrogate is encoded as '?'
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
     /**
      * set body and content type
      *
@@ -334,13 +456,75 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * set body bytes
+     * set body streamed to the connection,it replaces the body,form and a Content-Length header
      *
-     * @param bodyBytes
+     * @param body body such as {@link MultipartBody}
+     * @return {@link HttpRequest}
+     * @throws HttpException the body is one-shot and the request has a retry or hedge policy
+     */
+    public HttpRequest body(RequestBody body) {
+        if (null != retryPolicy || null != hedgePolicy) {
+            checkRepeatable(body);
+        }
+        removeHeader(Header.CONTENT_LENGTH);
+        this.requestBody = body;
+        this.body = null;
+        this.form = null;
+        this.fileForm = null;
+        return this;
+    }
+
+    /**
+     * set body bytes,they are sent as they are with the Content-Type of the request
+     *
+     * @param bodyBytes bytes,they must not change until the request is sent
      * @return {@link HttpRequest}
      */
     public HttpRequest body(byte[] bodyBytes) {
-        return body(StrUtils.str(bodyBytes, this.charset));
+        return body(BytesBody.create(bodyBytes, null));
+    }
+
+    /**
+     * set the remaining bytes of a heap or direct buffer as body,the position of the buffer is not moved
+     *
+     * @param bodyBytes bytes,they must not change until the request is sent
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest body(ByteBuffer bodyBytes) {
+        return body(BytesBody.create(bodyBytes, null));
+    }
+
+    /**
+     * set a stream as body,it is read once and closed,so the request is not retried,hedged or redirected with it
+     *
+     * @param in     stream
+     * @param length exact bytes to send,-1 to send it chunked
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest body(InputStream in, long length) {
+        return body(StreamBody.create(in, length, null));
+    }
+
+    /**
+     * set a blocking channel as body,it is read once and closed,so the request is not retried,hedged or redirected with it
+     *
+     * @param channel channel
+     * @param length  exact bytes to send,-1 to send it chunked
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest body(ReadableByteChannel channel, long length) {
+        return body(StreamBody.create(channel, length, null));
+    }
+
+    /**
+     * set a file as body,it is streamed from disk,the Content-Type is guessed from its name unless set
+     *
+     * @param path file
+     * @return {@link HttpRequest}
+     * @throws HttpException the file is not readable
+     */
+    public HttpRequest body(Path path) {
+        return body(null == getHeader(Header.CONTENT_TYPE) ? FileBody.create(path) : FileBody.create(path, null));
     }
 
     /**
@@ -355,7 +539,7 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * disable cache
+     * disable cache,the request bypasses {@link HttpCache} and the cache of {@link java.net.URLConnection}
      *
      * @return {@link HttpRequest}
      */
@@ -375,6 +559,18 @@ public class HttpRequest extends HttpBase<HttpRequest> {
         return this;
     }
 
+    /**
+     * decode gzip and deflate responses while they are read,true by default,
+     * false keeps the body as sent along with its Content-Encoding and Content-Length
+     *
+     * @param isDecompress decode or not
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setDecompress(boolean isDecompress) {
+        this.isDecompress = isDecompress;
+        return this;
+    }
+
     /**
      * set hostname verifier ,trust any host if hostnameVerifier null
      *
@@ -387,13 +583,28 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     }
 
     /**
-     * set socketfactory
+     * set socketfactory,an engine can not use a bare factory and fails the https request,
+     * set its SSLContext by {@link #setSSLContext(SSLContext)} instead
      *
      * @param socketFactory socketFactory
      * @return {@link HttpRequest}
      */
     public HttpRequest setSocketFactory(SSLSocketFactory socketFactory) {
         this.socketFactory = socketFactory;
+        this.sslContext = null;
+        return this;
+    }
+
+    /**
+     * set the SSLContext of https,used by {@link HttpConnection} through its socket factory
+     * and by an engine on connections of its own
+     *
+     * @param sslContext SSLContext,null means the default one
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setSSLContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        this.socketFactory = null == sslContext ? null : sslContext.getSocketFactory();
         return this;
     }
 
@@ -408,6 +619,20 @@ public class HttpRequest extends HttpBase<HttpRequest> {
         return this;
     }
 
+    /**
+     * send each call through a proxy of a pool,the healthiest ones are taken most,
+     * a call for which no proxy is available fails fast with {@link ProxyUnavailableException};
+     * the calls go through the proxies of the pool instead of the one set by {@link #setProxy(Proxy)},
+     * which is kept,null means none
+     *
+     * @param proxyPool {@link ProxyPool}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setProxy(ProxyPool proxyPool) {
+        this.proxyPool = proxyPool;
+        return this;
+    }
+
     /**
      * set https protocol
      *
@@ -417,7 +642,9 @@ public class HttpRequest extends HttpBase<HttpRequest> {
     public HttpRequest setSSLProtocol(String protocol) {
         if (null == socketFactory) {
             try {
-                this.socketFactory = SSLSocketFactoryBuilder.create().setProtocol(protocol).build();
+                final SSLSocketFactoryBuilder builder = SSLSocketFactoryBuilder.create().setProtocol(protocol);
+                this.socketFactory = builder.buildShared();
+                this.sslContext = builder.buildSharedContext();
             } catch (NoSuchAlgorithmException e) {
                 e.printStackTrace();
             } catch (KeyManagementException e) {
@@ -427,5 +654,725 @@ public class HttpRequest extends HttpBase<HttpRequest> {
         return this;
     }
 
+    /**
+     * bound the connections in use per route by a pool,a request over the bound waits for a lease;
+     * HttpURLConnection keeps its sockets alive in the jdk keep-alive cache with or without a pool,
+     * null by default
+     *
+     * @param pool connection pool,null means not bounded
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setPool(ConnectionPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * get connection pool
+     *
+     * @return {@link ConnectionPool},null if not bounded
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * set the transport of this request,null means {@link HttpConnection}
+     *
+     * @param engine {@link HttpEngine}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setEngine(HttpEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * set the response cache of this request,null means not cached
+     *
+     * @param cache {@link HttpCache}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setCache(HttpCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * set the jar of cookies to send and store,a jar per client keeps its cookies apart from others,
+     * null means no cookies
+     *
+     * @param cookieJar {@link CookieJar}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setCookieJar(CookieJar cookieJar) {
+        this.cookieJar = cookieJar;
+        return this;
+    }
+
+    /**
+     * get the jar of cookies
+     *
+     * @return {@link CookieJar},null means no cookies
+     */
+    public CookieJar getCookieJar() {
+        return cookieJar;
+    }
+
+    /**
+     * set when to send the request again after an error or a status like 503,null means never
+     *
+     * @param retryPolicy {@link RetryPolicy}
+     * @return {@link HttpRequest}
+     * @throws HttpException the body is one-shot
+     */
+    public HttpRequest setRetryPolicy(RetryPolicy retryPolicy) {
+        if (null != retryPolicy) {
+            checkRepeatable(requestBody);
+        }
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * set when to send a duplicate of the request which has not answered yet,null means never,
+     * only idempotent requests are hedged
+     *
+     * @param hedgePolicy {@link HedgePolicy}
+     * @return {@link HttpRequest}
+     * @throws HttpException the body is one-shot
+     */
+    public HttpRequest setHedgePolicy(HedgePolicy hedgePolicy) {
+        if (null != hedgePolicy) {
+            checkRepeatable(requestBody);
+        }
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    private void checkRepeatable(RequestBody body) {
+        if (null != body && !body.isRepeatable()) {
+            throw new HttpException("Request to {} has a one-shot body,it can not be retried or hedged", url);
+        }
+    }
+
+    /**
+     * take a permit of the limiter before each call,share it between the requests of a group,null means none
+     *
+     * @param rateLimiter {@link RateLimiter}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setRateLimiter(RateLimiter rateLimiter) {
+        return setRateLimiter(rateLimiter, 1);
+    }
+
+    /**
+     * take permits of the limiter before each call,for example the number of items of a batch call
+     *
+     * @param rateLimiter {@link RateLimiter}
+     * @param permits     permits a call takes
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setRateLimiter(RateLimiter rateLimiter, int permits) {
+        this.rateLimiter = rateLimiter;
+        this.rateLimiters = null;
+        this.permits = Math.max(1, permits);
+        return this;
+    }
+
+    /**
+     * take a permit of the limiter of the host before each call,null means none
+     *
+     * @param rateLimiters {@link RateLimiterRegistry}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setRateLimiter(RateLimiterRegistry rateLimiters) {
+        return setRateLimiter(rateLimiters, null, 1);
+    }
+
+    /**
+     * take permits of the limiter of a group before each call
+     *
+     * @param rateLimiters {@link RateLimiterRegistry}
+     * @param key          group key,null means the host
+     * @param permits      permits a call takes
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setRateLimiter(RateLimiterRegistry rateLimiters, String key, int permits) {
+        this.rateLimiters = rateLimiters;
+        this.rateLimiterKey = key;
+        this.rateLimiter = null;
+        this.permits = Math.max(1, permits);
+        return this;
+    }
+
+    /**
+     * guard the calls with the circuit breaker of the host,a call to a host which keeps failing
+     * fails fast with {@link CircuitBreakerOpenException},null means none
+     *
+     * @param circuitBreakers {@link CircuitBreakerRegistry}
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setCircuitBreaker(CircuitBreakerRegistry circuitBreakers) {
+        return setCircuitBreaker(circuitBreakers, null);
+    }
+
+    /**
+     * guard the calls with the circuit breaker of a key,for example the name of a service behind many hosts
+     *
+     * @param circuitBreakers {@link CircuitBreakerRegistry}
+     * @param key             key of the breaker,null means the host
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setCircuitBreaker(CircuitBreakerRegistry circuitBreakers, String key) {
+        this.circuitBreakers = circuitBreakers;
+        this.circuitBreakerKey = key;
+        return this;
+    }
+
+    /**
+     * observe the phases of every exchange of the request,as {@link cn.org.imaginary.http.event.PhaseRecorder},null means none
+     *
+     * @param eventListeners creates the listener of an exchange
+     * @return {@link HttpRequest}
+     */
+    public HttpRequest setEventListener(HttpEventListener.Factory eventListeners) {
+        this.eventListeners = eventListeners;
+        return this;
+    }
+
+    public HttpEventListener.Factory getEventListener() {
+        return eventListeners;
+    }
+
+    /**
+     * the template of the request while it keeps its shape
+     *
+     * @return {@link RequestTemplate},null if the request was not made by one or changed its method,version
+     * or a header but Content-Type and Content-Length
+     */
+    public RequestTemplate getTemplate() {
+        return null != template && template.isShapeOf(this) ? template : null;
+    }
+
+    /**
+     * copy the request to send it again,for example in another thread
+     *
+     * @return a new {@link HttpRequest} with the same settings
+     */
+    public HttpRequest copy() {
+        return copy(url);
+    }
+
+    /**
+     * copy the request to another url,headers shared with a template stay shared
+     */
+    HttpRequest copy(String url) {
+        final HttpRequest copy = new HttpRequest(url);
+        if (isSharedHeaders) {
+            copy.headers = headers;
+            copy.isSharedHeaders = true;
+        } else {
+            copy.headers = new HeaderTable(headers);
+        }
+        copy.template = template;
+        copy.isTemplateHeaders = isTemplateHeaders;
+        copy.charset = charset;
+        copy.httpVersion = httpVersion;
+        copy.body = body;
+        copy.method = method;
+        copy.timeout = timeout;
+        copy.form = null == form ? null : form.copy();
+        copy.fileForm = null == fileForm ? null : new LinkedHashMap<>(fileForm);
+        copy.requestBody = requestBody;
+        copy.isDisableCache = isDisableCache;
+        copy.isFollowRedirects = isFollowRedirects;
+        copy.isDecompress = isDecompress;
+        copy.proxy = proxy;
+        copy.proxyPool = proxyPool;
+        copy.hostnameVerifier = hostnameVerifier;
+        copy.socketFactory = socketFactory;
+        copy.sslContext = sslContext;
+        copy.pool = pool;
+        copy.engine = engine;
+        copy.cache = cache;
+        copy.cookieJar = cookieJar;
+        copy.retryPolicy = retryPolicy;
+        copy.hedgePolicy = hedgePolicy;
+        copy.circuitBreakers = circuitBreakers;
+        copy.circuitBreakerKey = circuitBreakerKey;
+        copy.rateLimiter = rateLimiter;
+        copy.rateLimiters = rateLimiters;
+        copy.rateLimiterKey = rateLimiterKey;
+        copy.permits = permits;
+        copy.eventListeners = eventListeners;
+        return copy;
+    }
+
+    /**
+     * get url
+     *
+     * @return url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * get the url to request,form data of GET request is appended as query
+     *
+     * @return url
+     */
+    public String getRequestUrl() {
+        if (HttpMethod.GET.equals(method) && hasForm()) {
+            return url + (url.indexOf('?') < 0 ? "?" : "&") + form.charset(Charset.forName(charset)).encode();
+        }
+        return url;
+    }
+
+    /**
+     * get request method
+     *
+     * @return {@link HttpMethod}
+     */
+    public HttpMethod getMethod() {
+        return method;
+    }
 
+    /**
+     * get timeout
+     *
+     * @return timeout in millis,not positive means default
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * get proxy
+     *
+     * @return {@link Proxy}
+     */
+    public Proxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * get proxy pool
+     *
+     * @return {@link ProxyPool},null if none
+     */
+    public ProxyPool getProxyPool() {
+        return proxyPool;
+    }
+
+    /**
+     * get hostname verifier
+     *
+     * @return {@link HostnameVerifier}
+     */
+    public HostnameVerifier getHostnameVerifier() {
+        return hostnameVerifier;
+    }
+
+    /**
+     * get socket factory
+     *
+     * @return {@link SSLSocketFactory}
+     */
+    public SSLSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    /**
+     * get SSLContext
+     *
+     * @return SSLContext,null if not set or only the socket factory is known
+     */
+    public SSLContext getSSLContext() {
+        return sslContext;
+    }
+
+    /**
+     * is follow redirects
+     *
+     * @return null means transport default
+     */
+    public Boolean getFollowRedirects() {
+        return isFollowRedirects;
+    }
+
+    public boolean isDecompress() {
+        return isDecompress;
+    }
+
+    /**
+     * get the body to send,encoded form data is the body of a non GET request
+     *
+     * @return body bytes or null if nothing to send
+     */
+    public byte[] getBodyBytes() {
+        if (null != body) {
+            return body.getBytes(Charset.forName(charset));
+        }
+        if (!HttpMethod.GET.equals(method) && hasForm()) {
+            return form.charset(Charset.forName(charset)).encode().getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+        }
+        return null;
+    }
+
+    private boolean hasForm() {
+        return null != form && !form.isEmpty();
+    }
+
+    /**
+     * get the body streamed to the connection,a form with files is a multipart body,
+     * a form without files is encoded while it is written
+     *
+     * @return {@link RequestBody} or null if the body is in memory
+     */
+    public RequestBody getBody() {
+        if (null != requestBody) {
+            return requestBody;
+        }
+        if (HttpMethod.GET.equals(method)) {
+            return null;
+        }
+        if (CollectionUtils.isEmpty(fileForm)) {
+            return hasForm() ? form.charset(Charset.forName(charset)).contentType(getHeader(Header.CONTENT_TYPE)) : null;
+        }
+        final MultipartBody multipart = MultipartBody.create(Charset.forName(charset));
+        if (null != form) {
+            for (int i = 0; i < form.size(); i++) {
+                multipart.addField(form.name(i), form.value(i));
+            }
+        }
+        for (Map.Entry<String, File> entry : fileForm.entrySet()) {
+            multipart.addFile(entry.getKey(), entry.getValue());
+        }
+        return multipart;
+    }
+
+    /**
+     * get content type,form data has default x-www-form-urlencoded type
+     *
+     * @return content type or null
+     */
+    public String getContentType() {
+        final String contentType = getHeader(Header.CONTENT_TYPE);
+        if (null == contentType && null == body && !HttpMethod.GET.equals(method) && hasForm()) {
+            return CONTENT_TYPE_X_WWW_FORM_URLENCODED_PREFIX + charset;
+        }
+        return contentType;
+    }
+
+    /**
+     * execute request and read the response,from the cache if set
+     *
+     * @return {@link HttpResponse}
+     * @throws HttpException a case of connection or IO error
+     */
+    public HttpResponse execute() {
+        if (null != cache && !isDisableCache) {
+            return cache.execute(this, new HttpEngine() {
+                @Override
+                public HttpResponse execute(HttpRequest request) {
+                    return request.executeNetwork();
+                }
+            });
+        }
+        return executeNetwork();
+    }
+
+    /**
+     * execute request and hand the body to a handler while it is read,it is not held in memory<br>
+     * a request sent by an engine,over http/2,from the cache or under a retry or hedge policy
+     * has its body read first and the handler reads it from memory
+     *
+     * @param handler turns the response into the result
+     * @param <T>     result type
+     * @return result of the handler
+     * @throws HttpException a case of connection or IO error,or the handler failed to read the body
+     */
+    public <T> T execute(ResponseHandler<T> handler) {
+        final boolean isBuffered = null != engine || HTTP_2.equalsIgnoreCase(httpVersion)
+                || (null != cache && !isDisableCache) || null != retryPolicy || null != hedgePolicy;
+        final HttpResponse response = isBuffered ? execute() : executeOnce(true);
+        try {
+            return handler.handle(response, isBuffered ? new ByteArrayInputStream(response.bodyBytes()) : response.bodyStream());
+        } catch (IOException e) {
+            throw new HttpException(e, "Failed to handle the response of {}", url);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * send the request,again as its policies tell
+     */
+    private HttpResponse executeNetwork() {
+        if (null == retryPolicy && null == hedgePolicy) {
+            return executeOnce();
+        }
+        final RetryCall call = new RetryCall(this);
+        retryCall = call;
+        try {
+            if (isAborted) {
+                throw new HttpException("Request to {} aborted", url);
+            }
+            return call.execute();
+        } finally {
+            retryCall = null;
+        }
+    }
+
+    /**
+     * send the request once,after its permits,through its circuit breaker and a proxy of its pool if set
+     */
+    HttpResponse executeOnce() {
+        return executeOnce(false);
+    }
+
+    private HttpResponse executeOnce(final boolean isStreamed) {
+        if (null != rateLimiter) {
+            rateLimiter.acquire(permits);
+        } else if (null != rateLimiters) {
+            rateLimiters.get(null == rateLimiterKey ? HttpUtils.hostKey(this) : rateLimiterKey).acquire(permits);
+        }
+        if (null == circuitBreakers) {
+            return executeProxied(isStreamed);
+        }
+        return circuitBreakers.execute(this, circuitBreakerKey, new HttpEngine() {
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                return request.executeProxied(isStreamed);
+            }
+        });
+    }
+
+    /**
+     * send the request once through a proxy of its pool,or its own proxy
+     */
+    private HttpResponse executeProxied(final boolean isStreamed) {
+        if (null == proxyPool) {
+            return executeTransport(isStreamed, proxy);
+        }
+        return proxyPool.execute(this, new ProxyPool.Transport() {
+            @Override
+            public HttpResponse execute(HttpRequest request, Proxy proxy) {
+                return request.executeTransport(isStreamed, proxy);
+            }
+        });
+    }
+
+    /**
+     * send the request once with its engine or {@link HttpConnection},
+     * a streamed response of HttpConnection is left with its body unread
+     *
+     * @param routeProxy proxy of this attempt,the request keeps its own
+     */
+    private HttpResponse executeTransport(boolean isStreamed, Proxy routeProxy) {
+        if (null != engine || HTTP_2.equalsIgnoreCase(httpVersion)) {
+            // an engine reads the proxy from the request,so an attempt through another proxy sends a copy
+            final HttpRequest sent = routeProxy == proxy ? this : copyThrough(routeProxy);
+            if (isAborted) {
+                throw new HttpException("Request to {} aborted", url);
+            }
+            sentCopy = sent == this ? null : sent;
+            try {
+                // HttpURLConnection speaks http/1.1 only
+                return (null != engine ? engine : NioHttpEngine.getDefault()).execute(sent);
+            } finally {
+                sentCopy = null;
+            }
+        }
+        final HttpEventListener listener = null == eventListeners ? null : eventListeners.create(this);
+        final RequestTemplate template = getTemplate();
+        if (null == template) {
+            this.httpConnection = HttpConnection.create(getRequestUrl(), method, hostnameVerifier, socketFactory, timeout, routeProxy)
+                    .header(this.headers, true);
+        } else {
+            // validated by the template,its headers and defaults are set as they were frozen
+            this.httpConnection = new HttpConnection(URLUtils.url(getRequestUrl()), method, hostnameVerifier, socketFactory, timeout, routeProxy);
+            for (String[] field : template.getConnectionFields()) {
+                httpConnection.header(field[0], field[1], true);
+            }
+            final String contentType = getHeader(Header.CONTENT_TYPE);
+            if (null != contentType) {
+                httpConnection.header(Header.CONTENT_TYPE, contentType, true);
+            }
+        }
+        httpConnection.setPool(pool)
+                .setCookieJar(cookieJar)
+                .setDecompress(isDecompress)
+                .setEventListener(listener);
+        if (null != listener) {
+            listener.callStart();
+        }
+        if (isAborted) {
+            httpConnection.disconnect();
+            final HttpException e = new HttpException("Request to {} aborted", url);
+            if (null != listener) {
+                listener.callFailed(e);
+            }
+            throw e;
+        }
+        if (null != isFollowRedirects) {
+            httpConnection.setInstanceFollowRedirects(isFollowRedirects);
+        }
+        if (isDisableCache) {
+            httpConnection.getConnection().setUseCaches(false);
+        }
+        try {
+            send();
+            final HttpResponse response = new HttpResponse(httpConnection, charset, isStreamed);
+            if (null != listener) {
+                listener.callEnd(response);
+            }
+            return response;
+        } catch (IOException e) {
+            httpConnection.disconnect();
+            if (null != listener) {
+                listener.callFailed(e);
+            }
+            if (isAborted) {
+                throw new HttpException(e, "Request to {} aborted", url);
+            }
+            throw new HttpException(e.getMessage(), e);
+        }
+    }
+
+    private HttpRequest copyThrough(Proxy routeProxy) {
+        final HttpRequest copy = copy();
+        copy.proxy = routeProxy;
+        copy.proxyPool = null;
+        return copy;
+    }
+
+    /**
+     * execute request without blocking on the shared {@link HttpDispatcher}
+     *
+     * @return {@link HttpFuture} of the response,cancel it to abort the request
+     */
+    public HttpFuture<HttpResponse> executeAsync() {
+        return executeAsync(HttpDispatcher.getDefault());
+    }
+
+    /**
+     * execute request without blocking
+     *
+     * @param dispatcher dispatcher which limits the requests running at once
+     * @return {@link HttpFuture} of the response,cancel it to abort the request
+     */
+    public HttpFuture<HttpResponse> executeAsync(HttpDispatcher dispatcher) {
+        return dispatcher.enqueue(this);
+    }
+
+    /**
+     * abort the request executing in another thread,its connection is disconnected and execute throws {@link HttpException}<br>
+     * an aborted request stays aborted,send a {@link #copy()} of it again
+     */
+    public void abort() {
+        isAborted = true;
+        final HttpConnection connection = httpConnection;
+        if (null != connection) {
+            connection.disconnect();
+        }
+        final Future<?> inFlight = engineCall;
+        if (null != inFlight) {
+            inFlight.cancel(true);
+        }
+        final HttpRequest copy = sentCopy;
+        if (null != copy) {
+            copy.abort();
+        }
+        final RetryCall call = retryCall;
+        if (null != call) {
+            call.abort();
+        }
+    }
+
+    /**
+     * set the call an {@link HttpEngine} sends the request with,{@link #abort()} cancels it,
+     * it is cancelled at once if the request is already aborted
+     *
+     * @param engineCall call of the engine,null when it ends
+     */
+    public void setEngineCall(Future<?> engineCall) {
+        this.engineCall = engineCall;
+        if (null != engineCall && isAborted) {
+            engineCall.cancel(true);
+        }
+    }
+
+    /**
+     * is the request aborted
+     *
+     * @return true after {@link #abort()}
+     */
+    public boolean isAborted() {
+        return isAborted;
+    }
+
+    /**
+     * write body or form to connection
+     *
+     * @throws IOException a case of OPT IO error
+     */
+    private void send() throws IOException {
+        if (httpConnection.getConnection().getDoOutput()) {
+            final RequestBody streamed = getBody();
+            if (null != streamed) {
+                send(streamed);
+                return;
+            }
+        }
+        final byte[] content = getBodyBytes();
+        if (null == content || !httpConnection.getConnection().getDoOutput()) {
+            httpConnection.connect();
+            return;
+        }
+        final String contentType = getContentType();
+        if (null != contentType) {
+            httpConnection.header(Header.CONTENT_TYPE, contentType, true);
+        }
+        final OutputStream out = httpConnection.getOutputSteam();
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * stream body to connection,a known length is sent with Content-Length so HttpURLConnection does not buffer it
+     *
+     * @param streamed body to send
+     * @throws IOException a case of OPT IO error
+     */
+    private void send(RequestBody streamed) throws IOException {
+        if (null != streamed.contentType()) {
+            httpConnection.header(Header.CONTENT_TYPE, streamed.contentType(), true);
+        }
+        final long length = streamed.contentLength();
+        if (length >= 0) {
+            httpConnection.setFixedLengthStreamingMode(length);
+        } else {
+            httpConnection.setChunkedStreamingMode(0);
+        }
+        final OutputStream out = httpConnection.getOutputSteam();
+        try {
+            streamed.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
 }
@@ -0,0 +1,266 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * http response,the body is read to the end when built so that the connection can be reused
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class HttpResponse extends HttpBase<HttpResponse> implements Closeable {
+    // bytes of an unread body read on before its connection is given back
+    private static final long MAX_DISCARD = 64 * 1024;
+    private static final int DISCARD_BUFFER_SIZE = 8 * 1024;
+
+    // connection object
+    protected HttpConnection httpConnection;
+    // response status
+    protected int status;
+    // response body
+    protected byte[] bodyBytes;
+    // body not read yet,handed to a ResponseHandler
+    private InputStream bodyStream;
+
+    /**
+     * build response from an executed connection
+     *
+     * @param httpConnection connection which request has been sent
+     * @param charset        default charset when response has no charset
+     * @throws IOException a case of OPT IO error
+     */
+    protected HttpResponse(HttpConnection httpConnection, String charset) throws IOException {
+        this(httpConnection, charset, false);
+    }
+
+    /**
+     * build response from an executed connection,its body is read now or left in {@link #bodyStream()}
+     *
+     * @param httpConnection connection which request has been sent
+     * @param charset        default charset when response has no charset
+     * @param isStreamed     leave the body in the stream
+     * @throws IOException a case of OPT IO error
+     */
+    HttpResponse(HttpConnection httpConnection, String charset, boolean isStreamed) throws IOException {
+        this.httpConnection = httpConnection;
+        this.charset = charset;
+        init(isStreamed);
+    }
+
+    /**
+     * build response read by an {@link HttpEngine}
+     *
+     * @param status    status code
+     * @param headers   response headers
+     * @param bodyBytes response body
+     * @param charset   default charset when response has no charset
+     */
+    public HttpResponse(int status, Map<String, List<String>> headers, byte[] bodyBytes, String charset) {
+        this.status = status;
+        this.charset = charset;
+        if (null != headers) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                for (String value : entry.getValue()) {
+                    header(entry.getKey(), StrUtils.nullToEmpty(value), false);
+                }
+            }
+        }
+        final String responseCharset = HttpUtils.getCharset(getHeader(Header.CONTENT_TYPE));
+        if (!StrUtils.isBlank(responseCharset)) {
+            this.charset = responseCharset;
+        }
+        this.bodyBytes = null == bodyBytes ? new byte[0] : bodyBytes;
+    }
+
+    /**
+     * read status,headers and body
+     *
+     * @throws IOException a case of OPT IO error
+     */
+    private void init(boolean isStreamed) throws IOException {
+        this.status = httpConnection.getResponseCode();
+        final Map<String, List<String>> headerFields = httpConnection.getHeaders();
+        if (null != headerFields) {
+            for (Map.Entry<String, List<String>> entry : headerFields.entrySet()) {
+                // the status line has a null key
+                if (null != entry.getKey()) {
+                    for (String value : entry.getValue()) {
+                        header(entry.getKey(), StrUtils.nullToEmpty(value), false);
+                    }
+                }
+            }
+        }
+        final String responseCharset = httpConnection.getCharset();
+        if (!StrUtils.isBlank(responseCharset)) {
+            this.charset = responseCharset;
+        }
+
+        InputStream in;
+        try {
+            in = httpConnection.getInputStream();
+        } catch (IOException e) {
+            in = httpConnection.getErrorStream();
+            if (null == in) {
+                if (status < HttpStatus.HTTP_BAD_REQUEST) {
+                    throw e;
+                }
+                httpConnection.close();
+            }
+        }
+        if (isStreamed) {
+            this.bodyStream = null == in ? new ByteArrayInputStream(new byte[0]) : in;
+        } else {
+            this.bodyBytes = read(in, bodyLength());
+        }
+        if (httpConnection.isDecoded()) {
+            // the body is no longer of the encoding nor of its length
+            removeHeader(Header.CONTENT_ENCODING);
+            removeHeader(Header.CONTENT_LENGTH);
+        }
+    }
+
+    /**
+     * the length the body is read into,-1 if it is unknown or not the length of the bytes read
+     */
+    private long bodyLength() {
+        if (httpConnection.isDecoded() || HttpMethod.HEAD.equals(httpConnection.getHttpMethod())
+                || HttpStatus.HTTP_NO_CONTENT == status || HttpStatus.HTTP_NOT_MODIFIED == status) {
+            return -1;
+        }
+        final HttpURLConnection connection = httpConnection.getConnection();
+        return null == connection ? -1 : connection.getContentLengthLong();
+    }
+
+    /**
+     * read stream to the end and close it,which gives back the connection
+     */
+    private static byte[] read(InputStream in, long length) throws IOException {
+        if (null == in) {
+            return new byte[0];
+        }
+        try {
+            return HttpUtils.readBody(in, length, BufferPool.getDefault());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * get response status
+     *
+     * @return status code
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * is status 2xx
+     *
+     * @return true or false
+     */
+    public boolean isOk() {
+        return status >= HttpStatus.HTTP_OK && status < HttpStatus.HTTP_MULT_CHOICE;
+    }
+
+    /**
+     * get body bytes
+     *
+     * @return body bytes
+     */
+    public byte[] bodyBytes() {
+        return bodyBytes;
+    }
+
+    /**
+     * get the body left to read,the response of {@link HttpRequest#execute(ResponseHandler)} is read this way
+     *
+     * @return body stream,null if the body has been read into {@link #bodyBytes()}
+     */
+    public InputStream bodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * get body string in response charset
+     *
+     * @return body string
+     */
+    public String body() {
+        if (null == body && null != bodyBytes) {
+            body = StrUtils.str(bodyBytes, charset);
+        }
+        return body;
+    }
+
+    /**
+     * get the connection of the response
+     *
+     * @return {@link HttpConnection},null when read by an {@link HttpEngine}
+     */
+    public HttpConnection getHttpConnection() {
+        return httpConnection;
+    }
+
+    /**
+     * give back the connection if it is still held
+     */
+    @Override
+    public void close() {
+        if (null != bodyStream) {
+            final InputStream in = bodyStream;
+            bodyStream = null;
+            discard(in);
+        }
+        if (null != httpConnection) {
+            httpConnection.close();
+        }
+    }
+
+    /**
+     * read on what a handler left of the body,a short rest keeps the connection alive,a long one is cut
+     */
+    private static void discard(InputStream in) {
+        final BufferPool pool = BufferPool.getDefault();
+        final byte[] buffer = pool.acquireBytes(DISCARD_BUFFER_SIZE);
+        try {
+            long left = MAX_DISCARD;
+            int n;
+            while (left > 0 && -1 != (n = in.read(buffer, 0, (int) Math.min(buffer.length, left)))) {
+                left -= n;
+            }
+        } catch (IOException e) {
+            // the connection is not kept
+        } finally {
+            pool.release(buffer);
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Response Status: ").append(status).append(StrUtils.CRLF);
+        sb.append("Response Headers: ").append(StrUtils.CRLF);
+        for (Map.Entry<String, List<String>> entry : this.headers.entrySet()) {
+            sb.append("    ").append(entry).append(StrUtils.CRLF);
+        }
+        sb.append("Response Body: ").append(StrUtils.CRLF);
+        sb.append("    ").append(body()).append(StrUtils.CRLF);
+        return sb.toString();
+    }
+}
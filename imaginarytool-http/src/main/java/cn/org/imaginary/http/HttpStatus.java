@@ -162,6 +162,16 @@ public final class HttpStatus {
      */
     public static final int HTTP_UNSUPPORTED_TYPE = 415;
 
+    /**
+     * HTTP Status-Code 416: Range Not Satisfiable.
+     */
+    public static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * HTTP Status-Code 429: Too Many Requests.
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
 	/* 5XX: server error */
 
     /**
@@ -1,5 +1,17 @@
 package cn.org.imaginary.http;
 
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.util.StrUtils;
+import cn.org.imaginary.util.URLUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -9,12 +21,115 @@ import java.util.regex.Pattern;
  */
 public final class HttpUtils {
     public static final Pattern CHARSET_PATTERN = Pattern.compile("charset=(.*?)\"");
+    public static final Pattern CONTENT_TYPE_CHARSET_PATTERN = Pattern.compile("charset\\s*=\\s*\"?([^\\s;\"]+)", Pattern.CASE_INSENSITIVE);
     public static final String HTTPS ="https://";
     public static final String HTTP ="http://";
+    // a declared length up to it is read into one array,a larger one is not trusted before it arrives
+    private static final int MAX_PRESIZED = 4 * 1024 * 1024;
+    // the first chunk of a body of unknown length,each next one is twice as large up to BufferPool.MAX_SIZE
+    private static final int FIRST_CHUNK = 8 * 1024;
 
     private HttpUtils(){}
 
     public static boolean isHttps(String url){
         return null == url ? false : url.toLowerCase().startsWith(HTTPS);
     }
+
+    /**
+     * get charset of content type header
+     *
+     * @param contentType content type,like: text/html;charset=utf-8
+     * @return charset or null if not present
+     */
+    public static String getCharset(String contentType) {
+        if (StrUtils.isBlank(contentType)) {
+            return null;
+        }
+        final Matcher matcher = CONTENT_TYPE_CHARSET_PATTERN.matcher(contentType);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * get response charset of connection
+     *
+     * @param connection {@link HttpURLConnection}
+     * @return charset or null if not present
+     */
+    public static String getCharset(HttpURLConnection connection) {
+        return null == connection ? null : getCharset(connection.getContentType());
+    }
+
+    /**
+     * the host and port of a request,the key of its per host limits
+     *
+     * @param request request
+     * @return host:port,like: example.com:443
+     */
+    public static String hostKey(HttpRequest request) {
+        final URL url = URLUtils.url(request.getRequestUrl());
+        return url.getHost().toLowerCase() + ":" + (-1 == url.getPort() ? url.getDefaultPort() : url.getPort());
+    }
+
+    /**
+     * read a body to the end,the stream is not closed<br>
+     * a body of known length is read into its array,
+     * otherwise it is read into chunks of the pool and copied once into an array of its length
+     *
+     * @param in     body
+     * @param length declared length,-1 if unknown
+     * @param pool   pool of the chunks
+     * @return body bytes
+     * @throws IOException a case of IO error,or the body is longer than declared
+     * @throws EOFException the body ended before its declared length
+     */
+    public static byte[] readBody(InputStream in, long length, BufferPool pool) throws IOException {
+        if (length >= 0 && length <= MAX_PRESIZED) {
+            final byte[] body = new byte[(int) length];
+            int filled = 0;
+            int n;
+            while (filled < body.length && -1 != (n = in.read(body, filled, body.length - filled))) {
+                filled += n;
+            }
+            if (filled < body.length) {
+                throw new EOFException(StrUtils.format("expected {} bytes, got {}", length, filled));
+            }
+            // read on to the end,which gives back a pooled connection
+            if (-1 != in.read()) {
+                throw new IOException(StrUtils.format("Body is longer than its length {}", length));
+            }
+            return body;
+        }
+        final List<byte[]> chunks = new ArrayList<>();
+        byte[] chunk = pool.acquireBytes(FIRST_CHUNK);
+        int filled = 0;
+        long total = 0;
+        try {
+            int n;
+            while (-1 != (n = in.read(chunk, filled, chunk.length - filled))) {
+                filled += n;
+                if (filled == chunk.length) {
+                    chunks.add(chunk);
+                    total += filled;
+                    chunk = pool.acquireBytes(Math.min(chunk.length << 1, BufferPool.MAX_SIZE));
+                    filled = 0;
+                }
+            }
+            if (total + filled > Integer.MAX_VALUE - 8) {
+                throw new IOException(StrUtils.format("Body of {} bytes is too large for an array", total + filled));
+            }
+            final byte[] body = new byte[(int) (total + filled)];
+            int position = 0;
+            for (byte[] full : chunks) {
+                System.arraycopy(full, 0, body, position, full.length);
+                position += full.length;
+            }
+            System.arraycopy(chunk, 0, body, position, filled);
+            return body;
+        } finally {
+            for (byte[] full : chunks) {
+                pool.release(full);
+            }
+            pool.release(chunk);
+        }
+    }
 }
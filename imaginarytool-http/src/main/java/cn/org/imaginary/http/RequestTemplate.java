@@ -0,0 +1,326 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.StrUtils;
+import cn.org.imaginary.util.URLUtils;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * an immutable shape of requests sent again and again,its url is validated and its headers are frozen once,
+ * the Host line,the headers and the defaults are encoded to bytes once,
+ * each request only adds the path params,the query and the body<br>
+ * the requests share the frozen headers until one of them sets a header,then it works on its own copy,
+ * setting the body keeps the encoded head as Content-Type and Content-Length are encoded per request<br>
+ * usage:
+ * <pre>
+ * RequestTemplate template = RequestTemplate.create(HttpRequest.post("http://api.example.com/users/{id}/events")
+ *         .header("Authorization", token));
+ * template.newRequest(42).body(json).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see HttpRequest
+ * @since 1.0
+ */
+public final class RequestTemplate {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // the copy of the prototype requests are copied from,never executed or changed
+    private final HttpRequest prototype;
+    // literal parts of the url around the path params,one more than the params
+    private final String[] parts;
+    // names of the path params in order
+    private final String[] params;
+    // Host,frozen headers and defaults but Content-Type and Content-Length,as http/1.1 lines
+    private final byte[] head;
+    // frozen headers and defaults but Content-Length set on each HttpURLConnection
+    private final List<String[]> connectionFields;
+
+    private RequestTemplate(HttpRequest request) {
+        final String url = request.getUrl();
+        final List<String> parts = new ArrayList<>();
+        final List<String> params = new ArrayList<>();
+        final int authorityEnd = authorityEnd(url);
+        int from = 0;
+        int open;
+        while ((open = url.indexOf('{', from)) >= 0) {
+            final int close = url.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException(StrUtils.format("Unclosed path param in {}", url));
+            }
+            if (open < authorityEnd) {
+                throw new IllegalArgumentException(StrUtils.format("Path param {} in the host of {}", url.substring(open, close + 1), url));
+            }
+            parts.add(url.substring(from, open));
+            params.add(url.substring(open + 1, close));
+            from = close + 1;
+        }
+        parts.add(url.substring(from));
+        this.parts = parts.toArray(new String[parts.size()]);
+        this.params = params.toArray(new String[params.size()]);
+
+        // any value keeps the url valid once encoded,so one check covers all requests
+        final String sample = expand(sampleParams(this.params.length));
+        if (StrUtils.isBlank(sample)) {
+            throw new HttpException("Url is empty");
+        }
+        final URL parsed;
+        try {
+            parsed = URLUtils.url(sample);
+        } catch (RuntimeException e) {
+            throw new HttpException(e, "{} is not a url", url);
+        }
+
+        // the copy owns its headers,or shares those of another template which nobody changes
+        this.prototype = request.copy();
+        this.prototype.template = this;
+        this.prototype.isSharedHeaders = true;
+        this.prototype.isTemplateHeaders = true;
+
+        this.connectionFields = Collections.unmodifiableList(connectionFields(prototype.headers));
+        this.head = head(parsed, prototype.headers);
+    }
+
+    /**
+     * freeze a request as a template,later changes of the request do not reach it
+     *
+     * @param prototype request with the url,method,headers and settings of all requests,
+     *                  path params in its url are written as {name}
+     * @return RequestTemplate
+     * @throws HttpException            if the url is not valid
+     * @throws IllegalArgumentException if a path param is not closed or is in the host
+     */
+    public static RequestTemplate create(HttpRequest prototype) {
+        return new RequestTemplate(prototype);
+    }
+
+    /**
+     * a new request of this shape
+     *
+     * @param pathParams values of the path params in order,percent encoded as utf-8
+     * @return HttpRequest which shares the frozen headers until it sets one
+     */
+    public HttpRequest newRequest(Object... pathParams) {
+        return newRequest(null, pathParams);
+    }
+
+    /**
+     * a new request of this shape with a query
+     *
+     * @param query      query params appended to the url,null if none
+     * @param pathParams values of the path params in order,percent encoded as utf-8
+     * @return HttpRequest which shares the frozen headers until it sets one
+     */
+    public HttpRequest newRequest(Map<String, ?> query, Object... pathParams) {
+        final int length = null == pathParams ? 0 : pathParams.length;
+        if (length != params.length) {
+            throw new IllegalArgumentException(StrUtils.format("{} path params expected but {} given", params.length, length));
+        }
+        String url = expand(pathParams);
+        if (null != query && !query.isEmpty()) {
+            final StringBuilder sb = new StringBuilder(url);
+            char separator = url.indexOf('?') < 0 ? '?' : '&';
+            for (Map.Entry<String, ?> entry : query.entrySet()) {
+                sb.append(separator);
+                encode(sb, entry.getKey());
+                sb.append('=');
+                encode(sb, null == entry.getValue() ? StrUtils.EMPTY : entry.getValue().toString());
+                separator = '&';
+            }
+            url = sb.toString();
+        }
+        return prototype.copy(url);
+    }
+
+    private String expand(Object[] values) {
+        if (0 == params.length) {
+            return parts[0];
+        }
+        final StringBuilder sb = new StringBuilder(parts[0].length() + 32 * params.length);
+        sb.append(parts[0]);
+        for (int i = 0; i < params.length; i++) {
+            if (null == values[i]) {
+                throw new IllegalArgumentException(StrUtils.format("Path param {} is null", params[i]));
+            }
+            encode(sb, values[i].toString());
+            sb.append(parts[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    private static Object[] sampleParams(int length) {
+        final Object[] values = new Object[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = "0";
+        }
+        return values;
+    }
+
+    /**
+     * percent encode all but the unreserved chars of rfc 3986
+     */
+    static void encode(StringBuilder sb, String value) {
+        int i = 0;
+        while (i < value.length() && isUnreserved(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) {
+            sb.append(value);
+            return;
+        }
+        sb.append(value, 0, i);
+        for (byte b : value.substring(i).getBytes(CharsetUtils.CHARSET_UTF_8)) {
+            final char c = (char) (b & 0xFF);
+            if (isUnreserved(c)) {
+                sb.append(c);
+            } else {
+                sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * the end of scheme://authority,path params are not allowed before it
+     */
+    private static int authorityEnd(String url) {
+        final int scheme = url.indexOf("://");
+        final int start = scheme < 0 ? 0 : scheme + 3;
+        for (int i = start; i < url.length(); i++) {
+            final char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private static List<String[]> connectionFields(HeaderTable headers) {
+        final List<String[]> fields = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            final String name = entry.getKey();
+            if (Header.CONTENT_LENGTH.toString().equals(name) || Header.CONTENT_TYPE.toString().equals(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                fields.add(new String[]{name, StrUtils.nullToEmpty(value)});
+            }
+        }
+        defaultField(fields, headers, Header.ACCEPT, HttpConnection.DEFAULT_ACCEPT);
+        defaultField(fields, headers, Header.ACCEPT_ENCODING, HttpConnection.DEFAULT_ACCEPT_ENCODING);
+        // the Content-Type of the request replaces it
+        fields.add(new String[]{Header.CONTENT_TYPE.toString(), HttpConnection.DEFAULT_CONTENT_TYPE});
+        defaultField(fields, headers, Header.USER_AGENT, HttpConnection.DEFAULT_USER_AGENT);
+        return fields;
+    }
+
+    private static void defaultField(List<String[]> fields, HeaderTable headers, Header header, String value) {
+        if (null == headers.first(header)) {
+            fields.add(new String[]{header.toString(), value});
+        }
+    }
+
+    private static byte[] head(URL url, HeaderTable headers) {
+        final StringBuilder sb = new StringBuilder(256);
+        final String host = -1 == url.getPort() || url.getPort() == url.getDefaultPort() ? url.getHost() : url.getHost() + ':' + url.getPort();
+        appendLine(sb, Header.HOST.toString(), host);
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            final String name = entry.getKey();
+            if (Header.HOST.toString().equals(name) || Header.CONTENT_LENGTH.toString().equals(name)
+                    || Header.CONTENT_TYPE.toString().equals(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                appendLine(sb, name, value);
+            }
+        }
+        if (null == headers.first(Header.ACCEPT)) {
+            appendLine(sb, Header.ACCEPT.toString(), HttpConnection.DEFAULT_ACCEPT);
+        }
+        if (null == headers.first(Header.ACCEPT_ENCODING)) {
+            appendLine(sb, Header.ACCEPT_ENCODING.toString(), HttpConnection.DEFAULT_ACCEPT_ENCODING);
+        }
+        if (null == headers.first(Header.USER_AGENT)) {
+            appendLine(sb, Header.USER_AGENT.toString(), HttpConnection.DEFAULT_USER_AGENT);
+        }
+        return sb.toString().getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+    }
+
+    private static void appendLine(StringBuilder sb, String name, String value) {
+        sb.append(name).append(": ").append(value).append(StrUtils.CRLF);
+    }
+
+    /**
+     * is a request still of this shape,it is not once it set a header but Content-Type and Content-Length,
+     * or changed its method or version
+     *
+     * @param request request made by {@link #newRequest(Object...)}
+     * @return true if the encoded head applies to it
+     */
+    boolean isShapeOf(HttpRequest request) {
+        return request.isTemplateHeaders && this == request.template
+                && request.getMethod() == prototype.getMethod()
+                && prototype.getHttpVersion().equals(request.getHttpVersion());
+    }
+
+    /**
+     * the length of the encoded head
+     *
+     * @return bytes
+     */
+    public int getHeadLength() {
+        return head.length;
+    }
+
+    /**
+     * write Host,the frozen headers and the defaults but Content-Type and Content-Length as http/1.1 lines
+     *
+     * @param buffer buffer in write mode with {@link #getHeadLength()} bytes remaining
+     */
+    public void writeHead(ByteBuffer buffer) {
+        buffer.put(head);
+    }
+
+    /**
+     * the frozen headers and defaults to set on a HttpURLConnection
+     *
+     * @return fields in order,each is a name and a value
+     */
+    public List<String[]> getConnectionFields() {
+        return connectionFields;
+    }
+
+    /**
+     * does a frozen header of the name exist
+     *
+     * @param name header
+     * @return true if it does
+     */
+    public boolean hasHeader(Header name) {
+        return null != prototype.headers.first(name);
+    }
+
+    /**
+     * the frozen headers
+     *
+     * @return headers,names are case insensitive
+     */
+    public Map<String, List<String>> getHeaders() {
+        return prototype.getHeaders();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[{} {}]", prototype.getMethod(), prototype.getUrl());
+    }
+}
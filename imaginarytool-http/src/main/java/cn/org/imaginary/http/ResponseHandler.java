@@ -0,0 +1,27 @@
+package cn.org.imaginary.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * turn a response into a result while its body is read,the body is not held in memory<br>
+ * the stream is decoded by its Content-Encoding unless the request turned it off,
+ * what the handler leaves unread is read on a little to keep the connection alive,then the stream is closed
+ *
+ * @param <T> result type
+ * @author Imaginary
+ * @see HttpRequest#execute(ResponseHandler)
+ * @since 1.0
+ */
+public interface ResponseHandler<T> {
+
+    /**
+     * handle the response
+     *
+     * @param response status,headers and charset of the response,its body is in the stream
+     * @param body     body stream,the handler need not close it
+     * @return result
+     * @throws IOException a case of IO error
+     */
+    T handle(HttpResponse response, InputStream body) throws IOException;
+}
@@ -0,0 +1,228 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.http.retry.HedgePolicy;
+import cn.org.imaginary.http.retry.RetryPolicy;
+import cn.org.imaginary.util.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the attempts of a request with a {@link RetryPolicy} or a {@link HedgePolicy}<br>
+ * an attempt is sent again after a retryable error or status and a backoff,
+ * a hedged attempt sends duplicates of the request on other threads when it has not answered after the hedge delay,
+ * the first response wins and the other duplicates are aborted
+ *
+ * @author Imaginary
+ * @see HttpRequest#setRetryPolicy(RetryPolicy)
+ * @since 1.0
+ */
+final class RetryCall {
+    private final static Logger logger = LoggerFactory.getLogger(RetryCall.class);
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, StrUtils.format("imaginary-hedge-{}", THREAD_ID.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final HttpRequest request;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    // counts down when aborted,wakes a backoff
+    private final CountDownLatch aborted = new CountDownLatch(1);
+    // duplicates in flight,guarded by this
+    private final List<Hedge> hedges = new ArrayList<>();
+
+    RetryCall(HttpRequest request) {
+        this.request = request;
+        this.retryPolicy = request.getRetryPolicy();
+        this.hedgePolicy = request.getHedgePolicy();
+    }
+
+    /**
+     * send the request until a response is final or the attempts are used up
+     *
+     * @return the last response,maybe with a retryable status
+     * @throws HttpException the last error
+     */
+    HttpResponse execute() {
+        final int maxAttempts = null == retryPolicy ? 1 : retryPolicy.getMaxAttempts();
+        for (int attempt = 1; ; attempt++) {
+            final HttpResponse response;
+            try {
+                response = null != hedgePolicy && hedgePolicy.isHedgeable(request) ? executeHedged() : request.executeOnce();
+            } catch (HttpException e) {
+                if (attempt >= maxAttempts || !retryPolicy.shouldRetry(request, e)) {
+                    throw e;
+                }
+                backoff(attempt, retryPolicy.backoff(attempt + 1), e.getMessage());
+                continue;
+            }
+            if (attempt >= maxAttempts || !retryPolicy.shouldRetry(request, response.getStatus())) {
+                return response;
+            }
+            response.close();
+            backoff(attempt, retryPolicy.backoff(attempt + 1, response), "status " + response.getStatus());
+        }
+    }
+
+    private void backoff(int attempt, long delay, String reason) {
+        logger.debug("retry {} after {}ms,attempt {} failed: {}", request.getUrl(), delay, attempt, reason);
+        try {
+            if (aborted.await(delay, TimeUnit.MILLISECONDS)) {
+                throw new HttpException("Request to {} aborted", request.getUrl());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException(e, "Request to {} aborted", request.getUrl());
+        }
+    }
+
+    /**
+     * send the request and its duplicates,take the first response
+     */
+    private HttpResponse executeHedged() {
+        final BlockingQueue<Hedge> done = new LinkedBlockingQueue<>();
+        final int maxSent = 1 + hedgePolicy.getMaxHedges();
+        int sent = 0;
+        int failed = 0;
+        HttpException lastError = null;
+        try {
+            send(done);
+            sent++;
+            while (true) {
+                final Hedge hedge = sent < maxSent ? done.poll(hedgePolicy.hedgeDelay(), TimeUnit.MILLISECONDS) : done.take();
+                if (null == hedge) {
+                    logger.debug("hedge {} after {}ms", request.getUrl(), hedgePolicy.hedgeDelay());
+                    send(done);
+                    sent++;
+                    continue;
+                }
+                if (null != hedge.response) {
+                    synchronized (this) {
+                        hedges.remove(hedge);
+                    }
+                    hedgePolicy.record(hedge.latency);
+                    return hedge.response;
+                }
+                lastError = hedge.error;
+                if (request.isAborted() || ++failed == sent) {
+                    // every duplicate sent failed,the retry policy decides
+                    throw lastError;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException(e, "Request to {} aborted", request.getUrl());
+        } finally {
+            cancelHedges();
+            // responses which lost the race
+            Hedge lost;
+            while (null != (lost = done.poll())) {
+                if (null != lost.response) {
+                    lost.response.close();
+                }
+            }
+        }
+    }
+
+    private void send(BlockingQueue<Hedge> done) {
+        final Hedge hedge = new Hedge(request.copy(), done);
+        synchronized (this) {
+            if (request.isAborted()) {
+                throw new HttpException("Request to {} aborted", request.getUrl());
+            }
+            hedges.add(hedge);
+        }
+        try {
+            hedge.future = EXECUTOR.submit(hedge);
+        } catch (RejectedExecutionException e) {
+            throw new HttpException(e, "Hedge of {} rejected", request.getUrl());
+        }
+    }
+
+    /**
+     * abort the duplicates still running,a response they get later is closed
+     */
+    private void cancelHedges() {
+        final List<Hedge> running;
+        synchronized (this) {
+            running = new ArrayList<>(hedges);
+            hedges.clear();
+        }
+        for (Hedge hedge : running) {
+            hedge.cancel();
+        }
+    }
+
+    /**
+     * abort the attempt running and the backoff,called by {@link HttpRequest#abort()}
+     */
+    void abort() {
+        aborted.countDown();
+        cancelHedges();
+    }
+
+    /**
+     * a duplicate of the request running on the hedge executor
+     */
+    private static final class Hedge implements Runnable {
+        private final HttpRequest copy;
+        private final BlockingQueue<Hedge> done;
+        private volatile Future<?> future;
+        // guarded by this
+        private boolean isCancelled;
+        private HttpResponse response;
+        private HttpException error;
+        private long latency;
+
+        private Hedge(HttpRequest copy, BlockingQueue<Hedge> done) {
+            this.copy = copy;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            try {
+                response = copy.executeOnce();
+            } catch (HttpException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new HttpException(e.getMessage(), e);
+            }
+            latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized (this) {
+                if (!isCancelled) {
+                    done.add(this);
+                    return;
+                }
+            }
+            if (null != response) {
+                // lost the race
+                response.close();
+            }
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                isCancelled = true;
+            }
+            copy.abort();
+            final Future<?> running = future;
+            if (null != running) {
+                running.cancel(true);
+            }
+        }
+    }
+}
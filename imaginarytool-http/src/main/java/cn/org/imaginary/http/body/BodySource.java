@@ -0,0 +1,34 @@
+package cn.org.imaginary.http.body;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * the bytes of a {@link RequestBody} read once in order,
+ * file contents are exposed as regions which the transport can send with {@link java.nio.channels.FileChannel#transferTo}
+ * instead of copying them through the heap
+ *
+ * @author Imaginary
+ * @see RequestBody#newSource()
+ * @since 1.0
+ */
+public interface BodySource extends ReadableByteChannel {
+
+    /**
+     * are the next bytes a region of a file
+     *
+     * @return true if {@link #transferTo(WritableByteChannel)} can send them
+     */
+    boolean isFileRegion();
+
+    /**
+     * send bytes of current file region straight from the file,
+     * the next segment is current when the region is done
+     *
+     * @param target channel to write,a socket sends without copying through the heap
+     * @return bytes sent,0 if the target is full
+     * @throws IOException a case of IO error
+     */
+    long transferTo(WritableByteChannel target) throws IOException;
+}
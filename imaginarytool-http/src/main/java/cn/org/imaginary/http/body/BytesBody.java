@@ -0,0 +1,142 @@
+package cn.org.imaginary.http.body;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * a body of bytes in memory,a byte array or a heap or direct {@link ByteBuffer},
+ * the bytes are sent as they are,they are not copied into a string or another array<br>
+ * the bytes must not change until the body is sent<br>
+ * usage:
+ * <pre>
+ * HttpRequest.post(url).body(BytesBody.create(proto.toByteArray(), "application/x-protobuf")).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RequestBody
+ * @since 1.0
+ */
+public class BytesBody extends RequestBody {
+    // the bytes between position and limit,never moved,each source reads a duplicate
+    private final ByteBuffer bytes;
+    private final String contentType;
+
+    public BytesBody(ByteBuffer bytes, String contentType) {
+        this.bytes = bytes.slice();
+        this.contentType = contentType;
+    }
+
+    /**
+     * create body of an array
+     *
+     * @param bytes       bytes
+     * @param contentType Content-Type header,null for the one of the request
+     * @return BytesBody
+     */
+    public static BytesBody create(byte[] bytes, String contentType) {
+        return new BytesBody(ByteBuffer.wrap(bytes), contentType);
+    }
+
+    /**
+     * create body of part of an array
+     *
+     * @param bytes       bytes
+     * @param offset      first byte to send
+     * @param length      bytes to send
+     * @param contentType Content-Type header,null for the one of the request
+     * @return BytesBody
+     */
+    public static BytesBody create(byte[] bytes, int offset, int length, String contentType) {
+        return new BytesBody(ByteBuffer.wrap(bytes, offset, length), contentType);
+    }
+
+    /**
+     * create body of the remaining bytes of a buffer,the position of the buffer is not moved
+     *
+     * @param bytes       heap or direct buffer
+     * @param contentType Content-Type header,null for the one of the request
+     * @return BytesBody
+     */
+    public static BytesBody create(ByteBuffer bytes, String contentType) {
+        return new BytesBody(bytes, contentType);
+    }
+
+    @Override
+    public long contentLength() {
+        return bytes.remaining();
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public BodySource newSource() {
+        return new Source(bytes.duplicate());
+    }
+
+    /**
+     * write the array straight to the stream,a direct buffer goes through one buffer of constant size
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (bytes.hasArray()) {
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            out.flush();
+            return;
+        }
+        super.writeTo(out);
+    }
+
+    /**
+     * reads a duplicate of the bytes
+     */
+    private static final class Source implements BodySource {
+        private final ByteBuffer bytes;
+        private boolean isOpen = true;
+
+        private Source(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!isOpen) {
+                throw new ClosedChannelException();
+            }
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            final int length = Math.min(dst.remaining(), bytes.remaining());
+            final int limit = bytes.limit();
+            bytes.limit(bytes.position() + length);
+            dst.put(bytes);
+            bytes.limit(limit);
+            return length;
+        }
+
+        @Override
+        public boolean isFileRegion() {
+            return false;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) {
+            return 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() {
+            isOpen = false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a file sent as the whole body,it is streamed from disk and a plain socket gets it by
+ * {@link FileChannel#transferTo} without copying through the heap<br>
+ * the length is taken when the body is created,the file must not shrink until it is sent<br>
+ * usage:
+ * <pre>
+ * HttpRequest.put(url).body(FileBody.create(Paths.get("image.png"))).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RequestBody
+ * @since 1.0
+ */
+public class FileBody extends RequestBody {
+    private final Path path;
+    private final long length;
+    private final String contentType;
+
+    public FileBody(Path path, String contentType) {
+        if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+            throw new HttpException("File {} is not readable", path);
+        }
+        try {
+            this.length = Files.size(path);
+        } catch (IOException e) {
+            throw new HttpException(e, "File {} is not readable", path);
+        }
+        this.path = path;
+        this.contentType = contentType;
+    }
+
+    /**
+     * create body,its content type is guessed from the file name
+     *
+     * @param path file
+     * @return FileBody
+     * @throws HttpException the file is not readable
+     */
+    public static FileBody create(Path path) {
+        return new FileBody(path, URLConnection.guessContentTypeFromName(path.getFileName().toString()));
+    }
+
+    /**
+     * create body
+     *
+     * @param path        file
+     * @param contentType Content-Type header,null for the one of the request
+     * @return FileBody
+     * @throws HttpException the file is not readable
+     */
+    public static FileBody create(Path path, String contentType) {
+        return new FileBody(path, contentType);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public BodySource newSource() throws IOException {
+        return new Source(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * the region of the file up to the length taken at creation
+     */
+    private final class Source implements BodySource {
+        private final FileChannel channel;
+        private long position;
+
+        private Source(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean isFileRegion() {
+            return channel.isOpen() && position < length;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) throws IOException {
+            if (position >= length) {
+                return 0;
+            }
+            final long n = channel.transferTo(position, length - position, target);
+            if (0 == n && position >= channel.size()) {
+                throw new EOFException(StrUtils.format("File {} is shorter than when the body was created", path));
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (position >= length) {
+                return -1;
+            }
+            final int limit = dst.limit();
+            dst.limit(dst.position() + (int) Math.min(dst.remaining(), length - position));
+            try {
+                final int n = channel.read(dst, position);
+                if (n < 0) {
+                    throw new EOFException(StrUtils.format("File {} is shorter than when the body was created", path));
+                }
+                position += n;
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
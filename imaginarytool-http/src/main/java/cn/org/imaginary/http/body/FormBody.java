@@ -0,0 +1,503 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.util.ArrayUtils;
+import cn.org.imaginary.util.CharsetUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * application/x-www-form-urlencoded body,fields are kept in order as added and a name may be added more than once<br>
+ * names and values are encoded as {@link java.net.URLEncoder} does while the body is read,
+ * no encoded string is built per field,the length is counted the same way without keeping the bytes<br>
+ * a list or array value is sent as its elements joined by ','<br>
+ * usage:
+ * <pre>
+ * FormBody body = FormBody.create()
+ *         .add("tag", "a")
+ *         .add("tag", "b")
+ *         .add("ids", Arrays.asList(1, 2, 3));
+ * HttpRequest.post(url).body(body).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RequestBody
+ * @since 1.0
+ */
+public class FormBody extends RequestBody {
+    private static final String CONTENT_TYPE_PREFIX = "application/x-www-form-urlencoded;charset=";
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+    // chars URLEncoder keeps as they are
+    private static final boolean[] SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            SAFE[c] = true;
+            SAFE[c - 'a' + 'A'] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            SAFE[c] = true;
+        }
+        SAFE['.'] = true;
+        SAFE['-'] = true;
+        SAFE['*'] = true;
+        SAFE['_'] = true;
+    }
+
+    private Charset charset;
+    // Content-Type header,null for the default of the charset
+    private String contentType;
+    // names and values in the first size slots,a value is a CharSequence or the CharSequence[] of a list
+    private String[] names = new String[8];
+    private Object[] values = new Object[8];
+    private int size;
+    // encoded length,-1 until counted
+    private long length = -1;
+
+    public FormBody(Charset charset) {
+        this.charset = null == charset ? CharsetUtils.CHARSET_UTF_8 : charset;
+    }
+
+    /**
+     * create body with UTF-8 names and values
+     *
+     * @return FormBody
+     */
+    public static FormBody create() {
+        return new FormBody(CharsetUtils.CHARSET_UTF_8);
+    }
+
+    /**
+     * create body
+     *
+     * @param charset charset of names and values
+     * @return FormBody
+     */
+    public static FormBody create(Charset charset) {
+        return new FormBody(charset);
+    }
+
+    /**
+     * add a field after the others,a name added before is sent again
+     *
+     * @param name  field name
+     * @param value CharSequence,list,array or any value sent as its toString,null is skipped
+     * @return this
+     */
+    public FormBody add(String name, Object value) {
+        if (null == name || null == value) {
+            return this;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size << 1);
+            values = Arrays.copyOf(values, size << 1);
+        }
+        names[size] = name;
+        values[size++] = normalize(value);
+        length = -1;
+        return this;
+    }
+
+    /**
+     * set the only value of a field,it takes the place of the first value of the name
+     *
+     * @param name  field name
+     * @param value value as {@link #add(String, Object)}
+     * @return this
+     */
+    public FormBody set(String name, Object value) {
+        if (null == name || null == value) {
+            return this;
+        }
+        int first = -1;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (first >= 0) {
+                    continue;
+                }
+                first = kept;
+            }
+            names[kept] = names[i];
+            values[kept++] = values[i];
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+        if (first < 0) {
+            return add(name, value);
+        }
+        values[first] = normalize(value);
+        length = -1;
+        return this;
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof CharSequence) {
+            return value;
+        }
+        if (value instanceof Collection) {
+            return elements(((Collection<?>) value).toArray());
+        }
+        if (ArrayUtils.isArray(value)) {
+            return elements(ArrayUtils.wrap(value));
+        }
+        return String.valueOf(value);
+    }
+
+    private static CharSequence[] elements(Object[] items) {
+        final CharSequence[] elements = new CharSequence[items.length];
+        for (int i = 0; i < items.length; i++) {
+            final Object item = items[i];
+            elements[i] = item instanceof CharSequence ? (CharSequence) item : String.valueOf(item);
+        }
+        return elements;
+    }
+
+    /**
+     * set charset of names and values
+     *
+     * @param charset charset
+     * @return this
+     */
+    public FormBody charset(Charset charset) {
+        if (null != charset && !charset.equals(this.charset)) {
+            this.charset = charset;
+            length = -1;
+        }
+        return this;
+    }
+
+    /**
+     * set Content-Type header
+     *
+     * @param contentType content type,null for the default of the charset
+     * @return this
+     */
+    public FormBody contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * copy the fields,later changes of one do not reach the other
+     *
+     * @return FormBody
+     */
+    public FormBody copy() {
+        final FormBody copy = new FormBody(charset);
+        copy.contentType = contentType;
+        copy.names = Arrays.copyOf(names, names.length);
+        copy.values = Arrays.copyOf(values, values.length);
+        copy.size = size;
+        copy.length = length;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    /**
+     * the value of a field as sent,list elements joined by ','
+     *
+     * @param index index of the field in order
+     * @return value
+     */
+    public String value(int index) {
+        final Object value = values[index];
+        if (value instanceof CharSequence) {
+            return value.toString();
+        }
+        final CharSequence[] elements = (CharSequence[]) value;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(elements[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * the encoded form,as the query of a url
+     *
+     * @return key=value&amp;key=value
+     */
+    public String encode() {
+        final byte[] bytes = new byte[(int) contentLength()];
+        new Encoder().read(ByteBuffer.wrap(bytes));
+        return new String(bytes, CharsetUtils.CHARSET_ISO_8859_1);
+    }
+
+    @Override
+    public long contentLength() {
+        if (length < 0) {
+            final Encoder encoder = new Encoder();
+            final BufferPool pool = BufferPool.getDefault();
+            final ByteBuffer scratch = pool.acquire(BUFFER_SIZE);
+            long counted = 0;
+            int n;
+            while ((n = encoder.read(scratch)) >= 0) {
+                counted += n;
+                scratch.clear();
+            }
+            pool.release(scratch);
+            length = counted;
+        }
+        return length;
+    }
+
+    @Override
+    public String contentType() {
+        return null == contentType ? CONTENT_TYPE_PREFIX + charset.name() : contentType;
+    }
+
+    @Override
+    public BodySource newSource() {
+        return new Encoder();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        final Encoder encoder = new Encoder();
+        try {
+            int n;
+            while ((n = encoder.read(buffer)) >= 0) {
+                out.write(buffer.array(), 0, n);
+                buffer.clear();
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        out.flush();
+    }
+
+    /**
+     * encodes the fields in order into the buffers it is given,it resumes where the last buffer was full
+     */
+    private final class Encoder implements BodySource {
+        // the steps of a field
+        private static final int SEPARATOR = 0;
+        private static final int NAME = 1;
+        private static final int EQUALS = 2;
+        private static final int VALUE = 3;
+
+        private final boolean isUtf8 = CharsetUtils.CHARSET_UTF_8.equals(charset);
+        private final CharsetEncoder charsetEncoder = isUtf8 ? null : charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // bytes of one char encoded in the charset,then as %XX
+        private final ByteBuffer charBytes = ByteBuffer.allocate(isUtf8 ? 4 : (int) Math.ceil(charsetEncoder.maxBytesPerChar()) * 2);
+        private final byte[] pending = new byte[charBytes.capacity() * 3];
+        private int pendingStart;
+        private int pendingEnd;
+        private int field;
+        private int step = SEPARATOR;
+        // next element of a list value
+        private int element;
+        // the ',' before the next element of a list is written
+        private boolean isCommaWritten;
+        // the chars being encoded
+        private CharSequence chars;
+        private int index;
+        private boolean isOpen = true;
+
+        @Override
+        public int read(ByteBuffer dst) {
+            final int start = dst.position();
+            while (dst.hasRemaining()) {
+                if (pendingStart < pendingEnd) {
+                    final int n = Math.min(pendingEnd - pendingStart, dst.remaining());
+                    dst.put(pending, pendingStart, n);
+                    pendingStart += n;
+                } else if (null != chars && index < chars.length()) {
+                    encodeChars(dst);
+                } else if (!next()) {
+                    break;
+                }
+            }
+            final int n = dst.position() - start;
+            return 0 == n && field == size && null == chars && pendingStart == pendingEnd ? -1 : n;
+        }
+
+        /**
+         * move to the next chars or separator,false at the end of the form
+         */
+        private boolean next() {
+            chars = null;
+            while (field < size) {
+                switch (step) {
+                    case SEPARATOR:
+                        step = NAME;
+                        if (field > 0) {
+                            pending('&');
+                            return true;
+                        }
+                        break;
+                    case NAME:
+                        step = EQUALS;
+                        chars(names[field]);
+                        return true;
+                    case EQUALS:
+                        step = VALUE;
+                        element = 0;
+                        pending('=');
+                        return true;
+                    default:
+                        final Object value = values[field];
+                        if (value instanceof CharSequence) {
+                            nextField();
+                            chars((CharSequence) value);
+                            return true;
+                        }
+                        final CharSequence[] elements = (CharSequence[]) value;
+                        if (element == elements.length) {
+                            nextField();
+                            break;
+                        }
+                        if (element > 0 && !isCommaWritten) {
+                            isCommaWritten = true;
+                            pendingStart = 0;
+                            pendingEnd = 0;
+                            percent((byte) ',');
+                            return true;
+                        }
+                        isCommaWritten = false;
+                        chars(elements[element++]);
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private void nextField() {
+            field++;
+            step = SEPARATOR;
+        }
+
+        private void chars(CharSequence chars) {
+            this.chars = chars;
+            this.index = 0;
+        }
+
+        private void pending(char c) {
+            pending[0] = (byte) c;
+            pendingStart = 0;
+            pendingEnd = 1;
+        }
+
+        /**
+         * encode chars until the buffer is full or a char needs more bytes than it has room for
+         */
+        private void encodeChars(ByteBuffer dst) {
+            final CharSequence chars = this.chars;
+            final int length = chars.length();
+            while (index < length && dst.hasRemaining()) {
+                final char c = chars.charAt(index);
+                if (c < 128 && SAFE[c]) {
+                    dst.put((byte) c);
+                    index++;
+                } else if (c == ' ') {
+                    dst.put((byte) '+');
+                    index++;
+                } else {
+                    pendingStart = 0;
+                    pendingEnd = 0;
+                    encodeChar(c);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * put the %XX of the bytes of one char,or a surrogate pair,into pending
+         */
+        private void encodeChar(char c) {
+            final int count = Character.isHighSurrogate(c) && index + 1 < chars.length()
+                    && Character.isLowSurrogate(chars.charAt(index + 1)) ? 2 : 1;
+            charBytes.clear();
+            if (isUtf8) {
+                utf8(count == 2 ? Character.toCodePoint(c, chars.charAt(index + 1)) : c);
+            } else {
+                charsetEncoder.reset();
+                final CharBuffer in = CharBuffer.wrap(chars, index, index + count);
+                charsetEncoder.encode(in, charBytes, true);
+                charsetEncoder.flush(charBytes);
+            }
+            index += count;
+            charBytes.flip();
+            while (charBytes.hasRemaining()) {
+                percent(charBytes.get());
+            }
+        }
+
+        private void utf8(int codePoint) {
+            if (codePoint < 0x80) {
+                charBytes.put((byte) codePoint);
+            } else if (codePoint < 0x800) {
+                charBytes.put((byte) (0xC0 | codePoint >> 6));
+                charBytes.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate((char) codePoint) && codePoint <= Character.MAX_VALUE) {
+                // an unpaired surrogate is replaced as String.getBytes does
+                charBytes.put((byte) '?');
+            } else if (codePoint < 0x10000) {
+                charBytes.put((byte) (0xE0 | codePoint >> 12));
+                charBytes.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                charBytes.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                charBytes.put((byte) (0xF0 | codePoint >> 18));
+                charBytes.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                charBytes.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                charBytes.put((byte) (0x80 | codePoint & 0x3F));
+            }
+        }
+
+        private void percent(byte b) {
+            pending[pendingEnd++] = '%';
+            pending[pendingEnd++] = HEX[b >> 4 & 0xF];
+            pending[pendingEnd++] = HEX[b & 0xF];
+        }
+
+        @Override
+        public boolean isFileRegion() {
+            return false;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) throws IOException {
+            throw new ClosedChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() {
+            isOpen = false;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.RandomUtils;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * multipart/form-data body(RFC 7578),files are streamed from disk and never read into the heap,
+ * the length is known up front so the request is sent with a Content-Length<br>
+ * the length of a file is taken when it is added,it must not change until the body is sent<br>
+ * usage:
+ * <pre>
+ * MultipartBody body = MultipartBody.create()
+ *         .addField("name", "value")
+ *         .addFile("file", new File("big.iso"));
+ * HttpRequest.post(url).body(body).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RequestBody
+ * @since 1.0
+ */
+public class MultipartBody extends RequestBody {
+    private static final String CONTENT_TYPE_MULTIPART_PREFIX = "multipart/form-data; boundary=";
+    private static final String BOUNDARY_PREFIX = "--------------------Imaginary";
+    private static final String BOUNDARY_TEMPLATE = "--{}\r\n";
+    private static final String BOUNDARY_END_TEMPLATE = "--{}--\r\n";
+    private static final String CONTENT_DISPOSITION_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"\r\n\r\n";
+    private static final String CONTENT_DISPOSITION_FILE_TEMPLATE = "Content-Disposition: form-data; name=\"{}\"; filename=\"{}\"\r\n";
+    private static final String CONTENT_TYPE_FILE_TEMPLATE = "Content-Type: {}\r\n\r\n";
+    private static final String DEFAULT_FILE_CONTENT_TYPE = "application/octet-stream";
+    private static final byte[] CRLF = StrUtils.CRLF.getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+
+    private final String boundary = BOUNDARY_PREFIX + RandomUtils.randomString(16);
+    // charset of names,file names and field values
+    private final Charset charset;
+    // part headers,contents and line breaks in order,without the closing boundary
+    private final List<Segment> segments = new ArrayList<>();
+
+    public MultipartBody(Charset charset) {
+        this.charset = null == charset ? CharsetUtils.CHARSET_UTF_8 : charset;
+    }
+
+    /**
+     * create body with UTF-8 names and values
+     *
+     * @return MultipartBody
+     */
+    public static MultipartBody create() {
+        return new MultipartBody(CharsetUtils.CHARSET_UTF_8);
+    }
+
+    /**
+     * create body
+     *
+     * @param charset charset of names and values
+     * @return MultipartBody
+     */
+    public static MultipartBody create(Charset charset) {
+        return new MultipartBody(charset);
+    }
+
+    /**
+     * add a text field
+     *
+     * @param name  field name
+     * @param value field value
+     * @return {@link MultipartBody}
+     */
+    public MultipartBody addField(String name, String value) {
+        if (StrUtils.isBlank(name)) {
+            return this;
+        }
+        final String head = StrUtils.format(BOUNDARY_TEMPLATE, boundary) + StrUtils.format(CONTENT_DISPOSITION_TEMPLATE, escape(name));
+        segments.add(new Segment(head.getBytes(charset)));
+        segments.add(new Segment(StrUtils.nullToEmpty(value).getBytes(charset)));
+        segments.add(new Segment(CRLF));
+        return this;
+    }
+
+    /**
+     * add a file,its content type is guessed from the file name
+     *
+     * @param name field name
+     * @param file file to upload
+     * @return {@link MultipartBody}
+     */
+    public MultipartBody addFile(String name, File file) {
+        return addFile(name, file, null);
+    }
+
+    /**
+     * add a file
+     *
+     * @param name        field name
+     * @param file        file to upload
+     * @param contentType content type of the file,guessed from the file name if null
+     * @return {@link MultipartBody}
+     * @throws HttpException the file is not readable
+     */
+    public MultipartBody addFile(String name, File file, String contentType) {
+        if (StrUtils.isBlank(name) || null == file) {
+            return this;
+        }
+        if (!file.isFile() || !file.canRead()) {
+            throw new HttpException("File {} is not readable", file);
+        }
+        if (StrUtils.isBlank(contentType)) {
+            contentType = URLConnection.guessContentTypeFromName(file.getName());
+        }
+        final String head = StrUtils.format(BOUNDARY_TEMPLATE, boundary)
+                + StrUtils.format(CONTENT_DISPOSITION_FILE_TEMPLATE, escape(name), escape(file.getName()))
+                + StrUtils.format(CONTENT_TYPE_FILE_TEMPLATE, null == contentType ? DEFAULT_FILE_CONTENT_TYPE : contentType);
+        segments.add(new Segment(head.getBytes(charset)));
+        segments.add(new Segment(file, file.length()));
+        segments.add(new Segment(CRLF));
+        return this;
+    }
+
+    /**
+     * quotes and line breaks are percent encoded as browsers do
+     */
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    @Override
+    public long contentLength() {
+        long length = 0;
+        for (Segment segment : segments) {
+            length += segment.length;
+        }
+        return length + StrUtils.format(BOUNDARY_END_TEMPLATE, boundary).length();
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE_MULTIPART_PREFIX + boundary;
+    }
+
+    @Override
+    public BodySource newSource() {
+        final List<Segment> all = new ArrayList<>(segments.size() + 1);
+        all.addAll(segments);
+        all.add(new Segment(StrUtils.format(BOUNDARY_END_TEMPLATE, boundary).getBytes(CharsetUtils.CHARSET_ISO_8859_1)));
+        return new Source(all);
+    }
+
+    /**
+     * bytes in memory or a file region
+     */
+    private static final class Segment {
+        private final byte[] bytes;
+        private final File file;
+        private final long length;
+
+        private Segment(byte[] bytes) {
+            this.bytes = bytes;
+            this.file = null;
+            this.length = bytes.length;
+        }
+
+        private Segment(File file, long length) {
+            this.bytes = null;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    /**
+     * reads the segments in order,one file is open at a time
+     */
+    private static final class Source implements BodySource {
+        private final List<Segment> segments;
+        private int index;
+        // bytes of current segment already read
+        private long position;
+        // channel of current file segment
+        private FileChannel channel;
+        private boolean isOpen = true;
+
+        private Source(List<Segment> segments) {
+            this.segments = segments;
+        }
+
+        /**
+         * skip done and empty segments
+         *
+         * @return current segment,null at the end
+         */
+        private Segment current() throws IOException {
+            if (!isOpen) {
+                throw new ClosedChannelException();
+            }
+            while (index < segments.size() && position == segments.get(index).length) {
+                closeChannel();
+                index++;
+                position = 0;
+            }
+            return index < segments.size() ? segments.get(index) : null;
+        }
+
+        private FileChannel channel(Segment segment) throws IOException {
+            if (null == channel) {
+                channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ);
+            }
+            return channel;
+        }
+
+        @Override
+        public boolean isFileRegion() {
+            try {
+                final Segment segment = current();
+                return null != segment && null != segment.file;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) throws IOException {
+            final Segment segment = current();
+            if (null == segment || null == segment.file) {
+                return 0;
+            }
+            final FileChannel fileChannel = channel(segment);
+            final long n = fileChannel.transferTo(position, segment.length - position, target);
+            if (0 == n && position >= fileChannel.size()) {
+                throw new EOFException(StrUtils.format("File {} is shorter than when it was added", segment.file));
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            final Segment segment = current();
+            if (null == segment) {
+                return -1;
+            }
+            final int length = (int) Math.min(dst.remaining(), segment.length - position);
+            if (0 == length) {
+                return 0;
+            }
+            if (null != segment.bytes) {
+                dst.put(segment.bytes, (int) position, length);
+                position += length;
+                return length;
+            }
+            final int limit = dst.limit();
+            dst.limit(dst.position() + length);
+            try {
+                final int n = channel(segment).read(dst, position);
+                if (n < 0) {
+                    throw new EOFException(StrUtils.format("File {} is shorter than when it was added", segment.file));
+                }
+                position += n;
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        private void closeChannel() throws IOException {
+            if (null != channel) {
+                final FileChannel closing = channel;
+                channel = null;
+                closing.close();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() throws IOException {
+            isOpen = false;
+            closeChannel();
+        }
+    }
+}
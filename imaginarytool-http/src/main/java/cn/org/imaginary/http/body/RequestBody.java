@@ -0,0 +1,85 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.pool.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * a request body streamed to the connection,it is not held in memory,
+ * so it can be sent again by opening another {@link BodySource} unless it is not {@link #isRepeatable()}
+ *
+ * @author Imaginary
+ * @see MultipartBody
+ * @since 1.0
+ */
+public abstract class RequestBody {
+    // buffer size of bytes copied through the heap
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * the exact bytes {@link #newSource()} reads
+     *
+     * @return length,-1 if unknown
+     */
+    public abstract long contentLength();
+
+    /**
+     * Content-Type header of the body
+     *
+     * @return content type or null
+     */
+    public abstract String contentType();
+
+    /**
+     * open the bytes of the body from the start
+     *
+     * @return {@link BodySource},close it after use
+     * @throws IOException a case of IO error
+     */
+    public abstract BodySource newSource() throws IOException;
+
+    /**
+     * can {@link #newSource()} be called again,a one-shot body is not retried,hedged or redirected
+     *
+     * @return true if the body can be sent more than once
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * write the body to a blocking stream through a buffer of the {@link BufferPool},
+     * file regions are sent by {@link java.nio.channels.FileChannel#transferTo}
+     *
+     * @param out stream to write,not closed
+     * @throws IOException a case of IO error
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(out);
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = pool.acquire(BUFFER_SIZE);
+        try (BodySource source = newSource()) {
+            while (true) {
+                if (source.isFileRegion()) {
+                    source.transferTo(target);
+                    continue;
+                }
+                buffer.clear();
+                if (source.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        out.flush();
+    }
+}
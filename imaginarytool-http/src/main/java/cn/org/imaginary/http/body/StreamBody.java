@@ -0,0 +1,142 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * a body read once from an {@link InputStream} or a {@link ReadableByteChannel},
+ * a known length is sent with Content-Length,an unknown one is sent chunked<br>
+ * the stream is closed when the body is sent,so the request can not be retried,hedged or redirected with its body,
+ * the nio engine reads it on its io thread,so it should not block for long<br>
+ * usage:
+ * <pre>
+ * HttpRequest.post(url).body(StreamBody.create(in, -1, "image/png")).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RequestBody
+ * @since 1.0
+ */
+public class StreamBody extends RequestBody {
+    private final ReadableByteChannel channel;
+    private final long length;
+    private final String contentType;
+    private final AtomicBoolean isOpened = new AtomicBoolean();
+
+    public StreamBody(ReadableByteChannel channel, long length, String contentType) {
+        this.channel = channel;
+        this.length = length < 0 ? -1 : length;
+        this.contentType = contentType;
+    }
+
+    /**
+     * create body of a stream
+     *
+     * @param in          stream,closed when the body is sent
+     * @param length      exact bytes to send,-1 if unknown
+     * @param contentType Content-Type header,null for the one of the request
+     * @return StreamBody
+     */
+    public static StreamBody create(InputStream in, long length, String contentType) {
+        return new StreamBody(Channels.newChannel(in), length, contentType);
+    }
+
+    /**
+     * create body of a channel
+     *
+     * @param channel     blocking channel,closed when the body is sent
+     * @param length      exact bytes to send,-1 if unknown
+     * @param contentType Content-Type header,null for the one of the request
+     * @return StreamBody
+     */
+    public static StreamBody create(ReadableByteChannel channel, long length, String contentType) {
+        return new StreamBody(channel, length, contentType);
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    /**
+     * the stream,only once
+     *
+     * @return {@link BodySource}
+     * @throws IOException it was opened before
+     */
+    @Override
+    public BodySource newSource() throws IOException {
+        if (!isOpened.compareAndSet(false, true)) {
+            throw new IOException("Stream body can be sent only once");
+        }
+        return new Source();
+    }
+
+    /**
+     * reads the channel,at most length bytes
+     */
+    private final class Source implements BodySource {
+        private long position;
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (length >= 0 && position >= length) {
+                return -1;
+            }
+            final int limit = dst.limit();
+            if (length >= 0) {
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), length - position));
+            }
+            try {
+                final int n = channel.read(dst);
+                if (n < 0 && length >= 0) {
+                    throw new EOFException(StrUtils.format("Stream ended after {} of {} bytes", position, length));
+                }
+                if (n > 0) {
+                    position += n;
+                }
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isFileRegion() {
+            return false;
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel target) {
+            return 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package cn.org.imaginary.http.breaker;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the circuit breaker of one host or key,it records the outcome of the last windowSize calls<br>
+ * CLOSED: calls pass,when at least minimumCalls are recorded and the failure rate or slow call rate
+ * reaches its threshold the breaker opens<br>
+ * OPEN: calls fail fast with {@link CircuitBreakerOpenException} without touching the network,
+ * after openDuration the next call moves it to half open<br>
+ * HALF_OPEN: permittedHalfOpenCalls trial calls pass and the others are rejected,
+ * when they are all recorded the breaker closes if their rates are below the thresholds and opens again otherwise
+ *
+ * @author Imaginary
+ * @see CircuitBreakerRegistry
+ * @since 1.0
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String key;
+    private final CircuitBreakerRegistry registry;
+    // outcomes of the last calls in a ring,guarded by this
+    private final byte[] outcomes;
+    private int next;
+    private int recorded;
+    private int failedCalls;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    // when the breaker opened,System.nanoTime
+    private long openedAt;
+    // trial calls let through and recorded in half open
+    private int halfOpenPermitted;
+    private int halfOpenRecorded;
+    private long rejectedCalls;
+
+    CircuitBreaker(String key, CircuitBreakerRegistry registry) {
+        this.key = key;
+        this.registry = registry;
+        this.outcomes = new byte[registry.getWindowSize()];
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * ask to make a call,a permitted call must be recorded by {@link #onSuccess(long)},{@link #onFailure(long)}
+     * or {@link #onIgnored()}
+     *
+     * @throws CircuitBreakerOpenException the breaker is open or its trial calls are taken
+     */
+    public void acquirePermission() {
+        State from = null;
+        final boolean isPermitted;
+        final State current;
+        long retryAfter = 0;
+        synchronized (this) {
+            if (State.OPEN == state
+                    && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt) >= registry.getOpenDuration()) {
+                from = transition(State.HALF_OPEN);
+            }
+            if (State.HALF_OPEN == state) {
+                isPermitted = halfOpenPermitted < permittedHalfOpenCalls();
+                if (isPermitted) {
+                    halfOpenPermitted++;
+                }
+            } else {
+                isPermitted = State.CLOSED == state;
+            }
+            current = state;
+            if (!isPermitted) {
+                rejectedCalls++;
+                if (State.OPEN == state) {
+                    retryAfter = registry.getOpenDuration() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt);
+                }
+            }
+        }
+        notifyTransition(from, State.HALF_OPEN);
+        if (isPermitted) {
+            return;
+        }
+        for (CircuitBreakerListener listener : listeners()) {
+            listener.callRejected(this);
+        }
+        throw new CircuitBreakerOpenException(key, current, Math.max(0, retryAfter));
+    }
+
+    /**
+     * record a call which succeeded
+     *
+     * @param duration milliseconds the call took
+     */
+    public void onSuccess(long duration) {
+        record(duration, false);
+    }
+
+    /**
+     * record a call which failed
+     *
+     * @param duration milliseconds the call took
+     */
+    public void onFailure(long duration) {
+        record(duration, true);
+    }
+
+    /**
+     * give back the permission of a call which is not counted,as an aborted one
+     */
+    public synchronized void onIgnored() {
+        if (State.HALF_OPEN == state && halfOpenPermitted > halfOpenRecorded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    private void record(long duration, boolean isFailure) {
+        final boolean isSlow = duration >= registry.getSlowCallDuration();
+        State from = null;
+        State to = null;
+        synchronized (this) {
+            if (State.OPEN == state) {
+                // a call permitted before the breaker opened
+                return;
+            }
+            add((byte) ((isFailure ? FAILED : 0) | (isSlow ? SLOW : 0)));
+            if (State.HALF_OPEN == state) {
+                halfOpenRecorded++;
+                if (halfOpenRecorded >= permittedHalfOpenCalls()) {
+                    to = isTripped(halfOpenRecorded) ? State.OPEN : State.CLOSED;
+                }
+            } else if (recorded >= minimumCalls() && isTripped(recorded)) {
+                to = State.OPEN;
+            }
+            if (null != to) {
+                from = transition(to);
+            }
+        }
+        for (CircuitBreakerListener listener : listeners()) {
+            listener.callRecorded(this, duration, isFailure, isSlow);
+        }
+        notifyTransition(from, to);
+    }
+
+    /**
+     * put an outcome in the ring,the oldest one drops out
+     */
+    private void add(byte outcome) {
+        if (recorded == outcomes.length) {
+            count(outcomes[next], -1);
+        } else {
+            recorded++;
+        }
+        outcomes[next] = outcome;
+        count(outcome, 1);
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void count(byte outcome, int delta) {
+        if (0 != (outcome & FAILED)) {
+            failedCalls += delta;
+        }
+        if (0 != (outcome & SLOW)) {
+            slowCalls += delta;
+        }
+    }
+
+    /**
+     * are the rates of the last calls at their thresholds
+     */
+    private boolean isTripped(int calls) {
+        final int failed;
+        final int slow;
+        if (calls == recorded) {
+            failed = failedCalls;
+            slow = slowCalls;
+        } else {
+            // the trial calls of half open are the last ones of the ring
+            int f = 0;
+            int s = 0;
+            for (int i = 1; i <= calls; i++) {
+                final byte outcome = outcomes[(next - i + outcomes.length) % outcomes.length];
+                f += outcome & FAILED;
+                s += (outcome & SLOW) >> 1;
+            }
+            failed = f;
+            slow = s;
+        }
+        return failed * 100f / calls >= registry.getFailureRateThreshold()
+                || slow * 100f / calls >= registry.getSlowCallRateThreshold();
+    }
+
+    /**
+     * move to a state,called with the lock held
+     *
+     * @return the state left,null if unchanged
+     */
+    private State transition(State to) {
+        final State from = state;
+        if (from == to) {
+            return null;
+        }
+        state = to;
+        halfOpenPermitted = 0;
+        halfOpenRecorded = 0;
+        if (State.OPEN == to) {
+            openedAt = System.nanoTime();
+        } else if (State.CLOSED == to) {
+            reset();
+        }
+        return from;
+    }
+
+    private void reset() {
+        next = 0;
+        recorded = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    /**
+     * settings of the registry,bounded by the window of this breaker
+     */
+    private int permittedHalfOpenCalls() {
+        return Math.min(registry.getPermittedHalfOpenCalls(), outcomes.length);
+    }
+
+    private int minimumCalls() {
+        return Math.min(registry.getMinimumCalls(), outcomes.length);
+    }
+
+    private void notifyTransition(State from, State to) {
+        if (null == from) {
+            return;
+        }
+        for (CircuitBreakerListener listener : listeners()) {
+            listener.stateChanged(this, from, to);
+        }
+    }
+
+    private List<CircuitBreakerListener> listeners() {
+        return registry.getListeners();
+    }
+
+    /**
+     * force a state,for example to open the breaker of a host known to be down
+     *
+     * @param to state
+     */
+    public void transitionTo(State to) {
+        final State from;
+        synchronized (this) {
+            from = transition(to);
+        }
+        notifyTransition(from, to);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * calls in the window
+     *
+     * @return calls recorded
+     */
+    public synchronized int getBufferedCalls() {
+        return recorded;
+    }
+
+    public synchronized int getFailedCalls() {
+        return failedCalls;
+    }
+
+    public synchronized int getSlowCalls() {
+        return slowCalls;
+    }
+
+    /**
+     * calls rejected since the breaker was created
+     *
+     * @return rejected calls
+     */
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    /**
+     * failure rate of the window
+     *
+     * @return percentage,-1 until minimumCalls are recorded
+     */
+    public synchronized float getFailureRate() {
+        return recorded < minimumCalls() ? -1 : failedCalls * 100f / recorded;
+    }
+
+    /**
+     * slow call rate of the window
+     *
+     * @return percentage,-1 until minimumCalls are recorded
+     */
+    public synchronized float getSlowCallRate() {
+        return recorded < minimumCalls() ? -1 : slowCalls * 100f / recorded;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return StrUtils.format("[{}: {}; calls: {}; failed: {}; slow: {}; rejected: {}]",
+                key, state, recorded, failedCalls, slowCalls, rejectedCalls);
+    }
+}
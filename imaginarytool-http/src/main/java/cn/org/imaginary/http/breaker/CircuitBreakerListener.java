@@ -0,0 +1,38 @@
+package cn.org.imaginary.http.breaker;
+
+/**
+ * observer of the circuit breakers of a {@link CircuitBreakerRegistry},called in the thread of the call,
+ * it must be fast and not throw
+ *
+ * @author Imaginary
+ * @see CircuitBreakerRegistry#addListener(CircuitBreakerListener)
+ * @since 1.0
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * the breaker moved to another state
+     *
+     * @param breaker breaker
+     * @param from    state left
+     * @param to      state entered
+     */
+    void stateChanged(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to);
+
+    /**
+     * a call was recorded in the window
+     *
+     * @param breaker   breaker
+     * @param duration  milliseconds the call took
+     * @param isFailure did it fail
+     * @param isSlow    did it take slowCallDuration or longer
+     */
+    void callRecorded(CircuitBreaker breaker, long duration, boolean isFailure, boolean isSlow);
+
+    /**
+     * a call was rejected without touching the network
+     *
+     * @param breaker breaker
+     */
+    void callRejected(CircuitBreaker breaker);
+}
@@ -0,0 +1,42 @@
+package cn.org.imaginary.http.breaker;
+
+import cn.org.imaginary.http.HttpException;
+
+/**
+ * a call rejected by an open circuit breaker,the request was not sent
+ *
+ * @author Imaginary
+ * @see CircuitBreaker#acquirePermission()
+ * @since 1.0
+ */
+public class CircuitBreakerOpenException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+    private final CircuitBreaker.State state;
+    private final long retryAfter;
+
+    public CircuitBreakerOpenException(String key, CircuitBreaker.State state, long retryAfter) {
+        super("Circuit breaker of {} is {},call rejected", key, state);
+        this.key = key;
+        this.state = state;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public CircuitBreaker.State getState() {
+        return state;
+    }
+
+    /**
+     * time until the breaker lets a trial call through
+     *
+     * @return milliseconds,0 if half open
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
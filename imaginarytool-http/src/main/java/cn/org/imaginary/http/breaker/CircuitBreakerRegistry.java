@@ -0,0 +1,250 @@
+package cn.org.imaginary.http.breaker;
+
+import cn.org.imaginary.http.HttpEngine;
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.HttpUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the circuit breakers of a client,one per host or per key given with the request,sharing their settings and listeners<br>
+ * an error or a 5xx response is a failure,a call taking slowCallDuration or longer is slow,
+ * an aborted call is not counted<br>
+ * usage:
+ * <pre>
+ * CircuitBreakerRegistry breakers = CircuitBreakerRegistry.create().setFailureRateThreshold(50).setOpenDuration(30000);
+ * HttpRequest.get(url).setCircuitBreaker(breakers).execute();
+ * HttpRequest.get(url).setCircuitBreaker(breakers, "user-service").execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see CircuitBreaker
+ * @since 1.0
+ */
+public class CircuitBreakerRegistry {
+    // default calls in the sliding window
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+    // default calls recorded before the rates are used
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    // default failure rate which opens a breaker,in percentage
+    public static final float DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    // default time a breaker stays open,in milliseconds
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile int windowSize = DEFAULT_WINDOW_SIZE;
+    private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+    private volatile float failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    // slow calls open a breaker only when every call is slow by default
+    private volatile float slowCallRateThreshold = 100;
+    private volatile long slowCallDuration = 10000;
+    private volatile long openDuration = DEFAULT_OPEN_DURATION;
+    private volatile int permittedHalfOpenCalls = 5;
+
+    /**
+     * create registry with default settings
+     *
+     * @return CircuitBreakerRegistry
+     */
+    public static CircuitBreakerRegistry create() {
+        return new CircuitBreakerRegistry();
+    }
+
+    /**
+     * set calls in the sliding window,breakers created before keep their window
+     *
+     * @param windowSize calls
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setWindowSize(int windowSize) {
+        if (windowSize > 0) {
+            this.windowSize = windowSize;
+            this.minimumCalls = Math.min(minimumCalls, windowSize);
+            this.permittedHalfOpenCalls = Math.min(permittedHalfOpenCalls, windowSize);
+        }
+        return this;
+    }
+
+    /**
+     * set calls recorded before the rates can open a breaker
+     *
+     * @param minimumCalls calls,at most windowSize
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setMinimumCalls(int minimumCalls) {
+        if (minimumCalls > 0) {
+            this.minimumCalls = Math.min(minimumCalls, windowSize);
+        }
+        return this;
+    }
+
+    /**
+     * set failure rate which opens a breaker
+     *
+     * @param failureRateThreshold percentage,in (0, 100]
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setFailureRateThreshold(float failureRateThreshold) {
+        if (failureRateThreshold > 0 && failureRateThreshold <= 100) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+        return this;
+    }
+
+    /**
+     * set slow call rate which opens a breaker and the duration of a slow call
+     *
+     * @param slowCallRateThreshold percentage,in (0, 100]
+     * @param slowCallDuration      milliseconds
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setSlowCallThreshold(float slowCallRateThreshold, long slowCallDuration) {
+        if (slowCallRateThreshold > 0 && slowCallRateThreshold <= 100 && slowCallDuration > 0) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDuration = slowCallDuration;
+        }
+        return this;
+    }
+
+    /**
+     * set time a breaker rejects calls before it lets trial calls through
+     *
+     * @param openDuration milliseconds
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setOpenDuration(long openDuration) {
+        if (openDuration > 0) {
+            this.openDuration = openDuration;
+        }
+        return this;
+    }
+
+    /**
+     * set trial calls of a half open breaker
+     *
+     * @param permittedHalfOpenCalls calls,at most windowSize
+     * @return CircuitBreakerRegistry
+     */
+    public CircuitBreakerRegistry setPermittedHalfOpenCalls(int permittedHalfOpenCalls) {
+        if (permittedHalfOpenCalls > 0) {
+            this.permittedHalfOpenCalls = Math.min(permittedHalfOpenCalls, windowSize);
+        }
+        return this;
+    }
+
+    public CircuitBreakerRegistry addListener(CircuitBreakerListener listener) {
+        if (null != listener) {
+            listeners.add(listener);
+        }
+        return this;
+    }
+
+    public CircuitBreakerRegistry removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * the breaker of a key,created on first use
+     *
+     * @param key host or user key
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker get(String key) {
+        CircuitBreaker breaker = breakers.get(key);
+        if (null == breaker) {
+            final CircuitBreaker created = new CircuitBreaker(key, this);
+            breaker = breakers.putIfAbsent(key, created);
+            if (null == breaker) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * the breakers created so far
+     *
+     * @return breakers
+     */
+    public List<CircuitBreaker> getBreakers() {
+        return new ArrayList<>(breakers.values());
+    }
+
+    /**
+     * run a request through the breaker of its key
+     *
+     * @param request   request
+     * @param key       key of the breaker,null for the host of the request
+     * @param transport sends the request
+     * @return {@link HttpResponse}
+     * @throws CircuitBreakerOpenException the breaker rejected the call
+     * @throws HttpException               a case of connection or IO error
+     */
+    public HttpResponse execute(HttpRequest request, String key, HttpEngine transport) {
+        final CircuitBreaker breaker = get(null == key ? HttpUtils.hostKey(request) : key);
+        breaker.acquirePermission();
+        final long start = System.nanoTime();
+        final HttpResponse response;
+        try {
+            response = transport.execute(request);
+        } catch (RuntimeException e) {
+            if (request.isAborted()) {
+                breaker.onIgnored();
+            } else {
+                breaker.onFailure(elapsed(start));
+            }
+            throw e;
+        }
+        if (response.getStatus() >= 500) {
+            breaker.onFailure(elapsed(start));
+        } else {
+            breaker.onSuccess(elapsed(start));
+        }
+        return response;
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    List<CircuitBreakerListener> getListeners() {
+        return listeners;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    public int getPermittedHalfOpenCalls() {
+        return permittedHalfOpenCalls;
+    }
+}
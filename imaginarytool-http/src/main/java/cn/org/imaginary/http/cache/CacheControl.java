@@ -0,0 +1,185 @@
+package cn.org.imaginary.http.cache;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.List;
+
+/**
+ * directives of a Cache-Control header,of a request or a response(RFC 7234 section 5.2)<br>
+ * seconds are -1 when the directive is absent
+ *
+ * @author Imaginary
+ * @see HttpCache
+ * @since 1.0
+ */
+public final class CacheControl {
+
+    private boolean isNoCache;
+    private boolean isNoStore;
+    private boolean isOnlyIfCached;
+    private boolean isMustRevalidate;
+    private boolean isPublic;
+    private boolean isPrivate;
+    private int maxAge = -1;
+    private int maxStale = -1;
+    private int minFresh = -1;
+    private int staleWhileRevalidate = -1;
+    private int staleIfError = -1;
+
+    private CacheControl() {
+    }
+
+    /**
+     * parse Cache-Control header values,a Pragma: no-cache counts as no-cache
+     *
+     * @param values Cache-Control values,may be null
+     * @param pragma Pragma value,may be null
+     * @return CacheControl
+     */
+    public static CacheControl parse(List<String> values, String pragma) {
+        final CacheControl control = new CacheControl();
+        if (null != values) {
+            for (String value : values) {
+                control.parse(value);
+            }
+        }
+        if (null != pragma && pragma.toLowerCase().contains("no-cache")) {
+            control.isNoCache = true;
+        }
+        return control;
+    }
+
+    private void parse(String value) {
+        if (StrUtils.isBlank(value)) {
+            return;
+        }
+        int pos = 0;
+        final int length = value.length();
+        while (pos < length) {
+            int end = pos;
+            while (end < length && ',' != value.charAt(end) && '=' != value.charAt(end)) {
+                end++;
+            }
+            final String name = value.substring(pos, end).trim().toLowerCase();
+            String argument = null;
+            if (end < length && '=' == value.charAt(end)) {
+                pos = end + 1;
+                while (pos < length && ' ' == value.charAt(pos)) {
+                    pos++;
+                }
+                if (pos < length && '"' == value.charAt(pos)) {
+                    end = value.indexOf('"', pos + 1);
+                    end = end < 0 ? length : end;
+                    argument = value.substring(pos + 1, end);
+                    end = value.indexOf(',', end);
+                    end = end < 0 ? length : end;
+                } else {
+                    end = value.indexOf(',', pos);
+                    end = end < 0 ? length : end;
+                    argument = value.substring(pos, end).trim();
+                }
+            }
+            pos = end + 1;
+            directive(name, argument);
+        }
+    }
+
+    private void directive(String name, String argument) {
+        switch (name) {
+            case "no-cache":
+                // no-cache="field" only restricts the named fields,treat it as the whole response
+                isNoCache = true;
+                break;
+            case "no-store":
+                isNoStore = true;
+                break;
+            case "only-if-cached":
+                isOnlyIfCached = true;
+                break;
+            case "must-revalidate":
+            case "proxy-revalidate":
+                isMustRevalidate = true;
+                break;
+            case "public":
+                isPublic = true;
+                break;
+            case "private":
+                isPrivate = true;
+                break;
+            case "max-age":
+                maxAge = seconds(argument, -1);
+                break;
+            case "max-stale":
+                // max-stale without a value accepts any staleness
+                maxStale = seconds(argument, Integer.MAX_VALUE);
+                break;
+            case "min-fresh":
+                minFresh = seconds(argument, -1);
+                break;
+            case "stale-while-revalidate":
+                staleWhileRevalidate = seconds(argument, -1);
+                break;
+            case "stale-if-error":
+                staleIfError = seconds(argument, -1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int seconds(String argument, int defaultValue) {
+        if (StrUtils.isBlank(argument)) {
+            return defaultValue;
+        }
+        try {
+            final long seconds = Long.parseLong(argument.trim());
+            return seconds < 0 ? defaultValue : (int) Math.min(seconds, Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean isNoCache() {
+        return isNoCache;
+    }
+
+    public boolean isNoStore() {
+        return isNoStore;
+    }
+
+    public boolean isOnlyIfCached() {
+        return isOnlyIfCached;
+    }
+
+    public boolean isMustRevalidate() {
+        return isMustRevalidate;
+    }
+
+    public boolean isPublic() {
+        return isPublic;
+    }
+
+    public boolean isPrivate() {
+        return isPrivate;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public int getMaxStale() {
+        return maxStale;
+    }
+
+    public int getMinFresh() {
+        return minFresh;
+    }
+
+    public int getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public int getStaleIfError() {
+        return staleIfError;
+    }
+}
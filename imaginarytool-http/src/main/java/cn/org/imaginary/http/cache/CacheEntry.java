@@ -0,0 +1,327 @@
+package cn.org.imaginary.http.cache;
+
+import cn.org.imaginary.http.Header;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * a stored response with the times it was requested and received,immutable
+ *
+ * @author Imaginary
+ * @see HttpCache
+ * @since 1.0
+ */
+final class CacheEntry {
+    // version of the disk format
+    private static final int FORMAT_VERSION = 1;
+    // RFC 1123,RFC 850 and asctime formats of http dates
+    private static final String[] DATE_PATTERNS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", "EEEE, dd-MMM-yy HH:mm:ss zzz", "EEE MMM d HH:mm:ss yyyy"};
+    // headers of a 304 which do not replace the stored ones
+    private static final Set<String> NOT_UPDATED = new HashSet<>(Arrays.asList(
+            "content-length", "content-encoding", "transfer-encoding", "content-range"));
+
+    final String key;
+    final int status;
+    final Map<String, List<String>> headers;
+    final byte[] body;
+    // System.currentTimeMillis() when the request was sent and the response was received
+    final long requestTime;
+    final long responseTime;
+    // request header values selected by Vary,names in lower case
+    final Map<String, String> varyHeaders;
+    private volatile CacheControl cacheControl;
+
+    CacheEntry(String key, int status, Map<String, List<String>> headers, byte[] body,
+               long requestTime, long responseTime, Map<String, String> varyHeaders) {
+        this.key = key;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyHeaders = varyHeaders;
+    }
+
+    /**
+     * build entry of a network response
+     */
+    static CacheEntry of(String key, HttpRequest request, HttpResponse response, long requestTime, long responseTime) {
+        final Map<String, List<String>> headers = copy(response.getHeaders());
+        return new CacheEntry(key, response.getStatus(), headers, response.bodyBytes(),
+                requestTime, responseTime, varyHeaders(headers, request.getHeaders()));
+    }
+
+    CacheControl cacheControl() {
+        if (null == cacheControl) {
+            cacheControl = CacheControl.parse(all(headers, Header.CACHE_CONTROL.toString()), first(headers, Header.PRAGMA.toString()));
+        }
+        return cacheControl;
+    }
+
+    /**
+     * freshness lifetime in millis: max-age,Expires minus Date,or a tenth of the time since Last-Modified
+     */
+    long freshnessLifetime() {
+        final CacheControl control = cacheControl();
+        if (control.getMaxAge() >= 0) {
+            return control.getMaxAge() * 1000L;
+        }
+        final long date = date();
+        final String expires = first(headers, Header.EXPIRES.toString());
+        if (null != expires) {
+            // an invalid Expires,such as 0,means already expired
+            final long expiresTime = parseDate(expires);
+            return expiresTime > date ? expiresTime - date : 0;
+        }
+        final long lastModified = parseDate(first(headers, Header.LAST_MODIFIED.toString()));
+        if (lastModified > 0 && lastModified < date) {
+            return (date - lastModified) / 10;
+        }
+        return 0;
+    }
+
+    /**
+     * current age in millis(RFC 7234 section 4.2.3)
+     *
+     * @param now System.currentTimeMillis()
+     */
+    long age(long now) {
+        final long apparentAge = Math.max(0, responseTime - date());
+        long ageValue = 0;
+        final String age = first(headers, Header.AGE.toString());
+        if (null != age) {
+            try {
+                ageValue = Math.max(0, Long.parseLong(age.trim())) * 1000L;
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        final long correctedAge = ageValue + (responseTime - requestTime);
+        return Math.max(apparentAge, correctedAge) + Math.max(0, now - responseTime);
+    }
+
+    private long date() {
+        final long date = parseDate(first(headers, Header.DATE.toString()));
+        return date > 0 ? date : responseTime;
+    }
+
+    String etag() {
+        return first(headers, Header.ETAG.toString());
+    }
+
+    String lastModified() {
+        return first(headers, Header.LAST_MODIFIED.toString());
+    }
+
+    boolean hasValidator() {
+        return null != etag() || null != lastModified();
+    }
+
+    /**
+     * can the entry answer the request,the request headers selected by Vary must be the same
+     */
+    boolean matches(HttpRequest request) {
+        for (Map.Entry<String, String> vary : varyHeaders.entrySet()) {
+            if (!StrUtils.nullToEmpty(vary.getValue()).equals(StrUtils.nullToEmpty(joined(request.getHeaders(), vary.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * freshen the entry with the headers of a 304
+     */
+    CacheEntry update(HttpResponse notModified, long requestTime, long responseTime) {
+        final Map<String, List<String>> updated = copy(headers);
+        for (Map.Entry<String, List<String>> entry : notModified.getHeaders().entrySet()) {
+            if (NOT_UPDATED.contains(entry.getKey().toLowerCase())) {
+                continue;
+            }
+            remove(updated, entry.getKey());
+            updated.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return new CacheEntry(key, status, updated, body, requestTime, responseTime, varyHeaders);
+    }
+
+    /**
+     * build the response to serve,with its Age and a Warning when stale
+     */
+    HttpResponse toResponse(long now, boolean isStale, String charset) {
+        final Map<String, List<String>> served = copy(headers);
+        remove(served, Header.AGE.toString());
+        served.put(Header.AGE.toString(), Collections.singletonList(String.valueOf(age(now) / 1000)));
+        if (isStale) {
+            served.put(Header.WARNING.toString(), Collections.singletonList("110 - \"Response is Stale\""));
+        }
+        return new HttpResponse(status, served, body, charset);
+    }
+
+    /**
+     * approximate bytes held in memory
+     */
+    long size() {
+        long size = body.length + key.length() + 64;
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            size += entry.getKey().length();
+            for (String value : entry.getValue()) {
+                size += value.length();
+            }
+        }
+        return size;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeInt(status);
+        out.writeLong(requestTime);
+        out.writeLong(responseTime);
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                out.writeUTF(value);
+            }
+        }
+        out.writeInt(varyHeaders.size());
+        for (Map.Entry<String, String> entry : varyHeaders.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(StrUtils.nullToEmpty(entry.getValue()));
+        }
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    static CacheEntry readFrom(DataInputStream in) throws IOException {
+        if (FORMAT_VERSION != in.readInt()) {
+            throw new IOException("Unknown cache entry format");
+        }
+        final String key = in.readUTF();
+        final int status = in.readInt();
+        final long requestTime = in.readLong();
+        final long responseTime = in.readLong();
+        final int headerCount = in.readInt();
+        final Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            final String name = in.readUTF();
+            final int valueCount = in.readInt();
+            final List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(in.readUTF());
+            }
+            headers.put(name, values);
+        }
+        final int varyCount = in.readInt();
+        final Map<String, String> varyHeaders = new HashMap<>();
+        for (int i = 0; i < varyCount; i++) {
+            varyHeaders.put(in.readUTF(), in.readUTF());
+        }
+        final byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CacheEntry(key, status, headers, body, requestTime, responseTime, varyHeaders);
+    }
+
+    /**
+     * the request header values named by Vary of the response
+     */
+    static Map<String, String> varyHeaders(Map<String, List<String>> responseHeaders, Map<String, List<String>> requestHeaders) {
+        final Map<String, String> vary = new HashMap<>();
+        final List<String> values = all(responseHeaders, Header.VARY.toString());
+        if (null == values) {
+            return vary;
+        }
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                if (!StrUtils.isBlank(name)) {
+                    final String lowerName = name.trim().toLowerCase();
+                    vary.put(lowerName, joined(requestHeaders, lowerName));
+                }
+            }
+        }
+        return vary;
+    }
+
+    /**
+     * first value of a header,names are compared ignoring case
+     */
+    static String first(Map<String, List<String>> headers, String name) {
+        final List<String> values = all(headers, name);
+        return null == values || values.isEmpty() ? null : values.get(0);
+    }
+
+    static List<String> all(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (null != entry.getKey() && entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String joined(Map<String, List<String>> headers, String name) {
+        final List<String> values = all(headers, name);
+        if (null == values) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static void remove(Map<String, List<String>> headers, String name) {
+        final Iterator<String> it = headers.keySet().iterator();
+        while (it.hasNext()) {
+            final String key = it.next();
+            if (null != key && key.equalsIgnoreCase(name)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (null != entry.getKey()) {
+                copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * parse a http date
+     *
+     * @return millis,0 when absent or invalid
+     */
+    static long parseDate(String value) {
+        if (StrUtils.isBlank(value)) {
+            return 0;
+        }
+        for (String pattern : DATE_PATTERNS) {
+            final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(value.trim()).getTime();
+            } catch (ParseException e) {
+                // try next
+            }
+        }
+        return 0;
+    }
+}
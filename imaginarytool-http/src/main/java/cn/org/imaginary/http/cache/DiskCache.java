@@ -0,0 +1,153 @@
+package cn.org.imaginary.http.cache;
+
+import cn.org.imaginary.util.CharsetUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * the disk tier of {@link HttpCache},one file per entry named by the md5 of its key,
+ * least recently used files are deleted beyond the max size
+ *
+ * @author Imaginary
+ * @see HttpCache
+ * @since 1.0
+ */
+final class DiskCache {
+    private final static Logger logger = LoggerFactory.getLogger(DiskCache.class);
+
+    private static final String SUFFIX = ".entry";
+
+    private final File directory;
+    private final long maxSize;
+    // file name to file size,in access order,loaded on first use
+    private LinkedHashMap<String, Long> index;
+    private long size;
+
+    DiskCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    synchronized CacheEntry get(String key) {
+        final String name = fileName(key);
+        if (null == index().get(name)) {
+            return null;
+        }
+        final File file = new File(directory, name);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final CacheEntry entry = CacheEntry.readFrom(in);
+            // an md5 collision is not this key
+            return key.equals(entry.key) ? entry : null;
+        } catch (IOException e) {
+            logger.debug("read cache entry {} error", file, e);
+            delete(name);
+            return null;
+        }
+    }
+
+    synchronized void put(CacheEntry entry) {
+        final String name = fileName(entry.key);
+        index();
+        final File file = new File(directory, name);
+        final File temp = new File(directory, name + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                entry.writeTo(out);
+            }
+            // readers never see a half written entry
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.debug("write cache entry {} error", file, e);
+            temp.delete();
+            delete(name);
+            return;
+        }
+        final Long old = index.put(name, file.length());
+        size += file.length() - (null == old ? 0 : old);
+        trim();
+    }
+
+    synchronized void remove(String key) {
+        index();
+        delete(fileName(key));
+    }
+
+    synchronized void clear() {
+        for (String name : new ArrayList<>(index().keySet())) {
+            delete(name);
+        }
+    }
+
+    synchronized long size() {
+        index();
+        return size;
+    }
+
+    private void delete(String name) {
+        final Long old = index.remove(name);
+        if (null != old) {
+            size -= old;
+        }
+        new File(directory, name).delete();
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            final Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * list the directory once,oldest files first
+     */
+    private LinkedHashMap<String, Long> index() {
+        if (null != index) {
+            return index;
+        }
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("cache directory {} can not be created", directory);
+        }
+        final File[] files = directory.listFiles();
+        if (null != files) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX)) {
+                    index.put(file.getName(), file.length());
+                    size += file.length();
+                }
+            }
+        }
+        trim();
+        return index;
+    }
+
+    private static String fileName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(CharsetUtils.CHARSET_UTF_8));
+            final StringBuilder sb = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
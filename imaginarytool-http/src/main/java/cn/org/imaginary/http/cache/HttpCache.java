@@ -0,0 +1,407 @@
+package cn.org.imaginary.http.cache;
+
+import cn.org.imaginary.http.*;
+import cn.org.imaginary.util.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a private client cache of GET responses as in RFC 7234<br>
+ * fresh responses are served without the network,stale ones with an ETag or Last-Modified are
+ * revalidated by a conditional request and served from cache when the server answers 304,
+ * a response with stale-while-revalidate is served stale while it is revalidated in background<br>
+ * entries live in memory,bounded by bytes,and optionally on disk
+ * <pre>
+ * HttpCache cache = HttpCache.create().setMaxSize(20 * 1024 * 1024).setDirectory(new File("cache"), 100 * 1024 * 1024);
+ * HttpResponse response = HttpRequest.get(url).setCache(cache).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see HttpRequest#setCache(HttpCache)
+ * @since 1.0
+ */
+public class HttpCache {
+    private final static Logger logger = LoggerFactory.getLogger(HttpCache.class);
+
+    // default max bytes of the memory tier
+    public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    // statuses cacheable by default,RFC 7231 section 6.1
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(
+            HttpStatus.HTTP_OK, HttpStatus.HTTP_NOT_AUTHORITATIVE, HttpStatus.HTTP_NO_CONTENT,
+            HttpStatus.HTTP_MULT_CHOICE, HttpStatus.HTTP_MOVED_PERM, HttpStatus.HTTP_NOT_FOUND,
+            HttpStatus.HTTP_BAD_METHOD, HttpStatus.HTTP_GONE, HttpStatus.HTTP_REQ_TOO_LONG, HttpStatus.HTTP_NOT_IMPLEMENTED));
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService REVALIDATOR = new ThreadPoolExecutor(0, 4, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, StrUtils.format("imaginary-cache-{}", THREAD_ID.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // memory tier in access order
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private volatile DiskCache disk;
+    // keys being revalidated in background
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong conditionalHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong backgroundRevalidations = new AtomicLong();
+
+    /**
+     * create cache in memory
+     *
+     * @return HttpCache
+     */
+    public static HttpCache create() {
+        return new HttpCache();
+    }
+
+    /**
+     * set max bytes of the memory tier,least recently used entries are evicted beyond it
+     *
+     * @param maxSize max bytes
+     * @return HttpCache
+     */
+    public synchronized HttpCache setMaxSize(long maxSize) {
+        if (maxSize > 0) {
+            this.maxSize = maxSize;
+            trim();
+        }
+        return this;
+    }
+
+    /**
+     * keep entries on disk too,they survive eviction from memory and restarts
+     *
+     * @param directory   cache directory
+     * @param maxDiskSize max bytes on disk
+     * @return HttpCache
+     */
+    public HttpCache setDirectory(File directory, long maxDiskSize) {
+        this.disk = null == directory ? null : new DiskCache(directory, maxDiskSize);
+        return this;
+    }
+
+    /**
+     * execute a request through the cache
+     *
+     * @param request request
+     * @param network transport which sends the request
+     * @return {@link HttpResponse} from cache or network
+     */
+    public HttpResponse execute(HttpRequest request, HttpEngine network) {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            final HttpResponse response = network.execute(request);
+            if (!HttpMethod.HEAD.equals(request.getMethod()) && !HttpMethod.OPTIONS.equals(request.getMethod())
+                    && !HttpMethod.TRACE.equals(request.getMethod()) && response.getStatus() < HttpStatus.HTTP_BAD_REQUEST) {
+                // an unsafe method changed the resource
+                remove(request.getRequestUrl());
+            }
+            return response;
+        }
+        final Map<String, List<String>> requestHeaders = request.getHeaders();
+        final CacheControl requestControl = CacheControl.parse(CacheEntry.all(requestHeaders, Header.CACHE_CONTROL.toString()),
+                CacheEntry.first(requestHeaders, Header.PRAGMA.toString()));
+        if (requestControl.isNoStore() || null != CacheEntry.first(requestHeaders, Header.IF_NONE_MATCH.toString())
+                || null != CacheEntry.first(requestHeaders, Header.IF_MODIFIED_SINCE.toString())) {
+            // the caller validates on its own
+            misses.incrementAndGet();
+            return network.execute(request);
+        }
+        final String key = request.getRequestUrl();
+        CacheEntry entry = get(key);
+        if (null != entry && !entry.matches(request)) {
+            entry = null;
+        }
+        final long now = System.currentTimeMillis();
+        if (null != entry) {
+            final CacheControl responseControl = entry.cacheControl();
+            final long age = entry.age(now);
+            long freshness = entry.freshnessLifetime();
+            if (requestControl.getMaxAge() >= 0) {
+                freshness = Math.min(freshness, requestControl.getMaxAge() * 1000L);
+            }
+            final long minFresh = requestControl.getMinFresh() >= 0 ? requestControl.getMinFresh() * 1000L : 0;
+            final long maxStale = !responseControl.isMustRevalidate() && requestControl.getMaxStale() >= 0
+                    ? requestControl.getMaxStale() * 1000L : 0;
+            if (!requestControl.isNoCache() && !responseControl.isNoCache()) {
+                if (age + minFresh < freshness + maxStale) {
+                    hits.incrementAndGet();
+                    return entry.toResponse(now, age >= freshness, request.getCharset());
+                }
+                if (!responseControl.isMustRevalidate() && responseControl.getStaleWhileRevalidate() > 0
+                        && age < freshness + responseControl.getStaleWhileRevalidate() * 1000L && entry.hasValidator()) {
+                    hits.incrementAndGet();
+                    revalidateInBackground(request, key, entry);
+                    return entry.toResponse(now, true, request.getCharset());
+                }
+            }
+        }
+        if (requestControl.isOnlyIfCached()) {
+            misses.incrementAndGet();
+            return new HttpResponse(HttpStatus.HTTP_GATEWAY_TIMEOUT, null, null, request.getCharset());
+        }
+        return fetch(request, network, key, entry);
+    }
+
+    /**
+     * send the request,conditional when there is an entry with a validator
+     */
+    private HttpResponse fetch(HttpRequest request, HttpEngine network, String key, CacheEntry entry) {
+        final boolean isConditional = null != entry && entry.hasValidator();
+        if (isConditional) {
+            if (null != entry.etag()) {
+                request.header(Header.IF_NONE_MATCH, entry.etag());
+            }
+            if (null != entry.lastModified()) {
+                request.header(Header.IF_MODIFIED_SINCE, entry.lastModified());
+            }
+        }
+        final long requestTime = System.currentTimeMillis();
+        final HttpResponse response;
+        try {
+            response = network.execute(request);
+        } catch (HttpException e) {
+            if (null != entry && isStaleIfError(entry, requestTime)) {
+                hits.incrementAndGet();
+                return entry.toResponse(requestTime, true, request.getCharset());
+            }
+            throw e;
+        } finally {
+            if (isConditional) {
+                request.removeHeader(Header.IF_NONE_MATCH);
+                request.removeHeader(Header.IF_MODIFIED_SINCE);
+            }
+        }
+        final long responseTime = System.currentTimeMillis();
+        if (null != entry && HttpStatus.HTTP_NOT_MODIFIED == response.getStatus()) {
+            conditionalHits.incrementAndGet();
+            final CacheEntry updated = entry.update(response, requestTime, responseTime);
+            put(updated);
+            return updated.toResponse(responseTime, false, request.getCharset());
+        }
+        if (null != entry && response.getStatus() >= HttpStatus.HTTP_INTERNAL_ERROR && isStaleIfError(entry, responseTime)) {
+            hits.incrementAndGet();
+            return entry.toResponse(responseTime, true, request.getCharset());
+        }
+        misses.incrementAndGet();
+        if (isCacheable(request, response)) {
+            put(CacheEntry.of(key, request, response, requestTime, responseTime));
+        } else if (null != entry) {
+            remove(key);
+        }
+        return response;
+    }
+
+    /**
+     * revalidate a copy of the request,the caller gets the stale response at once
+     */
+    private void revalidateInBackground(HttpRequest request, final String key, final CacheEntry entry) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        final HttpRequest copy = request.copy().setCache(null);
+        try {
+            REVALIDATOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    backgroundRevalidations.incrementAndGet();
+                    try {
+                        fetch(copy, new HttpEngine() {
+                            @Override
+                            public HttpResponse execute(HttpRequest request) {
+                                return request.execute();
+                            }
+                        }, key, entry);
+                    } catch (Exception e) {
+                        logger.debug("revalidate {} error", key, e);
+                    } finally {
+                        revalidating.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(key);
+        }
+    }
+
+    private static boolean isStaleIfError(CacheEntry entry, long now) {
+        final int staleIfError = entry.cacheControl().getStaleIfError();
+        return staleIfError > 0 && !entry.cacheControl().isMustRevalidate()
+                && entry.age(now) < entry.freshnessLifetime() + staleIfError * 1000L;
+    }
+
+    private static boolean isCacheable(HttpRequest request, HttpResponse response) {
+        if (!CACHEABLE_STATUSES.contains(response.getStatus())) {
+            return false;
+        }
+        final Map<String, List<String>> headers = response.getHeaders();
+        final CacheControl control = CacheControl.parse(CacheEntry.all(headers, Header.CACHE_CONTROL.toString()), null);
+        if (control.isNoStore()) {
+            return false;
+        }
+        final String vary = CacheEntry.first(headers, Header.VARY.toString());
+        if (null != vary && vary.contains("*")) {
+            return false;
+        }
+        // without freshness or a validator the entry could never be used
+        return control.getMaxAge() >= 0 || control.isPublic() || control.isNoCache()
+                || null != CacheEntry.first(headers, Header.EXPIRES.toString())
+                || null != CacheEntry.first(headers, Header.ETAG.toString())
+                || null != CacheEntry.first(headers, Header.LAST_MODIFIED.toString());
+    }
+
+    private CacheEntry get(String key) {
+        synchronized (this) {
+            final CacheEntry entry = entries.get(key);
+            if (null != entry) {
+                return entry;
+            }
+        }
+        final DiskCache diskCache = disk;
+        if (null == diskCache) {
+            return null;
+        }
+        final CacheEntry entry = diskCache.get(key);
+        if (null != entry) {
+            putInMemory(entry);
+        }
+        return entry;
+    }
+
+    private void put(CacheEntry entry) {
+        putInMemory(entry);
+        final DiskCache diskCache = disk;
+        if (null != diskCache) {
+            diskCache.put(entry);
+        }
+    }
+
+    private synchronized void putInMemory(CacheEntry entry) {
+        final CacheEntry old = entries.remove(entry.key);
+        if (null != old) {
+            size -= old.size();
+        }
+        if (entry.size() > maxSize) {
+            return;
+        }
+        entries.put(entry.key, entry);
+        size += entry.size();
+        trim();
+    }
+
+    private void trim() {
+        final Iterator<CacheEntry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * drop the entry of an url
+     *
+     * @param url request url
+     */
+    public void remove(String url) {
+        synchronized (this) {
+            final CacheEntry old = entries.remove(url);
+            if (null != old) {
+                size -= old.size();
+            }
+        }
+        final DiskCache diskCache = disk;
+        if (null != diskCache) {
+            diskCache.remove(url);
+        }
+    }
+
+    /**
+     * drop every entry in memory and on disk and reset counters
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            size = 0;
+        }
+        final DiskCache diskCache = disk;
+        if (null != diskCache) {
+            diskCache.clear();
+        }
+        hits.set(0);
+        conditionalHits.set(0);
+        misses.set(0);
+        backgroundRevalidations.set(0);
+    }
+
+    /**
+     * bytes held in memory
+     *
+     * @return size
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * bytes held on disk
+     *
+     * @return size,0 without disk tier
+     */
+    public long diskSize() {
+        final DiskCache diskCache = disk;
+        return null == diskCache ? 0 : diskCache.size();
+    }
+
+    /**
+     * responses served from cache without the network,stale ones included
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * responses served from cache after the server answered 304
+     *
+     * @return conditional hits
+     */
+    public long getConditionalHits() {
+        return conditionalHits.get();
+    }
+
+    /**
+     * responses downloaded in full
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBackgroundRevalidations() {
+        return backgroundRevalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[size: {}; diskSize: {}; hits: {}; conditionalHits: {}; misses: {}; backgroundRevalidations: {}]",
+                size(), diskSize(), getHits(), getConditionalHits(), getMisses(), getBackgroundRevalidations());
+    }
+}
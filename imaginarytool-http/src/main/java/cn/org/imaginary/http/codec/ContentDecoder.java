@@ -0,0 +1,73 @@
+package cn.org.imaginary.http.codec;
+
+import cn.org.imaginary.http.HttpUtils;
+import cn.org.imaginary.http.pool.BufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * decode a response body by its Content-Encoding,gzip and deflate are supported,
+ * a body of any other or several encodings is left as it is
+ *
+ * @author Imaginary
+ * @see InflatingInputStream
+ * @since 1.0
+ */
+public final class ContentDecoder {
+
+    private ContentDecoder() {
+    }
+
+    /**
+     * can a body of the encoding be decoded
+     *
+     * @param encoding value of Content-Encoding,may be null
+     * @return true for gzip,x-gzip and deflate
+     */
+    public static boolean isSupported(String encoding) {
+        return isGzip(encoding) || isDeflate(encoding);
+    }
+
+    private static boolean isGzip(String encoding) {
+        return null != encoding && ("gzip".equalsIgnoreCase(encoding.trim()) || "x-gzip".equalsIgnoreCase(encoding.trim()));
+    }
+
+    private static boolean isDeflate(String encoding) {
+        return null != encoding && "deflate".equalsIgnoreCase(encoding.trim());
+    }
+
+    /**
+     * a stream which decodes the body while it is read
+     *
+     * @param in       encoded body
+     * @param encoding value of Content-Encoding
+     * @param pool     pool of Inflaters and buffers
+     * @return decoding stream,the body itself if the encoding is not supported
+     */
+    public static InputStream decode(InputStream in, String encoding, InflaterPool pool) {
+        if (null == in || !isSupported(encoding)) {
+            return in;
+        }
+        return new InflatingInputStream(in, isGzip(encoding), pool);
+    }
+
+    /**
+     * decode a body read to the end
+     *
+     * @param body     encoded body
+     * @param encoding value of Content-Encoding
+     * @param pool     pool of Inflaters and buffers
+     * @return decoded body,the body itself if the encoding is not supported
+     * @throws IOException if the body is not of the encoding or is cut short
+     */
+    public static byte[] decode(byte[] body, String encoding, InflaterPool pool) throws IOException {
+        if (null == body || !isSupported(encoding)) {
+            return body;
+        }
+        try (InputStream in = decode(new ByteArrayInputStream(body), encoding, pool)) {
+            return HttpUtils.readBody(in, -1, BufferPool.getDefault());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package cn.org.imaginary.http.codec;
+
+import cn.org.imaginary.http.pool.BufferPool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * a bounded pool of {@link Inflater},an Inflater holds native memory until it is ended,
+ * so decoding a response takes one from the pool and gives it back reset instead of creating one each time<br>
+ * the pool keeps at most maxIdle of each kind,more given back are ended,
+ * the input buffers come from the {@link BufferPool}
+ *
+ * @author Imaginary
+ * @see InflatingInputStream
+ * @since 1.0
+ */
+public class InflaterPool {
+    public static final int DEFAULT_MAX_IDLE = 32;
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private static volatile InflaterPool defaultPool;
+
+    private final int maxIdle;
+    // raw deflate for gzip and servers which send deflate without the zlib wrapper
+    private final Queue<Inflater> raw = new ConcurrentLinkedQueue<>();
+    // deflate in the zlib wrapper
+    private final Queue<Inflater> zlib = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleRaw = new AtomicInteger();
+    private final AtomicInteger idleZlib = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+
+    public InflaterPool(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+    }
+
+    /**
+     * create pool
+     *
+     * @param maxIdle max Inflaters of each kind kept
+     * @return InflaterPool
+     */
+    public static InflaterPool create(int maxIdle) {
+        return new InflaterPool(maxIdle);
+    }
+
+    /**
+     * get the shared pool responses are decoded with
+     *
+     * @return InflaterPool
+     */
+    public static InflaterPool getDefault() {
+        if (null == defaultPool) {
+            synchronized (InflaterPool.class) {
+                if (null == defaultPool) {
+                    defaultPool = new InflaterPool(DEFAULT_MAX_IDLE);
+                }
+            }
+        }
+        return defaultPool;
+    }
+
+    /**
+     * take an Inflater
+     *
+     * @param nowrap true for raw deflate as in gzip,false for the zlib wrapper
+     * @return Inflater ready to use
+     */
+    public Inflater acquire(boolean nowrap) {
+        final Inflater inflater = (nowrap ? raw : zlib).poll();
+        if (null != inflater) {
+            (nowrap ? idleRaw : idleZlib).decrementAndGet();
+            return inflater;
+        }
+        created.incrementAndGet();
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * give back an Inflater taken by {@link #acquire(boolean)},it must not be used afterwards
+     *
+     * @param inflater Inflater
+     * @param nowrap   the kind it was taken as
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        final AtomicInteger idle = nowrap ? idleRaw : idleZlib;
+        if (idle.incrementAndGet() > maxIdle) {
+            idle.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        (nowrap ? raw : zlib).offer(inflater);
+    }
+
+    /**
+     * take an input buffer of {@link #BUFFER_SIZE}
+     *
+     * @return buffer
+     */
+    public byte[] acquireBuffer() {
+        return BufferPool.getDefault().acquireBytes(BUFFER_SIZE);
+    }
+
+    /**
+     * give back a buffer taken by {@link #acquireBuffer()}
+     *
+     * @param buffer buffer
+     */
+    public void releaseBuffer(byte[] buffer) {
+        BufferPool.getDefault().release(buffer);
+    }
+
+    /**
+     * Inflaters created because none was idle
+     *
+     * @return count
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * Inflaters idle in the pool
+     *
+     * @return count
+     */
+    public int getIdle() {
+        return idleRaw.get() + idleZlib.get();
+    }
+
+    /**
+     * end the idle Inflaters
+     */
+    public void clear() {
+        Inflater inflater;
+        while (null != (inflater = raw.poll())) {
+            idleRaw.decrementAndGet();
+            inflater.end();
+        }
+        while (null != (inflater = zlib.poll())) {
+            idleZlib.decrementAndGet();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package cn.org.imaginary.http.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * a stream which inflates a gzip or deflate body while it is read,
+ * the Inflater and the input buffer are taken from an {@link InflaterPool} on the first read
+ * and given back once the body is read to the end or the stream is closed<br>
+ * gzip members are checked against their crc and size,members one after another are read as one body,
+ * deflate is read in the zlib wrapper of rfc 1950 or raw as some servers send it<br>
+ * an empty body,as of a HEAD or 304 response,reads as empty
+ *
+ * @author Imaginary
+ * @see ContentDecoder
+ * @since 1.0
+ */
+public class InflatingInputStream extends InputStream {
+    private static final int GZIP_MAGIC_1 = 0x1F;
+    private static final int GZIP_MAGIC_2 = 0x8B;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream in;
+    private final boolean isGzip;
+    private final InflaterPool pool;
+    // taken on the first read,null once given back
+    private Inflater inflater;
+    private boolean nowrap;
+    private byte[] buffer;
+    // bytes of buffer not given to the inflater yet
+    private int pos;
+    private int limit;
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+    private boolean isStarted;
+    private boolean isEof;
+    private boolean isClosed;
+    // the error which broke the body,read again it is thrown again
+    private IOException failure;
+
+    /**
+     * @param in     the encoded body
+     * @param isGzip gzip,otherwise deflate
+     * @param pool   pool of Inflaters and buffers
+     */
+    public InflatingInputStream(InputStream in, boolean isGzip, InflaterPool pool) {
+        this.in = in;
+        this.isGzip = isGzip;
+        this.pool = pool;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return -1 == read(single, 0, 1) ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (0 == len) {
+            return 0;
+        }
+        if (null != failure) {
+            throw failure;
+        }
+        try {
+            if (!isStarted) {
+                isStarted = true;
+                start();
+            }
+            while (!isEof) {
+                final int n = inflate(b, off, len);
+                if (n > 0) {
+                    if (isGzip) {
+                        crc.update(b, off, n);
+                    }
+                    return n;
+                }
+                if (inflater.finished()) {
+                    memberEnd();
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Deflate data needs a preset dictionary");
+                } else if (inflater.needsInput()) {
+                    if (!fill()) {
+                        throw new EOFException("Unexpected end of deflate data");
+                    }
+                    setInput();
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            // a broken body is not read on,the Inflater may be reused at once
+            failure = e;
+            release();
+            throw e;
+        }
+    }
+
+    private int inflate(byte[] b, int off, int len) throws ZipException {
+        try {
+            return inflater.inflate(b, off, len);
+        } catch (DataFormatException e) {
+            throw new ZipException(null == e.getMessage() ? "Invalid deflate data" : e.getMessage());
+        }
+    }
+
+    /**
+     * read the gzip header or tell the deflate wrapper,then take an Inflater
+     */
+    private void start() throws IOException {
+        buffer = pool.acquireBuffer();
+        if (isGzip) {
+            if (!fill()) {
+                end();
+                return;
+            }
+            readGzipHeader();
+            nowrap = true;
+        } else {
+            if (!ensure(2)) {
+                end();
+                return;
+            }
+            nowrap = !isZlibHeader(buffer[pos] & 0xFF, buffer[pos + 1] & 0xFF);
+        }
+        inflater = pool.acquire(nowrap);
+        setInput();
+    }
+
+    /**
+     * a zlib header has the deflate method and is a multiple of 31,a raw deflate block rarely is both
+     */
+    private static boolean isZlibHeader(int cmf, int flg) {
+        return 8 == (cmf & 0x0F) && (cmf >> 4) <= 7 && 0 == ((cmf << 8) | flg) % 31;
+    }
+
+    private void readGzipHeader() throws IOException {
+        if (GZIP_MAGIC_1 != readUByte() || GZIP_MAGIC_2 != readUByte()) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (8 != readUByte()) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        final int flags = readUByte();
+        // mtime,xfl and os
+        skip(6);
+        if (0 != (flags & FEXTRA)) {
+            skip(readUByte() | readUByte() << 8);
+        }
+        if (0 != (flags & FNAME)) {
+            while (0 != readUByte()) {
+            }
+        }
+        if (0 != (flags & FCOMMENT)) {
+            while (0 != readUByte()) {
+            }
+        }
+        if (0 != (flags & FHCRC)) {
+            skip(2);
+        }
+    }
+
+    /**
+     * the inflater finished a member,check the gzip trailer and go on with the next member if one follows
+     */
+    private void memberEnd() throws IOException {
+        pos = limit - inflater.getRemaining();
+        if (!isGzip) {
+            end();
+            return;
+        }
+        final long expectedCrc = readUInt();
+        final long expectedSize = readUInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip trailer,crc mismatch");
+        }
+        if (expectedSize != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip trailer,size mismatch");
+        }
+        // reading on to the end of the body lets a pooled connection be given back
+        if (fill() && GZIP_MAGIC_1 == (buffer[pos] & 0xFF)) {
+            readGzipHeader();
+            inflater.reset();
+            crc.reset();
+            setInput();
+        } else {
+            end();
+        }
+    }
+
+    private void setInput() {
+        if (pos < limit) {
+            inflater.setInput(buffer, pos, limit - pos);
+            pos = limit;
+        }
+    }
+
+    /**
+     * make sure the buffer has unread bytes
+     *
+     * @return false at the end of the body
+     */
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (0 == n);
+        if (n < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * make sure the buffer has count unread bytes
+     *
+     * @return false if the body ends before
+     */
+    private boolean ensure(int count) throws IOException {
+        if (limit - pos >= count) {
+            return true;
+        }
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < count) {
+            final int n = in.read(buffer, limit, buffer.length - limit);
+            if (n < 0) {
+                return false;
+            }
+            limit += n;
+        }
+        return true;
+    }
+
+    private int readUByte() throws IOException {
+        if (!fill()) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private long readUInt() throws IOException {
+        return readUByte() | readUByte() << 8 | readUByte() << 16 | (long) readUByte() << 24;
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUByte();
+        }
+    }
+
+    private void end() {
+        isEof = true;
+        release();
+    }
+
+    /**
+     * give back the Inflater and the buffer once
+     */
+    private void release() {
+        if (null != inflater) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+        if (null != buffer) {
+            pool.releaseBuffer(buffer);
+            buffer = null;
+        }
+        pos = 0;
+        limit = 0;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+        return isEof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        release();
+        in.close();
+    }
+}
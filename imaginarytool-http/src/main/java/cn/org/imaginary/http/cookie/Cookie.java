@@ -0,0 +1,267 @@
+package cn.org.imaginary.http.cookie;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * a cookie parsed from a Set-Cookie header(RFC 6265),immutable
+ *
+ * @author Imaginary
+ * @see CookieJar
+ * @since 1.0
+ */
+public final class Cookie {
+    // expiry of a session cookie
+    public static final long SESSION = Long.MAX_VALUE;
+
+    private static final String[] DATE_PATTERNS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz", "EEE, dd-MMM-yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz", "EEE MMM d HH:mm:ss yyyy"};
+    private static final Pattern IP_ADDRESS = Pattern.compile("^[0-9.]+$|:");
+
+    private final String name;
+    private final String value;
+    // lower case,without leading dot
+    private final String domain;
+    private final String path;
+    // System.currentTimeMillis() when it expires,SESSION if never
+    private final long expiresAt;
+    private final boolean isSecure;
+    private final boolean isHttpOnly;
+    // sent to the exact host only,no Domain attribute
+    private final boolean isHostOnly;
+    private final long creationTime;
+
+    private Cookie(String name, String value, String domain, String path, long expiresAt,
+                   boolean isSecure, boolean isHttpOnly, boolean isHostOnly, long creationTime) {
+        this.name = name;
+        this.value = value;
+        this.domain = domain;
+        this.path = path;
+        this.expiresAt = expiresAt;
+        this.isSecure = isSecure;
+        this.isHttpOnly = isHttpOnly;
+        this.isHostOnly = isHostOnly;
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * parse a Set-Cookie header received from url
+     *
+     * @param url       url of the response
+     * @param setCookie Set-Cookie value
+     * @param now       System.currentTimeMillis()
+     * @return Cookie,null if invalid or its domain does not match the host
+     */
+    public static Cookie parse(URL url, String setCookie, long now) {
+        if (StrUtils.isBlank(setCookie)) {
+            return null;
+        }
+        final String[] parts = setCookie.split(";");
+        final int eq = parts[0].indexOf('=');
+        if (eq < 0) {
+            return null;
+        }
+        final String name = parts[0].substring(0, eq).trim();
+        if (name.isEmpty()) {
+            return null;
+        }
+        final String value = unquote(parts[0].substring(eq + 1).trim());
+        final String host = url.getHost().toLowerCase();
+        String domain = null;
+        String path = null;
+        long expires = SESSION;
+        long maxAge = Long.MIN_VALUE;
+        boolean isSecure = false;
+        boolean isHttpOnly = false;
+        for (int i = 1; i < parts.length; i++) {
+            final String part = parts[i];
+            final int equals = part.indexOf('=');
+            final String attribute = (equals < 0 ? part : part.substring(0, equals)).trim().toLowerCase();
+            final String argument = equals < 0 ? "" : part.substring(equals + 1).trim();
+            switch (attribute) {
+                case "expires":
+                    final long date = parseDate(argument);
+                    if (date > 0) {
+                        expires = date;
+                    }
+                    break;
+                case "max-age":
+                    try {
+                        maxAge = Long.parseLong(argument);
+                    } catch (NumberFormatException e) {
+                        // ignore
+                    }
+                    break;
+                case "domain":
+                    final String stripped = argument.startsWith(".") ? argument.substring(1) : argument;
+                    if (!stripped.isEmpty()) {
+                        domain = stripped.toLowerCase();
+                    }
+                    break;
+                case "path":
+                    if (argument.startsWith("/")) {
+                        path = argument;
+                    }
+                    break;
+                case "secure":
+                    isSecure = true;
+                    break;
+                case "httponly":
+                    isHttpOnly = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        // Max-Age wins over Expires
+        if (Long.MIN_VALUE != maxAge) {
+            expires = maxAge <= 0 ? Long.MIN_VALUE : maxAge > (SESSION - now) / 1000 ? SESSION : now + maxAge * 1000;
+        }
+        final boolean isHostOnly = null == domain;
+        if (isHostOnly) {
+            domain = host;
+        } else if (!domainMatch(host, domain) || (domain.indexOf('.') < 0 && !domain.equals(host))) {
+            // a domain of another site,or a top level domain
+            return null;
+        }
+        if (null == path) {
+            path = defaultPath(url.getPath());
+        }
+        return new Cookie(name, value, domain, path, expires, isSecure, isHttpOnly, isHostOnly, now);
+    }
+
+    /**
+     * does the host belong to the domain(RFC 6265 section 5.1.3)
+     *
+     * @param host   host in lower case
+     * @param domain domain in lower case
+     * @return true or false
+     */
+    public static boolean domainMatch(String host, String domain) {
+        if (host.equals(domain)) {
+            return true;
+        }
+        return host.endsWith(domain) && '.' == host.charAt(host.length() - domain.length() - 1)
+                && !IP_ADDRESS.matcher(host).find();
+    }
+
+    /**
+     * does the request path belong to the cookie path(RFC 6265 section 5.1.4)
+     *
+     * @param requestPath request path
+     * @param cookiePath  cookie path
+     * @return true or false
+     */
+    public static boolean pathMatch(String requestPath, String cookiePath) {
+        if (requestPath.equals(cookiePath)) {
+            return true;
+        }
+        return requestPath.startsWith(cookiePath)
+                && (cookiePath.endsWith("/") || '/' == requestPath.charAt(cookiePath.length()));
+    }
+
+    private static String defaultPath(String path) {
+        if (StrUtils.isEmpty(path) || '/' != path.charAt(0)) {
+            return "/";
+        }
+        final int slash = path.lastIndexOf('/');
+        return 0 == slash ? "/" : path.substring(0, slash);
+    }
+
+    private static String unquote(String value) {
+        return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    private static long parseDate(String value) {
+        for (String pattern : DATE_PATTERNS) {
+            final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                // try next
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * should the cookie be sent to url
+     *
+     * @param url request url
+     * @return true or false
+     */
+    public boolean matches(URL url) {
+        final String host = url.getHost().toLowerCase();
+        if (isHostOnly ? !host.equals(domain) : !domainMatch(host, domain)) {
+            return false;
+        }
+        if (isSecure && !"https".equalsIgnoreCase(url.getProtocol())) {
+            return false;
+        }
+        return pathMatch(StrUtils.isEmpty(url.getPath()) ? "/" : url.getPath(), path);
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt <= now;
+    }
+
+    /**
+     * is it the same cookie,which a new one replaces
+     */
+    boolean isSameAs(Cookie other) {
+        return name.equals(other.name) && domain.equals(other.domain) && path.equals(other.path);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isPersistent() {
+        return SESSION != expiresAt;
+    }
+
+    public boolean isSecure() {
+        return isSecure;
+    }
+
+    public boolean isHttpOnly() {
+        return isHttpOnly;
+    }
+
+    public boolean isHostOnly() {
+        return isHostOnly;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public String toString() {
+        return name + '=' + value + "; domain=" + domain + "; path=" + path;
+    }
+}
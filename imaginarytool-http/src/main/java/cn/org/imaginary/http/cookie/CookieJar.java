@@ -0,0 +1,333 @@
+package cn.org.imaginary.http.cookie;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.URL;
+import java.util.*;
+
+/**
+ * a bounded cookie store,cookies are kept per domain in shards of least recently used domains<br>
+ * a domain keeps at most maxCookiesPerHost cookies,the ones expiring first are dropped beyond it,
+ * and the least recently used domains are dropped beyond maxHosts,so a crawler visiting many hosts
+ * holds a bounded number of cookies<br>
+ * usage:
+ * <pre>
+ * CookieJar jar = CookieJar.create(100000, 20);
+ * HttpRequest.get(url).setCookieJar(jar).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see Cookie
+ * @since 1.0
+ */
+public class CookieJar {
+    // default max domains with cookies
+    public static final int DEFAULT_MAX_HOSTS = 10000;
+    // default max cookies of a domain
+    public static final int DEFAULT_MAX_COOKIES_PER_HOST = 50;
+
+    private static final int SHARDS = 16;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final int maxCookiesPerHost;
+
+    /**
+     * build jar
+     *
+     * @param maxHosts          max domains with cookies
+     * @param maxCookiesPerHost max cookies of a domain
+     */
+    public CookieJar(int maxHosts, int maxCookiesPerHost) {
+        if (maxHosts <= 0 || maxCookiesPerHost <= 0) {
+            throw new IllegalArgumentException("maxHosts and maxCookiesPerHost must be positive");
+        }
+        this.maxCookiesPerHost = maxCookiesPerHost;
+        final int hostsPerShard = Math.max(1, (maxHosts + SHARDS - 1) / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(hostsPerShard);
+        }
+    }
+
+    /**
+     * create jar with default limits
+     *
+     * @return CookieJar
+     */
+    public static CookieJar create() {
+        return new CookieJar(DEFAULT_MAX_HOSTS, DEFAULT_MAX_COOKIES_PER_HOST);
+    }
+
+    /**
+     * create jar
+     *
+     * @param maxHosts          max domains with cookies
+     * @param maxCookiesPerHost max cookies of a domain
+     * @return CookieJar
+     */
+    public static CookieJar create(int maxHosts, int maxCookiesPerHost) {
+        return new CookieJar(maxHosts, maxCookiesPerHost);
+    }
+
+    /**
+     * the shared jar of requests without their own
+     *
+     * @return CookieJar
+     */
+    public static CookieJar getDefault() {
+        return DefaultHolder.JAR;
+    }
+
+    /**
+     * store the Set-Cookie headers of a response
+     *
+     * @param url        url of the response
+     * @param setCookies Set-Cookie values
+     */
+    public void saveFromResponse(URL url, List<String> setCookies) {
+        if (null == setCookies) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (String setCookie : setCookies) {
+            final Cookie cookie = Cookie.parse(url, setCookie, now);
+            if (null != cookie) {
+                add(cookie, now);
+            }
+        }
+    }
+
+    /**
+     * store a cookie,an expired one deletes the stored cookie of the same name,domain and path
+     *
+     * @param cookie cookie
+     */
+    public void add(Cookie cookie) {
+        add(cookie, System.currentTimeMillis());
+    }
+
+    private void add(Cookie cookie, long now) {
+        final Shard shard = shard(cookie.getDomain());
+        synchronized (shard) {
+            List<Cookie> cookies = shard.domains.get(cookie.getDomain());
+            if (null == cookies) {
+                if (cookie.isExpired(now)) {
+                    return;
+                }
+                cookies = new ArrayList<>(4);
+                shard.domains.put(cookie.getDomain(), cookies);
+            }
+            final Iterator<Cookie> it = cookies.iterator();
+            while (it.hasNext()) {
+                final Cookie stored = it.next();
+                if (stored.isSameAs(cookie) || stored.isExpired(now)) {
+                    it.remove();
+                }
+            }
+            if (!cookie.isExpired(now)) {
+                cookies.add(cookie);
+                if (cookies.size() > maxCookiesPerHost) {
+                    cookies.remove(firstToExpire(cookies));
+                }
+            }
+            if (cookies.isEmpty()) {
+                shard.domains.remove(cookie.getDomain());
+            }
+        }
+    }
+
+    private static Cookie firstToExpire(List<Cookie> cookies) {
+        Cookie first = cookies.get(0);
+        for (Cookie cookie : cookies) {
+            if (cookie.getExpiresAt() < first.getExpiresAt()
+                    || (cookie.getExpiresAt() == first.getExpiresAt() && cookie.getCreationTime() < first.getCreationTime())) {
+                first = cookie;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * cookies to send to url,longer paths first
+     *
+     * @param url request url
+     * @return cookies,empty if none
+     */
+    public List<Cookie> loadForRequest(URL url) {
+        final String host = url.getHost().toLowerCase();
+        final long now = System.currentTimeMillis();
+        final List<Cookie> result = new ArrayList<>();
+        // the host and each parent domain
+        String domain = host;
+        while (null != domain) {
+            final Shard shard = shard(domain);
+            synchronized (shard) {
+                final List<Cookie> cookies = shard.domains.get(domain);
+                if (null != cookies) {
+                    final Iterator<Cookie> it = cookies.iterator();
+                    while (it.hasNext()) {
+                        final Cookie cookie = it.next();
+                        if (cookie.isExpired(now)) {
+                            it.remove();
+                        } else if (cookie.matches(url)) {
+                            result.add(cookie);
+                        }
+                    }
+                    if (cookies.isEmpty()) {
+                        shard.domains.remove(domain);
+                    }
+                }
+            }
+            final int dot = domain.indexOf('.');
+            domain = dot < 0 || domain.indexOf('.', dot + 1) < 0 || domain.indexOf(':') >= 0 ? null : domain.substring(dot + 1);
+        }
+        Collections.sort(result, new Comparator<Cookie>() {
+            @Override
+            public int compare(Cookie a, Cookie b) {
+                final int byPath = b.getPath().length() - a.getPath().length();
+                return 0 != byPath ? byPath : Long.compare(a.getCreationTime(), b.getCreationTime());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * the Cookie header to send to url
+     *
+     * @param url request url
+     * @return name=value; name=value,null if no cookie
+     */
+    public String cookieHeader(URL url) {
+        final List<Cookie> cookies = loadForRequest(url);
+        if (cookies.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (Cookie cookie : cookies) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * drop expired cookies of every domain
+     *
+     * @return number of cookies dropped
+     */
+    public int purgeExpired() {
+        final long now = System.currentTimeMillis();
+        int purged = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                final Iterator<List<Cookie>> domains = shard.domains.values().iterator();
+                while (domains.hasNext()) {
+                    final List<Cookie> cookies = domains.next();
+                    final Iterator<Cookie> it = cookies.iterator();
+                    while (it.hasNext()) {
+                        if (it.next().isExpired(now)) {
+                            it.remove();
+                            purged++;
+                        }
+                    }
+                    if (cookies.isEmpty()) {
+                        domains.remove();
+                    }
+                }
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * drop the cookies of a domain
+     *
+     * @param domain domain
+     */
+    public void remove(String domain) {
+        if (StrUtils.isBlank(domain)) {
+            return;
+        }
+        final String key = domain.toLowerCase();
+        final Shard shard = shard(key);
+        synchronized (shard) {
+            shard.domains.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.domains.clear();
+            }
+        }
+    }
+
+    /**
+     * number of cookies,expired ones not yet purged included
+     *
+     * @return size
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (List<Cookie> cookies : shard.domains.values()) {
+                    size += cookies.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * number of domains with cookies
+     *
+     * @return host count
+     */
+    public int hostCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count += shard.domains.size();
+            }
+        }
+        return count;
+    }
+
+    private Shard shard(String domain) {
+        final int hash = domain.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[hosts: {}; cookies: {}]", hostCount(), size());
+    }
+
+    /**
+     * domains of one shard in access order,guarded by the shard
+     */
+    private static final class Shard {
+        private final LinkedHashMap<String, List<Cookie>> domains;
+
+        private Shard(final int maxHosts) {
+            this.domains = new LinkedHashMap<String, List<Cookie>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Cookie>> eldest) {
+                    return size() > maxHosts;
+                }
+            };
+        }
+    }
+
+    /**
+     * lazy holder of the shared jar
+     */
+    private static class DefaultHolder {
+        private static final CookieJar JAR = create();
+    }
+}
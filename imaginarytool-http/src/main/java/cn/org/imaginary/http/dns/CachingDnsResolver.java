@@ -0,0 +1,336 @@
+package cn.org.imaginary.http.dns;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a {@link DnsResolver} caching the addresses of another for a ttl,and failures for a shorter one<br>
+ * a host looked up again shortly before expiry is refreshed in background,
+ * so that hot hosts never wait for a lookup,a full cache drops expired hosts first,then the least recently used
+ * <pre>
+ * DnsResolver resolver = CachingDnsResolver.create().setTtl(30000).setNegativeTtl(5000);
+ * NioHttpEngine.create().setResolver(resolver);
+ * </pre>
+ *
+ * @author Imaginary
+ * @see DnsResolver
+ * @since 1.0
+ */
+public class CachingDnsResolver implements DnsResolver {
+    // default ttl of addresses in millis
+    public static final long DEFAULT_TTL = 60000;
+    // default ttl of failures in millis
+    public static final long DEFAULT_NEGATIVE_TTL = 10000;
+    // default time before expiry when a lookup refreshes the entry in background
+    public static final long DEFAULT_REFRESH_AHEAD = 10000;
+    // default max hosts cached
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    // up to 4 lookups at once,an unbounded queue never grows a pool past its core size,idle threads end
+    private static final ThreadPoolExecutor REFRESHER = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, StrUtils.format("imaginary-dns-{}", THREAD_ID.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        REFRESHER.allowCoreThreadTimeOut(true);
+    }
+
+    private final DnsResolver delegate;
+    // hosts in access order,least recently used first,guarded by itself
+    private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile long negativeTtl = DEFAULT_NEGATIVE_TTL;
+    private volatile long refreshAhead = DEFAULT_REFRESH_AHEAD;
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * build resolver
+     *
+     * @param delegate resolver doing the lookups
+     */
+    public CachingDnsResolver(DnsResolver delegate) {
+        if (null == delegate) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * create resolver over the resolver of the jvm
+     *
+     * @return CachingDnsResolver
+     */
+    public static CachingDnsResolver create() {
+        return new CachingDnsResolver(SYSTEM);
+    }
+
+    /**
+     * create resolver
+     *
+     * @param delegate resolver doing the lookups
+     * @return CachingDnsResolver
+     */
+    public static CachingDnsResolver create(DnsResolver delegate) {
+        return new CachingDnsResolver(delegate);
+    }
+
+    /**
+     * the shared resolver of transports without their own
+     *
+     * @return CachingDnsResolver
+     */
+    public static CachingDnsResolver getDefault() {
+        return DefaultHolder.RESOLVER;
+    }
+
+    /**
+     * set how long addresses are cached
+     *
+     * @param ttl ttl in millis
+     * @return CachingDnsResolver
+     */
+    public CachingDnsResolver setTtl(long ttl) {
+        if (ttl >= 0) {
+            this.ttl = ttl;
+        }
+        return this;
+    }
+
+    /**
+     * set how long failures are cached
+     *
+     * @param negativeTtl ttl in millis,0 means failures are not cached
+     * @return CachingDnsResolver
+     */
+    public CachingDnsResolver setNegativeTtl(long negativeTtl) {
+        if (negativeTtl >= 0) {
+            this.negativeTtl = negativeTtl;
+        }
+        return this;
+    }
+
+    /**
+     * set the time before expiry when a lookup refreshes the entry in background
+     *
+     * @param refreshAhead time in millis,0 means no background refresh
+     * @return CachingDnsResolver
+     */
+    public CachingDnsResolver setRefreshAhead(long refreshAhead) {
+        if (refreshAhead >= 0) {
+            this.refreshAhead = refreshAhead;
+        }
+        return this;
+    }
+
+    /**
+     * set max hosts cached
+     *
+     * @param maxSize max size
+     * @return CachingDnsResolver
+     */
+    public CachingDnsResolver setMaxSize(int maxSize) {
+        if (maxSize > 0) {
+            this.maxSize = maxSize;
+        }
+        return this;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        final long now = System.nanoTime();
+        final Entry entry = get(host);
+        if (null != entry && entry.expiry - now > 0) {
+            if (null != entry.error) {
+                negativeHits.incrementAndGet();
+                throw new UnknownHostException(entry.error.getMessage());
+            }
+            hits.incrementAndGet();
+            if (entry.expiry - now < TimeUnit.MILLISECONDS.toNanos(refreshAhead) && entry.isRefreshing.compareAndSet(false, true)) {
+                refresh(host);
+            }
+            return entry.addresses.clone();
+        }
+        misses.incrementAndGet();
+        return lookup(host).clone();
+    }
+
+    /**
+     * drop a host,for example after its addresses failed to connect
+     *
+     * @param host host name
+     */
+    public void evict(String host) {
+        synchronized (cache) {
+            cache.remove(host);
+        }
+    }
+
+    /**
+     * drop every host and reset counters
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        hits.set(0);
+        negativeHits.set(0);
+        misses.set(0);
+        refreshes.set(0);
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[size: {}; hits: {}; negativeHits: {}; misses: {}; refreshes: {}]",
+                size(), getHits(), getNegativeHits(), getMisses(), getRefreshes());
+    }
+
+    private InetAddress[] lookup(String host) throws UnknownHostException {
+        final InetAddress[] addresses;
+        try {
+            addresses = delegate.resolve(host);
+            if (null == addresses || 0 == addresses.length) {
+                throw new UnknownHostException(host);
+            }
+        } catch (UnknownHostException e) {
+            if (negativeTtl > 0) {
+                put(host, new Entry(null, e, negativeTtl));
+            }
+            throw e;
+        }
+        put(host, new Entry(addresses.clone(), null, ttl));
+        return addresses;
+    }
+
+    /**
+     * look up in background,a failure keeps the addresses until they expire
+     */
+    private void refresh(final String host) {
+        try {
+            REFRESHER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refreshes.incrementAndGet();
+                    try {
+                        final InetAddress[] addresses = delegate.resolve(host);
+                        if (null != addresses && addresses.length > 0) {
+                            put(host, new Entry(addresses.clone(), null, ttl));
+                            return;
+                        }
+                    } catch (Exception e) {
+                        // keep the current addresses
+                    }
+                    final Entry current = get(host);
+                    if (null != current) {
+                        current.isRefreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            final Entry current = get(host);
+            if (null != current) {
+                current.isRefreshing.set(false);
+            }
+        }
+    }
+
+    private Entry get(String host) {
+        synchronized (cache) {
+            return cache.get(host);
+        }
+    }
+
+    private void put(String host, Entry entry) {
+        synchronized (cache) {
+            if (cache.size() >= maxSize && !cache.containsKey(host)) {
+                removeExpired();
+                // least recently used first
+                final Iterator<String> it = cache.keySet().iterator();
+                while (cache.size() >= maxSize && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            cache.put(host, entry);
+        }
+    }
+
+    /**
+     * called with the lock of cache held
+     */
+    private void removeExpired() {
+        final long now = System.nanoTime();
+        final Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiry - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * addresses or failure of a host
+     */
+    private static final class Entry {
+        private final InetAddress[] addresses;
+        private final UnknownHostException error;
+        // System.nanoTime() when it expires
+        private final long expiry;
+        private final AtomicBoolean isRefreshing = new AtomicBoolean();
+
+        private Entry(InetAddress[] addresses, UnknownHostException error, long ttlMillis) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        }
+    }
+
+    /**
+     * lazy holder of the shared resolver
+     */
+    private static class DefaultHolder {
+        private static final CachingDnsResolver RESOLVER = create();
+    }
+}
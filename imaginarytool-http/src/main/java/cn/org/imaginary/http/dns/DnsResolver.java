@@ -0,0 +1,28 @@
+package cn.org.imaginary.http.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * resolve a host name to its addresses
+ *
+ * @author Imaginary
+ * @see CachingDnsResolver
+ * @since 1.0
+ */
+public interface DnsResolver {
+
+    /**
+     * the resolver of the jvm
+     */
+    DnsResolver SYSTEM = new SystemDnsResolver();
+
+    /**
+     * resolve a host
+     *
+     * @param host host name or literal address
+     * @return addresses in order of preference,never empty
+     * @throws UnknownHostException a case of no address
+     */
+    InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,55 @@
+package cn.org.imaginary.http.dns;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * ordering of connection attempts as in RFC 8305(happy eyeballs),
+ * the address families alternate so a broken family costs one attempt delay instead of a connect timeout per address
+ *
+ * @author Imaginary
+ * @see DnsResolver
+ * @since 1.0
+ */
+public final class HappyEyeballs {
+    // default millis before the next address is tried while the previous attempt is pending
+    public static final long DEFAULT_ATTEMPT_DELAY = 250;
+
+    private HappyEyeballs() {
+    }
+
+    /**
+     * interleave ipv6 and ipv4 addresses,starting with the family of the first address
+     *
+     * @param addresses addresses in order of the resolver
+     * @return addresses in order of attempts
+     */
+    public static List<InetAddress> interleave(InetAddress[] addresses) {
+        final List<InetAddress> result = new ArrayList<>(addresses.length);
+        if (0 == addresses.length) {
+            return result;
+        }
+        final boolean isFirstV6 = addresses[0] instanceof Inet6Address;
+        final LinkedList<InetAddress> first = new LinkedList<>();
+        final LinkedList<InetAddress> second = new LinkedList<>();
+        for (InetAddress address : addresses) {
+            if (address instanceof Inet6Address == isFirstV6) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+        while (!first.isEmpty() || !second.isEmpty()) {
+            if (!first.isEmpty()) {
+                result.add(first.poll());
+            }
+            if (!second.isEmpty()) {
+                result.add(second.poll());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,19 @@
+package cn.org.imaginary.http.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * resolve with {@link InetAddress#getAllByName(String)}
+ *
+ * @author Imaginary
+ * @see DnsResolver#SYSTEM
+ * @since 1.0
+ */
+public class SystemDnsResolver implements DnsResolver {
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        return InetAddress.getAllByName(host);
+    }
+}
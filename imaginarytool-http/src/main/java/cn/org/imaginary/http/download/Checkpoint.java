@@ -0,0 +1,155 @@
+package cn.org.imaginary.http.download;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * the byte ranges of a download and how far each one has been written
+ *
+ * @author Imaginary
+ * @see RangeDownloader
+ * @since 1.0
+ */
+final class Checkpoint {
+    // version of the file format
+    private static final int FORMAT_VERSION = 1;
+
+    final String url;
+    final long length;
+    // ETag or Last-Modified of the resource,empty if none
+    final String validator;
+    // first and last byte of each segment
+    private final long[] starts;
+    private final long[] ends;
+    // next byte to fetch of each segment,past the end when it is done
+    private final AtomicLongArray positions;
+
+    private Checkpoint(String url, long length, String validator, long[] starts, long[] ends, long[] positions) {
+        this.url = url;
+        this.length = length;
+        this.validator = validator;
+        this.starts = starts;
+        this.ends = ends;
+        this.positions = new AtomicLongArray(positions);
+    }
+
+    /**
+     * split the resource into segments of about the same size
+     */
+    static Checkpoint plan(String url, long length, String validator, int segments) {
+        final long[] starts = new long[segments];
+        final long[] ends = new long[segments];
+        final long size = length / segments;
+        for (int i = 0; i < segments; i++) {
+            starts[i] = i * size;
+            ends[i] = i == segments - 1 ? length - 1 : (i + 1) * size - 1;
+        }
+        return new Checkpoint(url, length, StrUtils.nullToEmpty(validator), starts, ends, starts.clone());
+    }
+
+    int segments() {
+        return starts.length;
+    }
+
+    long position(int segment) {
+        return positions.get(segment);
+    }
+
+    long end(int segment) {
+        return ends[segment];
+    }
+
+    boolean isDone(int segment) {
+        return positions.get(segment) > ends[segment];
+    }
+
+    void advance(int segment, long position) {
+        positions.set(segment, position);
+    }
+
+    /**
+     * bytes written of all segments
+     */
+    long downloaded() {
+        long downloaded = 0;
+        for (int i = 0; i < starts.length; i++) {
+            downloaded += positions.get(i) - starts[i];
+        }
+        return downloaded;
+    }
+
+    /**
+     * is it a checkpoint of the same version of the resource
+     */
+    boolean isSameResource(String url, long length, String validator) {
+        return this.url.equals(url) && this.length == length && this.validator.equals(StrUtils.nullToEmpty(validator));
+    }
+
+    /**
+     * copy of the positions now,saved after the bytes before them are forced to disk
+     */
+    Checkpoint snapshot() {
+        final long[] copy = new long[starts.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = positions.get(i);
+        }
+        return new Checkpoint(url, length, validator, starts, ends, copy);
+    }
+
+    /**
+     * write the checkpoint to a temp file and move it over the old one
+     */
+    void save(File file) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeLong(length);
+            out.writeUTF(validator);
+            out.writeInt(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                out.writeLong(starts[i]);
+                out.writeLong(ends[i]);
+                out.writeLong(positions.get(i));
+            }
+        }
+        // a crash never leaves a half written checkpoint
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * read a checkpoint
+     *
+     * @return Checkpoint,null if absent or unreadable
+     */
+    static Checkpoint load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (FORMAT_VERSION != in.readInt()) {
+                return null;
+            }
+            final String url = in.readUTF();
+            final long length = in.readLong();
+            final String validator = in.readUTF();
+            final int segments = in.readInt();
+            final long[] starts = new long[segments];
+            final long[] ends = new long[segments];
+            final long[] positions = new long[segments];
+            for (int i = 0; i < segments; i++) {
+                starts[i] = in.readLong();
+                ends[i] = in.readLong();
+                positions[i] = in.readLong();
+            }
+            return new Checkpoint(url, length, validator, starts, ends, positions);
+        } catch (IOException | RuntimeException e) {
+            // a damaged checkpoint,the download starts over
+            return null;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package cn.org.imaginary.http.download;
+
+import cn.org.imaginary.http.*;
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.util.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * download a file over several connections at once,each fetches a byte range and writes it at its position
+ * of a preallocated file<br>
+ * a one byte range request probes the server,a 206 answer gives the length and the file is split into segments,
+ * otherwise the body of the probe is saved as a single stream<br>
+ * progress is kept in a checkpoint next to the file,a failed download resumes from it when called again,
+ * as long as the length and the ETag or Last-Modified of the resource are the same<br>
+ * usage:
+ * <pre>
+ * RangeDownloader.create().setConnections(8).download(HttpRequest.get(url).timeout(30000), new File("big.iso"));
+ * </pre>
+ *
+ * @author Imaginary
+ * @see Checkpoint
+ * @since 1.0
+ */
+public class RangeDownloader {
+    private final static Logger logger = LoggerFactory.getLogger(RangeDownloader.class);
+
+    // default connections of a download
+    public static final int DEFAULT_CONNECTIONS = 4;
+    // default smallest segment,small files are fetched by fewer connections
+    public static final long DEFAULT_MIN_SEGMENT_SIZE = 1024 * 1024;
+    // default retries of a segment before the download fails
+    public static final int DEFAULT_RETRIES = 3;
+    // suffix of the file being written
+    public static final String PART_SUFFIX = ".part";
+    // suffix of the checkpoint of the file being written
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    // bytes a segment writes between checkpoints
+    private static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)", Pattern.CASE_INSENSITIVE);
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, StrUtils.format("imaginary-download-{}", THREAD_ID.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private int connections = DEFAULT_CONNECTIONS;
+    private long minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+    private int retries = DEFAULT_RETRIES;
+
+    /**
+     * create downloader with default settings
+     *
+     * @return RangeDownloader
+     */
+    public static RangeDownloader create() {
+        return new RangeDownloader();
+    }
+
+    /**
+     * set connections of a download
+     *
+     * @param connections connections,at least 1
+     * @return RangeDownloader
+     */
+    public RangeDownloader setConnections(int connections) {
+        if (connections > 0) {
+            this.connections = connections;
+        }
+        return this;
+    }
+
+    /**
+     * set smallest segment
+     *
+     * @param minSegmentSize bytes
+     * @return RangeDownloader
+     */
+    public RangeDownloader setMinSegmentSize(long minSegmentSize) {
+        if (minSegmentSize > 0) {
+            this.minSegmentSize = minSegmentSize;
+        }
+        return this;
+    }
+
+    /**
+     * set retries of a segment,a retry goes on from the last byte written
+     *
+     * @param retries retries,0 means none
+     * @return RangeDownloader
+     */
+    public RangeDownloader setRetries(int retries) {
+        if (retries >= 0) {
+            this.retries = retries;
+        }
+        return this;
+    }
+
+    /**
+     * download url to file
+     *
+     * @param url  url
+     * @param file target file,replaced if exists
+     * @return file
+     * @throws HttpException a case of IO error or bad status,the download resumes when called again
+     */
+    public File download(String url, File file) {
+        return download(HttpRequest.get(url), file);
+    }
+
+    /**
+     * download to file with the url,headers,timeout,proxy and ssl settings of a GET request
+     *
+     * @param request GET request
+     * @param file    target file,replaced if exists
+     * @return file
+     * @throws HttpException a case of IO error or bad status,the download resumes when called again
+     */
+    public File download(HttpRequest request, File file) {
+        final String url = request.getRequestUrl();
+        final File part = new File(file.getPath() + PART_SUFFIX);
+        final File checkpointFile = new File(file.getPath() + CHECKPOINT_SUFFIX);
+        try {
+            HttpConnection probe = open(request, "bytes=0-0", null);
+            final int status = probe.getResponseCode();
+            final HttpURLConnection connection = probe.getConnection();
+            if (HttpStatus.HTTP_PARTIAL == status) {
+                final Matcher range = CONTENT_RANGE_PATTERN.matcher(StrUtils.nullToEmpty(connection.getHeaderField(Header.CONTENT_RANGE.toString())));
+                if (range.find() && !"*".equals(range.group(3))) {
+                    final long length = Long.parseLong(range.group(3));
+                    final String validator = validator(connection);
+                    drain(probe);
+                    return ranged(request, url, length, validator, part, checkpointFile, file);
+                }
+            }
+            if (HttpStatus.HTTP_OK != status) {
+                probe.disconnect();
+                if (HttpStatus.HTTP_PARTIAL != status && HttpStatus.HTTP_RANGE_NOT_SATISFIABLE != status) {
+                    throw new HttpException("Download {} failed with status {}", url, status);
+                }
+                // an empty file,or a range answer without length
+                probe = open(request, null, null);
+                if (HttpStatus.HTTP_OK != probe.getResponseCode()) {
+                    probe.disconnect();
+                    throw new HttpException("Download {} failed with status {}", url, probe.getResponseCode());
+                }
+            }
+            checkpointFile.delete();
+            return single(probe, part, file);
+        } catch (IOException e) {
+            throw new HttpException(e, "Download {} failed: {}", url, e.getMessage());
+        }
+    }
+
+    /**
+     * save the whole body,the server does not support ranges
+     */
+    private File single(HttpConnection connection, File part, File file) throws IOException {
+        logger.debug("download {} as a single stream", connection.getUrl());
+        final long expected = connection.getConnection().getContentLengthLong();
+        long written = 0;
+        try (InputStream in = connection.getInputStream();
+             FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final byte[] bytes = BufferPool.getDefault().acquireBytes(BUFFER_SIZE);
+            try {
+                int n;
+                while ((n = in.read(bytes)) >= 0) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    written += n;
+                }
+            } finally {
+                BufferPool.getDefault().release(bytes);
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+        if (expected >= 0 && expected != written) {
+            throw new IOException(StrUtils.format("Received {} of {} bytes", written, expected));
+        }
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * fetch the segments at once,resuming a checkpoint of the same resource
+     */
+    private File ranged(HttpRequest request, String url, long length, String validator,
+                        File part, File checkpointFile, File file) throws IOException {
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        if (null == checkpoint || !checkpoint.isSameResource(url, length, validator) || !part.isFile() || part.length() != length) {
+            final long segments = Math.max(1, Math.min(connections, length / minSegmentSize));
+            checkpoint = Checkpoint.plan(url, length, validator, (int) segments);
+            try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.setLength(length);
+            }
+            checkpoint.save(checkpointFile);
+        } else {
+            logger.debug("resume {} from {} of {} bytes", url, checkpoint.downloaded(), length);
+        }
+
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+            final Download download = new Download(request, checkpoint, checkpointFile, channel);
+            final List<Future<?>> futures = new ArrayList<>(checkpoint.segments());
+            for (int i = 0; i < checkpoint.segments(); i++) {
+                if (!checkpoint.isDone(i)) {
+                    futures.add(EXECUTOR.submit(download.segment(i)));
+                }
+            }
+            Throwable error = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (null == error) {
+                        error = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    download.isAborted = true;
+                    Thread.currentThread().interrupt();
+                    error = e;
+                    break;
+                }
+            }
+            if (error instanceof ResourceChangedException) {
+                checkpointFile.delete();
+                throw new HttpException(error, "Download {} failed: {}", url, error.getMessage());
+            }
+            download.save();
+            if (null != error) {
+                throw new HttpException(error, "Download {} stopped at {} of {} bytes: {}",
+                        url, checkpoint.downloaded(), length, error.getMessage());
+            }
+            if (channel.size() != length || checkpoint.downloaded() != length) {
+                throw new HttpException("Download {} has {} of {} bytes", url, checkpoint.downloaded(), length);
+            }
+        }
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        checkpointFile.delete();
+        return file;
+    }
+
+    /**
+     * open a GET of the request with an identity encoding,so ranges count the bytes of the file
+     */
+    private static HttpConnection open(HttpRequest request, String range, String validator) throws IOException {
+        final HttpConnection connection = HttpConnection.create(request.getRequestUrl(), HttpMethod.GET,
+                request.getHostnameVerifier(), request.getSocketFactory(), request.getTimeout(), request.getProxy())
+                .setCookieJar(request.getCookieJar())
+                .header(request.getHeaders(), true)
+                .header(Header.ACCEPT_ENCODING, "identity", true);
+        if (null != range) {
+            connection.header(Header.RANGE, range, true);
+        }
+        if (!StrUtils.isEmpty(validator)) {
+            connection.header(Header.IF_RANGE, validator, true);
+        }
+        return connection.connect();
+    }
+
+    /**
+     * the strong ETag,or Last-Modified,which If-Range sends to detect a changed resource
+     */
+    private static String validator(HttpURLConnection connection) {
+        final String etag = connection.getHeaderField(Header.ETAG.toString());
+        if (!StrUtils.isBlank(etag) && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return connection.getHeaderField(Header.LAST_MODIFIED.toString());
+    }
+
+    private static void drain(HttpConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            final byte[] bytes = new byte[16];
+            while (in.read(bytes) >= 0) {
+                // the one byte range
+            }
+        }
+    }
+
+    /**
+     * the state shared by the segments of one download
+     */
+    private final class Download {
+        private final HttpRequest request;
+        private final Checkpoint checkpoint;
+        private final File checkpointFile;
+        private final FileChannel channel;
+        private volatile boolean isAborted;
+
+        private Download(HttpRequest request, Checkpoint checkpoint, File checkpointFile, FileChannel channel) {
+            this.request = request;
+            this.checkpoint = checkpoint;
+            this.checkpointFile = checkpointFile;
+            this.channel = channel;
+        }
+
+        /**
+         * fetch one segment,retried from the last byte written
+         */
+        private Callable<Void> segment(final int segment) {
+            return new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int failures = 0;
+                    while (!checkpoint.isDone(segment)) {
+                        try {
+                            fetch(segment);
+                        } catch (ResourceChangedException e) {
+                            isAborted = true;
+                            throw e;
+                        } catch (IOException e) {
+                            if (isAborted || ++failures > retries) {
+                                throw e;
+                            }
+                            logger.debug("retry segment {} of {} from {}: {}", segment, checkpoint.url, checkpoint.position(segment), e.getMessage());
+                            Thread.sleep(Math.min(5000, 500L * failures));
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        private void fetch(int segment) throws IOException {
+            final long start = checkpoint.position(segment);
+            long position = start;
+            final long end = checkpoint.end(segment);
+            final HttpConnection connection = open(request, "bytes=" + position + "-" + end, checkpoint.validator);
+            boolean isDone = false;
+            try {
+                final int status = connection.getResponseCode();
+                if (HttpStatus.HTTP_PARTIAL != status) {
+                    if (HttpStatus.HTTP_OK == status || HttpStatus.HTTP_RANGE_NOT_SATISFIABLE == status) {
+                        throw new ResourceChangedException(StrUtils.format("{} changed during download", checkpoint.url));
+                    }
+                    throw new IOException(StrUtils.format("Range {}-{} failed with status {}", position, end, status));
+                }
+                final String contentRange = connection.getConnection().getHeaderField(Header.CONTENT_RANGE.toString());
+                final Matcher range = CONTENT_RANGE_PATTERN.matcher(StrUtils.nullToEmpty(contentRange));
+                if (!range.find() || Long.parseLong(range.group(1)) != position) {
+                    throw new IOException(StrUtils.format("Range {}-{} answered with {}", position, end, contentRange));
+                }
+                try (InputStream in = connection.getInputStream()) {
+                    final byte[] bytes = BufferPool.getDefault().acquireBytes(BUFFER_SIZE);
+                    try {
+                        long unsaved = 0;
+                        while (position <= end) {
+                            if (isAborted) {
+                                throw new InterruptedIOException("Download aborted");
+                            }
+                            final int n = in.read(bytes, 0, (int) Math.min(bytes.length, end - position + 1));
+                            if (n < 0) {
+                                throw new EOFException(StrUtils.format("Range {}-{} ended at {}", start, end, position));
+                            }
+                            final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, n);
+                            while (buffer.hasRemaining()) {
+                                position += channel.write(buffer, position);
+                            }
+                            checkpoint.advance(segment, position);
+                            unsaved += n;
+                            if (unsaved >= CHECKPOINT_INTERVAL) {
+                                unsaved = 0;
+                                save();
+                            }
+                        }
+                    } finally {
+                        BufferPool.getDefault().release(bytes);
+                    }
+                }
+                isDone = true;
+            } finally {
+                if (isDone) {
+                    connection.close();
+                } else {
+                    connection.disconnect();
+                }
+            }
+        }
+
+        /**
+         * save the checkpoint,the bytes it counts are forced to disk first
+         */
+        private synchronized void save() throws IOException {
+            final Checkpoint snapshot = checkpoint.snapshot();
+            channel.force(false);
+            snapshot.save(checkpointFile);
+        }
+    }
+
+    /**
+     * the resource is not the one of the checkpoint,the download starts over
+     */
+    private static final class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private ResourceChangedException(String message) {
+            super(message);
+        }
+    }
+}
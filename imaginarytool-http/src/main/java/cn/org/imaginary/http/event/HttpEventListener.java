@@ -0,0 +1,132 @@
+package cn.org.imaginary.http.event;
+
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * the events of one exchange of a request,from the call start to the end of the response body<br>
+ * a listener is created for every exchange by its {@link Factory},a retry,a hedge or a redirect followed by
+ * the nio engine is another exchange,so the listener needs no locks<br>
+ * events are called in the thread doing the I/O,the I/O thread of the nio engine,and must not block<br>
+ * an exchange through {@link cn.org.imaginary.http.HttpConnection} reports the tls handshake within connect,
+ * since HttpURLConnection does it inside; a http/2 stream reports no requestEnd and responseStart<br>
+ * a request without a factory pays nothing but a null check
+ *
+ * @author Imaginary
+ * @see PhaseRecorder
+ * @since 1.0
+ */
+public abstract class HttpEventListener {
+
+    /**
+     * creates the listener of every exchange
+     */
+    public interface Factory {
+
+        /**
+         * create the listener of an exchange
+         *
+         * @param request request of the exchange
+         * @return listener,null to not observe this one
+         */
+        HttpEventListener create(HttpRequest request);
+    }
+
+    /**
+     * the exchange starts
+     */
+    public void callStart() {
+    }
+
+    /**
+     * the host is about to be resolved,not called for a reused connection
+     *
+     * @param host host name
+     */
+    public void dnsStart(String host) {
+    }
+
+    /**
+     * the host is resolved
+     *
+     * @param host      host name
+     * @param addresses addresses found
+     */
+    public void dnsEnd(String host, InetAddress[] addresses) {
+    }
+
+    /**
+     * a socket starts connecting,the addresses raced by the nio engine start one each
+     *
+     * @param address address of the origin or the proxy
+     */
+    public void connectStart(InetSocketAddress address) {
+    }
+
+    /**
+     * the tls handshake starts
+     */
+    public void secureConnectStart() {
+    }
+
+    /**
+     * the tls handshake is done
+     */
+    public void secureConnectEnd() {
+    }
+
+    /**
+     * the socket is connected
+     */
+    public void connectEnd() {
+    }
+
+    /**
+     * the exchange got its connection
+     *
+     * @param isReused is it a keep-alive connection of the pool
+     */
+    public void connectionAcquired(boolean isReused) {
+    }
+
+    /**
+     * the request is written
+     *
+     * @param bytes bytes of body,the nio engine counts the request line and headers too
+     */
+    public void requestEnd(long bytes) {
+    }
+
+    /**
+     * the first byte of the response arrived,through HttpURLConnection it is when the headers are read
+     */
+    public void responseStart() {
+    }
+
+    /**
+     * the response body is read to the end
+     *
+     * @param bytes bytes of body
+     */
+    public void responseEnd(long bytes) {
+    }
+
+    /**
+     * the exchange completed
+     *
+     * @param response response
+     */
+    public void callEnd(HttpResponse response) {
+    }
+
+    /**
+     * the exchange failed or was aborted
+     *
+     * @param cause cause
+     */
+    public void callFailed(Throwable cause) {
+    }
+}
@@ -0,0 +1,125 @@
+package cn.org.imaginary.http.event;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a histogram of latencies in microseconds,recorded without locks<br>
+ * values below 32 have a bucket each,above every power of two is split into 16 buckets,
+ * so a percentile is within about 6% of the true value and the histogram is a few KB whatever it records
+ *
+ * @author Imaginary
+ * @see PhaseRecorder
+ * @since 1.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // values below this have a bucket each
+    private static final int LINEAR = SUB_BUCKETS << 1;
+    // highest bit of the largest value,about 12 days
+    private static final int MAX_BIT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_BIT + 1)) - 1;
+    private static final int BUCKETS = LINEAR + (MAX_BIT - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record a latency
+     *
+     * @param nanos nanoseconds,negative ones are ignored
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        final long micros = Math.min(MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        final int bit = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) (micros >>> (bit - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (bit - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * the largest value of a bucket
+     */
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        final int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        final long lower = (long) (SUB_BUCKETS + (index - LINEAR) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * latencies recorded
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        final long n = count.get();
+        return 0 == n ? 0 : total.get() / 1e3 / n;
+    }
+
+    public double getMaxMillis() {
+        return max.get() / 1e3;
+    }
+
+    /**
+     * the latency which the given percentage of latencies are at or below
+     *
+     * @param percentile in (0, 100]
+     * @return milliseconds,0 if nothing is recorded
+     */
+    public double percentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]");
+        }
+        final long n = count.get();
+        if (0 == n) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get()) / 1e3;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[count: {}; mean: {}ms; p50: {}ms; p99: {}ms; max: {}ms]",
+                getCount(), round(getMeanMillis()), round(percentile(50)), round(percentile(99)), round(getMaxMillis()));
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 100) / 100.0;
+    }
+}
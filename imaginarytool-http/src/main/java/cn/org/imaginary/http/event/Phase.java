@@ -0,0 +1,39 @@
+package cn.org.imaginary.http.event;
+
+/**
+ * the phases of an exchange timed by {@link PhaseTimings}
+ *
+ * @author Imaginary
+ * @see PhaseRecorder
+ * @since 1.0
+ */
+public enum Phase {
+    /**
+     * resolving the host
+     */
+    DNS,
+    /**
+     * connecting the socket,with the tls handshake through HttpURLConnection
+     */
+    CONNECT,
+    /**
+     * the tls handshake
+     */
+    SECURE_CONNECT,
+    /**
+     * writing the request once the connection is ready
+     */
+    REQUEST,
+    /**
+     * waiting for the first byte of the response after the request is written
+     */
+    TTFB,
+    /**
+     * reading the response body
+     */
+    RESPONSE,
+    /**
+     * the whole exchange
+     */
+    TOTAL
+}
@@ -0,0 +1,179 @@
+package cn.org.imaginary.http.event;
+
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpUtils;
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * times every phase of the exchanges it observes and aggregates them into latency histograms per host,
+ * so a slow host shows whether dns,connect,tls,the server or the download is to blame<br>
+ * usage:
+ * <pre>
+ * PhaseRecorder recorder = PhaseRecorder.create();
+ * HttpRequest.get(url).setEventListener(recorder).execute();
+ * PhaseRecorder.HostStats stats = recorder.get("api.example.com:443");
+ * double ttfb = stats.histogram(Phase.TTFB).percentile(99);
+ * </pre>
+ *
+ * @author Imaginary
+ * @see PhaseTimings
+ * @since 1.0
+ */
+public class PhaseRecorder implements HttpEventListener.Factory {
+    private final ConcurrentMap<String, HostStats> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * create recorder
+     *
+     * @return PhaseRecorder
+     */
+    public static PhaseRecorder create() {
+        return new PhaseRecorder();
+    }
+
+    @Override
+    public HttpEventListener create(HttpRequest request) {
+        return new PhaseTimings(this, HttpUtils.hostKey(request));
+    }
+
+    /**
+     * add the timings of an ended exchange to the stats of its host
+     *
+     * @param timings timings
+     */
+    public void record(PhaseTimings timings) {
+        get(timings.getKey()).record(timings);
+    }
+
+    /**
+     * the stats of a host,created on first use
+     *
+     * @param key host:port as {@link HttpUtils#hostKey(HttpRequest)}
+     * @return HostStats
+     */
+    public HostStats get(String key) {
+        HostStats stats = hosts.get(key);
+        if (null == stats) {
+            final HostStats created = new HostStats(key);
+            stats = hosts.putIfAbsent(key, created);
+            if (null == stats) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * the stats recorded so far
+     *
+     * @return stats by host
+     */
+    public Map<String, HostStats> getHosts() {
+        return new HashMap<>(hosts);
+    }
+
+    /**
+     * forget everything recorded
+     */
+    public void clear() {
+        hosts.clear();
+    }
+
+    /**
+     * the phase histograms and counters of one host
+     */
+    public static final class HostStats {
+        private final String key;
+        private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failedCalls = new AtomicLong();
+        private final AtomicLong reusedConnections = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        private HostStats(String key) {
+            this.key = key;
+            // filled once and only read afterwards
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new LatencyHistogram());
+            }
+        }
+
+        private void record(PhaseTimings timings) {
+            calls.incrementAndGet();
+            if (timings.isFailed()) {
+                failedCalls.incrementAndGet();
+            }
+            if (timings.isReused()) {
+                reusedConnections.incrementAndGet();
+            }
+            requestBytes.addAndGet(timings.getRequestBytes());
+            responseBytes.addAndGet(timings.getResponseBytes());
+            for (Phase phase : Phase.values()) {
+                final long nanos = timings.duration(phase);
+                if (nanos >= 0) {
+                    histograms.get(phase).record(nanos);
+                }
+            }
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * the latencies of a phase,a phase which did not happen in an exchange is not recorded
+         *
+         * @param phase phase
+         * @return LatencyHistogram
+         */
+        public LatencyHistogram histogram(Phase phase) {
+            return histograms.get(phase);
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getFailedCalls() {
+            return failedCalls.get();
+        }
+
+        /**
+         * exchanges which ran on a keep-alive connection of the pool
+         *
+         * @return calls
+         */
+        public long getReusedConnections() {
+            return reusedConnections.get();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder(StrUtils.format("[{}: calls: {}; failed: {}; reused: {}; sent: {}; received: {}",
+                    key, getCalls(), getFailedCalls(), getReusedConnections(), getRequestBytes(), getResponseBytes()));
+            for (Phase phase : Phase.values()) {
+                final LatencyHistogram histogram = histograms.get(phase);
+                if (histogram.getCount() > 0) {
+                    sb.append("; ").append(phase.name().toLowerCase()).append(": ").append(histogram);
+                }
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
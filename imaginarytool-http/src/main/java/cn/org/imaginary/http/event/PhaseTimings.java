@@ -0,0 +1,205 @@
+package cn.org.imaginary.http.event;
+
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the System.nanoTime of every event of one exchange and its byte counts,
+ * handed to its {@link PhaseRecorder} when the exchange ends<br>
+ * a connection replaced during the exchange overwrites the timings of the one before
+ *
+ * @author Imaginary
+ * @see Phase
+ * @since 1.0
+ */
+public class PhaseTimings extends HttpEventListener {
+    private final PhaseRecorder recorder;
+    // host:port or the key the recorder aggregates by
+    private final String key;
+    // System.nanoTime of the events,0 until they happen
+    private long callStart;
+    private long dnsStart;
+    private long dnsEnd;
+    private long connectStart;
+    private long secureConnectStart;
+    private long secureConnectEnd;
+    private long connectEnd;
+    private long acquired;
+    private long requestEnd;
+    private long responseStart;
+    private long responseEnd;
+    private long callEnd;
+    private boolean isReused;
+    private boolean isFailed;
+    private long requestBytes;
+    private long responseBytes;
+
+    /**
+     * build timings of an exchange
+     *
+     * @param recorder recorder to hand them to at the end,null to keep them only here
+     * @param key      host:port or group key
+     */
+    public PhaseTimings(PhaseRecorder recorder, String key) {
+        this.recorder = recorder;
+        this.key = key;
+    }
+
+    @Override
+    public void callStart() {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(String host) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(String host, InetAddress[] addresses) {
+        dnsEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(InetSocketAddress address) {
+        // racing attempts keep the start of the first one
+        if (0 == connectStart || 0 != connectEnd) {
+            connectStart = System.nanoTime();
+            connectEnd = 0;
+            secureConnectStart = 0;
+            secureConnectEnd = 0;
+        }
+    }
+
+    @Override
+    public void secureConnectStart() {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd() {
+        secureConnectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd() {
+        connectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectionAcquired(boolean isReused) {
+        acquired = System.nanoTime();
+        this.isReused = isReused;
+    }
+
+    @Override
+    public void requestEnd(long bytes) {
+        requestEnd = System.nanoTime();
+        requestBytes = bytes;
+    }
+
+    @Override
+    public void responseStart() {
+        responseStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseEnd(long bytes) {
+        responseEnd = System.nanoTime();
+        responseBytes = bytes;
+    }
+
+    @Override
+    public void callEnd(HttpResponse response) {
+        end(false);
+    }
+
+    @Override
+    public void callFailed(Throwable cause) {
+        end(true);
+    }
+
+    private void end(boolean isFailed) {
+        if (0 != callEnd) {
+            return;
+        }
+        callEnd = System.nanoTime();
+        this.isFailed = isFailed;
+        if (null != recorder) {
+            recorder.record(this);
+        }
+    }
+
+    /**
+     * the time a phase took
+     *
+     * @param phase phase
+     * @return nanoseconds,-1 if it did not happen,as DNS of a reused connection
+     */
+    public long duration(Phase phase) {
+        switch (phase) {
+            case DNS:
+                return between(dnsStart, dnsEnd);
+            case CONNECT:
+                return between(connectStart, connectEnd);
+            case SECURE_CONNECT:
+                return between(secureConnectStart, secureConnectEnd);
+            case REQUEST:
+                // the nio engine acquires a new connection before it connects
+                return between(Math.max(acquired, Math.max(connectEnd, secureConnectEnd)), requestEnd);
+            case TTFB:
+                return between(requestEnd, responseStart);
+            case RESPONSE:
+                return between(responseStart, responseEnd);
+            default:
+                return between(callStart, callEnd);
+        }
+    }
+
+    private static long between(long start, long end) {
+        return 0 == start || 0 == end || end < start ? -1 : end - start;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * did the exchange run on a keep-alive connection of the pool
+     *
+     * @return true if reused
+     */
+    public boolean isReused() {
+        return isReused;
+    }
+
+    public boolean isFailed() {
+        return isFailed;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[").append(key);
+        for (Phase phase : Phase.values()) {
+            final long nanos = duration(phase);
+            if (nanos >= 0) {
+                sb.append("; ").append(phase.name().toLowerCase()).append(": ")
+                        .append(TimeUnit.NANOSECONDS.toMicros(nanos) / 1e3).append("ms");
+            }
+        }
+        return sb.append(StrUtils.format("; reused: {}; sent: {}; received: {}{}]",
+                isReused, requestBytes, responseBytes, isFailed ? "; failed" : "")).toString();
+    }
+}
@@ -0,0 +1,339 @@
+package cn.org.imaginary.http.limit;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpFuture;
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a token bucket refilled at permitsPerSecond and holding up to burst permits,without locks<br>
+ * it is kept as the generic cell rate algorithm: one atomic long holds the time the bucket is drained until,
+ * a caller takes its permits by moving that time forward with a CAS and learns how long it must wait,
+ * so callers are served in the order they reserve and a blocked caller holds no lock<br>
+ * a batch call may take many permits at once,more than burst permits can only be taken by waiting<br>
+ * usage:
+ * <pre>
+ * RateLimiter limiter = RateLimiter.create(100, 20);
+ * HttpRequest.get(url).setRateLimiter(limiter).execute();
+ * limiter.acquire(5);
+ * if (limiter.tryAcquire(1, 50, TimeUnit.MILLISECONDS)) { ... }
+ * limiter.acquireAsync(1).addCallback(callback);
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RateLimiterRegistry
+ * @since 1.0
+ */
+public class RateLimiter {
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final double permitsPerSecond;
+    private final int burst;
+    // nanoseconds to refill one permit
+    private final long interval;
+    // nanoseconds a full bucket is worth
+    private final long tolerance;
+    // System.nanoTime the bucket is empty until,it is full when this is tolerance or more in the past
+    private final AtomicLong drainedUntil;
+
+    // callers waiting for their permits
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquiredPermits = new AtomicLong();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong waitedCalls = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * build limiter with a full bucket
+     *
+     * @param permitsPerSecond permits refilled a second
+     * @param burst            max permits in the bucket
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.tolerance = interval * burst;
+        this.drainedUntil = new AtomicLong(System.nanoTime() - tolerance);
+    }
+
+    /**
+     * create limiter
+     *
+     * @param permitsPerSecond permits refilled a second
+     * @param burst            max permits in the bucket
+     * @return RateLimiter
+     */
+    public static RateLimiter create(double permitsPerSecond, int burst) {
+        return new RateLimiter(permitsPerSecond, burst);
+    }
+
+    /**
+     * create limiter smoothing calls to the rate,the bucket holds one second of permits
+     *
+     * @param permitsPerSecond permits refilled a second
+     * @return RateLimiter
+     */
+    public static RateLimiter create(double permitsPerSecond) {
+        return new RateLimiter(permitsPerSecond, Math.max(1, (int) permitsPerSecond));
+    }
+
+    /**
+     * take the permits if they can be had within maxWait
+     *
+     * @return nanoseconds to wait for them,-1 if longer than maxWait
+     */
+    private long reserve(int permits, long maxWait) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        final long now = System.nanoTime();
+        while (true) {
+            final long drained = drainedUntil.get();
+            // a bucket idle for long is full,not fuller
+            final long from = drained - now > -tolerance ? drained : now - tolerance;
+            final long next = from + permits * interval;
+            final long wait = next - now;
+            if (wait > maxWait) {
+                rejectedCalls.incrementAndGet();
+                return -1;
+            }
+            if (drainedUntil.compareAndSet(drained, next)) {
+                acquiredPermits.addAndGet(permits);
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * give back permits reserved but not used
+     */
+    private void refund(int permits) {
+        drainedUntil.addAndGet(-permits * interval);
+        acquiredPermits.addAndGet(-permits);
+    }
+
+    /**
+     * take a permit,waiting as long as needed
+     *
+     * @return milliseconds waited
+     * @throws HttpException interrupted while waiting
+     */
+    public long acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * take permits,waiting as long as needed
+     *
+     * @param permits permits,more than burst are allowed
+     * @return milliseconds waited
+     * @throws HttpException interrupted while waiting,the permits are given back
+     */
+    public long acquire(int permits) {
+        final long wait = reserve(permits, Long.MAX_VALUE);
+        sleep(permits, wait);
+        return TimeUnit.NANOSECONDS.toMillis(wait);
+    }
+
+    /**
+     * take a permit if there is one now
+     *
+     * @return true if taken
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * take permits if they can be had within timeout,waiting for them
+     *
+     * @param permits permits
+     * @param timeout max time to wait
+     * @param unit    unit of timeout
+     * @return true if taken,false at once when they would come too late
+     * @throws HttpException interrupted while waiting,the permits are given back
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+        final long wait = reserve(permits, unit.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        sleep(permits, wait);
+        return true;
+    }
+
+    private void sleep(int permits, long wait) {
+        record(wait);
+        if (0 == wait) {
+            return;
+        }
+        waiting.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            refund(permits);
+            Thread.currentThread().interrupt();
+            throw new HttpException(e, "Interrupted waiting for {} permits", permits);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * take permits without blocking,the future completes when they are available
+     *
+     * @param permits permits
+     * @return {@link HttpFuture} completed with the milliseconds waited,cancel it to give the permits back
+     */
+    public HttpFuture<Long> acquireAsync(final int permits) {
+        final HttpFuture<Long> future = new HttpFuture<>();
+        final long wait = reserve(permits, Long.MAX_VALUE);
+        record(wait);
+        if (0 == wait) {
+            future.complete(0L);
+            return future;
+        }
+        waiting.incrementAndGet();
+        // the wait ends once,by the scheduler or by cancel
+        final AtomicBoolean isEnded = new AtomicBoolean();
+        try {
+            final ScheduledFuture<?> scheduled = SchedulerHolder.SCHEDULER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (isEnded.compareAndSet(false, true)) {
+                        waiting.decrementAndGet();
+                        future.complete(TimeUnit.NANOSECONDS.toMillis(wait));
+                    }
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+            future.onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    if (isEnded.compareAndSet(false, true)) {
+                        scheduled.cancel(false);
+                        waiting.decrementAndGet();
+                        refund(permits);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            refund(permits);
+            future.fail(new HttpException(e, "Rate limiter scheduler rejected the wait"));
+        }
+        return future;
+    }
+
+    private void record(long wait) {
+        if (wait <= 0) {
+            return;
+        }
+        waitedCalls.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        long max = maxWaitNanos.get();
+        while (wait > max && !maxWaitNanos.compareAndSet(max, wait)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * permits in the bucket now
+     *
+     * @return permits,0 when callers are waiting
+     */
+    public int availablePermits() {
+        final long refilled = System.nanoTime() - drainedUntil.get();
+        return refilled <= 0 ? 0 : (int) Math.min(burst, refilled / interval);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * callers waiting for their permits now,the depth of the queue
+     *
+     * @return callers
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * permits taken since the limiter was created
+     *
+     * @return permits
+     */
+    public long getAcquiredPermits() {
+        return acquiredPermits.get();
+    }
+
+    /**
+     * tryAcquire calls which gave up
+     *
+     * @return calls
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    /**
+     * calls which had to wait
+     *
+     * @return calls
+     */
+    public long getWaitedCalls() {
+        return waitedCalls.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    /**
+     * average wait of the calls which had to wait
+     *
+     * @return milliseconds
+     */
+    public double getAverageWaitMillis() {
+        final long calls = waitedCalls.get();
+        return 0 == calls ? 0 : totalWaitNanos.get() / 1e6 / calls;
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[rate: {}/s; burst: {}; available: {}; waiting: {}; acquired: {}; rejected: {}; maxWait: {}ms]",
+                permitsPerSecond, burst, availablePermits(), getWaiting(), getAcquiredPermits(), getRejectedCalls(), getMaxWaitMillis());
+    }
+
+    /**
+     * lazy holder of the thread completing asynchronous waits
+     */
+    private static class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, StrUtils.format("imaginary-limiter-{}", THREAD_ID.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
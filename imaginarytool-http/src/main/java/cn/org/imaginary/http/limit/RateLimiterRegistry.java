@@ -0,0 +1,93 @@
+package cn.org.imaginary.http.limit;
+
+import cn.org.imaginary.http.HttpRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * the rate limiters of a client,one per host or per group key given with the request<br>
+ * a host or group without its own limit gets a limiter with the default rate on first use<br>
+ * usage:
+ * <pre>
+ * RateLimiterRegistry limiters = RateLimiterRegistry.create(50, 10).setLimit("api.partner.com:443", 5, 1);
+ * HttpRequest.get(url).setRateLimiter(limiters).execute();
+ * HttpRequest.post(batchUrl).setRateLimiter(limiters, "partner-batch", 10).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see RateLimiter
+ * @since 1.0
+ */
+public class RateLimiterRegistry {
+    private final double permitsPerSecond;
+    private final int burst;
+    private final ConcurrentMap<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * build registry
+     *
+     * @param permitsPerSecond default permits refilled a second of a host or group
+     * @param burst            default max permits in the bucket of a host or group
+     */
+    public RateLimiterRegistry(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * create registry
+     *
+     * @param permitsPerSecond default permits refilled a second of a host or group
+     * @param burst            default max permits in the bucket of a host or group
+     * @return RateLimiterRegistry
+     */
+    public static RateLimiterRegistry create(double permitsPerSecond, int burst) {
+        return new RateLimiterRegistry(permitsPerSecond, burst);
+    }
+
+    /**
+     * set the limit of a host or group,replacing its limiter
+     *
+     * @param key              host:port as {@link cn.org.imaginary.http.HttpUtils#hostKey(HttpRequest)} or group key
+     * @param permitsPerSecond permits refilled a second
+     * @param burst            max permits in the bucket
+     * @return RateLimiterRegistry
+     */
+    public RateLimiterRegistry setLimit(String key, double permitsPerSecond, int burst) {
+        limiters.put(key, new RateLimiter(permitsPerSecond, burst));
+        return this;
+    }
+
+    /**
+     * the limiter of a host or group,created with the default rate on first use
+     *
+     * @param key host:port or group key
+     * @return RateLimiter
+     */
+    public RateLimiter get(String key) {
+        RateLimiter limiter = limiters.get(key);
+        if (null == limiter) {
+            final RateLimiter created = new RateLimiter(permitsPerSecond, burst);
+            limiter = limiters.putIfAbsent(key, created);
+            if (null == limiter) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * the limiters created so far
+     *
+     * @return limiters by key
+     */
+    public Map<String, RateLimiter> getLimiters() {
+        return new HashMap<>(limiters);
+    }
+}
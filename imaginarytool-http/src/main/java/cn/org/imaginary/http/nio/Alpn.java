@@ -0,0 +1,85 @@
+package cn.org.imaginary.http.nio;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.lang.reflect.Method;
+
+/**
+ * tls application layer protocol negotiation of {@link SSLEngine},
+ * the api comes with java 9 and 8u252,so it is called by reflection to keep running on java 7
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class Alpn {
+    // protocol id of http/2 over tls
+    static final String H2 = "h2";
+    static final String HTTP_1_1 = "http/1.1";
+
+    private static final Method SET_APPLICATION_PROTOCOLS;
+    private static final Method GET_APPLICATION_PROTOCOL;
+
+    static {
+        Method setter = null;
+        Method getter = null;
+        try {
+            setter = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+            getter = SSLEngine.class.getMethod("getApplicationProtocol");
+        } catch (NoSuchMethodException e) {
+            setter = null;
+            getter = null;
+        }
+        SET_APPLICATION_PROTOCOLS = setter;
+        GET_APPLICATION_PROTOCOL = getter;
+    }
+
+    private Alpn() {
+    }
+
+    /**
+     * does the running jdk support alpn
+     *
+     * @return true if supported
+     */
+    static boolean isSupported() {
+        return null != SET_APPLICATION_PROTOCOLS;
+    }
+
+    /**
+     * offer protocols in the client hello
+     *
+     * @param engine    client engine before handshake
+     * @param protocols protocols in order of preference
+     */
+    static void setProtocols(SSLEngine engine, String... protocols) {
+        if (!isSupported()) {
+            return;
+        }
+        final SSLParameters parameters = engine.getSSLParameters();
+        try {
+            SET_APPLICATION_PROTOCOLS.invoke(parameters, (Object) protocols);
+        } catch (Exception e) {
+            return;
+        }
+        engine.setSSLParameters(parameters);
+    }
+
+    /**
+     * the protocol chosen by server
+     *
+     * @param engine engine after handshake
+     * @return protocol id,null when none was negotiated
+     */
+    static String getProtocol(SSLEngine engine) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            final String protocol = (String) GET_APPLICATION_PROTOCOL.invoke(engine);
+            return null == protocol || protocol.isEmpty() ? null : protocol;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
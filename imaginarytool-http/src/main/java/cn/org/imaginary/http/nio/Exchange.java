@@ -0,0 +1,164 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpCallback;
+import cn.org.imaginary.http.HttpFuture;
+import cn.org.imaginary.http.HttpMethod;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.body.BodySource;
+import cn.org.imaginary.http.body.RequestBody;
+import cn.org.imaginary.http.event.HttpEventListener;
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.http.pool.PoolEntry;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * one request and its response on a {@link NioConnection}
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class Exchange {
+    final HttpRequest request;
+    final URL url;
+    final HttpFuture<HttpResponse> future;
+    // lease of the connection,null for a http/2 stream whose connection holds the lease
+    PoolEntry poolEntry;
+    // connect and read timeout in millis,0 means none
+    final int timeout;
+    // serialized request,read mode
+    ByteBuffer out;
+    // body streamed after out,null if none
+    final RequestBody body;
+    // open bytes of body,null until sending starts
+    private BodySource source;
+    // bytes of body read but not yet written,read mode
+    ByteBuffer bodyBuffer;
+    boolean isBodySent;
+    ResponseParser parser;
+    // connection attempts,a stale keep-alive connection is retried once
+    int attempts;
+    // deadline of current IO step in nanos,0 means none
+    long deadline;
+    // phases are reported to,null means not observed
+    final HttpEventListener listener;
+    boolean isRequestEnded;
+
+    Exchange(HttpRequest request, URL url, HttpFuture<HttpResponse> future, PoolEntry poolEntry, int timeout,
+             ByteBuffer out, RequestBody body) {
+        this.request = request;
+        this.url = url;
+        this.future = future;
+        this.poolEntry = poolEntry;
+        this.timeout = timeout;
+        this.out = out;
+        this.body = body;
+        this.parser = new ResponseParser(HttpMethod.HEAD.equals(request.getMethod()));
+        final HttpEventListener.Factory listeners = request.getEventListener();
+        this.listener = null == listeners ? null : listeners.create(request);
+        if (null != listener) {
+            listener.callStart();
+            future.addCallback(new HttpCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse result) {
+                    listener.callEnd(result);
+                }
+
+                @Override
+                public void failed(Throwable e) {
+                    listener.callFailed(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * the request is written,report it once
+     */
+    void requestEnded() {
+        if (null != listener && !isRequestEnded) {
+            isRequestEnded = true;
+            listener.requestEnd(out.limit() + (null == body ? 0 : Math.max(0, body.contentLength())));
+        }
+    }
+
+    /**
+     * push the deadline forward after IO progress
+     */
+    void touch() {
+        deadline = timeout > 0 ? System.nanoTime() + timeout * 1000000L : 0;
+    }
+
+    /**
+     * can the request be sent again on a new connection
+     *
+     * @return true if nothing of the response arrived,the method is idempotent and the body can be sent again
+     */
+    boolean isRetryable() {
+        final HttpMethod method = request.getMethod();
+        return 0 == attempts && !parser.isStarted() && (null == body || body.isRepeatable())
+                && !HttpMethod.POST.equals(method) && !HttpMethod.PATCH.equals(method) && !HttpMethod.CONNECT.equals(method);
+    }
+
+    boolean hasBodyToSend() {
+        return null != body && !isBodySent;
+    }
+
+    /**
+     * the streamed body,opened on first use
+     */
+    BodySource source() throws IOException {
+        if (null == source) {
+            source = body.newSource();
+        }
+        return source;
+    }
+
+    /**
+     * close the body source,the exchange is done or sent again
+     */
+    void closeBody() {
+        if (null != source) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            source = null;
+        }
+    }
+
+    /**
+     * give back the body buffer,it is sent to the end or the exchange is sent again
+     */
+    void releaseBodyBuffer() {
+        if (null != bodyBuffer) {
+            BufferPool.getDefault().release(bodyBuffer);
+            bodyBuffer = null;
+        }
+    }
+
+    /**
+     * reset for another attempt
+     */
+    void rewind() {
+        attempts++;
+        requeue();
+    }
+
+    /**
+     * reset to be sent again without counting an attempt,the pipelined request was not first in line
+     */
+    void requeue() {
+        out.rewind();
+        closeBody();
+        releaseBodyBuffer();
+        isBodySent = false;
+        isRequestEnded = false;
+        parser = new ResponseParser(HttpMethod.HEAD.equals(request.getMethod()));
+    }
+}
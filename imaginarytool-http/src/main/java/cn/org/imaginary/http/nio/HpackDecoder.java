@@ -0,0 +1,111 @@
+package cn.org.imaginary.http.nio;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * hpack header block decoder of one http/2 connection,see RFC 7541
+ *
+ * @author Imaginary
+ * @see HpackEncoder
+ * @since 1.0
+ */
+final class HpackDecoder {
+    private final HpackTable table = new HpackTable();
+
+    /**
+     * decode a complete header block
+     *
+     * @param block header block in read mode,consumed to the end
+     * @return fields in order,each is a name and a value
+     * @throws IOException a case of malformed block,a connection error of COMPRESSION_ERROR
+     */
+    List<String[]> decode(ByteBuffer block) throws IOException {
+        final List<String[]> fields = new ArrayList<>();
+        boolean isFieldSeen = false;
+        try {
+            while (block.hasRemaining()) {
+                final int b = block.get(block.position()) & 0xff;
+                if (0 != (b & 0x80)) {
+                    // indexed field
+                    fields.add(entry(readInt(block, 7)));
+                    isFieldSeen = true;
+                } else if (0x40 == (b & 0xc0)) {
+                    // literal with incremental indexing
+                    final String[] field = literal(block, readInt(block, 6));
+                    table.add(field[0], field[1]);
+                    fields.add(field);
+                    isFieldSeen = true;
+                } else if (0x20 == (b & 0xe0)) {
+                    // dynamic table size update,only allowed at the beginning of a block
+                    if (isFieldSeen) {
+                        throw new IOException("HPACK table size update after a field");
+                    }
+                    final int maxSize = readInt(block, 5);
+                    if (maxSize > HpackTable.DEFAULT_MAX_SIZE) {
+                        throw new IOException("HPACK table size " + maxSize + " exceeds the limit");
+                    }
+                    table.setMaxSize(maxSize);
+                } else {
+                    // literal without indexing or never indexed
+                    fields.add(literal(block, readInt(block, 4)));
+                    isFieldSeen = true;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("HPACK block truncated");
+        }
+        return fields;
+    }
+
+    private String[] entry(int index) throws IOException {
+        final String[] entry = table.get(index);
+        if (null == entry) {
+            throw new IOException("HPACK index " + index + " out of range");
+        }
+        return entry;
+    }
+
+    private String[] literal(ByteBuffer block, int nameIndex) throws IOException {
+        final String name = 0 == nameIndex ? readString(block) : entry(nameIndex)[0];
+        return new String[]{name, readString(block)};
+    }
+
+    /**
+     * read an integer with N-bit prefix,see RFC 7541 section 5.1
+     */
+    static int readInt(ByteBuffer block, int prefixBits) throws IOException {
+        final int max = (1 << prefixBits) - 1;
+        int value = block.get() & max;
+        if (value < max) {
+            return value;
+        }
+        for (int shift = 0; shift < 28; shift += 7) {
+            final int b = block.get() & 0xff;
+            value += (b & 0x7f) << shift;
+            if (0 == (b & 0x80)) {
+                return value;
+            }
+        }
+        throw new IOException("HPACK integer overflow");
+    }
+
+    private static String readString(ByteBuffer block) throws IOException {
+        final boolean isHuffman = 0 != (block.get(block.position()) & 0x80);
+        final int length = readInt(block, 7);
+        if (length > block.remaining()) {
+            throw new IOException("HPACK string length " + length + " exceeds the block");
+        }
+        if (isHuffman) {
+            return Huffman.decode(block, length);
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (block.get() & 0xff);
+        }
+        return new String(chars);
+    }
+}
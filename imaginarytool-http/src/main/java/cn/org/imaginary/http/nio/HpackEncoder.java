@@ -0,0 +1,106 @@
+package cn.org.imaginary.http.nio;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * hpack header block encoder of one http/2 connection,see RFC 7541<br>
+ * repeated fields become one byte indexes of the dynamic table,strings are huffman coded when shorter
+ *
+ * @author Imaginary
+ * @see HpackDecoder
+ * @since 1.0
+ */
+final class HpackEncoder {
+    private final HpackTable table = new HpackTable();
+    // smallest and latest max size set by peer since the last block,-1 if not changed
+    private int minPendingSize = -1;
+    private int pendingSize = -1;
+
+    /**
+     * apply SETTINGS_HEADER_TABLE_SIZE of peer,the table never grows beyond the default size
+     *
+     * @param maxSize max size in octets
+     */
+    void setMaxSize(int maxSize) {
+        final int size = Math.min(maxSize, HpackTable.DEFAULT_MAX_SIZE);
+        minPendingSize = -1 == minPendingSize ? size : Math.min(minPendingSize, size);
+        pendingSize = size;
+    }
+
+    /**
+     * start a header block,emit the pending table size updates
+     *
+     * @param out sink
+     */
+    void begin(ByteArrayOutputStream out) {
+        if (-1 == pendingSize) {
+            return;
+        }
+        if (minPendingSize < pendingSize) {
+            writeInt(out, 0x20, 5, minPendingSize);
+        }
+        writeInt(out, 0x20, 5, pendingSize);
+        table.setMaxSize(pendingSize);
+        minPendingSize = -1;
+        pendingSize = -1;
+    }
+
+    /**
+     * encode a field
+     *
+     * @param out         sink
+     * @param name        lowercase name
+     * @param value       value
+     * @param isSensitive never indexed,like authorization
+     */
+    void encode(ByteArrayOutputStream out, String name, String value, boolean isSensitive) {
+        final int index = table.find(name, value);
+        if (index > 0) {
+            writeInt(out, 0x80, 7, index);
+            return;
+        }
+        final int nameIndex = -index;
+        if (isSensitive || HpackTable.entrySize(name, value) > table.getMaxSize() / 2) {
+            // literal never indexed,or without indexing when too big to keep
+            writeInt(out, isSensitive ? 0x10 : 0x00, 4, nameIndex);
+        } else {
+            writeInt(out, 0x40, 6, nameIndex);
+            table.add(name, value);
+        }
+        if (0 == nameIndex) {
+            writeString(out, name);
+        }
+        writeString(out, value);
+    }
+
+    /**
+     * write an integer with N-bit prefix,see RFC 7541 section 5.1
+     */
+    static void writeInt(ByteArrayOutputStream out, int flags, int prefixBits, int value) {
+        final int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        final int huffmanLength = Huffman.encodedLength(value);
+        if (huffmanLength < value.length()) {
+            writeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(value, out);
+        } else {
+            writeInt(out, 0x00, 7, value.length());
+            for (int i = 0; i < value.length(); i++) {
+                out.write(value.charAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package cn.org.imaginary.http.nio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the header table of hpack,the static table followed by a dynamic table,see RFC 7541 section 2.3
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class HpackTable {
+    // default max size of the dynamic table
+    static final int DEFAULT_MAX_SIZE = 4096;
+    // overhead of an entry in octets
+    private static final int ENTRY_OVERHEAD = 32;
+
+    static final String[][] STATIC = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    // 1-based index of the first static entry with a name
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+    // 1-based index of static entries with a value
+    private static final Map<String, Integer> STATIC_FIELDS = new HashMap<>();
+
+    static {
+        for (int i = STATIC.length - 1; i >= 0; i--) {
+            STATIC_NAMES.put(STATIC[i][0], i + 1);
+            if (!STATIC[i][1].isEmpty()) {
+                STATIC_FIELDS.put(STATIC[i][0] + '\0' + STATIC[i][1], i + 1);
+            }
+        }
+    }
+
+    // dynamic entries in a ring,the newest at head
+    private String[][] entries = new String[16][];
+    private int head;
+    private int count;
+    private int size;
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * get an entry of the whole table
+     *
+     * @param index 1-based index,static entries first
+     * @return name and value,null when out of range
+     */
+    String[] get(int index) {
+        if (index <= 0) {
+            return null;
+        }
+        if (index <= STATIC.length) {
+            return STATIC[index - 1];
+        }
+        final int i = index - STATIC.length - 1;
+        return i < count ? entries[(head + i) % entries.length] : null;
+    }
+
+    /**
+     * find an entry
+     *
+     * @param name  lowercase name
+     * @param value value
+     * @return index of the entry with both name and value,or negative index of an entry with the name,0 if none
+     */
+    int find(String name, String value) {
+        final Integer field = STATIC_FIELDS.get(name + '\0' + value);
+        if (null != field) {
+            return field;
+        }
+        int nameIndex = 0;
+        for (int i = 0; i < count; i++) {
+            final String[] entry = entries[(head + i) % entries.length];
+            if (entry[0].equals(name)) {
+                if (entry[1].equals(value)) {
+                    return STATIC.length + i + 1;
+                }
+                if (0 == nameIndex) {
+                    nameIndex = STATIC.length + i + 1;
+                }
+            }
+        }
+        final Integer staticName = STATIC_NAMES.get(name);
+        if (null != staticName) {
+            return -staticName;
+        }
+        return -nameIndex;
+    }
+
+    /**
+     * add an entry to the dynamic table,older entries are evicted to make room
+     *
+     * @param name  name
+     * @param value value
+     */
+    void add(String name, String value) {
+        final int entrySize = entrySize(name, value);
+        if (entrySize > maxSize) {
+            // an entry larger than the table empties it
+            clear();
+            return;
+        }
+        evict(maxSize - entrySize);
+        if (count == entries.length) {
+            final String[][] bigger = new String[entries.length * 2][];
+            for (int i = 0; i < count; i++) {
+                bigger[i] = entries[(head + i) % entries.length];
+            }
+            entries = bigger;
+            head = 0;
+        }
+        head = (head - 1 + entries.length) % entries.length;
+        entries[head] = new String[]{name, value};
+        count++;
+        size += entrySize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * change the max size of the dynamic table
+     *
+     * @param maxSize max size in octets
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    static int entrySize(String name, String value) {
+        return name.length() + value.length() + ENTRY_OVERHEAD;
+    }
+
+    private void evict(int limit) {
+        while (size > limit && count > 0) {
+            final int tail = (head + count - 1) % entries.length;
+            size -= entrySize(entries[tail][0], entries[tail][1]);
+            entries[tail] = null;
+            count--;
+        }
+    }
+
+    private void clear() {
+        evict(-1);
+        head = 0;
+    }
+}
@@ -0,0 +1,916 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.body.BodySource;
+import cn.org.imaginary.http.pool.PoolEntry;
+import cn.org.imaginary.http.pool.Route;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a http/2 connection multiplexing many exchanges,see RFC 7540<br>
+ * it runs on a {@link NioConnection} once the connection is open with prior knowledge(h2c) or alpn "h2",
+ * every method except {@link #await(long)} and {@link #isUsable()} is called in the worker thread of the connection
+ *
+ * @author Imaginary
+ * @see Http2Stream
+ * @since 1.0
+ */
+final class Http2Session {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    private static final int MAX_WINDOW = Integer.MAX_VALUE;
+    // receive window of the connection and every stream,the whole response is buffered anyway
+    private static final int LOCAL_WINDOW = 16 * 1024 * 1024;
+    // DATA frames buffered before the socket takes them,so streamed bodies hold a constant heap
+    private static final int MAX_BUFFERED_DATA = 4 * DEFAULT_MAX_FRAME_SIZE;
+
+    // frame types
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    // frame flags
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    // settings
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    // error codes
+    private static final int NO_ERROR = 0x0;
+    private static final int PROTOCOL_ERROR = 0x1;
+    private static final int FLOW_CONTROL_ERROR = 0x3;
+    private static final int FRAME_SIZE_ERROR = 0x6;
+    private static final int CANCEL = 0x8;
+    private static final int COMPRESSION_ERROR = 0x9;
+
+    // states
+    private static final int CONNECTING = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSED = 2;
+    // the server chose http/1.1 in alpn
+    private static final int HTTP_1 = 3;
+
+    private final NioHttpEngine engine;
+    private final Route route;
+    // counted down when the connection is open,closed or fell back to http/1.1
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile int state = CONNECTING;
+    private volatile boolean isGoingAway;
+    private NioConnection connection;
+    // the lease of the connection,held for its whole life
+    private PoolEntry poolEntry;
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final HpackDecoder decoder = new HpackDecoder();
+    private final Map<Integer, Http2Stream> streams = new LinkedHashMap<>();
+    // exchanges waiting for the MAX_CONCURRENT_STREAMS of server
+    private final Queue<Exchange> pending = new ArrayDeque<>();
+    private int nextStreamId = 1;
+    // frames read,write mode
+    private ByteBuffer in;
+    // frames to write,write mode
+    private ByteBuffer out;
+    // more DATA can be sent once out is flushed
+    private boolean isDataBlocked;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int receivedUnacked;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+    // header block split into CONTINUATION frames
+    private int continuationStreamId;
+    private boolean isContinuationEndStream;
+    private ByteArrayOutputStream continuationBlock;
+    // System.nanoTime() since no stream is open
+    private long idleSince;
+    // why the connection failed
+    private Throwable cause;
+
+    Http2Session(NioHttpEngine engine, Route route) {
+        this.engine = engine;
+        this.route = route;
+    }
+
+    void bind(NioConnection connection) {
+        this.connection = connection;
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    NioConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * wait until the connection is set up,called by the threads which send requests meanwhile
+     *
+     * @param timeout timeout in millis,0 means no timeout
+     * @return false on timeout
+     * @throws InterruptedException a case of interrupted
+     */
+    boolean await(long timeout) throws InterruptedException {
+        if (timeout <= 0) {
+            ready.await();
+            return true;
+        }
+        return ready.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * can new exchanges be sent on this connection
+     *
+     * @return true if open and not going away
+     */
+    boolean isUsable() {
+        return OPEN == state && !isGoingAway;
+    }
+
+    /**
+     * the server chose http/1.1,the exchange which opened the connection goes on with it
+     */
+    void fallback() {
+        state = HTTP_1;
+        engine.http1Only(route, this);
+        ready.countDown();
+    }
+
+    /**
+     * start http/2 on the open connection
+     *
+     * @param buffer plain bytes read so far,write mode
+     * @param first  the exchange which opened the connection
+     */
+    void open(ByteBuffer buffer, Exchange first) {
+        this.poolEntry = first.poolEntry;
+        first.poolEntry = null;
+        this.in = ByteBuffer.allocate(Math.max(buffer.capacity(), FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE));
+        buffer.flip();
+        this.in.put(buffer);
+        this.out = ByteBuffer.allocate(Math.max(buffer.capacity(), 4 * 1024));
+
+        out.put(PREFACE);
+        frameHeader(3 * 6, SETTINGS, 0, 0);
+        setting(SETTINGS_ENABLE_PUSH, 0);
+        setting(SETTINGS_INITIAL_WINDOW_SIZE, LOCAL_WINDOW);
+        setting(SETTINGS_MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+        windowUpdate(0, LOCAL_WINDOW - DEFAULT_WINDOW);
+
+        idleSince = System.nanoTime();
+        state = OPEN;
+        ready.countDown();
+        start(first);
+    }
+
+    /**
+     * start an exchange as a new stream,or queue it when the server allows no more streams
+     *
+     * @param exchange exchange
+     */
+    void start(Exchange exchange) {
+        if (exchange.future.isDone()) {
+            return;
+        }
+        if (OPEN != state || isGoingAway) {
+            failExchange(exchange, new IOException("Http/2 connection is closing"));
+            return;
+        }
+        exchange.touch();
+        if (streams.size() >= peerMaxConcurrentStreams) {
+            pending.add(exchange);
+            return;
+        }
+        openStream(exchange);
+        pump();
+    }
+
+    /**
+     * cancel an exchange,the stream is reset
+     *
+     * @param exchange exchange
+     */
+    void cancel(Exchange exchange) {
+        if (pending.remove(exchange)) {
+            return;
+        }
+        for (Http2Stream stream : streams.values()) {
+            if (stream.exchange == exchange) {
+                streams.remove(stream.id);
+                rstStream(stream.id, CANCEL);
+                streamClosed();
+                pump();
+                return;
+            }
+        }
+    }
+
+    /**
+     * write pending frames and read the frames arrived
+     *
+     * @throws IOException a case of IO or protocol error
+     */
+    void transfer() throws IOException {
+        if (flush() && isDataBlocked) {
+            writeData();
+        }
+        while (CLOSED != state) {
+            final int n = connection.read(in);
+            if (0 == n) {
+                break;
+            }
+            if (n < 0) {
+                throw new EOFException("Http/2 connection closed by server");
+            }
+            in.flip();
+            try {
+                readFrames();
+            } finally {
+                in.compact();
+            }
+        }
+        if (CLOSED != state) {
+            // frames read may have written acks,window updates and more data
+            afterIo(flush());
+        }
+    }
+
+    /**
+     * fail the streams past deadline and close the connection idle too long
+     *
+     * @param now System.nanoTime()
+     * @return nanos until the next deadline,Long.MAX_VALUE if none
+     */
+    long checkTimeout(long now) {
+        long next = Long.MAX_VALUE;
+        boolean isChanged = false;
+        for (Http2Stream stream : new ArrayList<>(streams.values())) {
+            final long deadline = stream.exchange.deadline;
+            if (0 == deadline) {
+                continue;
+            }
+            if (deadline - now <= 0) {
+                streams.remove(stream.id);
+                rstStream(stream.id, CANCEL);
+                failExchange(stream.exchange, new SocketTimeoutException("Read timed out"));
+                isChanged = true;
+            } else {
+                next = Math.min(next, deadline - now);
+            }
+        }
+        if (isChanged) {
+            streamClosed();
+            pump();
+        }
+        if (OPEN == state && streams.isEmpty() && pending.isEmpty()) {
+            final long idle = TimeUnit.MILLISECONDS.toNanos(engine.getPool().getIdleTimeout()) - (now - idleSince);
+            if (idle <= 0) {
+                goAway(NO_ERROR);
+                return Long.MAX_VALUE;
+            }
+            next = Math.min(next, idle);
+        }
+        return next;
+    }
+
+    /**
+     * fail the connection and every stream on it
+     *
+     * @param e cause
+     */
+    void fail(Throwable e) {
+        if (null == cause) {
+            cause = e;
+        }
+        try {
+            flush();
+        } catch (IOException ignore) {
+            // the connection is broken anyway
+        }
+        connection.close();
+    }
+
+    /**
+     * the connection is closed,fail the streams left and give back the lease
+     */
+    void closed() {
+        final int previous = state;
+        if (CLOSED == previous || HTTP_1 == previous) {
+            return;
+        }
+        state = CLOSED;
+        engine.removeHttp2(route, this);
+        ready.countDown();
+        if (OPEN != previous) {
+            // the exchange which opened the connection fails by itself
+            return;
+        }
+        final Throwable reason = null == cause ? new EOFException("Http/2 connection closed") : cause;
+        for (Http2Stream stream : streams.values()) {
+            failExchange(stream.exchange, reason);
+        }
+        streams.clear();
+        Exchange exchange;
+        while (null != (exchange = pending.poll())) {
+            failExchange(exchange, reason);
+        }
+        engine.getPool().release(poolEntry, false, -1);
+    }
+
+    private void openStream(Exchange exchange) {
+        final int id = nextStreamId;
+        nextStreamId += 2;
+        if (nextStreamId < 0) {
+            // stream ids are used up,new exchanges go to a new connection
+            isGoingAway = true;
+            engine.removeHttp2(route, this);
+        }
+        final Http2Stream stream = new Http2Stream(id, exchange, peerInitialWindow);
+        streams.put(id, stream);
+
+        final ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+        encoder.begin(block);
+        for (String[] field : RequestSerializer.http2Fields(exchange.request, exchange.body, exchange.url)) {
+            encoder.encode(block, field[0], field[1], isSensitive(field[0]));
+        }
+        if (null != exchange.body) {
+            stream.streamedRemaining = exchange.body.contentLength();
+        } else {
+            final byte[] body = exchange.request.getBodyBytes();
+            if (null != body && body.length > 0) {
+                stream.body = ByteBuffer.wrap(body);
+            }
+        }
+        writeHeaders(id, block.toByteArray(), !stream.hasBodyToSend());
+        writeData();
+    }
+
+    private static boolean isSensitive(String name) {
+        return "authorization".equals(name) || "proxy-authorization".equals(name);
+    }
+
+    private void writeHeaders(int streamId, byte[] block, boolean isEndStream) {
+        int offset = 0;
+        boolean isFirst = true;
+        do {
+            final int length = Math.min(block.length - offset, peerMaxFrameSize);
+            final boolean isLast = offset + length == block.length;
+            int flags = isLast ? FLAG_END_HEADERS : 0;
+            if (isFirst && isEndStream) {
+                flags |= FLAG_END_STREAM;
+            }
+            frameHeader(length, isFirst ? HEADERS : CONTINUATION, flags, streamId);
+            out.put(block, offset, length);
+            offset += length;
+            isFirst = false;
+        } while (offset < block.length);
+    }
+
+    /**
+     * send request bodies as far as the flow control windows allow,
+     * streamed bodies stop at MAX_BUFFERED_DATA and go on when out is flushed
+     */
+    private void writeData() {
+        isDataBlocked = false;
+        Http2Stream broken = null;
+        IOException error = null;
+        loop:
+        for (Http2Stream stream : streams.values()) {
+            while (stream.hasBodyToSend() && sendWindow > 0 && stream.sendWindow > 0) {
+                if (null == stream.body && out.position() >= MAX_BUFFERED_DATA) {
+                    isDataBlocked = true;
+                    break loop;
+                }
+                if (null == stream.body && stream.streamedRemaining < 0) {
+                    final int sent;
+                    try {
+                        sent = writeUnknownLength(stream);
+                    } catch (IOException e) {
+                        broken = stream;
+                        error = e;
+                        break loop;
+                    }
+                    if (sent <= 0) {
+                        // the end was sent,or the source has nothing now
+                        break;
+                    }
+                    continue;
+                }
+                final long remaining = null == stream.body ? stream.streamedRemaining : stream.body.remaining();
+                final int length = (int) Math.min(Math.min(remaining, peerMaxFrameSize),
+                        Math.min(sendWindow, stream.sendWindow));
+                final boolean isLast = length == remaining;
+                final int mark = out.position();
+                frameHeader(length, DATA, isLast ? FLAG_END_STREAM : 0, stream.id);
+                if (null == stream.body) {
+                    try {
+                        readStreamed(stream.exchange, length);
+                    } catch (IOException e) {
+                        out.position(mark);
+                        broken = stream;
+                        error = e;
+                        break loop;
+                    }
+                    stream.streamedRemaining -= length;
+                } else {
+                    final int limit = stream.body.limit();
+                    stream.body.limit(stream.body.position() + length);
+                    out.put(stream.body);
+                    stream.body.limit(limit);
+                }
+                sendWindow -= length;
+                stream.sendWindow -= length;
+            }
+        }
+        if (null != broken) {
+            // the body could not be read,the server gets a reset and the others go on
+            streams.remove(broken.id);
+            rstStream(broken.id, CANCEL);
+            failExchange(broken.exchange, error);
+            streamClosed();
+            writeData();
+        }
+    }
+
+    /**
+     * send one DATA frame of a body of unknown length,the frame header is written after the data is read,
+     * an empty frame ends the stream at the end of the body
+     *
+     * @return bytes of data sent,-1 after the end
+     */
+    private int writeUnknownLength(Http2Stream stream) throws IOException {
+        final int length = (int) Math.min(peerMaxFrameSize, Math.min(sendWindow, stream.sendWindow));
+        final int mark = out.position();
+        // room for the header and the data
+        frameHeader(length, DATA, 0, stream.id);
+        final BodySource source = stream.exchange.source();
+        final int limit = out.limit();
+        out.limit(out.position() + length);
+        int read = 0;
+        boolean isEnd = false;
+        try {
+            while (out.hasRemaining()) {
+                final int n = source.read(out);
+                if (n <= 0) {
+                    isEnd = n < 0;
+                    break;
+                }
+                read += n;
+            }
+        } catch (IOException e) {
+            out.limit(limit);
+            out.position(mark);
+            throw e;
+        }
+        out.limit(limit);
+        out.position(mark);
+        frameHeader(read, DATA, isEnd ? FLAG_END_STREAM : 0, stream.id);
+        out.position(mark + FRAME_HEADER_LENGTH + read);
+        sendWindow -= read;
+        stream.sendWindow -= read;
+        if (isEnd) {
+            stream.streamedRemaining = 0;
+            return -1;
+        }
+        if (0 == read) {
+            // nothing to send now
+            out.position(mark);
+        }
+        return read;
+    }
+
+    /**
+     * read length bytes of the streamed body into out
+     */
+    private void readStreamed(Exchange exchange, int length) throws IOException {
+        final BodySource source = exchange.source();
+        final int limit = out.limit();
+        out.limit(out.position() + length);
+        try {
+            while (out.hasRemaining()) {
+                if (source.read(out) < 0) {
+                    throw new EOFException("Body is shorter than its length");
+                }
+            }
+        } finally {
+            out.limit(limit);
+        }
+    }
+
+    private void readFrames() throws IOException {
+        while (in.remaining() >= FRAME_HEADER_LENGTH) {
+            final int position = in.position();
+            final int length = ((in.get(position) & 0xff) << 16) | ((in.get(position + 1) & 0xff) << 8) | (in.get(position + 2) & 0xff);
+            if (length > DEFAULT_MAX_FRAME_SIZE) {
+                throw connectionError(FRAME_SIZE_ERROR, "Frame of {} bytes exceeds the max frame size", length);
+            }
+            if (in.remaining() < FRAME_HEADER_LENGTH + length) {
+                return;
+            }
+            final int type = in.get(position + 3) & 0xff;
+            final int flags = in.get(position + 4) & 0xff;
+            final int streamId = in.getInt(position + 5) & 0x7fffffff;
+            in.position(position + FRAME_HEADER_LENGTH);
+            final ByteBuffer payload = in.slice();
+            payload.limit(length);
+            in.position(position + FRAME_HEADER_LENGTH + length);
+            onFrame(type, flags, streamId, payload);
+            if (CLOSED == state) {
+                return;
+            }
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (0 != continuationStreamId && CONTINUATION != type) {
+            throw connectionError(PROTOCOL_ERROR, "Expected CONTINUATION of stream {}", continuationStreamId);
+        }
+        switch (type) {
+            case DATA:
+                onData(flags, streamId, payload);
+                break;
+            case HEADERS:
+                onHeaders(flags, streamId, payload);
+                break;
+            case CONTINUATION:
+                if (streamId != continuationStreamId) {
+                    throw connectionError(PROTOCOL_ERROR, "Unexpected CONTINUATION of stream {}", streamId);
+                }
+                continuationBlock.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+                if (0 != (flags & FLAG_END_HEADERS)) {
+                    continuationStreamId = 0;
+                    onHeaderBlock(streamId, isContinuationEndStream, ByteBuffer.wrap(continuationBlock.toByteArray()));
+                    continuationBlock = null;
+                }
+                break;
+            case RST_STREAM:
+                final Http2Stream reset = streams.remove(streamId);
+                if (null != reset) {
+                    failExchange(reset.exchange, new HttpException("Stream {} reset by server with error code {}", streamId, payload.getInt()));
+                    streamClosed();
+                }
+                break;
+            case SETTINGS:
+                if (0 == (flags & FLAG_ACK)) {
+                    onSettings(payload);
+                }
+                break;
+            case PUSH_PROMISE:
+                throw connectionError(PROTOCOL_ERROR, "Server push is disabled");
+            case PING:
+                if (8 != payload.remaining()) {
+                    throw connectionError(FRAME_SIZE_ERROR, "PING length {} is not 8", payload.remaining());
+                }
+                if (0 == (flags & FLAG_ACK)) {
+                    frameHeader(8, PING, FLAG_ACK, 0);
+                    out.put(payload);
+                }
+                break;
+            case GOAWAY:
+                onGoAway(payload);
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, payload.getInt() & 0x7fffffff);
+                break;
+            default:
+                // PRIORITY and unknown frames are ignored
+        }
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) throws IOException {
+        final int length = payload.remaining();
+        final int padding = 0 != (flags & FLAG_PADDED) ? payload.get() & 0xff : 0;
+        if (padding > payload.remaining()) {
+            throw connectionError(PROTOCOL_ERROR, "Padding exceeds DATA frame");
+        }
+        receivedUnacked += length;
+        if (receivedUnacked >= LOCAL_WINDOW / 2) {
+            windowUpdate(0, receivedUnacked);
+            receivedUnacked = 0;
+        }
+        final Http2Stream stream = streams.get(streamId);
+        if (null == stream) {
+            // cancelled or timed out
+            return;
+        }
+        stream.exchange.touch();
+        stream.data.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining() - padding);
+        if (0 != (flags & FLAG_END_STREAM)) {
+            complete(stream);
+            return;
+        }
+        stream.receivedUnacked += length;
+        if (stream.receivedUnacked >= LOCAL_WINDOW / 2) {
+            windowUpdate(streamId, stream.receivedUnacked);
+            stream.receivedUnacked = 0;
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) throws IOException {
+        final int padding = 0 != (flags & FLAG_PADDED) ? payload.get() & 0xff : 0;
+        if (0 != (flags & FLAG_PRIORITY)) {
+            // stream dependency and weight
+            payload.position(payload.position() + 5);
+        }
+        if (padding > payload.remaining()) {
+            throw connectionError(PROTOCOL_ERROR, "Padding exceeds HEADERS frame");
+        }
+        payload.limit(payload.limit() - padding);
+        final boolean isEndStream = 0 != (flags & FLAG_END_STREAM);
+        if (0 != (flags & FLAG_END_HEADERS)) {
+            onHeaderBlock(streamId, isEndStream, payload);
+            return;
+        }
+        continuationStreamId = streamId;
+        isContinuationEndStream = isEndStream;
+        continuationBlock = new ByteArrayOutputStream(payload.remaining() * 2);
+        continuationBlock.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+    }
+
+    private void onHeaderBlock(int streamId, boolean isEndStream, ByteBuffer block) throws IOException {
+        final List<String[]> fields;
+        try {
+            // decoded even for streams gone,to keep the table in sync
+            fields = decoder.decode(block);
+        } catch (IOException e) {
+            throw connectionError(COMPRESSION_ERROR, e.getMessage());
+        }
+        final Http2Stream stream = streams.get(streamId);
+        if (null == stream) {
+            return;
+        }
+        stream.exchange.touch();
+        if (0 == stream.status) {
+            int status = 0;
+            for (String[] field : fields) {
+                if (":status".equals(field[0])) {
+                    try {
+                        status = Integer.parseInt(field[1]);
+                    } catch (NumberFormatException e) {
+                        throw connectionError(PROTOCOL_ERROR, "Invalid :status {}", field[1]);
+                    }
+                }
+            }
+            if (status >= 100 && status < 200) {
+                // informational response,the final one follows
+                return;
+            }
+            if (0 == status) {
+                throw connectionError(PROTOCOL_ERROR, "Response of stream {} without :status", streamId);
+            }
+            stream.status = status;
+        }
+        for (String[] field : fields) {
+            if (!field[0].startsWith(":")) {
+                final String name = canonical(field[0]);
+                List<String> values = stream.headers.get(name);
+                if (null == values) {
+                    values = new ArrayList<>(1);
+                    stream.headers.put(name, values);
+                }
+                values.add(field[1]);
+            }
+        }
+        if (isEndStream) {
+            complete(stream);
+        }
+    }
+
+    private void onSettings(ByteBuffer payload) throws IOException {
+        if (0 != payload.remaining() % 6) {
+            throw connectionError(FRAME_SIZE_ERROR, "SETTINGS length {} is not a multiple of 6", payload.remaining());
+        }
+        while (payload.hasRemaining()) {
+            final int id = payload.getShort() & 0xffff;
+            final int value = payload.getInt();
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    encoder.setMaxSize(value < 0 ? Integer.MAX_VALUE : value);
+                    break;
+                case SETTINGS_MAX_CONCURRENT_STREAMS:
+                    peerMaxConcurrentStreams = value < 0 ? Integer.MAX_VALUE : value;
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw connectionError(FLOW_CONTROL_ERROR, "Initial window size {} too large", value & 0xffffffffL);
+                    }
+                    for (Http2Stream stream : streams.values()) {
+                        stream.sendWindow += value - peerInitialWindow;
+                    }
+                    peerInitialWindow = value;
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw connectionError(PROTOCOL_ERROR, "Invalid max frame size {}", value);
+                    }
+                    peerMaxFrameSize = value;
+                    break;
+                default:
+                    // ENABLE_PUSH is for servers,MAX_HEADER_LIST_SIZE is advisory
+            }
+        }
+        frameHeader(0, SETTINGS, FLAG_ACK, 0);
+        writeData();
+        startPending();
+    }
+
+    private void onWindowUpdate(int streamId, int increment) throws IOException {
+        if (0 == streamId) {
+            sendWindow += increment;
+            if (sendWindow > MAX_WINDOW) {
+                throw connectionError(FLOW_CONTROL_ERROR, "Connection window overflow");
+            }
+        } else {
+            final Http2Stream stream = streams.get(streamId);
+            if (null == stream) {
+                return;
+            }
+            stream.sendWindow += increment;
+            if (stream.sendWindow > MAX_WINDOW) {
+                streams.remove(streamId);
+                rstStream(streamId, FLOW_CONTROL_ERROR);
+                failExchange(stream.exchange, new HttpException("Window overflow of stream {}", streamId));
+                streamClosed();
+                return;
+            }
+        }
+        writeData();
+    }
+
+    private void onGoAway(ByteBuffer payload) {
+        final int lastStreamId = payload.getInt() & 0x7fffffff;
+        final int errorCode = payload.getInt();
+        isGoingAway = true;
+        engine.removeHttp2(route, this);
+        // streams above the last one were not processed and are safe to send again
+        final Iterator<Http2Stream> it = streams.values().iterator();
+        while (it.hasNext()) {
+            final Http2Stream stream = it.next();
+            if (stream.id > lastStreamId) {
+                it.remove();
+                failExchange(stream.exchange, new HttpException("Stream {} not processed,server is going away with error code {}", stream.id, errorCode));
+            }
+        }
+        Exchange exchange;
+        while (null != (exchange = pending.poll())) {
+            failExchange(exchange, new HttpException("Server is going away with error code {}", errorCode));
+        }
+        streamClosed();
+    }
+
+    private void complete(Http2Stream stream) {
+        streams.remove(stream.id);
+        if (stream.hasBodyToSend()) {
+            // the server answered before the whole body was sent
+            rstStream(stream.id, NO_ERROR);
+        }
+        engine.complete(stream.exchange, stream.status, stream.headers, stream.data.toByteArray());
+        streamClosed();
+    }
+
+    /**
+     * a stream is gone,start the queued exchanges or close a connection going away
+     */
+    private void streamClosed() {
+        startPending();
+        if (streams.isEmpty()) {
+            idleSince = System.nanoTime();
+            if (isGoingAway) {
+                goAway(NO_ERROR);
+            }
+        }
+    }
+
+    private void startPending() {
+        while (!pending.isEmpty() && streams.size() < peerMaxConcurrentStreams && !isGoingAway) {
+            final Exchange exchange = pending.poll();
+            if (!exchange.future.isDone()) {
+                exchange.touch();
+                openStream(exchange);
+            }
+        }
+    }
+
+    /**
+     * send GOAWAY and close
+     */
+    private void goAway(int errorCode) {
+        writeGoAway(errorCode);
+        fail(new IOException("Http/2 connection closed"));
+    }
+
+    private IOException connectionError(int errorCode, String template, Object... values) {
+        writeGoAway(errorCode);
+        return new IOException("Http/2 protocol error: " + StrUtils.format(template, values));
+    }
+
+    /**
+     * flush the frames written by a task,the connection fails on IO error
+     */
+    private void pump() {
+        try {
+            afterIo(flush());
+        } catch (IOException e) {
+            connection.fail(e);
+        }
+    }
+
+    private void afterIo(boolean isFlushed) {
+        connection.interest(isFlushed && !isDataBlocked ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * @return true when every frame is written
+     */
+    private boolean flush() throws IOException {
+        if (0 == out.position() && !connection.hasPendingWrite()) {
+            return true;
+        }
+        out.flip();
+        try {
+            return connection.write(out);
+        } finally {
+            out.compact();
+        }
+    }
+
+    private void writeGoAway(int errorCode) {
+        // no server initiated stream was processed
+        frameHeader(8, GOAWAY, 0, 0);
+        out.putInt(0).putInt(errorCode);
+    }
+
+    private void rstStream(int streamId, int errorCode) {
+        frameHeader(4, RST_STREAM, 0, streamId);
+        out.putInt(errorCode);
+    }
+
+    private void windowUpdate(int streamId, int increment) {
+        frameHeader(4, WINDOW_UPDATE, 0, streamId);
+        out.putInt(increment);
+    }
+
+    private void setting(int id, int value) {
+        out.putShort((short) id).putInt(value);
+    }
+
+    /**
+     * write a frame header and make room for the payload
+     */
+    private void frameHeader(int length, int type, int flags, int streamId) {
+        if (out.remaining() < FRAME_HEADER_LENGTH + length) {
+            final ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + FRAME_HEADER_LENGTH + length));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        out.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        out.put((byte) type).put((byte) flags).putInt(streamId);
+    }
+
+    private void failExchange(Exchange exchange, Throwable e) {
+        exchange.closeBody();
+        exchange.future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+    }
+
+    /**
+     * lowercase http/2 names in the usual case,like content-type to Content-Type
+     */
+    private static String canonical(String name) {
+        final char[] chars = name.toCharArray();
+        boolean isWordStart = true;
+        for (int i = 0; i < chars.length; i++) {
+            if (isWordStart) {
+                chars[i] = Character.toUpperCase(chars[i]);
+            }
+            isWordStart = '-' == chars[i];
+        }
+        return new String(chars);
+    }
+}
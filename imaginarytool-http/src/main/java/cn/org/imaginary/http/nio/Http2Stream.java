@@ -0,0 +1,41 @@
+package cn.org.imaginary.http.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * one {@link Exchange} on a {@link Http2Session},only touched by the worker thread
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class Http2Stream {
+    final int id;
+    final Exchange exchange;
+    // request body left to send,read mode,null if none
+    ByteBuffer body;
+    // bytes of the streamed body of exchange left to send,-1 until the end of a body of unknown length
+    long streamedRemaining;
+    // bytes we may send before a WINDOW_UPDATE of peer
+    long sendWindow;
+    // bytes received since the last WINDOW_UPDATE we sent
+    int receivedUnacked;
+    // response status,0 until the final header block arrives
+    int status;
+    final Map<String, List<String>> headers = new LinkedHashMap<>();
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+    Http2Stream(int id, Exchange exchange, long sendWindow) {
+        this.id = id;
+        this.exchange = exchange;
+        this.sendWindow = sendWindow;
+    }
+
+    boolean hasBodyToSend() {
+        return (null != body && body.hasRemaining()) || 0 != streamedRemaining;
+    }
+}
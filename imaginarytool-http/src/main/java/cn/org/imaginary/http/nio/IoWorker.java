@@ -0,0 +1,145 @@
+package cn.org.imaginary.http.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * an I/O thread with its own {@link Selector},every connection is bound to one worker for its whole life
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class IoWorker implements Runnable {
+    private final static Logger logger = LoggerFactory.getLogger(IoWorker.class);
+    // max select wait,so that timeouts are checked regularly
+    private static final long MAX_SELECT_MILLIS = 1000;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // connections with an exchange in flight,only touched by the worker thread
+    private final Set<NioConnection> active = new HashSet<>();
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    IoWorker(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * run a task in the worker thread
+     *
+     * @param task task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    boolean inWorkerThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    void track(NioConnection connection) {
+        active.add(connection);
+    }
+
+    void untrack(NioConnection connection) {
+        active.remove(connection);
+    }
+
+    /**
+     * stop the thread and close every connection of it
+     */
+    void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (isRunning) {
+            try {
+                final long wait = checkTimeouts();
+                if (tasks.isEmpty()) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) {
+                        ((NioConnection) key.attachment()).onSelected(key);
+                    }
+                }
+            } catch (Throwable e) {
+                logger.error("nio worker error", e);
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while (null != (task = tasks.poll())) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                logger.error("nio worker task error", e);
+            }
+        }
+    }
+
+    /**
+     * fail the exchanges past deadline
+     *
+     * @return millis to wait in select
+     */
+    private long checkTimeouts() {
+        if (active.isEmpty()) {
+            return MAX_SELECT_MILLIS;
+        }
+        final long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+        for (NioConnection connection : new ArrayList<>(active)) {
+            next = Math.min(next, connection.checkTimeout(now));
+        }
+        return Math.max(1, Math.min(MAX_SELECT_MILLIS, next / 1000000L));
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (NioConnection connection : new ArrayList<>(active)) {
+            connection.fail(new IOException("Nio engine shut down"));
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("close selector error", e);
+        }
+    }
+}
@@ -0,0 +1,797 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.body.BodySource;
+import cn.org.imaginary.http.pool.BufferPool;
+import cn.org.imaginary.http.pool.Route;
+import cn.org.imaginary.http.ssl.SSLContextCache;
+import cn.org.imaginary.http.ssl.TrustAnyHostnameVerifier;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.StrUtils;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a non-blocking http/1.1 connection driven by one {@link IoWorker},
+ * it carries one {@link Exchange} at a time and can be kept alive in the pool between them,
+ * or runs a {@link Http2Session} which carries many at once<br>
+ * the addresses of the host are raced,the next attempt starts when one fails or after the attempt delay,
+ * the first socket connected wins and the others are closed<br>
+ * in pipelining mode more requests are written behind current exchange and their responses are read in order
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class NioConnection implements Channel {
+    private static final int CONNECTING = 0;
+    private static final int PROXY_CONNECT = 1;
+    private static final int SOCKS_GREETING = 2;
+    private static final int SOCKS_CONNECT = 3;
+    private static final int TLS_HANDSHAKE = 4;
+    private static final int OPEN = 5;
+    // room for the hex size and CRLF before the data of a chunk
+    private static final int CHUNK_HEAD = 10;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+
+    private final NioHttpEngine engine;
+    private final IoWorker worker;
+    private final Route route;
+    // the connected socket,null while attempts are racing
+    private SocketChannel channel;
+    // where the socket may connect,the proxy or the origin,in order of attempts
+    private final List<InetSocketAddress> addresses;
+    // index of the next address to try
+    private int nextAddress;
+    // System.nanoTime() when the next address is tried
+    private long nextAttempt;
+    // pending connect attempts
+    private final List<SelectionKey> attempts = new ArrayList<>(2);
+    private IOException connectError;
+    private boolean isClosed;
+    private final Proxy.Type proxyType;
+    private final SSLContext sslContext;
+    private SelectionKey key;
+    private SslCodec ssl;
+    private int phase = CONNECTING;
+    // plain bytes read,write mode
+    private ByteBuffer in;
+    // proxy negotiation bytes to write,read mode
+    private ByteBuffer proxyOut;
+    private ResponseParser proxyParser;
+    // current exchange,only touched by the worker thread
+    private Exchange exchange;
+    // pipelined exchanges behind current one,waiting for their responses in order
+    private final ArrayDeque<Exchange> pipeline = new ArrayDeque<>();
+    // pipelined exchanges not yet written
+    private final ArrayDeque<Exchange> unwritten = new ArrayDeque<>();
+    // http/2 to negotiate or running,null for http/1.1 only
+    private Http2Session http2;
+    private boolean isHttp2;
+
+    NioConnection(NioHttpEngine engine, IoWorker worker, Route route, List<InetSocketAddress> addresses, SSLContext sslContext) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("addresses must not be empty");
+        }
+        this.engine = engine;
+        this.worker = worker;
+        this.route = route;
+        this.addresses = addresses;
+        this.proxyType = null == route.getProxy() ? Proxy.Type.DIRECT : route.getProxy().type();
+        this.sslContext = sslContext;
+        this.in = ByteBuffer.allocate(engine.getBufferSize());
+    }
+
+    IoWorker getWorker() {
+        return worker;
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    Exchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * try http/2 on this connection,with alpn over tls or prior knowledge over plain http
+     *
+     * @param session session to run once the connection is open
+     */
+    void setHttp2(Http2Session session) {
+        this.http2 = session;
+        session.bind(this);
+    }
+
+    Http2Session getHttp2() {
+        return isHttp2 ? http2 : null;
+    }
+
+    private boolean isHttps() {
+        return "https".equals(route.getScheme());
+    }
+
+    /**
+     * start an exchange,called in worker thread
+     *
+     * @param exchange exchange
+     */
+    void start(Exchange exchange) {
+        if (isHttp2) {
+            http2.start(exchange);
+            return;
+        }
+        this.exchange = exchange;
+        exchange.touch();
+        worker.track(this);
+        try {
+            if (null == channel && attempts.isEmpty()) {
+                connectNext();
+            }
+            advance();
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * start exchanges written back to back,the first one is current,called in worker thread
+     *
+     * @param exchanges idempotent exchanges without streamed body
+     */
+    void startPipeline(List<Exchange> exchanges) {
+        for (int i = 1; i < exchanges.size(); i++) {
+            final Exchange queued = exchanges.get(i);
+            pipeline.add(queued);
+            unwritten.add(queued);
+        }
+        start(exchanges.get(0));
+    }
+
+    /**
+     * the socket or a connect attempt is ready,called in worker thread
+     *
+     * @param selected selected key
+     */
+    void onSelected(SelectionKey selected) {
+        try {
+            if (null == channel) {
+                finishAttempt(selected);
+                return;
+            }
+            if (null == exchange && !isHttp2) {
+                // an idle keep-alive connection got data or was closed by server
+                close();
+                return;
+            }
+            advance();
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * check the deadline of current exchange,called in worker thread
+     *
+     * @param now System.nanoTime()
+     * @return nanos until deadline,Long.MAX_VALUE if none
+     */
+    long checkTimeout(long now) {
+        if (isHttp2) {
+            return http2.checkTimeout(now);
+        }
+        final Exchange current = exchange;
+        if (null == current) {
+            return Long.MAX_VALUE;
+        }
+        long left = Long.MAX_VALUE;
+        if (0 != current.deadline) {
+            left = current.deadline - now;
+            if (left <= 0) {
+                fail(new SocketTimeoutException(CONNECTING == phase ? "Connect timed out" : "Read timed out"));
+                return Long.MAX_VALUE;
+            }
+        }
+        if (null == channel && nextAddress < addresses.size() && !attempts.isEmpty()) {
+            if (nextAttempt - now <= 0) {
+                try {
+                    connectNext();
+                    if (null != channel) {
+                        advance();
+                    }
+                } catch (Throwable e) {
+                    fail(e);
+                    return Long.MAX_VALUE;
+                }
+            }
+            if (nextAddress < addresses.size()) {
+                left = Math.min(left, Math.max(0, nextAttempt - now));
+            }
+        }
+        return left;
+    }
+
+    /**
+     * start connecting to the next address,it may connect at once
+     */
+    private void connectNext() throws IOException {
+        while (null == channel && nextAddress < addresses.size()) {
+            final InetSocketAddress address = addresses.get(nextAddress++);
+            nextAttempt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getAttemptDelay());
+            final SocketChannel attempt = SocketChannel.open();
+            SelectionKey attemptKey = null;
+            try {
+                attempt.configureBlocking(false);
+                attempt.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                attemptKey = attempt.register(worker.getSelector(), SelectionKey.OP_CONNECT, this);
+                attempts.add(attemptKey);
+                if (null != exchange && null != exchange.listener) {
+                    exchange.listener.connectStart(address);
+                }
+                if (attempt.connect(address)) {
+                    connected(attemptKey);
+                }
+                return;
+            } catch (IOException e) {
+                // an unreachable family fails at once,go on with the next address
+                closeQuietly(attempt);
+                attempts.remove(attemptKey);
+                connectError = e;
+            }
+        }
+        if (null == channel && attempts.isEmpty()) {
+            throw null == connectError ? new ConnectException("No address to connect") : connectError;
+        }
+    }
+
+    /**
+     * finish a racing attempt,the first one connected wins
+     */
+    private void finishAttempt(SelectionKey selected) throws IOException {
+        final SocketChannel attempt = (SocketChannel) selected.channel();
+        try {
+            if (!attempt.finishConnect()) {
+                return;
+            }
+        } catch (IOException e) {
+            attempts.remove(selected);
+            closeQuietly(attempt);
+            connectError = e;
+            // a failed attempt starts the next one without waiting for the delay
+            connectNext();
+            if (null != channel) {
+                advance();
+            }
+            return;
+        }
+        connected(selected);
+        advance();
+    }
+
+    private void connected(SelectionKey winner) throws IOException {
+        for (SelectionKey attempt : attempts) {
+            if (attempt != winner) {
+                closeQuietly(attempt.channel());
+            }
+        }
+        attempts.clear();
+        channel = (SocketChannel) winner.channel();
+        key = winner;
+        if (null != exchange.listener) {
+            exchange.listener.connectEnd();
+        }
+        afterConnect();
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * abort current exchange,called in worker thread,the pipelined exchanges behind it are sent again
+     *
+     * @return true if pipelined exchanges were sent again and hold the lease
+     */
+    boolean abort() {
+        if (null != exchange) {
+            exchange = null;
+            worker.untrack(this);
+            close();
+            return replayPipeline(new IOException("Pipelined request aborted"));
+        }
+        return false;
+    }
+
+    /**
+     * hand the unanswered pipelined exchanges to the engine,which sends them on a new connection
+     *
+     * @return true if there were any
+     */
+    private boolean replayPipeline(Throwable cause) {
+        if (pipeline.isEmpty()) {
+            return false;
+        }
+        final List<Exchange> unanswered = new ArrayList<>(pipeline);
+        pipeline.clear();
+        unwritten.clear();
+        engine.replay(unanswered, this, cause, false);
+        return true;
+    }
+
+    private void advance() throws IOException {
+        while (true) {
+            switch (phase) {
+                case CONNECTING:
+                    // attempts are racing,finishAttempt moves on
+                    return;
+                case PROXY_CONNECT:
+                case SOCKS_GREETING:
+                case SOCKS_CONNECT:
+                    if (!negotiateProxy()) {
+                        return;
+                    }
+                    break;
+                case TLS_HANDSHAKE:
+                    if (!ssl.handshake(channel)) {
+                        interest(ssl.hasPendingWrite() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                        return;
+                    }
+                    SSLContextCache.recordHandshake(ssl.getEngine().getSession());
+                    verifyHostname();
+                    if (null != exchange.listener) {
+                        exchange.listener.secureConnectEnd();
+                    }
+                    phase = OPEN;
+                    exchange.touch();
+                    break;
+                default:
+                    if (null != http2 && !isHttp2) {
+                        negotiateHttp2();
+                    }
+                    if (isHttp2) {
+                        http2.transfer();
+                    } else {
+                        transfer();
+                    }
+                    return;
+            }
+        }
+    }
+
+    private void afterConnect() throws IOException {
+        exchange.touch();
+        if (Proxy.Type.HTTP == proxyType && isHttps()) {
+            proxyOut = RequestSerializer.connect(exchange.url);
+            proxyParser = new ResponseParser(true);
+            phase = PROXY_CONNECT;
+        } else if (Proxy.Type.SOCKS == proxyType) {
+            // version 5,one method: no authentication
+            proxyOut = ByteBuffer.wrap(new byte[]{5, 1, 0});
+            phase = SOCKS_GREETING;
+        } else {
+            startTls();
+        }
+    }
+
+    private void startTls() throws IOException {
+        if (isHttps()) {
+            final SSLEngine sslEngine = sslContext.createSSLEngine(route.getHost(), route.getPort());
+            sslEngine.setUseClientMode(true);
+            if (null != http2) {
+                Alpn.setProtocols(sslEngine, Alpn.H2, Alpn.HTTP_1_1);
+            }
+            ssl = new SslCodec(sslEngine);
+            if (null != exchange.listener) {
+                exchange.listener.secureConnectStart();
+            }
+            if (in.capacity() < ssl.getApplicationBufferSize()) {
+                in = ByteBuffer.allocate(ssl.getApplicationBufferSize());
+            }
+            phase = TLS_HANDSHAKE;
+        } else {
+            phase = OPEN;
+        }
+    }
+
+    /**
+     * hand the exchange over to http/2 if the server speaks it,or go on with http/1.1
+     */
+    private void negotiateHttp2() {
+        if (null == ssl || Alpn.H2.equals(Alpn.getProtocol(ssl.getEngine()))) {
+            final Exchange first = exchange;
+            exchange = null;
+            isHttp2 = true;
+            http2.open(in, first);
+        } else {
+            http2.fallback();
+            http2 = null;
+        }
+    }
+
+    private void verifyHostname() throws SSLPeerUnverifiedException {
+        HostnameVerifier verifier = exchange.request.getHostnameVerifier();
+        if (null == verifier) {
+            verifier = new TrustAnyHostnameVerifier();
+        }
+        if (!verifier.verify(route.getHost(), ssl.getEngine().getSession())) {
+            throw new SSLPeerUnverifiedException("Hostname " + route.getHost() + " not verified");
+        }
+    }
+
+    /**
+     * write proxy request and read its reply
+     *
+     * @return true when the proxy step is done
+     */
+    private boolean negotiateProxy() throws IOException {
+        if (proxyOut.hasRemaining()) {
+            channel.write(proxyOut);
+            if (proxyOut.hasRemaining()) {
+                interest(SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+        final int n = channel.read(in);
+        if (n < 0) {
+            throw new EOFException("Proxy closed the connection");
+        }
+        exchange.touch();
+        in.flip();
+        try {
+            if (PROXY_CONNECT == phase) {
+                if (!proxyParser.feed(in)) {
+                    interest(SelectionKey.OP_READ);
+                    return false;
+                }
+                if (200 != proxyParser.getStatus()) {
+                    throw new HttpException("Proxy CONNECT failed with status {}", proxyParser.getStatus());
+                }
+                proxyParser = null;
+                startTls();
+                return true;
+            }
+            if (SOCKS_GREETING == phase) {
+                if (in.remaining() < 2) {
+                    interest(SelectionKey.OP_READ);
+                    return false;
+                }
+                if (5 != in.get() || 0 != in.get()) {
+                    throw new HttpException("SOCKS proxy refused no authentication method");
+                }
+                proxyOut = socksConnect();
+                phase = SOCKS_CONNECT;
+                return true;
+            }
+            // SOCKS_CONNECT: version,reply,reserved,address type,address,port
+            if (in.remaining() < 5) {
+                interest(SelectionKey.OP_READ);
+                return false;
+            }
+            final int addressType = in.get(in.position() + 3);
+            final int addressLength = 1 == addressType ? 4 : 4 == addressType ? 16 : (in.get(in.position() + 4) & 0xff) + 1;
+            if (in.remaining() < 4 + addressLength + 2) {
+                interest(SelectionKey.OP_READ);
+                return false;
+            }
+            final int reply = in.get(in.position() + 1);
+            if (0 != reply) {
+                throw new HttpException("SOCKS proxy connect failed with reply {}", reply);
+            }
+            in.position(in.position() + 4 + addressLength + 2);
+            startTls();
+            return true;
+        } finally {
+            in.compact();
+        }
+    }
+
+    private ByteBuffer socksConnect() {
+        final byte[] host = route.getHost().getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+        final ByteBuffer buffer = ByteBuffer.allocate(7 + host.length);
+        // version 5,connect,reserved,domain name
+        buffer.put((byte) 5).put((byte) 1).put((byte) 0).put((byte) 3);
+        buffer.put((byte) host.length).put(host);
+        buffer.putShort((short) route.getPort());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * write request and read response of current exchange
+     */
+    private void transfer() throws IOException {
+        Exchange current = exchange;
+        int readOps = SelectionKey.OP_READ;
+        if (current.out.hasRemaining() || hasPendingWrite() || current.hasBodyToSend() || !unwritten.isEmpty()) {
+            boolean isFlushed = write(current.out) && writeBody(current);
+            if (isFlushed) {
+                current.requestEnded();
+                isFlushed = writePipeline();
+            }
+            current.touch();
+            if (!isFlushed) {
+                if (pipeline.isEmpty()) {
+                    interest(SelectionKey.OP_WRITE);
+                    return;
+                }
+                // read responses while the pipeline is written,the server may stop reading until they are taken
+                readOps |= SelectionKey.OP_WRITE;
+            }
+        }
+        while (true) {
+            final int n = read(in);
+            if (0 == n) {
+                interest(readOps);
+                return;
+            }
+            if (n < 0) {
+                if (current.parser.eof()) {
+                    complete(false);
+                    return;
+                }
+                throw new EOFException("Connection closed before response completed");
+            }
+            current.touch();
+            boolean isDone = feed(current);
+            while (isDone && !pipeline.isEmpty() && current.parser.isKeepAlive()) {
+                // the bytes after the response belong to the next one of the pipeline
+                current = next();
+                isDone = in.position() > 0 && feed(current);
+            }
+            if (isDone) {
+                // bytes after the response mean the connection state is unknown
+                complete(0 == in.position());
+                return;
+            }
+        }
+    }
+
+    private boolean feed(Exchange current) {
+        if (null != current.listener && !current.parser.isStarted()) {
+            current.listener.responseStart();
+        }
+        in.flip();
+        try {
+            return current.parser.feed(in);
+        } finally {
+            in.compact();
+        }
+    }
+
+    /**
+     * write the pipelined requests in order
+     *
+     * @return true when every one is written
+     */
+    private boolean writePipeline() throws IOException {
+        while (!unwritten.isEmpty()) {
+            if (!write(unwritten.peek().out)) {
+                return false;
+            }
+            unwritten.poll().requestEnded();
+        }
+        return true;
+    }
+
+    /**
+     * current exchange is answered,the next one of the pipeline becomes current,the lease is kept
+     */
+    private Exchange next() {
+        final Exchange done = exchange;
+        exchange = pipeline.poll();
+        exchange.touch();
+        engine.complete(done, done.parser.getStatus(), done.parser.getHeaders(), done.parser.getBody());
+        return exchange;
+    }
+
+    /**
+     * stream the body after the headers,file regions of a plain socket are sent by
+     * {@link java.nio.channels.FileChannel#transferTo} without copying through the heap,
+     * other bytes go through one buffer of the engine buffer size
+     *
+     * @return true when the body is sent and nothing is pending
+     */
+    private boolean writeBody(Exchange current) throws IOException {
+        if (null == current.body) {
+            return true;
+        }
+        final BodySource source = current.source();
+        while (true) {
+            final ByteBuffer buffer = current.bodyBuffer;
+            if ((null != buffer && buffer.hasRemaining()) || hasPendingWrite()) {
+                if (!write(null == buffer ? current.out : buffer)) {
+                    return false;
+                }
+            }
+            if (current.isBodySent) {
+                current.releaseBodyBuffer();
+                return true;
+            }
+            final boolean isChunked = current.body.contentLength() < 0;
+            if (null == ssl && !isChunked && source.isFileRegion()) {
+                if (0 == source.transferTo(channel)) {
+                    return false;
+                }
+                current.touch();
+                continue;
+            }
+            if (null == buffer) {
+                // direct,a file or channel is read into it and the socket writes it without a copy
+                current.bodyBuffer = BufferPool.getDefault().acquireDirect(engine.getBufferSize());
+            }
+            final ByteBuffer chunk = current.bodyBuffer;
+            chunk.clear();
+            if (isChunked) {
+                // room for the size line before and the CRLF after the data
+                chunk.position(CHUNK_HEAD).limit(chunk.capacity() - 2);
+            }
+            final int n = source.read(chunk);
+            if (isChunked) {
+                frameChunk(chunk, n);
+            } else {
+                chunk.flip();
+            }
+            if (n < 0) {
+                current.isBodySent = true;
+                current.closeBody();
+            }
+        }
+    }
+
+    /**
+     * frame the data read after CHUNK_HEAD as a chunk in read mode,the end of the body as the last chunk
+     *
+     * @param chunk buffer with the data from CHUNK_HEAD to its position
+     * @param n     bytes read,-1 at the end of the body
+     */
+    private static void frameChunk(ByteBuffer chunk, int n) {
+        if (n < 0) {
+            chunk.clear();
+            chunk.put(LAST_CHUNK).flip();
+            return;
+        }
+        if (0 == n) {
+            chunk.position(0).limit(0);
+            return;
+        }
+        final byte[] size = (Integer.toHexString(n) + StrUtils.CRLF).getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+        chunk.limit(chunk.capacity());
+        chunk.put((byte) '\r').put((byte) '\n');
+        final int end = chunk.position();
+        final int start = CHUNK_HEAD - size.length;
+        chunk.position(start);
+        chunk.put(size);
+        chunk.position(start).limit(end);
+    }
+
+    /**
+     * read plain bytes,decrypted for https
+     *
+     * @param dst buffer in write mode
+     * @return bytes read,-1 when the peer closed
+     * @throws IOException a case of IO error
+     */
+    int read(ByteBuffer dst) throws IOException {
+        return null == ssl ? channel.read(dst) : ssl.read(channel, dst);
+    }
+
+    /**
+     * write plain bytes,encrypted for https
+     *
+     * @param src buffer in read mode
+     * @return true when src is consumed and nothing is pending
+     * @throws IOException a case of IO error
+     */
+    boolean write(ByteBuffer src) throws IOException {
+        if (null != ssl) {
+            return ssl.write(channel, src);
+        }
+        channel.write(src);
+        return !src.hasRemaining();
+    }
+
+    boolean hasPendingWrite() {
+        return null != ssl && ssl.hasPendingWrite();
+    }
+
+    private void complete(boolean isReusable) {
+        final Exchange done = exchange;
+        exchange = null;
+        worker.untrack(this);
+        if (!pipeline.isEmpty()) {
+            // the server closes the connection with requests of the pipeline unanswered
+            close();
+            engine.complete(done, done.parser.getStatus(), done.parser.getHeaders(), done.parser.getBody());
+            replayPipeline(new IOException("Connection closed with pipelined requests unanswered"));
+            return;
+        }
+        final boolean reusable = isReusable && done.parser.isKeepAlive();
+        if (reusable) {
+            interest(0);
+        } else {
+            close();
+        }
+        engine.complete(done, reusable);
+    }
+
+    /**
+     * fail current exchange,a stale keep-alive connection is replaced once
+     */
+    void fail(Throwable e) {
+        if (isHttp2) {
+            http2.fail(e);
+            return;
+        }
+        final Exchange failed = exchange;
+        exchange = null;
+        worker.untrack(this);
+        close();
+        if (null != failed && !pipeline.isEmpty()) {
+            final List<Exchange> unanswered = new ArrayList<>(pipeline.size() + 1);
+            unanswered.add(failed);
+            unanswered.addAll(pipeline);
+            pipeline.clear();
+            unwritten.clear();
+            engine.replay(unanswered, this, e, true);
+        } else if (null != failed) {
+            engine.fail(failed, this, e);
+        }
+    }
+
+    void interest(int ops) {
+        if (null != key && key.isValid()) {
+            key.interestOps(ops);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return null == channel ? !isClosed : channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        for (SelectionKey attempt : attempts) {
+            closeQuietly(attempt.channel());
+        }
+        attempts.clear();
+        if (null != channel) {
+            closeQuietly(channel);
+        }
+        if (null != http2) {
+            if (isHttp2) {
+                worker.untrack(this);
+            }
+            http2.closed();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection" + route;
+    }
+}
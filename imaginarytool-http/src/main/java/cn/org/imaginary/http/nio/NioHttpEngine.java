@@ -0,0 +1,817 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.*;
+import cn.org.imaginary.http.body.RequestBody;
+import cn.org.imaginary.http.codec.ContentDecoder;
+import cn.org.imaginary.http.codec.InflaterPool;
+import cn.org.imaginary.http.cookie.CookieJar;
+import cn.org.imaginary.http.dns.CachingDnsResolver;
+import cn.org.imaginary.http.dns.DnsResolver;
+import cn.org.imaginary.http.dns.HappyEyeballs;
+import cn.org.imaginary.http.event.HttpEventListener;
+import cn.org.imaginary.http.pool.ConnectionPool;
+import cn.org.imaginary.http.pool.PoolEntry;
+import cn.org.imaginary.http.pool.Route;
+import cn.org.imaginary.http.retry.RetryPolicy;
+import cn.org.imaginary.http.ssl.SSLSocketFactoryBuilder;
+import cn.org.imaginary.util.StrUtils;
+import cn.org.imaginary.util.URLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a non-blocking http/1.1 engine built on {@link java.nio.channels.SocketChannel} and
+ * {@link java.nio.channels.Selector},a few I/O threads drive all requests in flight<br>
+ * usage:
+ * <pre>
+ * NioHttpEngine engine = NioHttpEngine.create();
+ * HttpResponse response = HttpRequest.get(url).setEngine(engine).execute();
+ * HttpFuture&lt;HttpResponse&gt; future = engine.submit(HttpRequest.get(url));
+ * </pre>
+ * https goes through {@link javax.net.ssl.SSLEngine} of the context built by {@link SSLSocketFactoryBuilder},
+ * http proxy(CONNECT tunnel for https) and socks5 proxy without authentication are supported<br>
+ * requests of {@link HttpBase#HTTP_2} share one multiplexed connection per origin,
+ * plain http uses prior knowledge and https negotiates with alpn,falling back to http/1.1 when the server or jdk lacks it<br>
+ * hosts are resolved by a {@link DnsResolver},cached by default,and the addresses are raced as in {@link HappyEyeballs}<br>
+ * {@link #pipeline(List)} writes idempotent requests of one origin back to back on one http/1.1 connection
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class NioHttpEngine implements HttpEngine {
+    private final static Logger logger = LoggerFactory.getLogger(NioHttpEngine.class);
+
+    // default read buffer size of a connection
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    // max redirects followed by execute
+    public static final int MAX_REDIRECTS = 5;
+
+    private static final AtomicInteger ENGINE_ID = new AtomicInteger();
+
+    private final IoWorker[] workers;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private ConnectionPool pool = ConnectionPool.create().setMaxTotal(1024).setMaxPerRoute(64);
+    private volatile SSLContext sslContext;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile DnsResolver resolver = CachingDnsResolver.getDefault();
+    // millis before the next address is tried while a connect is pending
+    private long attemptDelay = HappyEyeballs.DEFAULT_ATTEMPT_DELAY;
+    // timeout for requests without their own,0 means none
+    private int timeout;
+    // the http/2 connection of each route,being set up or open
+    private final ConcurrentMap<Route, Http2Session> http2Sessions = new ConcurrentHashMap<>();
+    // routes whose server chose http/1.1 in alpn
+    private final Set<Route> http1Routes = Collections.newSetFromMap(new ConcurrentHashMap<Route, Boolean>());
+
+    /**
+     * build engine
+     *
+     * @param ioThreads number of I/O threads
+     */
+    public NioHttpEngine(int ioThreads) {
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException("ioThreads must be positive");
+        }
+        final int id = ENGINE_ID.incrementAndGet();
+        this.workers = new IoWorker[ioThreads];
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                workers[i] = new IoWorker(StrUtils.format("imaginary-nio-{}-{}", id, i));
+            }
+        } catch (IOException e) {
+            throw new HttpException(e.getMessage(), e);
+        }
+        for (IoWorker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * create engine with one I/O thread per processor
+     *
+     * @return NioHttpEngine
+     */
+    public static NioHttpEngine create() {
+        return new NioHttpEngine(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * the shared engine,used by {@link HttpRequest#execute()} for http/2 requests without an engine
+     *
+     * @return NioHttpEngine
+     */
+    public static NioHttpEngine getDefault() {
+        return DefaultHolder.ENGINE;
+    }
+
+    /**
+     * create engine
+     *
+     * @param ioThreads number of I/O threads
+     * @return NioHttpEngine
+     */
+    public static NioHttpEngine create(int ioThreads) {
+        return new NioHttpEngine(ioThreads);
+    }
+
+    /**
+     * set the pool of keep-alive connections,it also bounds connections per route
+     *
+     * @param pool connection pool
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setPool(ConnectionPool pool) {
+        if (null != pool) {
+            this.pool = pool;
+        }
+        return this;
+    }
+
+    /**
+     * set the SSLContext of https connections,a request with an SSLContext of its own uses that one
+     *
+     * @param sslContext ssl context
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setSSLContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * set the read buffer size of a connection
+     *
+     * @param bufferSize buffer size
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setBufferSize(int bufferSize) {
+        if (bufferSize > 0) {
+            this.bufferSize = bufferSize;
+        }
+        return this;
+    }
+
+    /**
+     * set the resolver of hosts and proxies
+     *
+     * @param resolver dns resolver
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setResolver(DnsResolver resolver) {
+        if (null != resolver) {
+            this.resolver = resolver;
+        }
+        return this;
+    }
+
+    /**
+     * set the delay before the next address of a host is tried while a connect is pending
+     *
+     * @param attemptDelay delay in millis
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setAttemptDelay(long attemptDelay) {
+        if (attemptDelay >= 0) {
+            this.attemptDelay = attemptDelay;
+        }
+        return this;
+    }
+
+    /**
+     * set timeout for requests without their own
+     *
+     * @param timeout timeout in millis
+     * @return NioHttpEngine
+     */
+    public NioHttpEngine setTimeout(int timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public DnsResolver getResolver() {
+        return resolver;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    long getAttemptDelay() {
+        return attemptDelay;
+    }
+
+    /**
+     * execute request and wait for the response,redirects are followed unless disabled by the request
+     *
+     * @param request request to send
+     * @return {@link HttpResponse}
+     */
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+        HttpResponse response = await(request, submit(request));
+        if (Boolean.FALSE.equals(request.getFollowRedirects())) {
+            return response;
+        }
+        HttpRequest current = request;
+        for (int i = 0; i < MAX_REDIRECTS && isRedirect(response.getStatus()); i++) {
+            final String location = response.getHeader(Header.LOCATION);
+            if (StrUtils.isBlank(location)) {
+                break;
+            }
+            current = redirect(current, location, response.getStatus());
+            response = await(request, submit(current));
+        }
+        return response;
+    }
+
+    /**
+     * wait for a call of the request,abort or interrupt cancels it so its stream is reset or its connection closed
+     */
+    private static HttpResponse await(HttpRequest request, HttpFuture<HttpResponse> future) {
+        request.setEngineCall(future);
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            throw new HttpException(e, "Request to {} aborted", request.getUrl());
+        } finally {
+            request.setEngineCall(null);
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * send request without waiting,the caller thread only waits when the pool is full<br>
+     * redirects are not followed,callbacks are called in the I/O thread and must not block
+     *
+     * @param request request to send
+     * @return {@link HttpFuture} of the response,cancel it to abort the connection
+     */
+    public HttpFuture<HttpResponse> submit(HttpRequest request) {
+        final HttpFuture<HttpResponse> future = new HttpFuture<>();
+        try {
+            final URL url = URLUtils.url(request.getRequestUrl());
+            final Proxy proxy = request.getProxy();
+            final Route route = routeOf(request, url);
+            final boolean isAbsoluteForm = null != proxy && Proxy.Type.HTTP == proxy.type() && !"https".equals(route.getScheme());
+            final RequestBody body = request.getBody();
+            if (null != body && body.contentLength() < 0 && HttpBase.HTTP_1_0.equalsIgnoreCase(request.getHttpVersion())) {
+                throw new HttpException("Body of unknown length can not be sent with {}", request.getHttpVersion());
+            }
+            final ByteBuffer out = RequestSerializer.serialize(request, body, url, isAbsoluteForm);
+            final int requestTimeout = request.getTimeout() > 0 ? request.getTimeout() : timeout;
+            final Exchange exchange = new Exchange(request, url, future, null, requestTimeout, out, body);
+            if (!isAbsoluteForm && isHttp2(request, route)) {
+                submitHttp2(route, exchange);
+            } else {
+                submitHttp1(route, exchange);
+            }
+        } catch (Exception e) {
+            future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+        }
+        return future;
+    }
+
+    /**
+     * send idempotent requests of one origin back to back on one http/1.1 connection without waiting
+     * for each response(RFC 7230 section 6.3.2),the responses are matched in order<br>
+     * when the connection fails or the server closes it,the unanswered requests are sent again on a new connection,
+     * a request whose response was partly received fails,so does one which was first in line twice<br>
+     * redirects are not followed,callbacks are called in the I/O thread and must not block
+     *
+     * @param requests GET,HEAD,OPTIONS,TRACE,PUT or DELETE requests of the same scheme,host,port and proxy,
+     *                 without streamed body,http/2 ones are sent with http/1.1
+     * @return futures of the responses in the order of requests
+     */
+    public List<HttpFuture<HttpResponse>> pipeline(List<HttpRequest> requests) {
+        final List<HttpFuture<HttpResponse>> futures = new ArrayList<>(requests.size());
+        final List<Exchange> exchanges = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            futures.add(new HttpFuture<HttpResponse>());
+        }
+        try {
+            Route route = null;
+            for (int i = 0; i < requests.size(); i++) {
+                final HttpRequest request = requests.get(i);
+                if (!RetryPolicy.isIdempotent(request.getMethod()) || null != request.getBody()) {
+                    throw new HttpException("{} {} can not be pipelined", request.getMethod(), request.getRequestUrl());
+                }
+                final URL url = URLUtils.url(request.getRequestUrl());
+                final Proxy proxy = request.getProxy();
+                final Route requestRoute = routeOf(request, url);
+                if (null == route) {
+                    route = requestRoute;
+                } else if (!route.equals(requestRoute)) {
+                    throw new HttpException("Pipelined requests must share one origin,{} is not {}", requestRoute, route);
+                }
+                final boolean isAbsoluteForm = null != proxy && Proxy.Type.HTTP == proxy.type() && !"https".equals(route.getScheme());
+                final ByteBuffer out = RequestSerializer.serialize(request, null, url, isAbsoluteForm);
+                final int requestTimeout = request.getTimeout() > 0 ? request.getTimeout() : timeout;
+                exchanges.add(new Exchange(request, url, futures.get(i), null, requestTimeout, out, null));
+            }
+            if (null == route) {
+                return futures;
+            }
+            final PoolEntry entry = pool.lease(route);
+            try {
+                NioConnection connection = (NioConnection) entry.getConnection();
+                final boolean isReused = null != connection && connection.isOpen();
+                if (!isReused) {
+                    connection = open(route, exchanges.get(0).listener);
+                    entry.setConnection(connection);
+                }
+                for (Exchange exchange : exchanges) {
+                    exchange.poolEntry = entry;
+                    if (null != exchange.listener) {
+                        exchange.listener.connectionAcquired(isReused);
+                    }
+                }
+                dispatchPipeline(connection, exchanges);
+            } catch (IOException | RuntimeException e) {
+                pool.release(entry, false, -1);
+                throw e;
+            }
+        } catch (Exception e) {
+            final Throwable cause = e instanceof HttpException ? e : new HttpException(e.getMessage(), e);
+            for (HttpFuture<HttpResponse> future : futures) {
+                future.fail(cause);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * stop I/O threads,requests in flight fail
+     */
+    public void shutdown() {
+        for (IoWorker worker : workers) {
+            worker.shutdown();
+        }
+        http2Sessions.clear();
+        pool.closeIdle();
+    }
+
+    private boolean isHttp2(HttpRequest request, Route route) {
+        return HttpBase.HTTP_2.equalsIgnoreCase(request.getHttpVersion()) && !http1Routes.contains(route)
+                && ("http".equals(route.getScheme()) || Alpn.isSupported());
+    }
+
+    /**
+     * send on a keep-alive connection of the pool or a new one
+     */
+    private void submitHttp1(Route route, Exchange exchange) throws IOException {
+        final PoolEntry entry = pool.lease(route);
+        NioConnection connection = (NioConnection) entry.getConnection();
+        final boolean isReused = null != connection && connection.isOpen();
+        try {
+            if (!isReused) {
+                connection = open(route, exchange.listener);
+                entry.setConnection(connection);
+            }
+        } catch (IOException e) {
+            pool.release(entry, false, -1);
+            throw e;
+        } catch (RuntimeException e) {
+            pool.release(entry, false, -1);
+            throw e;
+        }
+        exchange.poolEntry = entry;
+        if (null != exchange.listener) {
+            exchange.listener.connectionAcquired(isReused);
+        }
+        dispatch(connection, exchange);
+    }
+
+    /**
+     * send as a stream of the http/2 connection of the route,the first request of a route opens it
+     * and the requests meanwhile wait for it
+     */
+    private void submitHttp2(Route route, Exchange exchange) throws IOException, InterruptedException {
+        while (true) {
+            Http2Session session = http2Sessions.get(route);
+            if (null == session) {
+                final Http2Session created = new Http2Session(this, route);
+                session = http2Sessions.putIfAbsent(route, created);
+                if (null == session) {
+                    connectHttp2(created, exchange);
+                    return;
+                }
+            }
+            if (!session.await(exchange.timeout)) {
+                throw new SocketTimeoutException("Connect timed out");
+            }
+            if (session.isUsable()) {
+                if (null != exchange.listener) {
+                    exchange.listener.connectionAcquired(true);
+                }
+                dispatch(session.getConnection(), exchange);
+                return;
+            }
+            removeHttp2(route, session);
+            if (http1Routes.contains(route)) {
+                submitHttp1(route, exchange);
+                return;
+            }
+        }
+    }
+
+    private void connectHttp2(Http2Session session, Exchange exchange) throws IOException {
+        final Route route = session.getRoute();
+        PoolEntry entry = null;
+        try {
+            entry = pool.lease(route);
+            // an idle http/1.1 connection of the route is no use
+            final NioConnection idle = (NioConnection) entry.getConnection();
+            if (null != idle) {
+                idle.close();
+            }
+            final NioConnection connection = open(route, exchange.listener);
+            entry.setConnection(connection);
+            connection.setHttp2(session);
+            exchange.poolEntry = entry;
+            if (null != exchange.listener) {
+                exchange.listener.connectionAcquired(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (null != entry) {
+                pool.release(entry, false, -1);
+            }
+            session.closed();
+            throw e;
+        }
+        dispatch(session.getConnection(), exchange);
+    }
+
+    /**
+     * forget a http/2 connection which is closed or going away
+     */
+    void removeHttp2(Route route, Http2Session session) {
+        http2Sessions.remove(route, session);
+    }
+
+    /**
+     * the server of the route chose http/1.1 in alpn,later http/2 requests of it go with http/1.1
+     */
+    void http1Only(Route route, Http2Session session) {
+        http1Routes.add(route);
+        http2Sessions.remove(route, session);
+    }
+
+    private void dispatch(final NioConnection connection, final Exchange exchange) {
+        exchange.future.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                connection.getWorker().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (exchange == connection.getExchange()) {
+                            if (!connection.abort()) {
+                                pool.release(exchange.poolEntry, false, -1);
+                            }
+                        } else if (null != connection.getHttp2()) {
+                            connection.getHttp2().cancel(exchange);
+                        }
+                    }
+                });
+            }
+        });
+        connection.getWorker().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange.future.isCancelled()) {
+                    if (null != exchange.poolEntry) {
+                        pool.release(exchange.poolEntry, false, -1);
+                        connection.close();
+                    }
+                    return;
+                }
+                connection.start(exchange);
+            }
+        });
+    }
+
+    /**
+     * start a pipeline,a cancelled exchange which is not first in line is answered and dropped
+     */
+    private void dispatchPipeline(final NioConnection connection, final List<Exchange> exchanges) {
+        for (final Exchange exchange : exchanges) {
+            exchange.future.onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    connection.getWorker().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (exchange == connection.getExchange() && !connection.abort()) {
+                                pool.release(exchange.poolEntry, false, -1);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        connection.getWorker().execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.startPipeline(exchanges);
+            }
+        });
+    }
+
+    /**
+     * send the unanswered exchanges of a pipeline again on a new connection with the same lease,called in worker thread
+     *
+     * @param unanswered   exchanges in order
+     * @param connection   the connection which failed or was closed
+     * @param cause        why
+     * @param isFirstTried was the first one in line when it failed,it is sent again only once
+     */
+    void replay(List<Exchange> unanswered, NioConnection connection, Throwable cause, boolean isFirstTried) {
+        final PoolEntry entry = unanswered.get(0).poolEntry;
+        final List<Exchange> replayed = new ArrayList<>(unanswered.size());
+        for (int i = 0; i < unanswered.size(); i++) {
+            final Exchange exchange = unanswered.get(i);
+            if (exchange.future.isDone()) {
+                continue;
+            }
+            if (0 == i && isFirstTried) {
+                if (!exchange.isRetryable()) {
+                    exchange.closeBody();
+                    exchange.future.fail(cause instanceof HttpException ? cause : new HttpException(cause.getMessage(), cause));
+                    continue;
+                }
+                exchange.rewind();
+            } else {
+                exchange.requeue();
+            }
+            replayed.add(exchange);
+        }
+        if (replayed.isEmpty()) {
+            pool.release(entry, false, -1);
+            return;
+        }
+        logger.debug("replay {} pipelined requests to {}: {}", replayed.size(), connection.getRoute(), cause.getMessage());
+        try {
+            final NioConnection fresh = open(connection.getRoute(), replayed.get(0).listener);
+            entry.setConnection(fresh);
+            dispatchPipeline(fresh, replayed);
+        } catch (IOException | RuntimeException e) {
+            pool.release(entry, false, -1);
+            for (Exchange exchange : replayed) {
+                exchange.future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+            }
+        }
+    }
+
+    /**
+     * open a connection bound to the next worker,the addresses are resolved in caller thread
+     *
+     * @param listener listener of the exchange opening it,null if not observed
+     */
+    private NioConnection open(Route route, HttpEventListener listener) throws IOException {
+        final List<InetSocketAddress> addresses = new ArrayList<>();
+        final Proxy proxy = route.getProxy();
+        if (null == proxy) {
+            for (InetAddress address : HappyEyeballs.interleave(resolve(route.getHost(), listener))) {
+                addresses.add(new InetSocketAddress(address, route.getPort()));
+            }
+        } else {
+            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            if (proxyAddress.isUnresolved()) {
+                for (InetAddress address : HappyEyeballs.interleave(resolve(proxyAddress.getHostString(), listener))) {
+                    addresses.add(new InetSocketAddress(address, proxyAddress.getPort()));
+                }
+            } else {
+                addresses.add(proxyAddress);
+            }
+        }
+        final SSLContext context = "https".equals(route.getScheme())
+                ? (null == route.getSSLContext() ? sslContext() : route.getSSLContext()) : null;
+        final IoWorker worker = workers[(nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+        return new NioConnection(this, worker, route, addresses, context);
+    }
+
+    private InetAddress[] resolve(String host, HttpEventListener listener) throws IOException {
+        if (null == listener) {
+            return resolver.resolve(host);
+        }
+        listener.dnsStart(host);
+        final InetAddress[] addresses = resolver.resolve(host);
+        listener.dnsEnd(host, addresses);
+        return addresses;
+    }
+
+    /**
+     * route of the request,the SSLContext of an https request keeps it on connections of its own
+     *
+     * @throws HttpException the request has a socket factory without its SSLContext
+     */
+    private static Route routeOf(HttpRequest request, URL url) {
+        final SSLContext context = request.getSSLContext();
+        if (null == context && null != request.getSocketFactory() && "https".equalsIgnoreCase(url.getProtocol())) {
+            throw new HttpException("SSLSocketFactory of {} can not be used by the engine,set its SSLContext instead", request.getRequestUrl());
+        }
+        return Route.of(url, request.getProxy(), context);
+    }
+
+    private SSLContext sslContext() {
+        if (null == sslContext) {
+            synchronized (this) {
+                if (null == sslContext) {
+                    try {
+                        sslContext = SSLSocketFactoryBuilder.create().buildSharedContext();
+                    } catch (Exception e) {
+                        throw new HttpException(e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return sslContext;
+    }
+
+    /**
+     * the exchange is done,called in worker thread
+     */
+    void complete(Exchange exchange, boolean isReusable) {
+        final ResponseParser parser = exchange.parser;
+        final String keepAlive = parser.header("Keep-Alive");
+        pool.release(exchange.poolEntry, isReusable, keepAliveTimeout(keepAlive));
+        complete(exchange, parser.getStatus(), parser.getHeaders(), parser.getBody());
+    }
+
+    /**
+     * the response is read,called in worker thread
+     */
+    void complete(Exchange exchange, int status, Map<String, List<String>> headers, byte[] body) {
+        exchange.closeBody();
+        final CookieJar cookieJar = exchange.request.getCookieJar();
+        if (null != cookieJar) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (Header.SET_COOKIE.toString().equalsIgnoreCase(entry.getKey())) {
+                    cookieJar.saveFromResponse(exchange.url, entry.getValue());
+                }
+            }
+        }
+        final String encoding = exchange.request.isDecompress() ? contentEncoding(headers) : null;
+        if (ContentDecoder.isSupported(encoding)) {
+            // decoded in the worker thread before the body ends for the listener
+            try {
+                body = ContentDecoder.decode(body, encoding, InflaterPool.getDefault());
+            } catch (IOException e) {
+                exchange.future.fail(new HttpException(e, "Failed to decode {} body of {}", encoding, exchange.url));
+                return;
+            }
+        }
+        if (null != exchange.listener) {
+            exchange.listener.responseEnd(body.length);
+        }
+        final HttpResponse response = new HttpResponse(status, headers, body, exchange.request.getCharset());
+        if (ContentDecoder.isSupported(encoding)) {
+            // the body is no longer of the encoding nor of its length
+            response.removeHeader(Header.CONTENT_ENCODING).removeHeader(Header.CONTENT_LENGTH);
+        }
+        exchange.future.complete(response);
+    }
+
+    private static String contentEncoding(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (Header.CONTENT_ENCODING.toString().equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * the exchange failed,called in worker thread,a stale keep-alive connection is replaced once
+     */
+    void fail(Exchange exchange, NioConnection connection, Throwable e) {
+        if (exchange.future.isDone()) {
+            return;
+        }
+        if (exchange.poolEntry.isReused() && exchange.isRetryable()) {
+            logger.debug("retry {} on a new connection: {}", exchange.url, e.getMessage());
+            try {
+                final NioConnection fresh = open(connection.getRoute(), exchange.listener);
+                exchange.poolEntry.setConnection(fresh);
+                exchange.rewind();
+                dispatch(fresh, exchange);
+                return;
+            } catch (IOException retryError) {
+                e = retryError;
+            }
+        }
+        exchange.closeBody();
+        pool.release(exchange.poolEntry, false, -1);
+        exchange.future.fail(e instanceof HttpException ? e : new HttpException(e.getMessage(), e));
+    }
+
+    private static long keepAliveTimeout(String keepAlive) {
+        if (StrUtils.isBlank(keepAlive)) {
+            return -1;
+        }
+        for (String param : keepAlive.split(",")) {
+            final String[] pair = param.trim().split("=");
+            if (2 == pair.length && "timeout".equalsIgnoreCase(pair[0].trim())) {
+                try {
+                    return Long.parseLong(pair[1].trim()) * 1000;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRedirect(int status) {
+        return HttpStatus.HTTP_MOVED_PERM == status || HttpStatus.HTTP_MOVED_TEMP == status
+                || HttpStatus.HTTP_SEE_OTHER == status || 307 == status || 308 == status;
+    }
+
+    /**
+     * build the request to the redirect location,303 and POST of 301/302 become GET and drop the body headers,
+     * credentials and cookies are not sent to another scheme,host or port,the other settings the engine reads are kept
+     *
+     * @throws HttpException 307 or 308 of a request with a one-shot body
+     */
+    private static HttpRequest redirect(HttpRequest from, String location, int status) {
+        final URL source = URLUtils.url(from.getRequestUrl());
+        final URL target;
+        try {
+            target = new URL(source, location);
+        } catch (IOException e) {
+            throw new HttpException(e, "Invalid redirect location: {}", location);
+        }
+        final boolean toGet = HttpStatus.HTTP_SEE_OTHER == status
+                || (HttpMethod.POST.equals(from.getMethod()) && status < 307);
+        final HttpRequest to = new HttpRequest(target.toString())
+                .method(toGet ? HttpMethod.GET : from.getMethod())
+                .timeout(from.getTimeout())
+                .setProxy(from.getProxy())
+                .setHostnameVerifier(from.getHostnameVerifier())
+                .setSSLContext(from.getSSLContext())
+                .setEventListener(from.getEventListener())
+                .setDecompress(from.isDecompress())
+                .setCookieJar(from.getCookieJar())
+                .header(from.getHeaders());
+        // the engine decodes a response without charset by the one of the request
+        to.httpVersion(from.getHttpVersion()).charset(Charset.forName(from.getCharset()));
+        if (null == from.getSSLContext()) {
+            // a bare socket factory fails an https hop as it fails the first request
+            to.setSocketFactory(from.getSocketFactory());
+        }
+        if (!isSameOrigin(source, target)) {
+            to.removeHeader(Header.AUTHORIZATION).removeHeader(Header.PROXY_AUTHORIZATION).removeHeader(Header.COOKIE);
+        }
+        if (toGet) {
+            to.removeHeader(Header.CONTENT_TYPE).removeHeader(Header.CONTENT_LENGTH);
+        } else {
+            final RequestBody streamed = from.getBody();
+            final byte[] body = from.getBodyBytes();
+            if (null != streamed) {
+                if (!streamed.isRepeatable()) {
+                    throw new HttpException("Redirect {} of {} needs the one-shot body again", status, from.getRequestUrl());
+                }
+                // a streamed body is opened again from the start
+                to.body(streamed);
+            } else if (null != body) {
+                to.body(body);
+            }
+        }
+        return to;
+    }
+
+    private static boolean isSameOrigin(URL from, URL to) {
+        return from.getProtocol().equalsIgnoreCase(to.getProtocol()) && from.getHost().equalsIgnoreCase(to.getHost())
+                && (-1 == from.getPort() ? from.getDefaultPort() : from.getPort()) == (-1 == to.getPort() ? to.getDefaultPort() : to.getPort());
+    }
+
+    /**
+     * lazy holder of the shared engine
+     */
+    private static class DefaultHolder {
+        private static final NioHttpEngine ENGINE = create();
+    }
+}
@@ -0,0 +1,251 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.*;
+import cn.org.imaginary.http.body.RequestBody;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * write a {@link HttpRequest} as http/1.1 message bytes or http/2 header fields
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class RequestSerializer {
+    // headers of http/1.1 connection management,not allowed in http/2
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "te", "host"));
+
+    private RequestSerializer() {
+    }
+
+    /**
+     * serialize request line,headers and body,a streamed body is not included
+     *
+     * @param request      request
+     * @param streamed     body streamed after the headers,null if none
+     * @param url          parsed request url
+     * @param absoluteForm use absolute url as request target,for plain http through a http proxy
+     * @return message bytes in read mode
+     */
+    static ByteBuffer serialize(HttpRequest request, RequestBody streamed, URL url, boolean absoluteForm) {
+        final byte[] body = null == streamed ? request.getBodyBytes() : null;
+        final RequestTemplate template = request.getTemplate();
+        if (null != template) {
+            return serialize(request, template, body, streamed, url, absoluteForm);
+        }
+        final StringBuilder sb = new StringBuilder(512);
+        // http/2 requests fall back to http/1.1 when the server does not speak it
+        final String version = HttpBase.HTTP_2.equalsIgnoreCase(request.getHttpVersion()) ? HttpBase.HTTP_1_1 : request.getHttpVersion();
+
+        sb.append(request.getMethod().name()).append(' ').append(absoluteForm ? url.toString() : target(url))
+                .append(' ').append(version.toUpperCase()).append(StrUtils.CRLF);
+        appendHeader(sb, Header.HOST.toString(), host(url));
+        for (String[] field : fields(request, url, body, streamed)) {
+            appendHeader(sb, field[0], field[1]);
+        }
+        sb.append(StrUtils.CRLF);
+
+        final byte[] head = sb.toString().getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+        final ByteBuffer buffer = ByteBuffer.allocate(head.length + (null == body ? 0 : body.length));
+        buffer.put(head);
+        if (null != body) {
+            buffer.put(body);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * serialize a request of a template,only the request line and the headers of the body are encoded here
+     */
+    private static ByteBuffer serialize(HttpRequest request, RequestTemplate template, byte[] body, RequestBody streamed,
+                                        URL url, boolean absoluteForm) {
+        final String target = absoluteForm ? url.toString() : target(url);
+        final String method = request.getMethod().name();
+        final String version = HttpBase.HTTP_2.equalsIgnoreCase(request.getHttpVersion()) ? "HTTP/1.1" : request.getHttpVersion().toUpperCase();
+
+        final StringBuilder sb = new StringBuilder(128);
+        final String contentType = contentType(request, streamed);
+        appendHeader(sb, Header.CONTENT_TYPE.toString(), null == contentType ? HttpConnection.DEFAULT_CONTENT_TYPE : contentType);
+        if (null != request.getCookieJar() && !template.hasHeader(Header.COOKIE)) {
+            final String cookie = request.getCookieJar().cookieHeader(url);
+            if (null != cookie) {
+                appendHeader(sb, Header.COOKIE.toString(), cookie);
+            }
+        }
+        final long contentLength = contentLength(request.getMethod(), body, streamed);
+        if (contentLength >= 0) {
+            appendHeader(sb, Header.CONTENT_LENGTH.toString(), String.valueOf(contentLength));
+        } else if (null != streamed) {
+            appendHeader(sb, Header.TRANSFER_ENCODING.toString(), "chunked");
+        }
+        sb.append(StrUtils.CRLF);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(method.length() + target.length() + version.length() + 4
+                + template.getHeadLength() + sb.length() + (null == body ? 0 : body.length));
+        putAscii(buffer, method);
+        buffer.put((byte) ' ');
+        putAscii(buffer, target);
+        buffer.put((byte) ' ');
+        putAscii(buffer, version);
+        buffer.put((byte) '\r').put((byte) '\n');
+        template.writeHead(buffer);
+        putAscii(buffer, sb);
+        if (null != body) {
+            buffer.put(body);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * write chars as iso-8859-1 bytes,the chars of a request line and headers fit in one byte
+     */
+    private static void putAscii(ByteBuffer buffer, CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            buffer.put((byte) chars.charAt(i));
+        }
+    }
+
+    /**
+     * the Content-Type of a streamed body,or the one of the request
+     */
+    private static String contentType(HttpRequest request, RequestBody streamed) {
+        return null == streamed || null == streamed.contentType() ? request.getContentType() : streamed.contentType();
+    }
+
+    /**
+     * the Content-Length of a request,-1 if it has none or the streamed body has an unknown length
+     */
+    private static long contentLength(HttpMethod method, byte[] body, RequestBody streamed) {
+        if (null != streamed) {
+            return streamed.contentLength();
+        }
+        if (null != body) {
+            return body.length;
+        }
+        return HttpMethod.POST.equals(method) || HttpMethod.PUT.equals(method) || HttpMethod.PATCH.equals(method) ? 0 : -1;
+    }
+
+    /**
+     * the header fields of a http/2 request,pseudo headers first and names in lowercase,
+     * connection specific headers are dropped
+     *
+     * @param request  request
+     * @param streamed body streamed after the headers,null if none
+     * @param url      parsed request url
+     * @return fields in order,each is a name and a value
+     */
+    static List<String[]> http2Fields(HttpRequest request, RequestBody streamed, URL url) {
+        final List<String[]> fields = new ArrayList<>();
+        fields.add(new String[]{":method", request.getMethod().name()});
+        fields.add(new String[]{":scheme", url.getProtocol()});
+        fields.add(new String[]{":authority", host(url)});
+        fields.add(new String[]{":path", target(url)});
+        for (String[] field : fields(request, url, null == streamed ? request.getBodyBytes() : null, streamed)) {
+            final String name = field[0].toLowerCase();
+            if (!CONNECTION_HEADERS.contains(name)) {
+                fields.add(new String[]{name, field[1]});
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * request headers,defaults and the cookie of the host,without Host
+     */
+    private static List<String[]> fields(HttpRequest request, URL url, byte[] body, RequestBody streamed) {
+        final List<String[]> fields = new ArrayList<>();
+        final HttpMethod method = request.getMethod();
+        final Map<String, List<String>> headers = request.getHeaders();
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            final String name = entry.getKey();
+            if (Header.HOST.toString().equalsIgnoreCase(name)
+                    || Header.CONTENT_LENGTH.toString().equalsIgnoreCase(name)
+                    || Header.CONTENT_TYPE.toString().equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                fields.add(new String[]{name, value});
+            }
+        }
+        defaultHeader(fields, headers, Header.ACCEPT, HttpConnection.DEFAULT_ACCEPT);
+        defaultHeader(fields, headers, Header.ACCEPT_ENCODING, HttpConnection.DEFAULT_ACCEPT_ENCODING);
+        defaultHeader(fields, headers, Header.USER_AGENT, HttpConnection.DEFAULT_USER_AGENT);
+        final String contentType = contentType(request, streamed);
+        fields.add(new String[]{Header.CONTENT_TYPE.toString(), null == contentType ? HttpConnection.DEFAULT_CONTENT_TYPE : contentType});
+        if (null != request.getCookieJar() && !containsHeader(headers, Header.COOKIE.toString())) {
+            final String cookie = request.getCookieJar().cookieHeader(url);
+            if (null != cookie) {
+                fields.add(new String[]{Header.COOKIE.toString(), cookie});
+            }
+        }
+        final long contentLength = contentLength(method, body, streamed);
+        if (contentLength >= 0) {
+            fields.add(new String[]{Header.CONTENT_LENGTH.toString(), String.valueOf(contentLength)});
+        } else if (null != streamed) {
+            // dropped for http/2,where DATA frames end the body
+            fields.add(new String[]{Header.TRANSFER_ENCODING.toString(), "chunked"});
+        }
+        return fields;
+    }
+
+    /**
+     * the CONNECT request which opens a tunnel through http proxy
+     *
+     * @param url target url
+     * @return message bytes in read mode
+     */
+    static ByteBuffer connect(URL url) {
+        final String authority = url.getHost() + ':' + port(url);
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("CONNECT ").append(authority).append(" HTTP/1.1").append(StrUtils.CRLF);
+        appendHeader(sb, Header.HOST.toString(), authority);
+        appendHeader(sb, Header.USER_AGENT.toString(), HttpConnection.DEFAULT_USER_AGENT);
+        sb.append(StrUtils.CRLF);
+        return ByteBuffer.wrap(sb.toString().getBytes(CharsetUtils.CHARSET_ISO_8859_1));
+    }
+
+    static int port(URL url) {
+        return -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+    }
+
+    private static String target(URL url) {
+        final String path = url.getPath();
+        final String query = url.getQuery();
+        final StringBuilder sb = new StringBuilder(StrUtils.isEmpty(path) ? StrUtils.SLASH : path);
+        if (null != query) {
+            sb.append('?').append(query);
+        }
+        return sb.toString();
+    }
+
+    private static String host(URL url) {
+        return -1 == url.getPort() || url.getPort() == url.getDefaultPort() ? url.getHost() : url.getHost() + ':' + url.getPort();
+    }
+
+    private static void defaultHeader(List<String[]> fields, Map<String, List<String>> headers, Header header, String value) {
+        if (!containsHeader(headers, header.toString())) {
+            fields.add(new String[]{header.toString(), value});
+        }
+    }
+
+    private static boolean containsHeader(Map<String, List<String>> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendHeader(StringBuilder sb, String name, String value) {
+        sb.append(name).append(": ").append(value).append(StrUtils.CRLF);
+    }
+}
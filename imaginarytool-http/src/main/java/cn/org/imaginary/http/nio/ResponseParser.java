@@ -0,0 +1,277 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.util.CharsetUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * an incremental http/1.1 response parser,fed with the bytes as they arrive
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class ResponseParser {
+    // max length of status line or a header line
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int STATUS_LINE = 0;
+    private static final int HEADER = 1;
+    private static final int BODY_FIXED = 2;
+    private static final int BODY_UNTIL_CLOSE = 3;
+    private static final int CHUNK_SIZE = 4;
+    private static final int CHUNK_DATA = 5;
+    private static final int CHUNK_END = 6;
+    private static final int TRAILER = 7;
+    private static final int DONE = 8;
+
+    // is the request a HEAD,whose response has no body
+    private final boolean isHead;
+    private int state = STATUS_LINE;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    private String version;
+    private int status;
+    private Map<String, List<String>> headers = new LinkedHashMap<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private long remaining;
+    private boolean isKeepAlive;
+    // any byte received
+    private boolean isStarted;
+
+    ResponseParser(boolean isHead) {
+        this.isHead = isHead;
+    }
+
+    /**
+     * feed received bytes
+     *
+     * @param buf bytes in read mode,consumed bytes are skipped
+     * @return true when the response is complete
+     * @throws HttpException a case of malformed response
+     */
+    boolean feed(ByteBuffer buf) {
+        if (buf.hasRemaining()) {
+            isStarted = true;
+        }
+        while (DONE != state && buf.hasRemaining()) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(buf)) {
+                        parseStatusLine(takeLine());
+                    }
+                    break;
+                case HEADER:
+                    if (readLine(buf)) {
+                        final String header = takeLine();
+                        if (header.isEmpty()) {
+                            endOfHeaders();
+                        } else {
+                            parseHeader(header);
+                        }
+                    }
+                    break;
+                case BODY_FIXED:
+                case CHUNK_DATA:
+                    final int n = (int) Math.min(remaining, buf.remaining());
+                    body.write(buf.array(), buf.arrayOffset() + buf.position(), n);
+                    buf.position(buf.position() + n);
+                    remaining -= n;
+                    if (0 == remaining) {
+                        state = BODY_FIXED == state ? DONE : CHUNK_END;
+                    }
+                    break;
+                case BODY_UNTIL_CLOSE:
+                    body.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                    buf.position(buf.limit());
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buf)) {
+                        parseChunkSize(takeLine());
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(buf)) {
+                        takeLine();
+                        state = CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    if (readLine(buf) && takeLine().isEmpty()) {
+                        state = DONE;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return DONE == state;
+    }
+
+    /**
+     * the peer closed the connection
+     *
+     * @return true if the response is complete
+     */
+    boolean eof() {
+        if (BODY_UNTIL_CLOSE == state) {
+            state = DONE;
+            isKeepAlive = false;
+        }
+        return DONE == state;
+    }
+
+    boolean isStarted() {
+        return isStarted;
+    }
+
+    boolean isDone() {
+        return DONE == state;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    /**
+     * can the connection be reused after this response
+     *
+     * @return true or false
+     */
+    boolean isKeepAlive() {
+        return DONE == state && isKeepAlive;
+    }
+
+    /**
+     * the first value of header,ignore case
+     */
+    String header(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private boolean readLine(ByteBuffer buf) {
+        while (buf.hasRemaining()) {
+            final byte b = buf.get();
+            if ('\n' == b) {
+                return true;
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new HttpException("Response line is longer than {}", MAX_LINE_LENGTH);
+            }
+            line.write(b);
+        }
+        return false;
+    }
+
+    private String takeLine() {
+        String str = new String(line.toByteArray(), CharsetUtils.CHARSET_ISO_8859_1);
+        line.reset();
+        if (str.endsWith("\r")) {
+            str = str.substring(0, str.length() - 1);
+        }
+        return str;
+    }
+
+    private void parseStatusLine(String statusLine) {
+        // HTTP/1.1 200 OK
+        final int first = statusLine.indexOf(' ');
+        if (first < 0 || !statusLine.startsWith("HTTP/")) {
+            throw new HttpException("Invalid status line: {}", statusLine);
+        }
+        int second = statusLine.indexOf(' ', first + 1);
+        if (second < 0) {
+            second = statusLine.length();
+        }
+        this.version = statusLine.substring(0, first);
+        try {
+            this.status = Integer.parseInt(statusLine.substring(first + 1, second).trim());
+        } catch (NumberFormatException e) {
+            throw new HttpException(e, "Invalid status line: {}", statusLine);
+        }
+        state = HEADER;
+    }
+
+    private void parseHeader(String header) {
+        final int colon = header.indexOf(':');
+        if (colon <= 0) {
+            throw new HttpException("Invalid header: {}", header);
+        }
+        final String name = header.substring(0, colon).trim();
+        final String value = header.substring(colon + 1).trim();
+        List<String> values = headers.get(name);
+        if (null == values) {
+            values = new ArrayList<>(1);
+            headers.put(name, values);
+        }
+        values.add(value);
+    }
+
+    private void endOfHeaders() {
+        if (status >= 100 && status < 200 && 101 != status) {
+            // interim response like 100 Continue,the real one follows
+            headers = new LinkedHashMap<>();
+            state = STATUS_LINE;
+            return;
+        }
+        final String connection = header("Connection");
+        if ("HTTP/1.0".equalsIgnoreCase(version)) {
+            isKeepAlive = null != connection && "keep-alive".equalsIgnoreCase(connection.trim());
+        } else {
+            isKeepAlive = null == connection || !"close".equalsIgnoreCase(connection.trim());
+        }
+
+        if (isHead || 204 == status || 304 == status) {
+            state = DONE;
+            return;
+        }
+        final String transferEncoding = header("Transfer-Encoding");
+        if (null != transferEncoding && transferEncoding.toLowerCase().contains("chunked")) {
+            state = CHUNK_SIZE;
+            return;
+        }
+        final String contentLength = header("Content-Length");
+        if (null != contentLength) {
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new HttpException(e, "Invalid Content-Length: {}", contentLength);
+            }
+            state = 0 == remaining ? DONE : BODY_FIXED;
+            return;
+        }
+        // no length,the body ends when the server closes
+        isKeepAlive = false;
+        state = BODY_UNTIL_CLOSE;
+    }
+
+    private void parseChunkSize(String chunkLine) {
+        int end = chunkLine.indexOf(';');
+        if (end < 0) {
+            end = chunkLine.length();
+        }
+        try {
+            remaining = Long.parseLong(chunkLine.substring(0, end).trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new HttpException(e, "Invalid chunk size: {}", chunkLine);
+        }
+        state = 0 == remaining ? TRAILER : CHUNK_DATA;
+    }
+}
@@ -0,0 +1,254 @@
+package cn.org.imaginary.http.nio;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * drive a client {@link SSLEngine} over a non-blocking {@link SocketChannel}
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+final class SslCodec {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    // encrypted bytes read from socket,write mode
+    private ByteBuffer netIn;
+    // encrypted bytes waiting for socket,write mode
+    private ByteBuffer netOut;
+    // is the handshake finished
+    private boolean isHandshaken;
+
+    SslCodec(SSLEngine engine) throws SSLException {
+        this.engine = engine;
+        this.engine.beginHandshake();
+        final int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.netOut = ByteBuffer.allocate(packetSize);
+    }
+
+    SSLEngine getEngine() {
+        return engine;
+    }
+
+    int getApplicationBufferSize() {
+        return engine.getSession().getApplicationBufferSize();
+    }
+
+    boolean isHandshaken() {
+        return isHandshaken;
+    }
+
+    /**
+     * advance the handshake as far as the socket allows
+     *
+     * @param channel socket
+     * @return true when the handshake is finished
+     * @throws IOException a case of IO or handshake error
+     */
+    boolean handshake(SocketChannel channel) throws IOException {
+        if (isHandshaken) {
+            return true;
+        }
+        if (!flush(channel)) {
+            return false;
+        }
+        final ByteBuffer sink = ByteBuffer.allocate(getApplicationBufferSize());
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    if (!flush(channel)) {
+                        return false;
+                    }
+                    break;
+                case NEED_UNWRAP:
+                    if (SSLEngineResult.Status.BUFFER_UNDERFLOW == unwrapOnce(sink)) {
+                        final int n = channel.read(netIn);
+                        if (n < 0) {
+                            throw new EOFException("Connection closed during TLS handshake");
+                        }
+                        if (0 == n) {
+                            return false;
+                        }
+                    }
+                    break;
+                default:
+                    // FINISHED or NOT_HANDSHAKING
+                    isHandshaken = true;
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * encrypt plain bytes and write them to socket
+     *
+     * @param channel socket
+     * @param src     plain bytes in read mode
+     * @return true when src is consumed and every encrypted byte is written
+     * @throws IOException a case of IO error
+     */
+    boolean write(SocketChannel channel, ByteBuffer src) throws IOException {
+        while (true) {
+            if (!flush(channel)) {
+                return false;
+            }
+            if (!src.hasRemaining()) {
+                return true;
+            }
+            wrap(src);
+        }
+    }
+
+    /**
+     * read from socket and decrypt into dst
+     *
+     * @param channel socket
+     * @param dst     plain bytes,write mode
+     * @return plain bytes produced,-1 when the peer closed and nothing left
+     * @throws IOException a case of IO error
+     */
+    int read(SocketChannel channel, ByteBuffer dst) throws IOException {
+        int produced = unwrap(dst);
+        if (produced > 0) {
+            return produced;
+        }
+        final int n = channel.read(netIn);
+        produced = unwrap(dst);
+        if (engine.isInboundDone()) {
+            // the peer sent close_notify,its body ended there and the connection is not answered
+            return produced > 0 ? produced : -1;
+        }
+        // post handshake messages like TLS 1.3 session tickets may ask for a reply
+        if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+            wrap(EMPTY);
+            flush(channel);
+        }
+        return produced > 0 || n >= 0 ? produced : -1;
+    }
+
+    /**
+     * write pending encrypted bytes
+     *
+     * @param channel socket
+     * @return true when nothing is pending
+     * @throws IOException a case of IO error
+     */
+    boolean flush(SocketChannel channel) throws IOException {
+        if (0 == netOut.position()) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            channel.write(netOut);
+            return !netOut.hasRemaining();
+        } finally {
+            netOut.compact();
+        }
+    }
+
+    boolean hasPendingWrite() {
+        return netOut.position() > 0;
+    }
+
+    private void wrap(ByteBuffer src) throws SSLException {
+        while (true) {
+            final SSLEngineResult result = engine.wrap(src, netOut);
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                    break;
+                case CLOSED:
+                    throw new SSLException("SSLEngine is closed");
+                default:
+                    if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                        runTasks();
+                    }
+                    return;
+            }
+        }
+    }
+
+    /**
+     * decrypt buffered bytes into dst
+     *
+     * @return plain bytes produced
+     */
+    private int unwrap(ByteBuffer dst) throws SSLException {
+        int produced = 0;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                final SSLEngineResult result = engine.unwrap(netIn, dst);
+                produced += result.bytesProduced();
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runTasks();
+                }
+                if (result.getStatus() != SSLEngineResult.Status.OK
+                        || (0 == result.bytesConsumed() && 0 == result.bytesProduced())) {
+                    break;
+                }
+            }
+        } finally {
+            compactNetIn();
+        }
+        return produced;
+    }
+
+    /**
+     * unwrap a single record during handshake
+     */
+    private SSLEngineResult.Status unwrapOnce(ByteBuffer sink) throws SSLException {
+        netIn.flip();
+        try {
+            final SSLEngineResult result = engine.unwrap(netIn, sink);
+            if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runTasks();
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("SSLEngine is closed during handshake");
+            }
+            return result.getStatus();
+        } finally {
+            compactNetIn();
+        }
+    }
+
+    /**
+     * back to write mode,enlarge when a record does not fit
+     */
+    private void compactNetIn() {
+        netIn.compact();
+        if (!netIn.hasRemaining()) {
+            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while (null != (task = engine.getDelegatedTask())) {
+            task.run();
+        }
+    }
+
+    /**
+     * copy a write mode buffer into a bigger one
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        final ByteBuffer bigger = ByteBuffer.allocate(Math.max(size, buffer.capacity()) + buffer.capacity());
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
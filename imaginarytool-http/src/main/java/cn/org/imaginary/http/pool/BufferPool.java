@@ -0,0 +1,417 @@
+package cn.org.imaginary.http.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a pool of the buffers bodies are read and written through,byte arrays,heap and direct ByteBuffers
+ * in size classes of powers of two from {@link #MIN_SIZE} to {@link #MAX_SIZE}<br>
+ * a buffer is taken from the cache of the thread first,then from the shared queue of its class,
+ * a released one goes back to the cache of the thread and overflows to the shared queue,
+ * which keeps at most maxPooled of a class,larger sizes are allocated and dropped as before<br>
+ * a buffer must not be used after it is released,nor released twice,
+ * turn on leak detection while debugging to log buffers which were collected without release and bad releases
+ *
+ * @author Imaginary
+ * @see ConnectionPool
+ * @since 1.0
+ */
+public class BufferPool {
+    private final static Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+    // default buffers of a class and kind kept in the shared queue
+    public static final int DEFAULT_MAX_POOLED = 64;
+    // default buffers of a class and kind kept by each thread
+    public static final int DEFAULT_LOCAL_CACHE_SIZE = 2;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    // kinds of buffers
+    private static final int ARRAY = 0;
+    private static final int HEAP = 1;
+    private static final int DIRECT = 2;
+    private static final int KINDS = 3;
+
+    private static volatile BufferPool defaultPool;
+
+    private final List<Queue<Object>> shared;
+    private final AtomicInteger[] sharedCount;
+    private final ThreadLocal<Object[][]> localCaches = new ThreadLocal<Object[][]>() {
+        @Override
+        protected Object[][] initialValue() {
+            return new Object[KINDS * CLASSES][];
+        }
+    };
+    private volatile int maxPooled = DEFAULT_MAX_POOLED;
+    private volatile int localCacheSize = DEFAULT_LOCAL_CACHE_SIZE;
+    private final AtomicLong allocated = new AtomicLong();
+
+    // buffers out of the pool by identity hash,only while leak detection is on
+    private volatile boolean isLeakDetection;
+    private final Map<Integer, List<Tracker>> trackers = new HashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final AtomicLong leaks = new AtomicLong();
+
+    public BufferPool() {
+        shared = new ArrayList<>(KINDS * CLASSES);
+        sharedCount = new AtomicInteger[KINDS * CLASSES];
+        for (int i = 0; i < sharedCount.length; i++) {
+            shared.add(new ConcurrentLinkedQueue<Object>());
+            sharedCount[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * create BufferPool
+     *
+     * @return BufferPool
+     */
+    public static BufferPool create() {
+        return new BufferPool();
+    }
+
+    /**
+     * get the shared pool bodies are read and written through by default
+     *
+     * @return BufferPool
+     */
+    public static BufferPool getDefault() {
+        if (null == defaultPool) {
+            synchronized (BufferPool.class) {
+                if (null == defaultPool) {
+                    defaultPool = new BufferPool();
+                }
+            }
+        }
+        return defaultPool;
+    }
+
+    /**
+     * set the buffers of a class and kind kept in the shared queue,0 keeps none
+     *
+     * @param maxPooled max buffers
+     * @return BufferPool
+     */
+    public BufferPool setMaxPooled(int maxPooled) {
+        if (maxPooled >= 0) {
+            this.maxPooled = maxPooled;
+        }
+        return this;
+    }
+
+    /**
+     * set the buffers of a class and kind each thread keeps for itself,0 keeps none,
+     * a thread which stops using the pool holds them until it ends
+     *
+     * @param localCacheSize max buffers
+     * @return BufferPool
+     */
+    public BufferPool setLocalCacheSize(int localCacheSize) {
+        if (localCacheSize >= 0) {
+            this.localCacheSize = localCacheSize;
+        }
+        return this;
+    }
+
+    /**
+     * track the buffers out of the pool,a buffer collected without release or released twice is logged,
+     * it costs a stack trace for each buffer taken,so it is meant for debugging
+     *
+     * @param isLeakDetection track or not
+     * @return BufferPool
+     */
+    public BufferPool setLeakDetection(boolean isLeakDetection) {
+        this.isLeakDetection = isLeakDetection;
+        if (!isLeakDetection) {
+            synchronized (trackers) {
+                trackers.clear();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * take a byte array
+     *
+     * @param size min length
+     * @return array of the size class,its content is not cleared
+     */
+    public byte[] acquireBytes(int size) {
+        final int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            return new byte[size];
+        }
+        byte[] bytes = (byte[]) take(ARRAY, sizeClass);
+        if (null == bytes) {
+            allocated.incrementAndGet();
+            bytes = new byte[MIN_SIZE << sizeClass];
+        }
+        return track(bytes);
+    }
+
+    /**
+     * take a heap buffer
+     *
+     * @param size min capacity
+     * @return buffer of the size class,cleared
+     */
+    public ByteBuffer acquire(int size) {
+        return acquire(size, false);
+    }
+
+    /**
+     * take a direct buffer,a channel reads and writes it without copying through the heap
+     *
+     * @param size min capacity
+     * @return buffer of the size class,cleared
+     */
+    public ByteBuffer acquireDirect(int size) {
+        return acquire(size, true);
+    }
+
+    private ByteBuffer acquire(int size, boolean isDirect) {
+        final int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            return isDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = (ByteBuffer) take(isDirect ? DIRECT : HEAP, sizeClass);
+        if (null == buffer) {
+            allocated.incrementAndGet();
+            buffer = isDirect ? ByteBuffer.allocateDirect(MIN_SIZE << sizeClass) : ByteBuffer.allocate(MIN_SIZE << sizeClass);
+        } else {
+            buffer.clear();
+        }
+        return track(buffer);
+    }
+
+    /**
+     * give back an array taken by {@link #acquireBytes(int)},one of another length is dropped
+     *
+     * @param bytes array,may be null
+     */
+    public void release(byte[] bytes) {
+        if (null == bytes) {
+            return;
+        }
+        final int sizeClass = exactClass(bytes.length);
+        if (sizeClass >= 0 && untrack(bytes)) {
+            put(ARRAY, sizeClass, bytes);
+        }
+    }
+
+    /**
+     * give back a buffer taken by {@link #acquire(int)} or {@link #acquireDirect(int)},
+     * a read only buffer or one of another capacity is dropped
+     *
+     * @param buffer buffer,may be null
+     */
+    public void release(ByteBuffer buffer) {
+        if (null == buffer || buffer.isReadOnly()) {
+            return;
+        }
+        final int sizeClass = exactClass(buffer.capacity());
+        if (sizeClass < 0 || (!buffer.isDirect() && 0 != buffer.arrayOffset())) {
+            return;
+        }
+        if (untrack(buffer)) {
+            put(buffer.isDirect() ? DIRECT : HEAP, sizeClass, buffer);
+        }
+    }
+
+    /**
+     * the class of a requested size,-1 if it is larger than the classes
+     */
+    private static int sizeClass(int size) {
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+        if (size > MAX_SIZE) {
+            return -1;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * the class of a released capacity,-1 if it is not the size of one
+     */
+    private static int exactClass(int capacity) {
+        if (capacity < MIN_SIZE || capacity > MAX_SIZE || 0 != (capacity & (capacity - 1))) {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+    }
+
+    private Object take(int kind, int sizeClass) {
+        final int slot = kind * CLASSES + sizeClass;
+        final Object[] local = localCaches.get()[slot];
+        if (null != local) {
+            for (int i = local.length - 1; i >= 0; i--) {
+                final Object buffer = local[i];
+                if (null != buffer) {
+                    local[i] = null;
+                    return buffer;
+                }
+            }
+        }
+        final Object buffer = shared.get(slot).poll();
+        if (null != buffer) {
+            sharedCount[slot].decrementAndGet();
+        }
+        return buffer;
+    }
+
+    private void put(int kind, int sizeClass, Object buffer) {
+        final int slot = kind * CLASSES + sizeClass;
+        final int cacheSize = localCacheSize;
+        if (cacheSize > 0) {
+            final Object[][] caches = localCaches.get();
+            Object[] local = caches[slot];
+            if (null == local || local.length != cacheSize) {
+                local = caches[slot] = null == local ? new Object[cacheSize] : Arrays.copyOf(local, cacheSize);
+            }
+            for (int i = 0; i < local.length; i++) {
+                if (null == local[i]) {
+                    local[i] = buffer;
+                    return;
+                }
+            }
+        }
+        final AtomicInteger count = sharedCount[slot];
+        if (count.incrementAndGet() > maxPooled) {
+            // a dropped direct buffer is freed when it is collected
+            count.decrementAndGet();
+            return;
+        }
+        shared.get(slot).offer(buffer);
+    }
+
+    private <T> T track(T buffer) {
+        if (isLeakDetection) {
+            reportLeaks();
+            final Tracker tracker = new Tracker(buffer, collected);
+            synchronized (trackers) {
+                List<Tracker> list = trackers.get(tracker.hash);
+                if (null == list) {
+                    list = new ArrayList<>(1);
+                    trackers.put(tracker.hash, list);
+                }
+                list.add(tracker);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * forget a released buffer
+     *
+     * @return false if it is not out of the pool,then it is not pooled again
+     */
+    private boolean untrack(Object buffer) {
+        if (!isLeakDetection) {
+            return true;
+        }
+        reportLeaks();
+        final Integer hash = System.identityHashCode(buffer);
+        synchronized (trackers) {
+            final List<Tracker> list = trackers.get(hash);
+            if (null != list) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i).get() == buffer) {
+                        list.remove(i).clear();
+                        if (list.isEmpty()) {
+                            trackers.remove(hash);
+                        }
+                        return true;
+                    }
+                }
+            }
+        }
+        logger.warn("Buffer of {} bytes released twice or not taken from the pool", buffer instanceof byte[]
+                ? ((byte[]) buffer).length : ((ByteBuffer) buffer).capacity(), new IllegalStateException("released here"));
+        return false;
+    }
+
+    /**
+     * log the buffers collected while they were out of the pool
+     */
+    private void reportLeaks() {
+        Tracker tracker;
+        while (null != (tracker = (Tracker) collected.poll())) {
+            synchronized (trackers) {
+                final List<Tracker> list = trackers.get(tracker.hash);
+                if (null == list || !list.remove(tracker)) {
+                    // released before it was collected
+                    continue;
+                }
+                if (list.isEmpty()) {
+                    trackers.remove(tracker.hash);
+                }
+            }
+            leaks.incrementAndGet();
+            logger.warn("Buffer of {} bytes was collected without release", tracker.size, tracker.acquiredAt);
+        }
+    }
+
+    /**
+     * buffers allocated because none was pooled
+     *
+     * @return count
+     */
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * buffers found collected without release,only counted while leak detection is on
+     *
+     * @return count
+     */
+    public long getLeaks() {
+        reportLeaks();
+        return leaks.get();
+    }
+
+    /**
+     * buffers in the shared queues,the caches of the threads are not counted
+     *
+     * @return count
+     */
+    public int getPooled() {
+        int pooled = 0;
+        for (AtomicInteger count : sharedCount) {
+            pooled += count.get();
+        }
+        return pooled;
+    }
+
+    /**
+     * a buffer out of the pool and where it was taken
+     */
+    private static final class Tracker extends WeakReference<Object> {
+        private final Integer hash;
+        private final int size;
+        private final Throwable acquiredAt;
+
+        private Tracker(Object buffer, ReferenceQueue<Object> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+            this.size = buffer instanceof byte[] ? ((byte[]) buffer).length : ((ByteBuffer) buffer).capacity();
+            this.acquiredAt = new IllegalStateException("acquired here");
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package cn.org.imaginary.http.pool;
+
+import cn.org.imaginary.http.HttpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.channels.Channel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * a per route keep-alive connection pool<br>
+ * it bounds the connections in use by max total and max per route, keeps released keep-alive connections as idle
+ * and hands them out again(LIFO) while they are still valid<br>
+ * for {@link HttpURLConnection} the socket lives in the jdk keep-alive cache which may hand it to any request,
+ * so the pool only bounds the connections in use and keeps no idle handle of it,
+ * the connections of {@link cn.org.imaginary.http.nio.NioHttpEngine} are kept and closed by the pool
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class ConnectionPool {
+    private final static Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    // default max connections of the pool
+    public static final int DEFAULT_MAX_TOTAL = 64;
+    // default max connections of a route
+    public static final int DEFAULT_MAX_PER_ROUTE = 8;
+    // default idle time before close,the same as jdk keep-alive cache
+    public static final long DEFAULT_IDLE_TIMEOUT = 5000;
+    // default time to wait for a lease
+    public static final long DEFAULT_LEASE_TIMEOUT = 30000;
+
+    private static volatile ConnectionPool defaultPool;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<Route, RouteState> routes = new HashMap<>();
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+    private boolean validateOnBorrow = true;
+
+    // guarded by lock
+    private int totalLeased;
+    private int totalIdle;
+    private int totalPending;
+    private long created;
+    private long reused;
+    private long evicted;
+    private long timeouts;
+    private long lastSweep;
+    private boolean shutdown;
+
+    /**
+     * create ConnectionPool
+     *
+     * @return ConnectionPool
+     */
+    public static ConnectionPool create() {
+        return new ConnectionPool();
+    }
+
+    /**
+     * get a shared pool,a {@link cn.org.imaginary.http.HttpRequest} uses it only once set by
+     * {@link cn.org.imaginary.http.HttpRequest#setPool(ConnectionPool)}
+     *
+     * @return ConnectionPool
+     */
+    public static ConnectionPool getDefault() {
+        if (null == defaultPool) {
+            synchronized (ConnectionPool.class) {
+                if (null == defaultPool) {
+                    defaultPool = new ConnectionPool();
+                }
+            }
+        }
+        return defaultPool;
+    }
+
+    /**
+     * set max connections of the pool
+     *
+     * @param maxTotal max connections
+     * @return ConnectionPool
+     */
+    public ConnectionPool setMaxTotal(int maxTotal) {
+        if (maxTotal > 0) {
+            lock.lock();
+            try {
+                this.maxTotal = maxTotal;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * set max connections of a route
+     *
+     * @param maxPerRoute max connections
+     * @return ConnectionPool
+     */
+    public ConnectionPool setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute > 0) {
+            lock.lock();
+            try {
+                this.maxPerRoute = maxPerRoute;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * set how long a keep-alive connection can stay idle,in milliseconds
+     *
+     * @param idleTimeout idle timeout
+     * @return ConnectionPool
+     */
+    public ConnectionPool setIdleTimeout(long idleTimeout) {
+        if (idleTimeout >= 0) {
+            this.idleTimeout = idleTimeout;
+        }
+        return this;
+    }
+
+    /**
+     * set how long to wait for a lease when the pool is full,in milliseconds,0 means wait forever
+     *
+     * @param leaseTimeout lease timeout
+     * @return ConnectionPool
+     */
+    public ConnectionPool setLeaseTimeout(long leaseTimeout) {
+        if (leaseTimeout >= 0) {
+            this.leaseTimeout = leaseTimeout;
+        }
+        return this;
+    }
+
+    /**
+     * check the idle connection before reuse it
+     *
+     * @param validateOnBorrow validate or not
+     * @return ConnectionPool
+     */
+    public ConnectionPool setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+        return this;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /**
+     * lease a connection of route with default lease timeout
+     *
+     * @param route target route
+     * @return {@link PoolEntry}
+     * @throws HttpException a case of timeout,interrupt or pool shutdown
+     */
+    public PoolEntry lease(Route route) {
+        return lease(route, leaseTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * lease a connection of route
+     *
+     * @param route   target route
+     * @param timeout max time to wait,0 means wait forever
+     * @param unit    time unit
+     * @return {@link PoolEntry}
+     * @throws HttpException a case of timeout,interrupt or pool shutdown
+     */
+    public PoolEntry lease(Route route, long timeout, TimeUnit unit) {
+        final long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        final List<Object> toClose = new ArrayList<>();
+        PoolEntry entry = null;
+        lock.lock();
+        try {
+            while (true) {
+                if (shutdown) {
+                    throw new HttpException("Connection pool is shut down");
+                }
+                final long now = System.currentTimeMillis();
+                sweep(now, toClose);
+                // fetch after sweep which drops unused route states
+                final RouteState state = state(route);
+                if (state.leased < maxPerRoute && totalLeased < maxTotal) {
+                    entry = borrowIdle(state, now, toClose);
+                    if (null == entry) {
+                        // make room for a new connection by closing the oldest idle one of any route
+                        while (totalLeased + totalIdle >= maxTotal && totalIdle > 0) {
+                            closeOldestIdle(toClose);
+                        }
+                        entry = new PoolEntry(route, null, false);
+                        created++;
+                        state.created++;
+                    } else {
+                        reused++;
+                        state.reused++;
+                    }
+                    state.leased++;
+                    totalLeased++;
+                    return entry;
+                }
+
+                state.pending++;
+                totalPending++;
+                try {
+                    if (0 == deadline) {
+                        available.await();
+                    } else {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || available.awaitNanos(remaining) <= 0) {
+                            if (state.leased < maxPerRoute && totalLeased < maxTotal) {
+                                continue;
+                            }
+                            timeouts++;
+                            state.timeouts++;
+                            throw new HttpException("Timeout waiting for connection of {} {}", route, stats(state));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new HttpException(e, "Interrupted waiting for connection of {}", route);
+                } finally {
+                    state.pending--;
+                    totalPending--;
+                }
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * give back a lease
+     *
+     * @param entry           the lease
+     * @param reusable        can the connection be kept alive
+     * @param keepAliveMillis how long the server keeps the connection,less than 0 means unknown
+     */
+    public void release(PoolEntry entry, boolean reusable, long keepAliveMillis) {
+        if (null == entry) {
+            return;
+        }
+        Object toClose = null;
+        lock.lock();
+        try {
+            if (!entry.markReleased()) {
+                return;
+            }
+            final RouteState state = state(entry.getRoute());
+            state.leased--;
+            totalLeased--;
+            final Object connection = entry.getConnection();
+            if (reusable && !shutdown && null != connection && idleTimeout > 0) {
+                final long now = System.currentTimeMillis();
+                long ttl = idleTimeout;
+                if (keepAliveMillis >= 0 && keepAliveMillis < ttl) {
+                    ttl = keepAliveMillis;
+                }
+                if (ttl > 0) {
+                    final PoolEntry idle = new PoolEntry(entry.getRoute(), connection, true);
+                    idle.idleSince = now;
+                    idle.expiry = now + ttl;
+                    state.idle.addFirst(idle);
+                    totalIdle++;
+                    if (state.idle.size() > maxPerRoute) {
+                        toClose = removeLast(state);
+                    }
+                } else {
+                    toClose = connection;
+                }
+            } else if (null != connection && !reusable) {
+                toClose = connection;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+            close(toClose);
+        }
+    }
+
+    /**
+     * close idle connections which are expired
+     */
+    public void evictExpired() {
+        final List<Object> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            lastSweep = 0;
+            sweep(System.currentTimeMillis(), toClose);
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * close all idle connections
+     */
+    public void closeIdle() {
+        final List<Object> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            for (RouteState state : routes.values()) {
+                while (!state.idle.isEmpty()) {
+                    toClose.add(removeLast(state));
+                }
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * close idle connections and refuse new leases,leased connections are closed when released
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closeIdle();
+    }
+
+    /**
+     * get total statistics
+     *
+     * @return {@link PoolStats}
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(totalLeased, totalIdle, totalPending, maxTotal, created, reused, evicted, timeouts);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get statistics of a route
+     *
+     * @param route route
+     * @return {@link PoolStats}
+     */
+    public PoolStats getStats(Route route) {
+        lock.lock();
+        try {
+            final RouteState state = routes.get(route);
+            return null == state ? new PoolStats(0, 0, 0, maxPerRoute, 0, 0, 0, 0) : stats(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * get all routes known by the pool
+     *
+     * @return routes
+     */
+    public Set<Route> getRoutes() {
+        lock.lock();
+        try {
+            return new HashSet<>(routes.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool" + getStats();
+    }
+
+    private PoolStats stats(RouteState state) {
+        return new PoolStats(state.leased, state.idle.size(), state.pending, maxPerRoute,
+                state.created, state.reused, state.evicted, state.timeouts);
+    }
+
+    private RouteState state(Route route) {
+        RouteState state = routes.get(route);
+        if (null == state) {
+            state = new RouteState();
+            routes.put(route, state);
+        }
+        return state;
+    }
+
+    /**
+     * take the most recent idle connection,evict the invalid ones
+     */
+    private PoolEntry borrowIdle(RouteState state, long now, List<Object> toClose) {
+        PoolEntry idle;
+        while (null != (idle = state.idle.pollFirst())) {
+            totalIdle--;
+            if (validateOnBorrow && !isValid(idle, now)) {
+                evicted++;
+                state.evicted++;
+                toClose.add(idle.getConnection());
+                continue;
+            }
+            return idle;
+        }
+        return null;
+    }
+
+    private boolean isValid(PoolEntry idle, long now) {
+        if (now >= idle.expiry) {
+            return false;
+        }
+        final Object connection = idle.getConnection();
+        return !(connection instanceof Channel) || ((Channel) connection).isOpen();
+    }
+
+    /**
+     * close expired idle connections of all routes,at most once per half idle timeout
+     */
+    private void sweep(long now, List<Object> toClose) {
+        if (0 == totalIdle || now - lastSweep < idleTimeout / 2) {
+            return;
+        }
+        lastSweep = now;
+        final Iterator<Map.Entry<Route, RouteState>> it = routes.entrySet().iterator();
+        while (it.hasNext()) {
+            final RouteState state = it.next().getValue();
+            // the idle list is ordered by release time,the oldest at last
+            PoolEntry idle;
+            while (null != (idle = state.idle.peekLast()) && now >= idle.expiry) {
+                toClose.add(removeLast(state));
+            }
+            if (state.isUnused()) {
+                it.remove();
+            }
+        }
+    }
+
+    private void closeOldestIdle(List<Object> toClose) {
+        RouteState oldest = null;
+        for (RouteState state : routes.values()) {
+            final PoolEntry last = state.idle.peekLast();
+            if (null != last && (null == oldest || last.idleSince < oldest.idle.peekLast().idleSince)) {
+                oldest = state;
+            }
+        }
+        if (null != oldest) {
+            toClose.add(removeLast(oldest));
+        }
+    }
+
+    private Object removeLast(RouteState state) {
+        final PoolEntry idle = state.idle.pollLast();
+        totalIdle--;
+        evicted++;
+        state.evicted++;
+        return idle.getConnection();
+    }
+
+    private static void closeAll(List<Object> connections) {
+        for (Object connection : connections) {
+            close(connection);
+        }
+    }
+
+    /**
+     * close a pooled connection object
+     *
+     * @param connection connection object
+     */
+    static void close(Object connection) {
+        if (null == connection) {
+            return;
+        }
+        try {
+            if (connection instanceof Closeable) {
+                ((Closeable) connection).close();
+            }
+        } catch (Exception e) {
+            logger.debug("close pooled connection error", e);
+        }
+    }
+
+    /**
+     * pool state of a route
+     */
+    private static class RouteState {
+        private final Deque<PoolEntry> idle = new ArrayDeque<>();
+        private int leased;
+        private int pending;
+        private long created;
+        private long reused;
+        private long evicted;
+        private long timeouts;
+
+        private boolean isUnused() {
+            return 0 == leased && 0 == pending && idle.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cn.org.imaginary.http.pool;
+
+/**
+ * a lease of the connection pool,it must be released exactly once by {@link ConnectionPool#release(PoolEntry, boolean, long)}
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public final class PoolEntry {
+    private final Route route;
+    // the underlying connection object,null when a new connection should be opened
+    private Object connection;
+    // is the connection taken from the idle list
+    private final boolean reused;
+    // is the lease given back to pool
+    private volatile boolean released;
+    // when the connection was put into idle list
+    long idleSince;
+    // when the idle connection can not be reused any more
+    long expiry;
+
+    PoolEntry(Route route, Object connection, boolean reused) {
+        this.route = route;
+        this.connection = connection;
+        this.reused = reused;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * get the underlying connection of this lease
+     *
+     * @return connection object or null if nothing can be reused
+     */
+    public Object getConnection() {
+        return connection;
+    }
+
+    /**
+     * set the underlying connection which will be kept when released as reusable
+     *
+     * @param connection connection object
+     */
+    public void setConnection(Object connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * is the connection reused from a keep-alive one
+     *
+     * @return true or false
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    boolean markReleased() {
+        if (released) {
+            return false;
+        }
+        released = true;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "[route: " + route + "][reused: " + reused + "]";
+    }
+}
@@ -0,0 +1,78 @@
+package cn.org.imaginary.http.pool;
+
+import cn.org.imaginary.util.StrUtils;
+
+/**
+ * a snapshot of connection pool statistics
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public final class PoolStats {
+    // connections in use
+    private final int leased;
+    // keep-alive connections waiting for reuse
+    private final int idle;
+    // threads waiting for a lease
+    private final int pending;
+    // max connections of the snapshot scope
+    private final int max;
+    // leases served by a new connection
+    private final long created;
+    // leases served by an idle keep-alive connection
+    private final long reused;
+    // idle connections closed by expiry, validation or capacity
+    private final long evicted;
+    // lease requests which timed out
+    private final long timeouts;
+
+    PoolStats(int leased, int idle, int pending, int max, long created, long reused, long evicted, long timeouts) {
+        this.leased = leased;
+        this.idle = idle;
+        this.pending = pending;
+        this.max = max;
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+        this.timeouts = timeouts;
+    }
+
+    public int getLeased() {
+        return leased;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getPending() {
+        return pending;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getReused() {
+        return reused;
+    }
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[leased: {}; idle: {}; pending: {}; max: {}; created: {}; reused: {}; evicted: {}; timeouts: {}]",
+                leased, idle, pending, max, created, reused, evicted, timeouts);
+    }
+}
@@ -0,0 +1,134 @@
+package cn.org.imaginary.http.pool;
+
+import javax.net.ssl.SSLContext;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * the pool key of a connection: scheme, host, port, proxy and the SSLContext of https
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public final class Route {
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final Proxy proxy;
+    // connections of another SSLContext are not shared,null means the one of the transport
+    private final SSLContext sslContext;
+
+    /**
+     * build route
+     *
+     * @param scheme http or https
+     * @param host   target host
+     * @param port   target port
+     * @param proxy  proxy,null or {@link Proxy#NO_PROXY} means direct
+     */
+    public Route(String scheme, String host, int port, Proxy proxy) {
+        this(scheme, host, port, proxy, null);
+    }
+
+    /**
+     * build route
+     *
+     * @param scheme     http or https
+     * @param host       target host
+     * @param port       target port
+     * @param proxy      proxy,null or {@link Proxy#NO_PROXY} means direct
+     * @param sslContext SSLContext of https,null means the one of the transport
+     */
+    public Route(String scheme, String host, int port, Proxy proxy, SSLContext sslContext) {
+        this.scheme = scheme.toLowerCase();
+        this.host = host.toLowerCase();
+        this.port = port;
+        this.proxy = Proxy.NO_PROXY.equals(proxy) ? null : proxy;
+        this.sslContext = "https".equals(this.scheme) ? sslContext : null;
+    }
+
+    /**
+     * build route of url
+     *
+     * @param url   target url
+     * @param proxy proxy
+     * @return {@link Route}
+     */
+    public static Route of(URL url, Proxy proxy) {
+        int port = url.getPort();
+        return of(url, proxy, null);
+    }
+
+    /**
+     * build route of url
+     *
+     * @param url        target url
+     * @param proxy      proxy
+     * @param sslContext SSLContext of https,null means the one of the transport
+     * @return {@link Route}
+     */
+    public static Route of(URL url, Proxy proxy, SSLContext sslContext) {
+        int port = url.getPort();
+        return new Route(url.getProtocol(), url.getHost(), -1 == port ? url.getDefaultPort() : port, proxy, sslContext);
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public Proxy getProxy() {
+        return proxy;
+    }
+
+    public SSLContext getSSLContext() {
+        return sslContext;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Route)) {
+            return false;
+        }
+        Route route = (Route) o;
+        return port == route.port
+                && scheme.equals(route.scheme)
+                && host.equals(route.host)
+                && (null == proxy ? null == route.proxy : proxy.equals(route.proxy))
+                && sslContext == route.sslContext;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = scheme.hashCode();
+        result = 31 * result + host.hashCode();
+        result = 31 * result + port;
+        result = 31 * result + (null == proxy ? 0 : proxy.hashCode());
+        result = 31 * result + (null == sslContext ? 0 : sslContext.hashCode());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(scheme).append("://").append(host).append(':').append(port);
+        if (null != proxy) {
+            sb.append(" via ").append(proxy);
+        }
+        if (null != sslContext) {
+            sb.append(" with ").append(sslContext.getProtocol());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,213 @@
+package cn.org.imaginary.http.proxy;
+
+import cn.org.imaginary.util.StrUtils;
+
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a proxy of a {@link ProxyPool} with its health,the success rate and latency of its recent calls
+ * decayed so that the last ones weigh most,its calls in flight and its quarantine<br>
+ * after failureThreshold failures in a row the proxy is quarantined,the first time for the quarantine of the pool,
+ * each further time for twice as long up to the max,while its failures go on;a success ends the streak<br>
+ * the state is kept in atomics,calls on different proxies never wait on each other
+ *
+ * @author Imaginary
+ * @see ProxyPool
+ * @since 1.0
+ */
+public final class PooledProxy {
+    // weight of the last call in the decayed rates
+    private static final double DECAY = 0.2;
+    // weight of the worst proxy,so that a recovering one still gets a few calls
+    private static final double MIN_SCORE = 0.01;
+
+    private final Proxy proxy;
+    private final ProxyPool pool;
+    // calls in flight at once,0 means the max of the pool
+    private final int maxConcurrent;
+    private final AtomicInteger active = new AtomicInteger();
+    // decayed success rate in [0, 1] and latency in millis,as bits of doubles,the latency is -1 until measured
+    private final AtomicLong successRate = new AtomicLong(Double.doubleToLongBits(1));
+    private final AtomicLong latency = new AtomicLong(Double.doubleToLongBits(-1));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // quarantines in a row,the next one lasts twice as long
+    private final AtomicInteger quarantines = new AtomicInteger();
+    // end of the quarantine,System.nanoTime,0 if never quarantined
+    private final AtomicLong quarantinedUntil = new AtomicLong();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    PooledProxy(Proxy proxy, int maxConcurrent, ProxyPool pool) {
+        this.proxy = proxy;
+        this.maxConcurrent = maxConcurrent;
+        this.pool = pool;
+    }
+
+    public Proxy getProxy() {
+        return proxy;
+    }
+
+    /**
+     * take a slot of the proxy unless it is at its max
+     */
+    boolean tryAcquire() {
+        final int max = getMaxConcurrent();
+        while (true) {
+            final int current = active.get();
+            if (current >= max) {
+                return false;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * can a call be made now
+     */
+    boolean isAvailable(long now) {
+        return !isQuarantined(now) && active.get() < getMaxConcurrent();
+    }
+
+    /**
+     * weight of the proxy in the choice of the pool,the success rate scaled down by the latency
+     *
+     * @return weight in (0, 1]
+     */
+    public double score() {
+        final double rate = Double.longBitsToDouble(successRate.get());
+        final double millis = Math.max(0, getLatency());
+        final double scale = pool.getLatencyScale();
+        return Math.max(MIN_SCORE, rate * scale / (scale + millis));
+    }
+
+    /**
+     * record a call which succeeded and give back its slot
+     *
+     * @param duration milliseconds the call took
+     */
+    public void onSuccess(long duration) {
+        successes.incrementAndGet();
+        decay(successRate, 1);
+        decay(latency, duration);
+        consecutiveFailures.set(0);
+        quarantines.set(0);
+        active.decrementAndGet();
+    }
+
+    /**
+     * record a call which failed and give back its slot,the proxy is quarantined after failureThreshold in a row
+     *
+     * @param duration milliseconds the call took
+     */
+    public void onFailure(long duration) {
+        failures.incrementAndGet();
+        decay(successRate, 0);
+        if (consecutiveFailures.incrementAndGet() >= pool.getFailureThreshold()) {
+            quarantine();
+        }
+        active.decrementAndGet();
+    }
+
+    /**
+     * give back the slot of a call which is not counted,as an aborted one
+     */
+    public void onIgnored() {
+        active.decrementAndGet();
+    }
+
+    /**
+     * start a quarantine,failures of calls made before it started do not extend it
+     */
+    private void quarantine() {
+        final long now = System.nanoTime();
+        final long until = quarantinedUntil.get();
+        if (until - now > 0) {
+            return;
+        }
+        final int times = quarantines.get();
+        final long millis = Math.min(pool.getMaxQuarantine(), pool.getQuarantine() << Math.min(times, 30));
+        if (quarantinedUntil.compareAndSet(until, now + TimeUnit.MILLISECONDS.toNanos(millis))) {
+            quarantines.incrementAndGet();
+        }
+    }
+
+    private static void decay(AtomicLong bits, double sample) {
+        while (true) {
+            final long current = bits.get();
+            final double value = Double.longBitsToDouble(current);
+            final double next = value < 0 ? sample : value + DECAY * (sample - value);
+            if (bits.compareAndSet(current, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    boolean isQuarantined(long now) {
+        final long until = quarantinedUntil.get();
+        return 0 != until && until - now > 0;
+    }
+
+    public boolean isQuarantined() {
+        return isQuarantined(System.nanoTime());
+    }
+
+    /**
+     * time until the quarantine ends
+     *
+     * @return milliseconds,0 if not quarantined
+     */
+    public long getQuarantineRemaining() {
+        return isQuarantined() ? TimeUnit.NANOSECONDS.toMillis(quarantinedUntil.get() - System.nanoTime()) : 0;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent > 0 ? maxConcurrent : pool.getMaxConcurrent();
+    }
+
+    /**
+     * calls in flight
+     *
+     * @return calls
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * decayed success rate of the recent calls
+     *
+     * @return rate in [0, 1],1 until a call is recorded
+     */
+    public double getSuccessRate() {
+        return Double.longBitsToDouble(successRate.get());
+    }
+
+    /**
+     * decayed latency of the recent successful calls
+     *
+     * @return milliseconds,-1 until a call succeeded
+     */
+    public double getLatency() {
+        return Double.longBitsToDouble(latency.get());
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[{}: score: {}; success rate: {}; latency: {}ms; active: {}; quarantined: {}ms]",
+                proxy, String.format("%.3f", score()), String.format("%.3f", getSuccessRate()),
+                Math.round(getLatency()), active.get(), getQuarantineRemaining());
+    }
+}
@@ -0,0 +1,315 @@
+package cn.org.imaginary.http.proxy;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.HttpStatus;
+
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * proxies a request rotates through,each call takes a proxy at random weighted by its {@link PooledProxy#score()},
+ * so that the healthy and fast ones take most calls and the others keep a few<br>
+ * an error,407,429,502,503 or 504 is a failure of the proxy,a proxy failing failureThreshold times in a row
+ * is quarantined with an exponential cool-down,a proxy has at most maxConcurrent calls in flight,
+ * an aborted call is not counted<br>
+ * the list is copied on change and the proxies keep their state in atomics,a call takes no lock<br>
+ * usage:
+ * <pre>
+ * ProxyPool proxies = ProxyPool.create().setMaxConcurrent(4).setQuarantine(1000, 300000)
+ *         .add(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("10.0.0.1", 3128)))
+ *         .add(new Proxy(Proxy.Type.SOCKS, new InetSocketAddress("10.0.0.2", 1080)), 16);
+ * HttpRequest.get(url).setProxy(proxies).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see PooledProxy
+ * @since 1.0
+ */
+public class ProxyPool {
+
+    /**
+     * sends a request once through a proxy
+     */
+    public interface Transport {
+
+        /**
+         * execute request through a proxy and read the response
+         *
+         * @param request request to send
+         * @param proxy   proxy of this call
+         * @return {@link HttpResponse}
+         * @throws HttpException a case of connection or IO error
+         */
+        HttpResponse execute(HttpRequest request, Proxy proxy);
+    }
+
+    // default calls in flight on a proxy
+    public static final int DEFAULT_MAX_CONCURRENT = 8;
+    // default failures in a row which quarantine a proxy
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    // default first and longest quarantine,in milliseconds
+    public static final long DEFAULT_QUARANTINE = 1000;
+    public static final long DEFAULT_MAX_QUARANTINE = 5 * 60 * 1000;
+    // default latency which halves the score of a proxy,in milliseconds
+    public static final long DEFAULT_LATENCY_SCALE = 1000;
+    // draws before giving up when the chosen proxies fill up meanwhile
+    private static final int MAX_DRAWS = 4;
+
+    private final List<PooledProxy> proxies = new CopyOnWriteArrayList<>();
+    private volatile int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long quarantine = DEFAULT_QUARANTINE;
+    private volatile long maxQuarantine = DEFAULT_MAX_QUARANTINE;
+    private volatile long latencyScale = DEFAULT_LATENCY_SCALE;
+
+    /**
+     * create pool without proxies and with default settings
+     *
+     * @return ProxyPool
+     */
+    public static ProxyPool create() {
+        return new ProxyPool();
+    }
+
+    /**
+     * add a proxy with the max of calls of the pool
+     *
+     * @param proxy http or socks proxy
+     * @return ProxyPool
+     */
+    public ProxyPool add(Proxy proxy) {
+        return add(proxy, 0);
+    }
+
+    /**
+     * add a proxy,a proxy already in the pool is left as it is
+     *
+     * @param proxy         http or socks proxy
+     * @param maxConcurrent calls in flight on it,0 means the max of the pool
+     * @return ProxyPool
+     */
+    public ProxyPool add(Proxy proxy, int maxConcurrent) {
+        if (null == proxy || Proxy.Type.DIRECT == proxy.type()) {
+            throw new IllegalArgumentException("Proxy must be http or socks");
+        }
+        synchronized (proxies) {
+            if (null == find(proxy)) {
+                proxies.add(new PooledProxy(proxy, Math.max(0, maxConcurrent), this));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * remove a proxy,its calls in flight finish
+     *
+     * @param proxy proxy
+     * @return ProxyPool
+     */
+    public ProxyPool remove(Proxy proxy) {
+        synchronized (proxies) {
+            final PooledProxy pooled = find(proxy);
+            if (null != pooled) {
+                proxies.remove(pooled);
+            }
+        }
+        return this;
+    }
+
+    private PooledProxy find(Proxy proxy) {
+        for (PooledProxy pooled : proxies) {
+            if (pooled.getProxy().equals(proxy)) {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * set calls in flight on a proxy added without its own max
+     *
+     * @param maxConcurrent calls
+     * @return ProxyPool
+     */
+    public ProxyPool setMaxConcurrent(int maxConcurrent) {
+        if (maxConcurrent > 0) {
+            this.maxConcurrent = maxConcurrent;
+        }
+        return this;
+    }
+
+    /**
+     * set failures in a row which quarantine a proxy
+     *
+     * @param failureThreshold failures
+     * @return ProxyPool
+     */
+    public ProxyPool setFailureThreshold(int failureThreshold) {
+        if (failureThreshold > 0) {
+            this.failureThreshold = failureThreshold;
+        }
+        return this;
+    }
+
+    /**
+     * set the first quarantine of a proxy and the longest one it doubles up to
+     *
+     * @param quarantine    milliseconds
+     * @param maxQuarantine milliseconds,at least quarantine
+     * @return ProxyPool
+     */
+    public ProxyPool setQuarantine(long quarantine, long maxQuarantine) {
+        if (quarantine > 0 && maxQuarantine >= quarantine) {
+            this.quarantine = quarantine;
+            this.maxQuarantine = maxQuarantine;
+        }
+        return this;
+    }
+
+    /**
+     * set the latency which halves the score of a proxy,lower favors the fast proxies more
+     *
+     * @param latencyScale milliseconds
+     * @return ProxyPool
+     */
+    public ProxyPool setLatencyScale(long latencyScale) {
+        if (latencyScale > 0) {
+            this.latencyScale = latencyScale;
+        }
+        return this;
+    }
+
+    /**
+     * take a proxy for a call,it must be given back by {@link PooledProxy#onSuccess(long)},
+     * {@link PooledProxy#onFailure(long)} or {@link PooledProxy#onIgnored()}
+     *
+     * @return PooledProxy
+     * @throws ProxyUnavailableException all proxies are quarantined or at their max of calls
+     */
+    public PooledProxy acquire() {
+        for (int draw = 0; draw < MAX_DRAWS; draw++) {
+            final long now = System.nanoTime();
+            double total = 0;
+            for (PooledProxy pooled : proxies) {
+                if (pooled.isAvailable(now)) {
+                    total += pooled.score();
+                }
+            }
+            if (total <= 0) {
+                break;
+            }
+            // scores may move between the passes,the last available proxy takes the rest
+            double left = ThreadLocalRandom.current().nextDouble(total);
+            PooledProxy chosen = null;
+            for (PooledProxy pooled : proxies) {
+                if (pooled.isAvailable(now)) {
+                    chosen = pooled;
+                    left -= pooled.score();
+                    if (left < 0) {
+                        break;
+                    }
+                }
+            }
+            if (null != chosen && chosen.tryAcquire()) {
+                return chosen;
+            }
+        }
+        throw unavailable();
+    }
+
+    private ProxyUnavailableException unavailable() {
+        final long now = System.nanoTime();
+        int quarantined = 0;
+        long retryAfter = Long.MAX_VALUE;
+        for (PooledProxy pooled : proxies) {
+            if (pooled.isQuarantined(now)) {
+                quarantined++;
+                retryAfter = Math.min(retryAfter, pooled.getQuarantineRemaining());
+            } else {
+                retryAfter = 0;
+            }
+        }
+        return new ProxyUnavailableException(proxies.size(), quarantined, Long.MAX_VALUE == retryAfter ? 0 : retryAfter);
+    }
+
+    /**
+     * send a request through a proxy of the pool and record how it went
+     *
+     * @param request   request,its own proxy is left as it is
+     * @param transport sends the request through the proxy taken
+     * @return {@link HttpResponse}
+     * @throws ProxyUnavailableException no proxy is available
+     * @throws HttpException             a case of connection or IO error
+     */
+    public HttpResponse execute(HttpRequest request, Transport transport) {
+        final PooledProxy pooled = acquire();
+        final long start = System.nanoTime();
+        final HttpResponse response;
+        try {
+            response = transport.execute(request, pooled.getProxy());
+        } catch (RuntimeException e) {
+            if (request.isAborted()) {
+                pooled.onIgnored();
+            } else {
+                pooled.onFailure(elapsed(start));
+            }
+            throw e;
+        }
+        if (isProxyFailure(response.getStatus())) {
+            pooled.onFailure(elapsed(start));
+        } else {
+            pooled.onSuccess(elapsed(start));
+        }
+        return response;
+    }
+
+    /**
+     * is a status the fault of the proxy,it refused the call,was throttled or could not reach the origin
+     *
+     * @param status status code
+     * @return true for 407,429,502,503 and 504
+     */
+    public static boolean isProxyFailure(int status) {
+        return HttpStatus.HTTP_PROXY_AUTH == status || HttpStatus.HTTP_TOO_MANY_REQUESTS == status || HttpStatus.HTTP_BAD_GATEWAY == status
+                || HttpStatus.HTTP_UNAVAILABLE == status || HttpStatus.HTTP_GATEWAY_TIMEOUT == status;
+    }
+
+    private static long elapsed(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * the proxies in the pool
+     *
+     * @return proxies with their health
+     */
+    public List<PooledProxy> getProxies() {
+        return new ArrayList<>(proxies);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getQuarantine() {
+        return quarantine;
+    }
+
+    public long getMaxQuarantine() {
+        return maxQuarantine;
+    }
+
+    public long getLatencyScale() {
+        return latencyScale;
+    }
+}
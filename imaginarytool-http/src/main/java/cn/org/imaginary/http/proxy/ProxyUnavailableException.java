@@ -0,0 +1,43 @@
+package cn.org.imaginary.http.proxy;
+
+import cn.org.imaginary.http.HttpException;
+
+/**
+ * a call for which no proxy of the pool is available,all are quarantined or at their max of calls,
+ * the request was not sent
+ *
+ * @author Imaginary
+ * @see ProxyPool#acquire()
+ * @since 1.0
+ */
+public class ProxyUnavailableException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    private final int proxies;
+    private final int quarantined;
+    private final long retryAfter;
+
+    public ProxyUnavailableException(int proxies, int quarantined, long retryAfter) {
+        super("No proxy available,{} of {} quarantined and the others busy", quarantined, proxies);
+        this.proxies = proxies;
+        this.quarantined = quarantined;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getProxies() {
+        return proxies;
+    }
+
+    public int getQuarantined() {
+        return quarantined;
+    }
+
+    /**
+     * time until the first quarantine ends
+     *
+     * @return milliseconds,0 if a proxy is only busy
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,193 @@
+package cn.org.imaginary.http.retry;
+
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.util.StrUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * when to send a duplicate of a request which has not answered yet,the first response wins and the others are aborted<br>
+ * the delay is a percentile of the latencies of recent responses,so only the slowest requests are hedged
+ * and the load grows by about (100 - percentile)%,a request waiting past the p95 is likely stuck on a slow
+ * server or connection and its duplicate usually answers first<br>
+ * only idempotent requests are hedged,share one policy between the requests of a service so that it learns their latency<br>
+ * usage:
+ * <pre>
+ * HedgePolicy hedge = HedgePolicy.create(95).setDelayBounds(5, 2000);
+ * HttpRequest.get(url).setHedgePolicy(hedge).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see HttpRequest#setHedgePolicy(HedgePolicy)
+ * @since 1.0
+ */
+public class HedgePolicy {
+    // default percentile of the latencies to wait before hedging
+    public static final double DEFAULT_PERCENTILE = 95;
+    // default latencies kept
+    public static final int DEFAULT_WINDOW = 1024;
+    // default delay until enough latencies are known,in milliseconds
+    public static final long DEFAULT_INITIAL_DELAY = 100;
+
+    // latencies recorded between two computations of the delay
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private final double percentile;
+    private final AtomicLongArray latencies;
+    // latencies recorded so far
+    private final AtomicLong recorded = new AtomicLong();
+    // the delay computed last and the count of latencies it saw
+    private volatile long delay;
+    private volatile long computedAt = -1;
+    private long initialDelay = DEFAULT_INITIAL_DELAY;
+    private long minDelay = 1;
+    private long maxDelay = Long.MAX_VALUE;
+    private int minSamples = 20;
+    private int maxHedges = 1;
+
+    /**
+     * build policy
+     *
+     * @param percentile percentile of the latencies to wait,between 50 and 100
+     * @param window     latencies kept
+     */
+    public HedgePolicy(double percentile, int window) {
+        if (percentile < 50 || percentile >= 100 || window <= 0) {
+            throw new IllegalArgumentException("percentile must be in [50, 100) and window positive");
+        }
+        this.percentile = percentile;
+        this.latencies = new AtomicLongArray(window);
+    }
+
+    /**
+     * create policy hedging after the p95 of the last 1024 latencies
+     *
+     * @return HedgePolicy
+     */
+    public static HedgePolicy create() {
+        return new HedgePolicy(DEFAULT_PERCENTILE, DEFAULT_WINDOW);
+    }
+
+    /**
+     * create policy
+     *
+     * @param percentile percentile of the latencies to wait,between 50 and 100
+     * @return HedgePolicy
+     */
+    public static HedgePolicy create(double percentile) {
+        return new HedgePolicy(percentile, DEFAULT_WINDOW);
+    }
+
+    /**
+     * set the delay until minSamples latencies are known
+     *
+     * @param initialDelay milliseconds
+     * @return HedgePolicy
+     */
+    public HedgePolicy setInitialDelay(long initialDelay) {
+        if (initialDelay > 0) {
+            this.initialDelay = initialDelay;
+        }
+        return this;
+    }
+
+    /**
+     * set the bounds of the delay,a fast service is not flooded with duplicates when its latencies are all close to 0
+     *
+     * @param minDelay milliseconds
+     * @param maxDelay milliseconds
+     * @return HedgePolicy
+     */
+    public HedgePolicy setDelayBounds(long minDelay, long maxDelay) {
+        if (minDelay > 0 && maxDelay >= minDelay) {
+            this.minDelay = minDelay;
+            this.maxDelay = maxDelay;
+        }
+        return this;
+    }
+
+    /**
+     * set the latencies needed before the percentile is used
+     *
+     * @param minSamples latencies
+     * @return HedgePolicy
+     */
+    public HedgePolicy setMinSamples(int minSamples) {
+        if (minSamples > 0) {
+            this.minSamples = Math.min(minSamples, latencies.length());
+        }
+        return this;
+    }
+
+    /**
+     * set max duplicates of a request,each one is sent after another delay
+     *
+     * @param maxHedges max duplicates
+     * @return HedgePolicy
+     */
+    public HedgePolicy setMaxHedges(int maxHedges) {
+        if (maxHedges > 0) {
+            this.maxHedges = maxHedges;
+        }
+        return this;
+    }
+
+    public int getMaxHedges() {
+        return maxHedges;
+    }
+
+    /**
+     * can the request be hedged
+     *
+     * @param request request
+     * @return true for an idempotent method
+     */
+    public boolean isHedgeable(HttpRequest request) {
+        return RetryPolicy.isIdempotent(request.getMethod());
+    }
+
+    /**
+     * record the latency of a response
+     *
+     * @param latency milliseconds
+     */
+    public void record(long latency) {
+        final long index = recorded.getAndIncrement();
+        latencies.set((int) (index % latencies.length()), Math.max(0, latency));
+    }
+
+    /**
+     * the delay before a duplicate is sent
+     *
+     * @return milliseconds
+     */
+    public long hedgeDelay() {
+        final long count = recorded.get();
+        if (count < minSamples) {
+            return initialDelay;
+        }
+        if (computedAt < 0 || count - computedAt >= RECOMPUTE_INTERVAL) {
+            // racing threads compute about the same value,the last one wins
+            delay = compute((int) Math.min(count, latencies.length()));
+            computedAt = count;
+        }
+        return delay;
+    }
+
+    private long compute(int size) {
+        final long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100 * size) - 1;
+        return Math.max(minDelay, Math.min(maxDelay, sorted[Math.max(0, rank)]));
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[p{}: {}ms; recorded: {}]", percentile, hedgeDelay(), recorded.get());
+    }
+}
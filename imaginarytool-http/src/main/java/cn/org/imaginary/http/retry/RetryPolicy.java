@@ -0,0 +1,304 @@
+package cn.org.imaginary.http.retry;
+
+import cn.org.imaginary.http.*;
+import cn.org.imaginary.util.StrUtils;
+
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * when and how long to wait before a failed request is sent again<br>
+ * the delay grows exponentially from baseDelay up to maxDelay,jitter takes a random part of it away
+ * so that clients failing together do not come back together,a Retry-After of the server is respected<br>
+ * only idempotent methods(RFC 7231 section 4.2.2) are retried unless allowed,
+ * a request which never reached the server,as on a refused connection,is retried whatever its method<br>
+ * usage:
+ * <pre>
+ * RetryPolicy policy = RetryPolicy.create().setMaxAttempts(4).setBaseDelay(200);
+ * HttpRequest.get(url).setRetryPolicy(policy).execute();
+ * </pre>
+ *
+ * @author Imaginary
+ * @see HttpRequest#setRetryPolicy(RetryPolicy)
+ * @since 1.0
+ */
+public class RetryPolicy {
+    // default attempts,the first one included
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    // default delay before the second attempt,in milliseconds
+    public static final long DEFAULT_BASE_DELAY = 100;
+    // default max delay between attempts,in milliseconds
+    public static final long DEFAULT_MAX_DELAY = 10000;
+
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = EnumSet.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.TRACE, HttpMethod.PUT, HttpMethod.DELETE);
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseDelay = DEFAULT_BASE_DELAY;
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    private double multiplier = 2;
+    // part of the delay which is random,0 for none,1 for full jitter
+    private double jitter = 0.5;
+    private boolean isRetryNonIdempotent;
+    private boolean isRespectRetryAfter = true;
+    private final Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(HttpStatus.HTTP_CLIENT_TIMEOUT,
+            HttpStatus.HTTP_TOO_MANY_REQUESTS, HttpStatus.HTTP_BAD_GATEWAY, HttpStatus.HTTP_UNAVAILABLE, HttpStatus.HTTP_GATEWAY_TIMEOUT));
+    // errors of the connection or the exchange worth another attempt
+    private final List<Class<? extends Throwable>> retryErrors = new ArrayList<Class<? extends Throwable>>(Arrays.asList(
+            SocketException.class, SocketTimeoutException.class, EOFException.class));
+    // errors raised before the request is sent
+    private final List<Class<? extends Throwable>> notSentErrors = new ArrayList<Class<? extends Throwable>>(Arrays.asList(
+            ConnectException.class, NoRouteToHostException.class));
+
+    /**
+     * create policy retrying twice on connection errors,408,429,502,503 and 504
+     *
+     * @return RetryPolicy
+     */
+    public static RetryPolicy create() {
+        return new RetryPolicy();
+    }
+
+    /**
+     * set max attempts,the first one included,1 means no retry
+     *
+     * @param maxAttempts max attempts
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts > 0) {
+            this.maxAttempts = maxAttempts;
+        }
+        return this;
+    }
+
+    /**
+     * set delay before the second attempt
+     *
+     * @param baseDelay milliseconds
+     * @return RetryPolicy
+     */
+    public RetryPolicy setBaseDelay(long baseDelay) {
+        if (baseDelay >= 0) {
+            this.baseDelay = baseDelay;
+        }
+        return this;
+    }
+
+    /**
+     * set max delay between attempts,a longer Retry-After is cut to it
+     *
+     * @param maxDelay milliseconds
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxDelay(long maxDelay) {
+        if (maxDelay >= 0) {
+            this.maxDelay = maxDelay;
+        }
+        return this;
+    }
+
+    /**
+     * set the factor of the delay after each attempt
+     *
+     * @param multiplier at least 1
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMultiplier(double multiplier) {
+        if (multiplier >= 1) {
+            this.multiplier = multiplier;
+        }
+        return this;
+    }
+
+    /**
+     * set the part of the delay which is random
+     *
+     * @param jitter 0 for fixed delays,1 for a delay between 0 and the backoff
+     * @return RetryPolicy
+     */
+    public RetryPolicy setJitter(double jitter) {
+        if (jitter >= 0 && jitter <= 1) {
+            this.jitter = jitter;
+        }
+        return this;
+    }
+
+    /**
+     * retry POST,PATCH and CONNECT as well,only when the server is known to handle duplicates
+     *
+     * @param isRetryNonIdempotent retry non idempotent methods
+     * @return RetryPolicy
+     */
+    public RetryPolicy setRetryNonIdempotent(boolean isRetryNonIdempotent) {
+        this.isRetryNonIdempotent = isRetryNonIdempotent;
+        return this;
+    }
+
+    /**
+     * wait as long as the Retry-After of a 429 or 503 asks,up to maxDelay
+     *
+     * @param isRespectRetryAfter respect Retry-After
+     * @return RetryPolicy
+     */
+    public RetryPolicy setRespectRetryAfter(boolean isRespectRetryAfter) {
+        this.isRespectRetryAfter = isRespectRetryAfter;
+        return this;
+    }
+
+    /**
+     * set the statuses to retry on,replacing the default ones
+     *
+     * @param statuses statuses of {@link HttpStatus}
+     * @return RetryPolicy
+     */
+    public RetryPolicy retryOnStatus(int... statuses) {
+        retryStatuses.clear();
+        for (int status : statuses) {
+            retryStatuses.add(status);
+        }
+        return this;
+    }
+
+    /**
+     * add errors to retry on,a subclass matches too,as does a cause of the {@link HttpException}
+     *
+     * @param errors error classes
+     * @return RetryPolicy
+     */
+    @SafeVarargs
+    public final RetryPolicy retryOn(Class<? extends Throwable>... errors) {
+        // not Collections.addAll,passing the array on to another varargs method is unsafe to the compiler
+        for (Class<? extends Throwable> error : errors) {
+            retryErrors.add(error);
+        }
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * is the method safe to send twice
+     *
+     * @param method method
+     * @return true for GET,HEAD,OPTIONS,TRACE,PUT and DELETE
+     */
+    public static boolean isIdempotent(HttpMethod method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * should a response with the status be retried
+     *
+     * @param request request
+     * @param status  status of the response
+     * @return true if the status and the method allow it
+     */
+    public boolean shouldRetry(HttpRequest request, int status) {
+        return retryStatuses.contains(status) && (isRetryNonIdempotent || isIdempotent(request.getMethod()));
+    }
+
+    /**
+     * should the request be sent again after an error
+     *
+     * @param request request
+     * @param e       error,the causes are looked at too
+     * @return true if the error and the method allow it
+     */
+    public boolean shouldRetry(HttpRequest request, Throwable e) {
+        if (request.isAborted()) {
+            return false;
+        }
+        for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+            if (isInstance(notSentErrors, cause)) {
+                return true;
+            }
+            if (isInstance(retryErrors, cause)) {
+                return isRetryNonIdempotent || isIdempotent(request.getMethod());
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInstance(List<Class<? extends Throwable>> classes, Throwable e) {
+        for (Class<? extends Throwable> clazz : classes) {
+            if (clazz.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * delay before an attempt,exponential with jitter
+     *
+     * @param attempt the attempt to come,2 for the first retry
+     * @return milliseconds
+     */
+    public long backoff(int attempt) {
+        final double exponential = baseDelay * Math.pow(multiplier, Math.max(0, attempt - 2));
+        final long delay = (long) Math.min(maxDelay, exponential);
+        if (0 == jitter || 0 == delay) {
+            return delay;
+        }
+        return delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * delay before an attempt after a response,the Retry-After of the response if longer than the backoff
+     *
+     * @param attempt  the attempt to come,2 for the first retry
+     * @param response the response retried
+     * @return milliseconds
+     */
+    public long backoff(int attempt, HttpResponse response) {
+        final long backoff = backoff(attempt);
+        if (!isRespectRetryAfter) {
+            return backoff;
+        }
+        return Math.max(backoff, Math.min(maxDelay, retryAfter(response.getHeader(Header.RETRY_AFTER))));
+    }
+
+    /**
+     * parse Retry-After,seconds or a http date
+     *
+     * @return milliseconds,0 when absent or invalid
+     */
+    static long retryAfter(String value) {
+        if (StrUtils.isBlank(value)) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // a date
+        }
+        final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return StrUtils.format("[maxAttempts: {}; baseDelay: {}; maxDelay: {}; statuses: {}]", maxAttempts, baseDelay, maxDelay, retryStatuses);
+    }
+}
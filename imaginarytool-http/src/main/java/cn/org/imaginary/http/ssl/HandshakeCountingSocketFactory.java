@@ -0,0 +1,62 @@
+package cn.org.imaginary.http.ssl;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * a {@link SSLSocketFactory} which reports the handshakes of its sockets to {@link SSLContextCache}<br>
+ * unconnected sockets are not offered,so HttpsURLConnection connects a plain socket and layers tls over it with the host name
+ *
+ * @author Imaginary
+ * @see SSLContextCache
+ * @since 1.0
+ */
+final class HandshakeCountingSocketFactory extends SSLSocketFactory {
+    private final SSLSocketFactory delegate;
+
+    HandshakeCountingSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        return count(delegate.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return count(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return count(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return count(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return count(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private static Socket count(Socket socket) {
+        return socket instanceof SSLSocket ? new HandshakeCountingSocket((SSLSocket) socket) : socket;
+    }
+}
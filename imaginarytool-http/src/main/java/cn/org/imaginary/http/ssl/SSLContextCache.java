@@ -0,0 +1,242 @@
+package cn.org.imaginary.http.ssl;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * process wide cache of the contexts built by {@link SSLSocketFactoryBuilder#buildShared()},
+ * keyed by protocol,trust managers,key managers and session cache settings<br>
+ * connections sharing a context share its client session cache,so later handshakes to a host can be resumed,
+ * the handshakes are counted as full or resumed,a handshake resumed the last session of its peer
+ * when it got the same session id(TLS 1.2) or the same peer certificate instances(TLS 1.3 pre-shared key),
+ * a full handshake always parses new certificates
+ *
+ * @author Imaginary
+ * @see SSLSocketFactoryBuilder
+ * @since 1.0
+ */
+public final class SSLContextCache {
+
+    private static final ConcurrentMap<Key, Entry> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong FULL_HANDSHAKES = new AtomicLong();
+    private static final AtomicLong RESUMED_HANDSHAKES = new AtomicLong();
+    // at most that many peers remembered
+    private static final int MAX_PEERS = 256;
+    // last session of a session context and peer host and port,guarded by itself
+    private static final Map<List<Object>, SSLSession> LAST_SESSIONS = new LinkedHashMap<List<Object>, SSLSession>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, SSLSession> eldest) {
+            return size() > MAX_PEERS;
+        }
+    };
+
+    private SSLContextCache() {
+    }
+
+    /**
+     * get the context of the builder settings,built on first use
+     *
+     * @param builder builder
+     * @return shared SSLContext
+     * @throws NoSuchAlgorithmException a case of no such algorithm exception
+     * @throws KeyManagementException   a case of keyManager exception
+     */
+    static SSLContext getContext(SSLSocketFactoryBuilder builder) throws NoSuchAlgorithmException, KeyManagementException {
+        return getEntry(builder).context;
+    }
+
+    /**
+     * get the socket factory of the builder settings,it counts the handshakes of its sockets
+     *
+     * @param builder builder
+     * @return shared SSLSocketFactory
+     * @throws NoSuchAlgorithmException a case of no such algorithm exception
+     * @throws KeyManagementException   a case of keyManager exception
+     */
+    static SSLSocketFactory getSocketFactory(SSLSocketFactoryBuilder builder) throws NoSuchAlgorithmException, KeyManagementException {
+        return getEntry(builder).socketFactory;
+    }
+
+    private static Entry getEntry(SSLSocketFactoryBuilder builder) throws NoSuchAlgorithmException, KeyManagementException {
+        final Key key = new Key(builder);
+        Entry entry = CACHE.get(key);
+        if (null == entry) {
+            final SSLContext context = builder.buildContext();
+            if (builder.getSessionCacheSize() >= 0) {
+                context.getClientSessionContext().setSessionCacheSize(builder.getSessionCacheSize());
+            }
+            if (builder.getSessionTimeout() >= 0) {
+                context.getClientSessionContext().setSessionTimeout(builder.getSessionTimeout());
+            }
+            final Entry created = new Entry(context);
+            entry = CACHE.putIfAbsent(key, created);
+            if (null == entry) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * count a finished client handshake,call it on the thread which ran the handshake once it returned
+     *
+     * @param session session of the handshake
+     */
+    public static void recordHandshake(SSLSession session) {
+        if (null == session) {
+            return;
+        }
+        final List<Object> peer = Arrays.<Object>asList(session.getSessionContext(), session.getPeerHost(), session.getPeerPort());
+        final SSLSession last;
+        synchronized (LAST_SESSIONS) {
+            last = LAST_SESSIONS.put(peer, session);
+        }
+        if (null != last && ((session.getId().length > 0 && Arrays.equals(last.getId(), session.getId()))
+                || samePeerCertificates(last, session))) {
+            RESUMED_HANDSHAKES.incrementAndGet();
+        } else {
+            FULL_HANDSHAKES.incrementAndGet();
+        }
+    }
+
+    private static boolean samePeerCertificates(SSLSession last, SSLSession session) {
+        final Certificate[] lastCertificates;
+        final Certificate[] certificates;
+        try {
+            lastCertificates = last.getPeerCertificates();
+            certificates = session.getPeerCertificates();
+        } catch (SSLPeerUnverifiedException e) {
+            return false;
+        }
+        return certificates.length > 0 && certificates.length == lastCertificates.length && certificates[0] == lastCertificates[0];
+    }
+
+    public static long getFullHandshakes() {
+        return FULL_HANDSHAKES.get();
+    }
+
+    public static long getResumedHandshakes() {
+        return RESUMED_HANDSHAKES.get();
+    }
+
+    /**
+     * number of cached contexts
+     *
+     * @return size
+     */
+    public static int size() {
+        return CACHE.size();
+    }
+
+    /**
+     * drop the cached contexts and reset counters,connections open keep their context
+     */
+    public static void clear() {
+        CACHE.clear();
+        synchronized (LAST_SESSIONS) {
+            LAST_SESSIONS.clear();
+        }
+        FULL_HANDSHAKES.set(0);
+        RESUMED_HANDSHAKES.set(0);
+    }
+
+    /**
+     * a context and its counting socket factory
+     */
+    private static final class Entry {
+        private final SSLContext context;
+        private final SSLSocketFactory socketFactory;
+
+        private Entry(SSLContext context) {
+            this.context = context;
+            this.socketFactory = new HandshakeCountingSocketFactory(context.getSocketFactory());
+        }
+    }
+
+    /**
+     * managers are compared by identity,build them once and reuse them to hit the cache
+     */
+    private static final class Key {
+        private final String protocol;
+        private final Object[] trustManagers;
+        private final Object[] keyManagers;
+        private final int sessionCacheSize;
+        private final int sessionTimeout;
+
+        private Key(SSLSocketFactoryBuilder builder) {
+            this.protocol = builder.getProtocol();
+            this.trustManagers = null == builder.getTrustManagers() ? null : builder.getTrustManagers().clone();
+            this.keyManagers = null == builder.getKeyManagers() ? null : builder.getKeyManagers().clone();
+            this.sessionCacheSize = builder.getSessionCacheSize();
+            this.sessionTimeout = builder.getSessionTimeout();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return protocol.equals(other.protocol) && sessionCacheSize == other.sessionCacheSize
+                    && sessionTimeout == other.sessionTimeout
+                    && sameElements(trustManagers, other.trustManagers) && sameElements(keyManagers, other.keyManagers);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = protocol.hashCode();
+            hash = 31 * hash + identityHash(trustManagers);
+            hash = 31 * hash + identityHash(keyManagers);
+            hash = 31 * hash + sessionCacheSize;
+            return 31 * hash + sessionTimeout;
+        }
+
+        private static boolean sameElements(Object[] a, Object[] b) {
+            if (null == a || null == b) {
+                return a == b;
+            }
+            if (a.length != b.length) {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int identityHash(Object[] array) {
+            if (null == array) {
+                return 0;
+            }
+            int hash = 1;
+            for (Object element : array) {
+                hash = 31 * hash + System.identityHashCode(element);
+            }
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return protocol + Arrays.toString(trustManagers) + Arrays.toString(keyManagers);
+        }
+    }
+}
@@ -13,7 +13,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
 /**
- * a chained mode ssl socket factory builder
+ * a chained mode ssl socket factory builder<br>
+ * {@link #build()} makes a new context each time,{@link #buildShared()} takes it from {@link SSLContextCache}
+ * so that TLS sessions are resumed across connections
  *
  * @author Imaginary
  * @see
@@ -52,10 +54,18 @@ public class SSLSocketFactoryBuilder {
     public static final String TLSv12 = "TLSv1.2";
 
 
+    // trust managers of builders without their own,shared so that their contexts are cached as one
+    private static final TrustManager[] DEFAULT_TRUST_MANAGERS = {new DefaultTrustManager()};
+
     private String protocol = TLS;
     private KeyManager[] keyManagers;
-    private TrustManager[] trustManagers = {new DefaultTrustManager()};
-    private SecureRandom secureRandom = new SecureRandom();
+    private TrustManager[] trustManagers = DEFAULT_TRUST_MANAGERS;
+    // null means the default of the jdk
+    private SecureRandom secureRandom;
+    // client session cache size,0 means no limit,-1 means the default of the jdk
+    private int sessionCacheSize = -1;
+    // client session timeout in seconds,0 means no limit,-1 means the default of the jdk
+    private int sessionTimeout = -1;
 
     /**
      * create SSLSocketFactoryBuilder
@@ -73,7 +83,7 @@ public class SSLSocketFactoryBuilder {
      * @return SSLSocketFactoryBuilder
      */
     public SSLSocketFactoryBuilder setProtocol(String protocol) {
-        if (!StrUtils.isNotBlank(protocol)) {
+        if (!StrUtils.isBlank(protocol)) {
             this.protocol = protocol;
         }
         return this;
@@ -86,7 +96,7 @@ public class SSLSocketFactoryBuilder {
      * @return SSLSocketFactoryBuilder
      */
     public SSLSocketFactoryBuilder setTrustManager(TrustManager... trustManagers) {
-        if (ArrayUtils.isNotEmpty(trustManagers)) {
+        if (!ArrayUtils.isEmpty(trustManagers)) {
             this.trustManagers = trustManagers;
         }
         return this;
@@ -99,7 +109,7 @@ public class SSLSocketFactoryBuilder {
      * @return SSLSocketFactoryBuilder
      */
     public SSLSocketFactoryBuilder setKeyManager(KeyManager... keyManagers) {
-        if (ArrayUtils.isNotEmpty(keyManagers)) {
+        if (!ArrayUtils.isEmpty(keyManagers)) {
             this.keyManagers = keyManagers;
         }
         return this;
@@ -119,16 +129,94 @@ public class SSLSocketFactoryBuilder {
     }
 
     /**
-     * build SslSocketFactory
+     * set the size of the client session cache of a shared context
      *
+     * @param sessionCacheSize max sessions,0 means no limit
+     * @return SSLSocketFactoryBuilder
+     */
+    public SSLSocketFactoryBuilder setSessionCacheSize(int sessionCacheSize) {
+        if (sessionCacheSize >= 0) {
+            this.sessionCacheSize = sessionCacheSize;
+        }
+        return this;
+    }
+
+    /**
+     * set how long a session of a shared context can be resumed
+     *
+     * @param sessionTimeout timeout in seconds,0 means no limit
+     * @return SSLSocketFactoryBuilder
+     */
+    public SSLSocketFactoryBuilder setSessionTimeout(int sessionTimeout) {
+        if (sessionTimeout >= 0) {
+            this.sessionTimeout = sessionTimeout;
+        }
+        return this;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public TrustManager[] getTrustManagers() {
+        return trustManagers;
+    }
+
+    public KeyManager[] getKeyManagers() {
+        return keyManagers;
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * build SslSocketFactory
      * @return SSLSocketFactory
      * @throws NoSuchAlgorithmException a case of no such algorithm exception
      * @throws KeyManagementException   a case of keyManager exception
      */
     public SSLSocketFactory build() throws NoSuchAlgorithmException, KeyManagementException {
+        return buildContext().getSocketFactory();
+    }
+
+    /**
+     * build SSLContext,for the transports working with {@link javax.net.ssl.SSLEngine}
+     *
+     * @return SSLContext
+     * @throws NoSuchAlgorithmException a case of no such algorithm exception
+     * @throws KeyManagementException   a case of keyManager exception
+     */
+    public SSLContext buildContext() throws NoSuchAlgorithmException, KeyManagementException {
         SSLContext sslContext = SSLContext.getInstance(this.protocol);
         sslContext.init(keyManagers, trustManagers, secureRandom);
-        return sslContext.getSocketFactory();
+        return sslContext;
+    }
+
+    /**
+     * get the shared SslSocketFactory of these settings,the handshakes of its sockets are counted
+     *
+     * @return SSLSocketFactory
+     * @throws NoSuchAlgorithmException a case of no such algorithm exception
+     * @throws KeyManagementException   a case of keyManager exception
+     */
+    public SSLSocketFactory buildShared() throws NoSuchAlgorithmException, KeyManagementException {
+        return SSLContextCache.getSocketFactory(this);
+    }
+
+    /**
+     * get the shared SSLContext of these settings
+     *
+     * @return SSLContext
+     * @throws NoSuchAlgorithmException a case of no such algorithm exception
+     * @throws KeyManagementException   a case of keyManager exception
+     */
+    public SSLContext buildSharedContext() throws NoSuchAlgorithmException, KeyManagementException {
+        return SSLContextCache.getContext(this);
     }
 
 
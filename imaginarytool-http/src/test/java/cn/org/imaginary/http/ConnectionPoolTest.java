@@ -0,0 +1,119 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.http.pool.ConnectionPool;
+import cn.org.imaginary.http.pool.PoolEntry;
+import cn.org.imaginary.http.pool.PoolStats;
+import cn.org.imaginary.http.pool.Route;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class ConnectionPoolTest {
+    private final Route route = new Route("http", "localhost", 80, null);
+
+    @Test
+    public void testReuse() {
+        ConnectionPool pool = ConnectionPool.create().setMaxPerRoute(2);
+        PoolEntry entry = pool.lease(route);
+        Assert.assertFalse(entry.isReused());
+        entry.setConnection(new Conn());
+        pool.release(entry, true, -1);
+
+        PoolEntry again = pool.lease(route);
+        Assert.assertTrue(again.isReused());
+        pool.release(again, false, -1);
+        Assert.assertTrue(((Conn) again.getConnection()).closed);
+
+        PoolStats stats = pool.getStats(route);
+        Assert.assertEquals(1, stats.getCreated());
+        Assert.assertEquals(1, stats.getReused());
+        Assert.assertEquals(0, stats.getLeased());
+    }
+
+    @Test
+    public void testLeaseTimeout() {
+        ConnectionPool pool = ConnectionPool.create().setMaxPerRoute(1);
+        PoolEntry entry = pool.lease(route);
+        try {
+            pool.lease(route, 50, TimeUnit.MILLISECONDS);
+            Assert.fail("lease should time out");
+        } catch (HttpException e) {
+            Assert.assertEquals(1, pool.getStats().getTimeouts());
+        }
+        pool.release(entry, false, -1);
+        pool.release(pool.lease(route), false, -1);
+    }
+
+    @Test
+    public void testExpiredIdleEvicted() throws InterruptedException {
+        ConnectionPool pool = ConnectionPool.create();
+        PoolEntry entry = pool.lease(route);
+        Conn conn = new Conn();
+        entry.setConnection(conn);
+        // server keep-alive shorter than idle timeout
+        pool.release(entry, true, 10);
+        Thread.sleep(30);
+
+        PoolEntry again = pool.lease(route);
+        Assert.assertFalse(again.isReused());
+        Assert.assertTrue(conn.closed);
+        Assert.assertEquals(1, pool.getStats().getEvicted());
+        pool.release(again, false, -1);
+    }
+
+    @Test
+    public void testHttpURLConnection() throws Exception {
+        try (LocalServer server = LocalServer.create().latency(100).route("/", Reply.fixed("ok")).start()) {
+            final String url = server.url("/");
+            Assert.assertNull(HttpRequest.get(url).getPool());
+
+            final ConnectionPool pool = ConnectionPool.create().setMaxPerRoute(2);
+            ExecutorService executor = Executors.newFixedThreadPool(6);
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                bodies.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return HttpRequest.get(url).setPool(pool).execute().body();
+                    }
+                }));
+            }
+            for (Future<String> body : bodies) {
+                Assert.assertEquals("ok", body.get(10, TimeUnit.SECONDS));
+            }
+            executor.shutdown();
+
+            // two requests at once,their sockets kept alive by the jdk and not by the pool
+            Assert.assertEquals(2, server.getConnections());
+            PoolStats stats = pool.getStats();
+            Assert.assertEquals(6, stats.getCreated());
+            Assert.assertEquals(0, stats.getReused());
+            Assert.assertEquals(0, stats.getLeased());
+            Assert.assertEquals(0, stats.getIdle());
+        }
+    }
+
+    private static class Conn implements Closeable {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
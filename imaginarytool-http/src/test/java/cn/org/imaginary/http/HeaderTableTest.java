@@ -0,0 +1,143 @@
+package cn.org.imaginary.http;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * case insensitive names,known and custom headers,map view
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class HeaderTableTest {
+    private static final int REQUESTS = 2000;
+    // a browser-like request: known headers,custom ones,and a repeated one
+    private static final String[][] FIELDS = {
+            {"Host", "example.com"}, {"User-Agent", "Mozilla/5.0"}, {"Accept", "text/html"},
+            {"Accept-Language", "en-US"}, {"Accept-Encoding", "gzip, deflate"}, {"Connection", "keep-alive"},
+            {"Cache-Control", "no-cache"}, {"Pragma", "no-cache"}, {"Referer", "http://example.com/"},
+            {"Cookie", "a=1"}, {"Cookie", "b=2"}, {"Content-Type", "text/plain"},
+            {"X-Request-Id", "1"}, {"X-Trace-Id", "2"}, {"X-Forwarded-For", "127.0.0.1"}
+    };
+
+    @Test
+    public void testCaseInsensitive() {
+        HttpRequest request = HttpRequest.get("http://example.com/")
+                .header("content-type", "text/plain")
+                .header("Content-Type", "application/json")
+                .header("x-trace-id", "1")
+                .header("X-Trace-Id", "2", false);
+        Assert.assertEquals("application/json", request.getHeader(Header.CONTENT_TYPE));
+        Assert.assertEquals("application/json", request.getHeader("CONTENT-TYPE"));
+        Assert.assertEquals(Arrays.asList("1", "2"), request.getHeaders().get("X-TRACE-ID"));
+        Assert.assertEquals(1, count(request.getHeaders(), "content-type"));
+
+        request.removeHeader("CONTENT-type").removeHeader("x-trace-ID");
+        Assert.assertNull(request.getHeader(Header.CONTENT_TYPE));
+        Assert.assertNull(request.getHeader("X-Trace-Id"));
+    }
+
+    @Test
+    public void testMapView() {
+        HeaderTable headers = new HeaderTable();
+        headers.add("X-B", "b", true);
+        headers.add(Header.ACCEPT, "*/*", true);
+        headers.add("x-a", "a", true);
+        headers.add("set-cookie", "a=1", false);
+        headers.add(Header.SET_COOKIE, "b=2", false);
+        Assert.assertEquals(4, headers.size());
+        Assert.assertEquals(Arrays.asList("a=1", "b=2"), headers.get("Set-Cookie"));
+        Assert.assertTrue(headers.containsKey("x-b"));
+
+        // known names in canonical case first,custom ones as first set
+        final Iterator<Map.Entry<String, List<String>>> it = headers.entrySet().iterator();
+        Assert.assertEquals("Accept", it.next().getKey());
+        Assert.assertEquals("Set-Cookie", it.next().getKey());
+        Assert.assertEquals("X-B", it.next().getKey());
+        it.remove();
+        Assert.assertEquals("x-a", it.next().getKey());
+        Assert.assertFalse(it.hasNext());
+        Assert.assertNull(headers.get("X-B"));
+
+        HeaderTable copy = new HeaderTable(headers);
+        copy.add(Header.SET_COOKIE, "c=3", false);
+        Assert.assertEquals(2, headers.get("set-cookie").size());
+        Assert.assertEquals(3, copy.get("set-cookie").size());
+
+        Assert.assertEquals(Arrays.asList("a"), headers.put("X-A", Arrays.asList("c", "d")));
+        Assert.assertEquals("c", headers.first("x-a"));
+        headers.put("x-a", null);
+        Assert.assertEquals(2, headers.size());
+    }
+
+    @Test
+    public void testAllocation() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        final long thread = Thread.currentThread().getId();
+        // warm up
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(14, buildAsBefore().size());
+            Assert.assertEquals(14, buildTable().size());
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < REQUESTS; i++) {
+            buildAsBefore();
+        }
+        final long before = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < REQUESTS; i++) {
+            buildTable();
+        }
+        final long table = threads.getThreadAllocatedBytes(thread) - start;
+
+        Assert.assertTrue(table * 3 < before);
+    }
+
+    /**
+     * the headers as HttpBase stored them before the table,a list per name in a HashMap
+     */
+    private static Map<String, List<String>> buildAsBefore() {
+        final Map<String, List<String>> headers = new HashMap<>();
+        for (String[] field : FIELDS) {
+            List<String> values = headers.get(field[0]);
+            if (null == values) {
+                values = new ArrayList<>();
+                headers.put(field[0], values);
+            }
+            values.add(field[1]);
+        }
+        return headers;
+    }
+
+    private static HeaderTable buildTable() {
+        final HeaderTable headers = new HeaderTable();
+        for (String[] field : FIELDS) {
+            headers.add(field[0], field[1], false);
+        }
+        return headers;
+    }
+
+    private static int count(Map<String, List<String>> headers, String name) {
+        int n = 0;
+        for (String key : headers.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
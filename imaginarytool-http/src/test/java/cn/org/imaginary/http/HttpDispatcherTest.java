@@ -0,0 +1,288 @@
+package cn.org.imaginary.http;
+
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import cn.org.imaginary.http.pool.ConnectionPool;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * queueing,limits and cancellation of the dispatcher
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class HttpDispatcherTest {
+    private LocalServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalServer.create()
+                .route("/fast", Reply.fixed("fast"))
+                .route("/slow", Reply.fixed("slow").latency(300))
+                .route("/hang", Reply.fixed("hang").latency(10000))
+                .start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testQueueing() {
+        HttpDispatcher dispatcher = HttpDispatcher.create().setMaxRequests(2);
+        List<HttpFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(dispatcher.enqueue(HttpRequest.get(server.url("/slow"))));
+        }
+        Assert.assertEquals(2, dispatcher.getRunningCount());
+        Assert.assertEquals(3, dispatcher.getQueuedCount());
+        for (HttpFuture<HttpResponse> future : futures) {
+            Assert.assertEquals("slow", future.join().body());
+        }
+        Assert.assertEquals(5, server.getRequests());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testMaxRequestsPerHost() {
+        HttpDispatcher dispatcher = HttpDispatcher.create().setMaxRequests(8).setMaxRequestsPerHost(1);
+        List<HttpFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(dispatcher.enqueue(HttpRequest.get(server.url("/slow"))));
+        }
+        // another host of the same server is not held back
+        HttpFuture<HttpResponse> other = dispatcher.enqueue(
+                HttpRequest.get("http://localhost:" + server.getPort() + "/slow"));
+        Assert.assertEquals(2, dispatcher.getRunningCount());
+        Assert.assertEquals(2, dispatcher.getQueuedCount());
+        Assert.assertEquals("slow", other.join().body());
+        for (HttpFuture<HttpResponse> future : futures) {
+            Assert.assertEquals("slow", future.join().body());
+        }
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testCancelQueued() {
+        HttpDispatcher dispatcher = HttpDispatcher.create().setMaxRequests(1);
+        HttpFuture<HttpResponse> running = dispatcher.enqueue(HttpRequest.get(server.url("/slow")));
+        HttpFuture<HttpResponse> queued = dispatcher.enqueue(HttpRequest.get(server.url("/fast")));
+        Assert.assertTrue(queued.cancel(true));
+        Assert.assertTrue(queued.isCancelled());
+        Assert.assertEquals(0, dispatcher.getQueuedCount());
+        Assert.assertEquals("slow", running.join().body());
+        Assert.assertEquals(1, server.getRequests());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        // one thread,so the next call runs where the cancelled one ran
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        HttpDispatcher dispatcher = new HttpDispatcher(executor);
+        HttpFuture<HttpResponse> hanging = dispatcher.enqueue(HttpRequest.get(server.url("/hang")));
+        awaitRequests(1);
+        long start = System.nanoTime();
+        Assert.assertTrue(hanging.cancel(true));
+        try {
+            hanging.join();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(hanging.isCancelled());
+        }
+        Assert.assertTrue(System.nanoTime() - start < 5000_000_000L);
+
+        // the thread is not left interrupted
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("fast", dispatcher.enqueue(HttpRequest.get(server.url("/fast"))).join().body());
+        }
+        Future<Boolean> interrupted = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Thread.currentThread().isInterrupted();
+            }
+        });
+        Assert.assertFalse(interrupted.get());
+        Assert.assertEquals(0, dispatcher.getRunningCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testCancelRunningOnEngine() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(2);
+        final ServerSocket silent = new ServerSocket(0);
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = silent.accept();
+                        final InputStream in = socket.getInputStream();
+                        // never answers,the client closing its connection ends the stream
+                        while (in.read() >= 0) {
+                        }
+                        socket.close();
+                        closed.countDown();
+                    }
+                } catch (IOException e) {
+                    // server closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        HttpDispatcher dispatcher = HttpDispatcher.create();
+        try {
+            String url = "http://127.0.0.1:" + silent.getLocalPort() + "/hang";
+            HttpFuture<HttpResponse> hanging = dispatcher.enqueue(HttpRequest.get(url).setEngine(engine).timeout(30000));
+            Thread.sleep(200);
+            Assert.assertTrue(hanging.cancel(true));
+
+            // aborted by another thread,the call of the engine is cancelled and execute fails at once
+            final HttpRequest request = HttpRequest.get(url).setEngine(engine).timeout(30000);
+            final HttpException[] failure = new HttpException[1];
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        request.execute();
+                    } catch (HttpException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            caller.start();
+            Thread.sleep(200);
+            long start = System.nanoTime();
+            request.abort();
+            caller.join(5000);
+            Assert.assertTrue(System.nanoTime() - start < 5000_000_000L);
+            Assert.assertNotNull(failure[0]);
+            Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 100 && dispatcher.getRunningCount() > 0; i++) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(0, dispatcher.getRunningCount());
+        } finally {
+            dispatcher.shutdown();
+            engine.shutdown();
+            silent.close();
+        }
+    }
+
+    @Test
+    public void testCancelAllAndShutdown() throws InterruptedException {
+        HttpDispatcher dispatcher = HttpDispatcher.create().setMaxRequests(2);
+        List<HttpFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(dispatcher.enqueue(HttpRequest.get(server.url("/hang"))));
+        }
+        awaitRequests(2);
+        dispatcher.cancelAll();
+        for (HttpFuture<HttpResponse> future : futures) {
+            Assert.assertTrue(future.isCancelled());
+        }
+        Assert.assertEquals(0, dispatcher.getQueuedCount());
+        for (int i = 0; i < 100 && dispatcher.getRunningCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, dispatcher.getRunningCount());
+        Assert.assertEquals(2, server.getRequests());
+
+        dispatcher.shutdown();
+        HttpFuture<HttpResponse> rejected = dispatcher.enqueue(HttpRequest.get(server.url("/fast")));
+        try {
+            rejected.join();
+            Assert.fail();
+        } catch (HttpException e) {
+            Assert.assertTrue(rejected.isDone());
+        }
+    }
+
+    @Test
+    public void testCreateVirtual() {
+        HttpDispatcher dispatcher = HttpDispatcher.createVirtual();
+        Assert.assertEquals(HttpDispatcher.DEFAULT_MAX_VIRTUAL_REQUESTS, dispatcher.getMaxRequests());
+        Assert.assertEquals(HttpDispatcher.DEFAULT_MAX_VIRTUAL_REQUESTS, dispatcher.getMaxRequestsPerHost());
+        String version = System.getProperty("java.specification.version");
+        boolean isJava21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        Assert.assertEquals(isJava21, HttpDispatcher.isVirtualThreadSupported());
+
+        final Thread[] runner = new Thread[1];
+        HttpRequest request = HttpRequest.get(server.url("/fast")).setEngine(new HttpEngine() {
+            @Override
+            public HttpResponse execute(HttpRequest request) {
+                runner[0] = Thread.currentThread();
+                return new HttpResponse(200, null, new byte[0], "UTF-8");
+            }
+        });
+        Assert.assertEquals(200, dispatcher.enqueue(request).join().getStatus());
+        if (isJava21) {
+            Assert.assertTrue(isVirtual(runner[0]));
+        } else {
+            // platform threads before java 21
+            Assert.assertTrue(runner[0].isDaemon());
+            Assert.assertTrue(runner[0].getName().startsWith("imaginary-dispatcher-"));
+        }
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testVirtualBoundedByPool() throws InterruptedException {
+        HttpDispatcher dispatcher = HttpDispatcher.createVirtual();
+        ConnectionPool pool = ConnectionPool.create().setMaxPerRoute(2);
+        List<HttpFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(dispatcher.enqueue(HttpRequest.get(server.url("/slow")).setPool(pool)));
+        }
+        awaitRequests(2);
+        for (int i = 0; i < 250 && pool.getStats().getPending() < 4; i++) {
+            Thread.sleep(20);
+        }
+        // none waits in the dispatcher,the calls over the bound of the pool wait for a lease
+        Assert.assertEquals(0, dispatcher.getQueuedCount());
+        Assert.assertEquals(6, dispatcher.getRunningCount());
+        Assert.assertEquals(2, pool.getStats().getLeased());
+        Assert.assertEquals(4, pool.getStats().getPending());
+        for (HttpFuture<HttpResponse> future : futures) {
+            Assert.assertEquals("slow", future.join().body());
+        }
+        Assert.assertEquals(2, server.getConnections());
+        dispatcher.shutdown();
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void awaitRequests(int requests) throws InterruptedException {
+        for (int i = 0; i < 250 && server.getRequests() < requests; i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(requests, server.getRequests());
+    }
+}
@@ -0,0 +1,73 @@
+package cn.org.imaginary.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * path params and query of template requests,headers shared until changed
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RequestTemplateTest {
+
+    @Test
+    public void testExpand() {
+        RequestTemplate template = RequestTemplate.create(HttpRequest.get("http://example.com:8080/users/{id}/files/{name}"));
+        Assert.assertEquals("http://example.com:8080/users/42/files/a%20b%2Fc%E4%B8%AD",
+                template.newRequest(42, "a b/c中").getUrl());
+
+        final Map<String, Object> query = new LinkedHashMap<>();
+        query.put("q", "x&y");
+        query.put("page", 2);
+        Assert.assertEquals("http://example.com:8080/users/1/files/f?q=x%26y&page=2",
+                template.newRequest(query, 1, "f").getUrl());
+
+        try {
+            template.newRequest(1);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            RequestTemplate.create(HttpRequest.get("http://{host}/"));
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            RequestTemplate.create(HttpRequest.get("example/{id}"));
+            Assert.fail();
+        } catch (HttpException expected) {
+        }
+    }
+
+    @Test
+    public void testSharedHeaders() {
+        HttpRequest prototype = HttpRequest.post("http://example.com/events").header("X-Token", "t");
+        RequestTemplate template = RequestTemplate.create(prototype);
+        // later changes of the prototype do not reach the template
+        prototype.header("X-Token", "changed");
+
+        HttpRequest first = template.newRequest();
+        HttpRequest second = first.copy();
+        Assert.assertSame(template, first.getTemplate());
+        Assert.assertSame(template, second.getTemplate());
+        Assert.assertEquals("t", first.getHeader("x-token"));
+        // the body headers are encoded per request
+        first.body("{}", "application/json");
+        Assert.assertSame(template, first.getTemplate());
+        Assert.assertNull(second.getHeader(Header.CONTENT_TYPE));
+
+        first.header("X-Token", "mine");
+        Assert.assertNull(first.getTemplate());
+        Assert.assertEquals("mine", first.getHeader("X-Token"));
+        Assert.assertEquals("t", second.getHeader("X-Token"));
+        Assert.assertEquals("t", template.newRequest().getHeader("X-Token"));
+
+        second.method(HttpMethod.PUT);
+        Assert.assertNull(second.getTemplate());
+    }
+}
@@ -0,0 +1,145 @@
+package cn.org.imaginary.http.benchmark;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * requests a second,allocation a request and latency percentiles of small gets,large downloads and uploads
+ * against a {@link LocalServer} on loopback,on HttpURLConnection and on {@link NioHttpEngine}<br>
+ * {@link #main(String[])} runs the suite twice,in Throughput with the gc profiler whose gc.alloc.rate.norm
+ * is the bytes allocated a request,then in SampleTime for the percentiles;
+ * a single run goes through the jmh launcher with the test classpath,as
+ * <pre>
+ * java -cp &lt;test classpath&gt; org.openjdk.jmh.Main HttpBenchmark.smallGet -p transport=nio -p scheme=https -prof gc
+ * </pre>
+ *
+ * @author Imaginary
+ * @see LocalServer
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpBenchmark {
+    private static final int LARGE_LENGTH = 1024 * 1024;
+    private static final int UPLOAD_LENGTH = 1024 * 1024;
+
+    // connection for HttpURLConnection,nio for NioHttpEngine
+    @Param({"connection", "nio"})
+    public String transport;
+    // http,or https on a self-signed certificate
+    @Param({"http"})
+    public String scheme;
+    // false to open a connection a request
+    @Param({"true"})
+    public boolean keepAlive;
+
+    private LocalServer server;
+    private NioHttpEngine engine;
+    private String smallUrl;
+    private String largeUrl;
+    private String largeGzipUrl;
+    private String uploadUrl;
+    private byte[] upload;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = LocalServer.create()
+                .route("/small", Reply.fixed("ok"))
+                .route("/large", Reply.bytes(LARGE_LENGTH))
+                .route("/large-gzip", Reply.bytes(LARGE_LENGTH).gzip().chunked())
+                .route("/upload", Reply.echo())
+                .keepAlive(keepAlive);
+        if ("https".equals(scheme)) {
+            server.tls();
+        }
+        server.start();
+        if ("nio".equals(transport)) {
+            engine = NioHttpEngine.create();
+        }
+        smallUrl = server.url("/small");
+        largeUrl = server.url("/large");
+        largeGzipUrl = server.url("/large-gzip");
+        uploadUrl = server.url("/upload");
+        upload = new byte[UPLOAD_LENGTH];
+        Arrays.fill(upload, (byte) 'u');
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != engine) {
+            engine.shutdown();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public int smallGet() {
+        return execute(HttpRequest.get(smallUrl)).bodyBytes().length;
+    }
+
+    @Benchmark
+    public int largeDownload() {
+        return execute(HttpRequest.get(largeUrl)).bodyBytes().length;
+    }
+
+    @Benchmark
+    public int largeGzipDownload() {
+        return execute(HttpRequest.get(largeGzipUrl)).bodyBytes().length;
+    }
+
+    @Benchmark
+    public String upload() {
+        return execute(HttpRequest.post(uploadUrl).body(upload)).body();
+    }
+
+    private HttpResponse execute(HttpRequest request) {
+        final HttpResponse response = null == engine ? request.execute() : engine.execute(request);
+        if (!response.isOk()) {
+            throw new HttpException("Status {} of {}", response.getStatus(), request.getUrl());
+        }
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpBenchmark.class.getName())
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        new Runner(new OptionsBuilder()
+                .include(HttpBenchmark.class.getName())
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.util.CharsetUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * streamed form encoding matches URLEncoder,order and repeated names are kept
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class FormBodyTest {
+
+    @Test
+    public void testLikeUrlEncoder() throws Exception {
+        final Random random = new Random(7);
+        final String alphabet = "aZ09.-*_ ~+&=%,中文é😀\ud800";
+        for (String name : new String[]{"UTF-8", "GBK", "ISO-8859-1"}) {
+            final Charset charset = Charset.forName(name);
+            final FormBody body = FormBody.create(charset);
+            final StringBuilder expected = new StringBuilder();
+            for (int field = 0; field < 50; field++) {
+                final StringBuilder value = new StringBuilder();
+                for (int i = random.nextInt(20); i > 0; i--) {
+                    value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                // a lone surrogate at the end of a value
+                if (field % 10 == 0) {
+                    value.append('\ud83d');
+                }
+                body.add("k" + field % 3, value);
+                if (expected.length() > 0) {
+                    expected.append('&');
+                }
+                expected.append("k").append(field % 3).append('=').append(URLEncoder.encode(value.toString(), name));
+            }
+            Assert.assertEquals(name, expected.toString(), body.encode());
+            Assert.assertEquals(expected.length(), body.contentLength());
+
+            // one byte at a time resumes inside the %XX of a char
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ByteBuffer one = ByteBuffer.allocate(1);
+            try (BodySource source = body.newSource()) {
+                while (source.read(one) >= 0) {
+                    out.write(one.array(), 0, one.position());
+                    one.clear();
+                }
+            }
+            Assert.assertEquals(expected.toString(), new String(out.toByteArray(), CharsetUtils.CHARSET_ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        final FormBody body = FormBody.create()
+                .add("a", "1")
+                .add("ids", Arrays.asList(1, "x y", 3))
+                .add("a", 2)
+                .add("arr", new int[]{4, 5})
+                .add("skipped", null);
+        Assert.assertEquals("a=1&ids=1%2Cx+y%2C3&a=2&arr=4%2C5", body.encode());
+        body.set("a", "3");
+        Assert.assertEquals("a=3&ids=1%2Cx+y%2C3&arr=4%2C5", body.encode());
+        Assert.assertEquals("1,x y,3", body.value(1));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        Assert.assertEquals(body.contentLength(), out.size());
+
+        final HttpRequest request = HttpRequest.post("http://example.com/").form("b", "1").addForm("b", "2").form("c", "3");
+        Assert.assertEquals("b=1&b=2&c=3", new String(request.getBodyBytes(), CharsetUtils.CHARSET_ISO_8859_1));
+        Assert.assertEquals(Arrays.asList("1", "2"), request.getForm().get("b"));
+        Assert.assertTrue(request.getBody() instanceof FormBody);
+        Assert.assertEquals("http://example.com/?b=1&b=2&c=3", request.copy().method(cn.org.imaginary.http.HttpMethod.GET).getRequestUrl());
+    }
+}
@@ -0,0 +1,94 @@
+package cn.org.imaginary.http.body;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * length,layout and streaming of multipart bodies
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class MultipartBodyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLayout() throws IOException {
+        File file = file("a.txt", 3);
+        MultipartBody body = MultipartBody.create().addField("name", "值").addFile("file", file);
+        String boundary = body.getBoundary();
+        String expected = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"name\"\r\n\r\n值\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + "aaa\r\n"
+                + "--" + boundary + "--\r\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        Assert.assertEquals(expected, out.toString("UTF-8"));
+        Assert.assertEquals(out.size(), body.contentLength());
+        Assert.assertEquals("multipart/form-data; boundary=" + boundary, body.contentType());
+    }
+
+    @Test
+    public void testReadAndTransferAgree() throws IOException {
+        MultipartBody body = MultipartBody.create()
+                .addFile("empty", file("empty.bin", 0))
+                .addField("k", "v")
+                .addFile("big", file("big.bin", 100000));
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (BodySource source = body.newSource()) {
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                read.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(transferred);
+        try (BodySource source = body.newSource()) {
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            while (true) {
+                if (source.isFileRegion()) {
+                    source.transferTo(target);
+                    continue;
+                }
+                buffer.clear();
+                if (source.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                target.write(buffer);
+            }
+        }
+        Assert.assertEquals(body.contentLength(), read.size());
+        Assert.assertArrayEquals(read.toByteArray(), transferred.toByteArray());
+    }
+
+    private File file(String name, int size) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < size; i++) {
+                out.write('a');
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,151 @@
+package cn.org.imaginary.http.body;
+
+import cn.org.imaginary.http.Header;
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.retry.HedgePolicy;
+import cn.org.imaginary.http.retry.RetryPolicy;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+
+/**
+ * bytes,buffers,streams and files sent as they are with their exact length
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RequestBodyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBytes() throws IOException {
+        final byte[] bytes = new byte[300];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        direct.position(100);
+        for (RequestBody body : new RequestBody[]{BytesBody.create(bytes, 100, 200, null), BytesBody.create(direct, null)}) {
+            Assert.assertEquals(200, body.contentLength());
+            // sent twice,the buffer is not moved
+            for (int i = 0; i < 2; i++) {
+                Assert.assertArrayEquals(slice(bytes, 100, 200), read(body, 7));
+                Assert.assertArrayEquals(slice(bytes, 100, 200), written(body));
+            }
+        }
+        Assert.assertEquals(100, direct.position());
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        final File file = folder.newFile("image.png");
+        final byte[] bytes = new byte[70000];
+        bytes[69999] = 1;
+        Files.write(file.toPath(), bytes);
+        final FileBody body = FileBody.create(file.toPath());
+        Assert.assertEquals("image/png", body.contentType());
+        Assert.assertEquals(bytes.length, body.contentLength());
+        Assert.assertArrayEquals(bytes, read(body, 4096));
+        Assert.assertArrayEquals(bytes, written(body));
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        final StreamBody body = StreamBody.create(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), 3, null);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, read(body, 2));
+        try {
+            body.newSource();
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+
+        final StreamBody unknown = StreamBody.create(Channels.newChannel(new ByteArrayInputStream(new byte[]{5, 6})), -1, null);
+        Assert.assertEquals(-1, unknown.contentLength());
+        Assert.assertArrayEquals(new byte[]{5, 6}, written(unknown));
+
+        try {
+            read(StreamBody.create(new ByteArrayInputStream(new byte[]{1}), 2, null), 8);
+            Assert.fail();
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testRequest() {
+        final HttpRequest request = HttpRequest.post("http://example.com/").header(Header.CONTENT_TYPE, "application/x-protobuf");
+        Assert.assertTrue(request.body(new byte[]{1, 2}).getBody() instanceof BytesBody);
+        Assert.assertNull(request.getBodyBytes());
+        // bytes in utf-8,not chars
+        Assert.assertEquals("8", request.body("中a😀").getHeader(Header.CONTENT_LENGTH));
+        // the length of a previous body is not sent with the next one
+        Assert.assertNull(request.body(new byte[]{1, 2}).getHeader(Header.CONTENT_LENGTH));
+    }
+
+    @Test
+    public void testOneShot() {
+        Assert.assertFalse(StreamBody.create(new ByteArrayInputStream(new byte[1]), 1, null).isRepeatable());
+        Assert.assertTrue(BytesBody.create(new byte[1], null).isRepeatable());
+        Assert.assertTrue(MultipartBody.create().addField("a", "b").isRepeatable());
+
+        final HttpRequest streamed = HttpRequest.post("http://example.com/").body(new ByteArrayInputStream(new byte[1]), 1);
+        try {
+            streamed.setRetryPolicy(RetryPolicy.create());
+            Assert.fail();
+        } catch (HttpException expected) {
+        }
+        try {
+            streamed.setHedgePolicy(HedgePolicy.create());
+            Assert.fail();
+        } catch (HttpException expected) {
+        }
+        Assert.assertNull(streamed.setRetryPolicy(null).getRetryPolicy());
+
+        final HttpRequest retried = HttpRequest.post("http://example.com/").setRetryPolicy(RetryPolicy.create());
+        try {
+            retried.body(new ByteArrayInputStream(new byte[1]), 1);
+            Assert.fail();
+        } catch (HttpException expected) {
+        }
+        Assert.assertNull(retried.getBody());
+        Assert.assertTrue(retried.body(new byte[1]).getBody().isRepeatable());
+    }
+
+    private static byte[] read(RequestBody body, int bufferSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        try (BodySource source = body.newSource()) {
+            while (source.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] written(RequestBody body) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] slice(byte[] bytes, int offset, int length) {
+        final byte[] slice = new byte[length];
+        System.arraycopy(bytes, offset, slice, 0, length);
+        return slice;
+    }
+}
@@ -0,0 +1,112 @@
+package cn.org.imaginary.http.breaker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * closed,open and half open transitions driven by the failure and slow call rates of the window
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenHalfOpenClose() throws Exception {
+        final List<String> transitions = new ArrayList<>();
+        final int[] rejected = new int[1];
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.create()
+                .setWindowSize(10).setMinimumCalls(4).setFailureRateThreshold(50)
+                .setOpenDuration(100).setPermittedHalfOpenCalls(2)
+                .addListener(new CircuitBreakerListener() {
+                    @Override
+                    public void stateChanged(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to) {
+                        transitions.add(from + "->" + to);
+                    }
+
+                    @Override
+                    public void callRecorded(CircuitBreaker breaker, long duration, boolean isFailure, boolean isSlow) {
+                    }
+
+                    @Override
+                    public void callRejected(CircuitBreaker breaker) {
+                        rejected[0]++;
+                    }
+                });
+        CircuitBreaker breaker = registry.get("example.com:80");
+        Assert.assertSame(breaker, registry.get("example.com:80"));
+
+        call(breaker, false);
+        call(breaker, true);
+        call(breaker, false);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        // 2 of 4 failed
+        call(breaker, true);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        try {
+            breaker.acquirePermission();
+            Assert.fail();
+        } catch (CircuitBreakerOpenException e) {
+            Assert.assertEquals("example.com:80", e.getKey());
+            Assert.assertTrue(e.getRetryAfter() > 0);
+        }
+
+        Thread.sleep(150);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        try {
+            // trial calls are taken
+            breaker.acquirePermission();
+            Assert.fail();
+        } catch (CircuitBreakerOpenException e) {
+            Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, e.getState());
+        }
+        breaker.onSuccess(1);
+        breaker.onFailure(1);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        Thread.sleep(150);
+        call(breaker, false);
+        call(breaker, false);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        Assert.assertEquals(0, breaker.getBufferedCalls());
+        Assert.assertEquals(2, rejected[0]);
+        Assert.assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void testSlowCallsAndSlidingWindow() {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.create()
+                .setWindowSize(5).setMinimumCalls(5).setSlowCallThreshold(60, 100);
+        CircuitBreaker breaker = registry.get("slow");
+        for (int i = 0; i < 20; i++) {
+            // 2 slow of the last 5
+            breaker.acquirePermission();
+            breaker.onSuccess(i % 5 < 2 ? 200 : 1);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        Assert.assertEquals(5, breaker.getBufferedCalls());
+        Assert.assertEquals(40, breaker.getSlowCallRate(), 0.01);
+
+        // the oldest calls drop out,3 slow of the last 5
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+            breaker.acquirePermission();
+            breaker.onSuccess(500);
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    private static void call(CircuitBreaker breaker, boolean isFailure) {
+        breaker.acquirePermission();
+        if (isFailure) {
+            breaker.onFailure(1);
+        } else {
+            breaker.onSuccess(1);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package cn.org.imaginary.http.cache;
+
+import cn.org.imaginary.http.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * freshness,revalidation and tiers of the cache,with a stub transport
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class HttpCacheTest {
+
+    private static final String URL = "http://cache.test/data";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFreshResponseServedLocally() {
+        StubEngine server = new StubEngine().reply(200, "v1", "Cache-Control", "max-age=60");
+        HttpCache cache = HttpCache.create();
+        Assert.assertEquals("v1", get(cache, server).body());
+        HttpResponse cached = get(cache, server);
+        Assert.assertEquals("v1", cached.body());
+        Assert.assertNotNull(cached.getHeader(Header.AGE));
+        Assert.assertEquals(1, server.calls.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testRevalidateWithETag() {
+        StubEngine server = new StubEngine().reply(200, "v1", "Cache-Control", "no-cache", "ETag", "\"a\"");
+        HttpCache cache = HttpCache.create();
+        get(cache, server);
+        server.reply(304, "", "ETag", "\"a\"");
+        HttpRequest request = HttpRequest.get(URL).setEngine(server).setCache(cache);
+        HttpResponse response = request.execute();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("v1", response.body());
+        Assert.assertEquals("\"a\"", server.lastIfNoneMatch);
+        // the conditional header is not left on the caller's request
+        Assert.assertNull(request.getHeader(Header.IF_NONE_MATCH));
+        Assert.assertEquals(1, cache.getConditionalHits());
+
+        server.reply(200, "v2", "Cache-Control", "no-cache", "ETag", "\"b\"");
+        Assert.assertEquals("v2", get(cache, server).body());
+        Assert.assertEquals(3, server.calls.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws InterruptedException {
+        StubEngine server = new StubEngine().reply(200, "v1",
+                "Cache-Control", "max-age=0, stale-while-revalidate=60", "ETag", "\"a\"");
+        HttpCache cache = HttpCache.create();
+        get(cache, server);
+        server.reply(200, "v2", "Cache-Control", "max-age=60", "ETag", "\"b\"");
+        HttpResponse stale = get(cache, server);
+        Assert.assertEquals("v1", stale.body());
+        Assert.assertNotNull(stale.getHeader(Header.WARNING));
+        for (int i = 0; i < 100 && server.calls.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        Assert.assertEquals("v2", get(cache, server).body());
+        Assert.assertEquals(2, server.calls.get());
+        Assert.assertEquals(1, cache.getBackgroundRevalidations());
+    }
+
+    @Test
+    public void testNotStored() {
+        StubEngine server = new StubEngine().reply(200, "v1", "Cache-Control", "no-store");
+        HttpCache cache = HttpCache.create();
+        get(cache, server);
+        get(cache, server);
+        Assert.assertEquals(2, server.calls.get());
+
+        server.reply(200, "v1", "Cache-Control", "max-age=60");
+        get(cache, server);
+        HttpRequest.get(URL).setEngine(server).setCache(cache).disableCache().execute();
+        HttpRequest.get(URL).setEngine(server).setCache(cache).header(Header.CACHE_CONTROL, "no-cache").execute();
+        Assert.assertEquals(5, server.calls.get());
+    }
+
+    @Test
+    public void testUnsafeMethodInvalidates() {
+        StubEngine server = new StubEngine().reply(200, "v1", "Cache-Control", "max-age=60");
+        HttpCache cache = HttpCache.create();
+        get(cache, server);
+        HttpRequest.post(URL).body("x").setEngine(server).setCache(cache).execute();
+        get(cache, server);
+        Assert.assertEquals(3, server.calls.get());
+    }
+
+    @Test
+    public void testDiskTier() throws Exception {
+        StubEngine server = new StubEngine().reply(200, new String(new char[1000]).replace('\0', 'x'),
+                "Cache-Control", "max-age=60");
+        HttpCache cache = HttpCache.create().setMaxSize(1500).setDirectory(folder.getRoot(), 1024 * 1024);
+        HttpRequest.get(URL + "?1").setEngine(server).setCache(cache).execute();
+        // evicts the first entry from memory
+        HttpRequest.get(URL + "?2").setEngine(server).setCache(cache).execute();
+        Assert.assertTrue(cache.size() <= 1500);
+        Assert.assertEquals(1000, HttpRequest.get(URL + "?1").setEngine(server).setCache(cache).execute().body().length());
+        Assert.assertEquals(2, server.calls.get());
+
+        // a new cache on the same directory
+        HttpCache reopened = HttpCache.create().setDirectory(folder.getRoot(), 1024 * 1024);
+        HttpRequest.get(URL + "?2").setEngine(server).setCache(reopened).execute();
+        Assert.assertEquals(2, server.calls.get());
+        Assert.assertEquals(1, reopened.getHits());
+    }
+
+    private static HttpResponse get(HttpCache cache, StubEngine server) {
+        return HttpRequest.get(URL).setEngine(server).setCache(cache).execute();
+    }
+
+    /**
+     * answers every request with the same response
+     */
+    private static class StubEngine implements HttpEngine {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile int status;
+        private volatile String body;
+        private volatile Map<String, List<String>> headers;
+        private volatile String lastIfNoneMatch;
+
+        private StubEngine reply(int status, String body, String... headers) {
+            final Map<String, List<String>> map = new HashMap<>();
+            for (int i = 0; i < headers.length; i += 2) {
+                map.put(headers[i], Collections.singletonList(headers[i + 1]));
+            }
+            this.status = status;
+            this.body = body;
+            this.headers = map;
+            return this;
+        }
+
+        @Override
+        public HttpResponse execute(HttpRequest request) {
+            calls.incrementAndGet();
+            lastIfNoneMatch = request.getHeader(Header.IF_NONE_MATCH);
+            return new HttpResponse(status, headers, body.getBytes(), "UTF-8");
+        }
+    }
+}
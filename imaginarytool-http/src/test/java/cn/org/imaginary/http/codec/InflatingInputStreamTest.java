@@ -0,0 +1,102 @@
+package cn.org.imaginary.http.codec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * gzip,zlib and raw deflate,empty and broken bodies,pooled Inflaters
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class InflatingInputStreamTest {
+
+    @Test
+    public void testDecode() throws IOException {
+        final byte[] data = data(100_000);
+        final InflaterPool pool = InflaterPool.create(4);
+        Assert.assertArrayEquals(data, ContentDecoder.decode(gzip(data), "gzip", pool));
+        Assert.assertArrayEquals(data, ContentDecoder.decode(deflate(data, false), "deflate", pool));
+        Assert.assertArrayEquals(data, ContentDecoder.decode(deflate(data, true), "Deflate", pool));
+        Assert.assertArrayEquals(data, readByBytes(ContentDecoder.decode(new ByteArrayInputStream(gzip(data)), "x-gzip", pool)));
+
+        // two members are one body
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip("ab".getBytes()));
+        members.write(gzip("cd".getBytes()));
+        Assert.assertEquals("abcd", new String(ContentDecoder.decode(members.toByteArray(), "gzip", pool)));
+
+        Assert.assertEquals(0, ContentDecoder.decode(new byte[0], "gzip", pool).length);
+        Assert.assertSame(data, ContentDecoder.decode(data, "br", pool));
+        // every Inflater went back,the later ones were reused
+        Assert.assertEquals(2, pool.getCreated());
+        Assert.assertEquals(2, pool.getIdle());
+    }
+
+    @Test
+    public void testBroken() throws IOException {
+        final InflaterPool pool = InflaterPool.create(4);
+        final byte[] body = gzip(data(1000));
+        body[body.length - 6] ^= 1;
+        try {
+            ContentDecoder.decode(body, "gzip", pool);
+            Assert.fail();
+        } catch (ZipException e) {
+            Assert.assertTrue(e.getMessage().contains("crc"));
+        }
+        try {
+            ContentDecoder.decode(Arrays.copyOf(body, body.length / 2), "gzip", pool);
+            Assert.fail();
+        } catch (IOException e) {
+            // cut short
+        }
+        Assert.assertEquals(1, pool.getIdle());
+    }
+
+    private static byte[] data(int length) {
+        final byte[] data = new byte[length];
+        final Random random = new Random(7);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readByBytes(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while (-1 != (b = in.read())) {
+            out.write(b);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
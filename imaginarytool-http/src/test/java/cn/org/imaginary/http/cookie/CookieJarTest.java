@@ -0,0 +1,85 @@
+package cn.org.imaginary.http.cookie;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * domain,path and expiry matching and the bounds of the jar
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class CookieJarTest {
+
+    @Test
+    public void testDomainAndPath() throws Exception {
+        CookieJar jar = CookieJar.create();
+        jar.saveFromResponse(url("http://www.example.com/app/login"), Arrays.asList(
+                "sid=1; Path=/",
+                "theme=dark; Domain=.example.com; Path=/",
+                "token=2; Path=/app",
+                "evil=3; Domain=other.com",
+                "tld=4; Domain=com"));
+        Assert.assertEquals("token=2; sid=1; theme=dark", jar.cookieHeader(url("http://www.example.com/app/x")));
+        Assert.assertEquals("sid=1; theme=dark", jar.cookieHeader(url("http://www.example.com/apple")));
+        // host only cookies stay on their host,domain cookies reach sub domains
+        Assert.assertEquals("theme=dark", jar.cookieHeader(url("http://api.example.com/")));
+        Assert.assertNull(jar.cookieHeader(url("http://other.com/")));
+        Assert.assertEquals(3, jar.size());
+    }
+
+    @Test
+    public void testDefaultPathAndSecure() throws Exception {
+        CookieJar jar = CookieJar.create();
+        jar.saveFromResponse(url("https://example.com/docs/page"), Arrays.asList("a=1", "b=2; Secure"));
+        Assert.assertEquals("a=1; b=2", jar.cookieHeader(url("https://example.com/docs/other")));
+        Assert.assertEquals("a=1", jar.cookieHeader(url("http://example.com/docs/other")));
+        Assert.assertNull(jar.cookieHeader(url("https://example.com/")));
+    }
+
+    @Test
+    public void testReplaceAndExpire() throws Exception {
+        CookieJar jar = CookieJar.create();
+        URL url = url("http://example.com/");
+        jar.saveFromResponse(url, Collections.singletonList("sid=1"));
+        jar.saveFromResponse(url, Collections.singletonList("sid=2"));
+        Assert.assertEquals("sid=2", jar.cookieHeader(url));
+        jar.saveFromResponse(url, Collections.singletonList("sid=; Max-Age=0"));
+        Assert.assertNull(jar.cookieHeader(url));
+
+        jar.saveFromResponse(url, Arrays.asList("old=1; Expires=Wed, 21 Oct 2015 07:28:00 GMT", "short=1; Max-Age=1"));
+        Assert.assertEquals("short=1", jar.cookieHeader(url));
+        Thread.sleep(1100);
+        Assert.assertEquals(1, jar.purgeExpired());
+        Assert.assertEquals(0, jar.hostCount());
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        CookieJar jar = CookieJar.create(32, 3);
+        URL url = url("http://example.com/");
+        for (int i = 0; i < 5; i++) {
+            jar.saveFromResponse(url, Collections.singletonList("c" + i + "=" + i + "; Max-Age=" + (100 + i)));
+        }
+        // the ones expiring first are dropped
+        Assert.assertEquals("c2=2; c3=3; c4=4", jar.cookieHeader(url));
+
+        for (int i = 0; i < 10000; i++) {
+            jar.saveFromResponse(url("http://host" + i + ".test/"), Collections.singletonList("a=1"));
+        }
+        Assert.assertTrue(jar.hostCount() <= 32);
+        // recently used hosts are kept
+        Assert.assertEquals("a=1", jar.cookieHeader(url("http://host9999.test/")));
+        Assert.assertNull(jar.cookieHeader(url("http://host0.test/")));
+    }
+
+    private static URL url(String url) throws MalformedURLException {
+        return new URL(url);
+    }
+}
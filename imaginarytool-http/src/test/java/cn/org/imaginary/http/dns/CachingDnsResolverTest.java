@@ -0,0 +1,178 @@
+package cn.org.imaginary.http.dns;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * caching and ordering of resolved addresses,with an in-process stub resolver
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class CachingDnsResolverTest {
+
+    @Test
+    public void testHitAndExpiry() throws Exception {
+        StubResolver stub = new StubResolver(address("10.0.0.1"));
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setTtl(200).setRefreshAhead(0);
+        Assert.assertEquals(address("10.0.0.1"), resolver.resolve("a.test")[0]);
+        Assert.assertEquals(address("10.0.0.1"), resolver.resolve("a.test")[0]);
+        Assert.assertEquals(1, stub.lookups.get());
+        Assert.assertEquals(1, resolver.getHits());
+        Assert.assertEquals(1, resolver.getMisses());
+
+        Thread.sleep(300);
+        stub.addresses = new InetAddress[]{address("10.0.0.2")};
+        Assert.assertEquals(address("10.0.0.2"), resolver.resolve("a.test")[0]);
+        Assert.assertEquals(2, stub.lookups.get());
+        Assert.assertEquals(2, resolver.getMisses());
+    }
+
+    @Test
+    public void testNegativeCache() throws Exception {
+        StubResolver stub = new StubResolver();
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setNegativeTtl(200);
+        for (int i = 0; i < 3; i++) {
+            try {
+                resolver.resolve("missing.test");
+                Assert.fail();
+            } catch (UnknownHostException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, stub.lookups.get());
+        Assert.assertEquals(2, resolver.getNegativeHits());
+
+        Thread.sleep(300);
+        stub.addresses = new InetAddress[]{address("10.0.0.3")};
+        Assert.assertEquals(address("10.0.0.3"), resolver.resolve("missing.test")[0]);
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        StubResolver stub = new StubResolver(address("10.0.0.1"));
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setTtl(1000).setRefreshAhead(900);
+        resolver.resolve("b.test");
+        Thread.sleep(200);
+        stub.addresses = new InetAddress[]{address("10.0.0.2")};
+        // near expiry: the cached address is returned and refreshed in background
+        Assert.assertEquals(address("10.0.0.1"), resolver.resolve("b.test")[0]);
+        for (int i = 0; i < 50 && stub.lookups.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(50);
+        Assert.assertEquals(address("10.0.0.2"), resolver.resolve("b.test")[0]);
+        Assert.assertEquals(2, stub.lookups.get());
+        Assert.assertEquals(1, resolver.getRefreshes());
+        Assert.assertEquals(1, resolver.getMisses());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsAddresses() throws Exception {
+        StubResolver stub = new StubResolver(address("10.0.0.1"));
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setTtl(1000).setRefreshAhead(1000);
+        resolver.resolve("c.test");
+        stub.addresses = null;
+        resolver.resolve("c.test");
+        for (int i = 0; i < 50 && stub.lookups.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(address("10.0.0.1"), resolver.resolve("c.test")[0]);
+    }
+
+    @Test
+    public void testLeastRecentlyUsed() throws Exception {
+        StubResolver stub = new StubResolver(address("10.0.0.1"));
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setMaxSize(2).setRefreshAhead(0);
+        resolver.resolve("a.test");
+        resolver.resolve("b.test");
+        // a is used again,so b is the least recently used when c comes in
+        resolver.resolve("a.test");
+        resolver.resolve("c.test");
+        Assert.assertEquals(2, resolver.size());
+        Assert.assertEquals(3, stub.lookups.get());
+        resolver.resolve("a.test");
+        resolver.resolve("c.test");
+        Assert.assertEquals(3, stub.lookups.get());
+        resolver.resolve("b.test");
+        Assert.assertEquals(4, stub.lookups.get());
+    }
+
+    @Test
+    public void testParallelRefreshes() throws Exception {
+        final CountDownLatch running = new CountDownLatch(4);
+        final AtomicBoolean isBlocking = new AtomicBoolean();
+        final StubResolver stub = new StubResolver(address("10.0.0.1")) {
+            @Override
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                if (isBlocking.get()) {
+                    running.countDown();
+                    try {
+                        running.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.resolve(host);
+            }
+        };
+        CachingDnsResolver resolver = CachingDnsResolver.create(stub).setTtl(10000).setRefreshAhead(10000);
+        for (int i = 0; i < 4; i++) {
+            resolver.resolve(i + ".test");
+        }
+        isBlocking.set(true);
+        for (int i = 0; i < 4; i++) {
+            resolver.resolve(i + ".test");
+        }
+        // four refreshes wait for each other,they only finish when they run at once
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInterleave() throws Exception {
+        InetAddress v6a = address("2001:db8::1");
+        InetAddress v6b = address("2001:db8::2");
+        InetAddress v4a = address("10.0.0.1");
+        InetAddress v4b = address("10.0.0.2");
+        InetAddress v4c = address("10.0.0.3");
+        List<InetAddress> ordered = HappyEyeballs.interleave(new InetAddress[]{v6a, v6b, v4a, v4b, v4c});
+        Assert.assertArrayEquals(new InetAddress[]{v6a, v4a, v6b, v4b, v4c}, ordered.toArray());
+        ordered = HappyEyeballs.interleave(new InetAddress[]{v4a, v4b, v6a});
+        Assert.assertArrayEquals(new InetAddress[]{v4a, v6a, v4b}, ordered.toArray());
+    }
+
+    private static InetAddress address(String literal) throws UnknownHostException {
+        return InetAddress.getByName(literal);
+    }
+
+    /**
+     * answers every host with the same addresses,or fails when there are none
+     */
+    private static class StubResolver implements DnsResolver {
+        private volatile InetAddress[] addresses;
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private StubResolver(InetAddress... addresses) {
+            this.addresses = 0 == addresses.length ? null : addresses;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            final InetAddress[] current = addresses;
+            if (null == current) {
+                throw new UnknownHostException(host);
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.org.imaginary.http.download;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * segment plan and persistence of download checkpoints
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlanCoversEveryByte() {
+        Checkpoint checkpoint = Checkpoint.plan("http://a/f", 1003, "\"v1\"", 4);
+        long next = 0;
+        for (int i = 0; i < checkpoint.segments(); i++) {
+            Assert.assertEquals(next, checkpoint.position(i));
+            next = checkpoint.end(i) + 1;
+        }
+        Assert.assertEquals(1003, next);
+        Assert.assertEquals(0, checkpoint.downloaded());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(folder.getRoot(), "f.checkpoint");
+        Checkpoint checkpoint = Checkpoint.plan("http://a/f", 1000, "\"v1\"", 2);
+        checkpoint.advance(0, 300);
+        checkpoint.advance(1, 1000);
+        checkpoint.save(file);
+
+        Checkpoint loaded = Checkpoint.load(file);
+        Assert.assertTrue(loaded.isSameResource("http://a/f", 1000, "\"v1\""));
+        Assert.assertFalse(loaded.isSameResource("http://a/f", 1000, "\"v2\""));
+        Assert.assertEquals(300, loaded.position(0));
+        Assert.assertFalse(loaded.isDone(0));
+        Assert.assertTrue(loaded.isDone(1));
+        Assert.assertEquals(800, loaded.downloaded());
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{0, 0, 0, 1, 0});
+        }
+        Assert.assertNull(Checkpoint.load(file));
+    }
+}
@@ -0,0 +1,116 @@
+package cn.org.imaginary.http.download;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * segmented downloads against a local server which serves ranges,ignores them or cuts answers short
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RangeDownloaderTest {
+    private static final int LENGTH = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSegments() throws IOException {
+        try (LocalServer server = LocalServer.create().route("/file", file().ranges()).start()) {
+            File file = download(server, RangeDownloader.create());
+            assertFile(file);
+            // the probe and four segments
+            Assert.assertEquals(5, server.getRequests());
+            Assert.assertEquals(1 + LENGTH, server.getResponseBytes());
+        }
+    }
+
+    @Test
+    public void testRangesIgnored() throws IOException {
+        try (LocalServer server = LocalServer.create().route("/file", file()).start()) {
+            File file = download(server, RangeDownloader.create());
+            assertFile(file);
+            // the body of the probe is the file
+            Assert.assertEquals(1, server.getRequests());
+        }
+    }
+
+    @Test
+    public void testNotSatisfiable() throws IOException {
+        try (LocalServer server = LocalServer.create().route("/empty", Reply.fixed(new byte[0]).ranges()).start()) {
+            File file = new File(folder.getRoot(), "empty.bin");
+            RangeDownloader.create().download(server.url("/empty"), file);
+            Assert.assertTrue(file.isFile());
+            Assert.assertEquals(0, file.length());
+            // a 416 probe,then the whole empty body
+            Assert.assertEquals(2, server.getRequests());
+        }
+    }
+
+    @Test
+    public void testShortSegment() throws IOException {
+        // the probe and then one segment are cut after 500 bytes
+        try (LocalServer server = LocalServer.create().route("/file", file().ranges().truncate(500, 2)).start()) {
+            File file = download(server, RangeDownloader.create().setRetries(1));
+            assertFile(file);
+            // the cut segment goes on from its last byte
+            Assert.assertEquals(6, server.getRequests());
+            Assert.assertEquals(1 + LENGTH, server.getResponseBytes());
+        }
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        try (LocalServer server = LocalServer.create().route("/file", file().ranges().truncate(500, 2)).start()) {
+            File file = new File(folder.getRoot(), "file.bin");
+            try {
+                download(server, RangeDownloader.create().setRetries(0));
+                Assert.fail();
+            } catch (HttpException expected) {
+            }
+            Assert.assertFalse(file.exists());
+            Assert.assertTrue(new File(file.getPath() + RangeDownloader.PART_SUFFIX).isFile());
+            Checkpoint checkpoint = Checkpoint.load(new File(file.getPath() + RangeDownloader.CHECKPOINT_SUFFIX));
+            Assert.assertNotNull(checkpoint);
+            Assert.assertEquals(1 + LENGTH - 2000, server.getResponseBytes());
+            Assert.assertEquals(LENGTH - 2000, checkpoint.downloaded());
+
+            // the second call only fetches the rest of the cut segment
+            assertFile(download(server, RangeDownloader.create()));
+            Assert.assertEquals(2 + LENGTH, server.getResponseBytes());
+            Assert.assertFalse(new File(file.getPath() + RangeDownloader.CHECKPOINT_SUFFIX).exists());
+        }
+    }
+
+    private File download(LocalServer server, RangeDownloader downloader) {
+        return downloader.setConnections(4).setMinSegmentSize(1000).download(server.url("/file"), new File(folder.getRoot(), "file.bin"));
+    }
+
+    private static Reply file() {
+        return Reply.bytes(LENGTH).header("ETag", "\"v1\"");
+    }
+
+    private static void assertFile(File file) throws IOException {
+        Assert.assertArrayEquals(expected(), Files.readAllBytes(file.toPath()));
+        Assert.assertFalse(new File(file.getPath() + RangeDownloader.PART_SUFFIX).exists());
+    }
+
+    private static byte[] expected() {
+        byte[] bytes = new byte[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,91 @@
+package cn.org.imaginary.http.event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * histogram buckets and percentiles,phase timings aggregated per host
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class PhaseRecorderTest {
+
+    @Test
+    public void testBuckets() {
+        long lastBound = -1;
+        for (long micros = 0; micros < 1 << 20; micros += 1 + micros / 64) {
+            final int index = LatencyHistogram.index(micros);
+            final long bound = LatencyHistogram.upperBound(index);
+            Assert.assertTrue(micros + " above bound " + bound, micros <= bound);
+            Assert.assertTrue(bound >= lastBound);
+            // about 6% wide at most
+            Assert.assertTrue(bound - micros <= Math.max(1, micros / 16));
+            lastBound = bound;
+        }
+        Assert.assertEquals(LatencyHistogram.index(32) - 1, LatencyHistogram.index(31));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.percentile(99), 0);
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50.5, histogram.getMeanMillis(), 0.01);
+        Assert.assertEquals(100, histogram.getMaxMillis(), 0.01);
+        Assert.assertEquals(50, histogram.percentile(50), 50 * 0.07);
+        Assert.assertEquals(99, histogram.percentile(99), 99 * 0.07);
+        Assert.assertEquals(100, histogram.percentile(100), 0.01);
+    }
+
+    @Test
+    public void testRecordPhases() throws Exception {
+        PhaseRecorder recorder = PhaseRecorder.create();
+        PhaseTimings fresh = new PhaseTimings(recorder, "example.com:443");
+        fresh.callStart();
+        fresh.connectionAcquired(false);
+        fresh.dnsStart("example.com");
+        fresh.dnsEnd("example.com", new InetAddress[]{InetAddress.getLoopbackAddress()});
+        fresh.connectStart(new InetSocketAddress(InetAddress.getLoopbackAddress(), 443));
+        // the raced attempt does not move the start
+        fresh.connectStart(new InetSocketAddress(InetAddress.getLoopbackAddress(), 443));
+        fresh.connectEnd();
+        fresh.secureConnectStart();
+        fresh.secureConnectEnd();
+        fresh.requestEnd(120);
+        Thread.sleep(20);
+        fresh.responseStart();
+        fresh.responseEnd(2048);
+        fresh.callEnd(null);
+        Assert.assertTrue(fresh.duration(Phase.TTFB) >= TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertTrue(fresh.duration(Phase.TOTAL) >= fresh.duration(Phase.TTFB));
+
+        PhaseTimings reused = new PhaseTimings(recorder, "example.com:443");
+        reused.callStart();
+        reused.connectionAcquired(true);
+        reused.requestEnd(0);
+        reused.callFailed(new java.io.IOException("reset"));
+        Assert.assertEquals(-1, reused.duration(Phase.DNS));
+        Assert.assertEquals(-1, reused.duration(Phase.TTFB));
+
+        PhaseRecorder.HostStats stats = recorder.get("example.com:443");
+        Assert.assertEquals(2, stats.getCalls());
+        Assert.assertEquals(1, stats.getFailedCalls());
+        Assert.assertEquals(1, stats.getReusedConnections());
+        Assert.assertEquals(120, stats.getRequestBytes());
+        Assert.assertEquals(2048, stats.getResponseBytes());
+        Assert.assertEquals(1, stats.histogram(Phase.DNS).getCount());
+        Assert.assertEquals(1, stats.histogram(Phase.SECURE_CONNECT).getCount());
+        Assert.assertEquals(1, stats.histogram(Phase.TTFB).getCount());
+        Assert.assertEquals(2, stats.histogram(Phase.TOTAL).getCount());
+        Assert.assertTrue(stats.histogram(Phase.TTFB).percentile(50) >= 20 * 0.94);
+    }
+}
@@ -0,0 +1,101 @@
+package cn.org.imaginary.http.limit;
+
+import cn.org.imaginary.http.HttpFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * burst,refill rate,batch permits,asynchronous waits and the metrics of the bucket
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstAndRefill() throws Exception {
+        RateLimiter limiter = RateLimiter.create(100, 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getRejectedCalls());
+        // a permit every 10ms
+        Assert.assertTrue(limiter.tryAcquire(1, 50, TimeUnit.MILLISECONDS));
+        Thread.sleep(60);
+        Assert.assertTrue(limiter.availablePermits() >= 4);
+        Thread.sleep(200);
+        Assert.assertEquals(5, limiter.availablePermits());
+    }
+
+    @Test
+    public void testBatchPermits() {
+        RateLimiter limiter = RateLimiter.create(200, 10);
+        Assert.assertEquals(0, limiter.acquire(10));
+        // more than the bucket holds,paid by waiting
+        long waited = limiter.acquire(20);
+        Assert.assertTrue(waited >= 90 && waited <= 110);
+        Assert.assertEquals(30, limiter.getAcquiredPermits());
+        Assert.assertEquals(1, limiter.getWaitedCalls());
+        Assert.assertFalse(limiter.tryAcquire(5, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConcurrentRate() throws Exception {
+        final RateLimiter limiter = RateLimiter.create(500, 1);
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 25; j++) {
+                        limiter.acquire();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 200 permits at 500/s,the first one from the bucket
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed >= 390 && elapsed < 600);
+        Assert.assertEquals(200, limiter.getAcquiredPermits());
+        Assert.assertEquals(0, limiter.getWaiting());
+        Assert.assertTrue(limiter.getMaxWaitMillis() > 0);
+    }
+
+    @Test
+    public void testAsync() {
+        RateLimiter limiter = RateLimiter.create(10, 1);
+        Assert.assertEquals(Long.valueOf(0), limiter.acquireAsync(1).join());
+        HttpFuture<Long> first = limiter.acquireAsync(1);
+        HttpFuture<Long> cancelled = limiter.acquireAsync(5);
+        Assert.assertEquals(2, limiter.getWaiting());
+        cancelled.cancel(true);
+        Assert.assertEquals(1, limiter.getWaiting());
+        Assert.assertTrue(first.join() <= 100);
+        // the permits of the cancelled wait are given back
+        HttpFuture<Long> next = limiter.acquireAsync(1);
+        Assert.assertTrue(next.join() <= 110);
+        Assert.assertEquals(0, limiter.getWaiting());
+        Assert.assertEquals(3, limiter.getAcquiredPermits());
+    }
+
+    @Test
+    public void testRegistry() {
+        RateLimiterRegistry limiters = RateLimiterRegistry.create(10, 2).setLimit("partner", 1, 1);
+        Assert.assertSame(limiters.get("a.com:80"), limiters.get("a.com:80"));
+        Assert.assertEquals(2, limiters.get("a.com:80").getBurst());
+        Assert.assertEquals(1, limiters.get("partner").getBurst());
+        Assert.assertEquals(2, limiters.getLimiters().size());
+    }
+}
@@ -0,0 +1,38 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpFuture;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * a stale keep-alive connection is replaced only for a request which can be sent again as it was
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class ExchangeTest {
+
+    @Test
+    public void testRetryable() throws Exception {
+        Assert.assertTrue(exchange(HttpRequest.get("http://example.com/")).isRetryable());
+        Assert.assertTrue(exchange(HttpRequest.put("http://example.com/").body(new byte[]{1})).isRetryable());
+        Assert.assertFalse(exchange(HttpRequest.post("http://example.com/").body(new byte[]{1})).isRetryable());
+        Assert.assertFalse(exchange(HttpRequest.put("http://example.com/").body(new ByteArrayInputStream(new byte[]{1}), 1)).isRetryable());
+
+        Exchange retried = exchange(HttpRequest.get("http://example.com/"));
+        retried.rewind();
+        Assert.assertFalse(retried.isRetryable());
+    }
+
+    private static Exchange exchange(HttpRequest request) throws Exception {
+        return new Exchange(request, new URL(request.getRequestUrl()), new HttpFuture<HttpResponse>(), null, 0,
+                ByteBuffer.allocate(0), request.getBody());
+    }
+}
@@ -0,0 +1,96 @@
+package cn.org.imaginary.http.nio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * examples of RFC 7541 appendix C
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class HpackTest {
+
+    @Test
+    public void testRequestsWithHuffman() throws IOException {
+        String[][][] requests = {
+                {{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"}},
+                {{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"}, {"cache-control", "no-cache"}},
+                {{":method", "GET"}, {":scheme", "https"}, {":path", "/index.html"}, {":authority", "www.example.com"}, {"custom-key", "custom-value"}}
+        };
+        String[] blocks = {
+                "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                "828684be5886a8eb10649cbf",
+                "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"
+        };
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        for (int i = 0; i < requests.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.begin(out);
+            for (String[] field : requests[i]) {
+                encoder.encode(out, field[0], field[1], false);
+            }
+            Assert.assertEquals(blocks[i], hex(out.toByteArray()));
+
+            List<String[]> fields = decoder.decode(ByteBuffer.wrap(bytes(blocks[i])));
+            Assert.assertEquals(requests[i].length, fields.size());
+            for (int j = 0; j < fields.size(); j++) {
+                Assert.assertArrayEquals(requests[i][j], fields.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testResponseWithHuffman() throws IOException {
+        List<String[]> fields = new HpackDecoder().decode(ByteBuffer.wrap(bytes(
+                "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff"
+                        + "6e919d29ad171863c78f0b97c8e9ae82ae43d3")));
+        Assert.assertEquals(4, fields.size());
+        Assert.assertArrayEquals(new String[]{":status", "302"}, fields.get(0));
+        Assert.assertArrayEquals(new String[]{"cache-control", "private"}, fields.get(1));
+        Assert.assertArrayEquals(new String[]{"date", "Mon, 21 Oct 2013 20:13:21 GMT"}, fields.get(2));
+        Assert.assertArrayEquals(new String[]{"location", "https://www.example.com"}, fields.get(3));
+    }
+
+    @Test
+    public void testTableSizeUpdate() throws IOException {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.begin(out);
+        encoder.encode(out, "x-token", "abc", false);
+        decoder.decode(ByteBuffer.wrap(out.toByteArray()));
+
+        // peer shrinks the table to 0,the next block starts with the update and nothing is indexed
+        encoder.setMaxSize(0);
+        out.reset();
+        encoder.begin(out);
+        encoder.encode(out, "x-token", "abc", false);
+        Assert.assertEquals(0x20, out.toByteArray()[0]);
+        List<String[]> fields = decoder.decode(ByteBuffer.wrap(out.toByteArray()));
+        Assert.assertArrayEquals(new String[]{"x-token", "abc"}, fields.get(0));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] bytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
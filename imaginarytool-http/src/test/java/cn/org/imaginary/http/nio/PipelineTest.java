@@ -0,0 +1,198 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.HttpFuture;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * pipelined requests against a local server which answers each request after a delay,as a network round trip would
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class PipelineTest {
+    private static final int LATENCY_MILLIS = 5;
+    private static final int REQUESTS = 100;
+
+    private ServerSocket server;
+    private NioHttpEngine engine;
+    // responses the first connection answers before the server closes it,0 for never
+    private volatile int closeAfter;
+    // requests the first connection reads before it answers any,0 for none
+    private volatile int holdFor;
+    // a held connection gave up waiting for its requests
+    private static volatile boolean isHoldBroken;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        final Socket socket = server.accept();
+                        final boolean isFirst = 1 == connections.incrementAndGet();
+                        serve(socket, isFirst ? closeAfter : 0, isFirst ? holdFor : 0);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        engine = NioHttpEngine.create(1);
+        isHoldBroken = false;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testResponsesInOrder() {
+        List<HttpFuture<HttpResponse>> futures = engine.pipeline(requests(REQUESTS));
+        for (int i = 0; i < REQUESTS; i++) {
+            Assert.assertEquals("/r" + i, futures.get(i).join().body());
+        }
+        Assert.assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void testThroughputAgainstKeepAlive() {
+        // warm up the connection and the code paths
+        engine.execute(HttpRequest.get(url(0)));
+        engine.pipeline(requests(10)).get(9).join();
+
+        long start = System.nanoTime();
+        for (HttpRequest request : requests(REQUESTS)) {
+            engine.execute(request);
+        }
+        final long sequential = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final List<HttpFuture<HttpResponse>> futures = engine.pipeline(requests(REQUESTS));
+        futures.get(REQUESTS - 1).join();
+        final long pipelined = System.nanoTime() - start;
+
+        // each answer waits LATENCY_MILLIS,one after another on keep-alive,overlapped in a pipeline
+        Assert.assertTrue(sequential >= TimeUnit.MILLISECONDS.toNanos((long) REQUESTS * LATENCY_MILLIS));
+        Assert.assertTrue(pipelined * 4 < sequential);
+    }
+
+    @Test
+    public void testRequestsSentBeforeAnswers() {
+        // the server answers nothing until every request arrived,which only a pipeline sends
+        holdFor = REQUESTS;
+        List<HttpFuture<HttpResponse>> futures = engine.pipeline(requests(REQUESTS));
+        for (int i = 0; i < REQUESTS; i++) {
+            Assert.assertEquals("/r" + i, futures.get(i).join().body());
+        }
+        Assert.assertFalse(isHoldBroken);
+        Assert.assertEquals(1, connections.get());
+    }
+
+    @Test
+    public void testReplayAfterServerClose() {
+        closeAfter = 30;
+        List<HttpFuture<HttpResponse>> futures = engine.pipeline(requests(REQUESTS));
+        for (int i = 0; i < REQUESTS; i++) {
+            Assert.assertEquals("/r" + i, futures.get(i).join().body());
+        }
+        Assert.assertEquals(2, connections.get());
+    }
+
+    private List<HttpRequest> requests(int count) {
+        final List<HttpRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requests.add(HttpRequest.get(url(i)));
+        }
+        return requests;
+    }
+
+    private String url(int i) {
+        return "http://127.0.0.1:" + server.getLocalPort() + "/r" + i;
+    }
+
+    /**
+     * requests are read as they come,each one is answered in order LATENCY_MILLIS after it arrived,
+     * once holdFor requests arrived
+     */
+    private static void serve(final Socket socket, final int closeAfter, int holdFor) throws IOException {
+        final BlockingQueue<Object[]> answers = new LinkedBlockingQueue<>();
+        final CountDownLatch held = new CountDownLatch(holdFor);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        final Thread readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while (null != (line = reader.readLine())) {
+                        final String path = line.split(" ")[1];
+                        while (!reader.readLine().isEmpty()) {
+                            // skip headers
+                        }
+                        answers.put(new Object[]{System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS), path});
+                        held.countDown();
+                    }
+                } catch (Exception e) {
+                    // closed
+                }
+            }
+        });
+        final Thread writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket closing = socket) {
+                    final OutputStream out = closing.getOutputStream();
+                    if (!held.await(10, TimeUnit.SECONDS)) {
+                        isHoldBroken = true;
+                    }
+                    int answered = 0;
+                    while (0 == closeAfter || answered < closeAfter) {
+                        final Object[] answer = answers.take();
+                        final long wait = (Long) answer[0] - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        final String body = (String) answer[1];
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1));
+                        out.flush();
+                        answered++;
+                    }
+                    // close gracefully after a response,unread requests would make it a reset
+                    closing.shutdownOutput();
+                    readerThread.join();
+                } catch (Exception e) {
+                    // closed
+                }
+            }
+        });
+        readerThread.setDaemon(true);
+        writerThread.setDaemon(true);
+        readerThread.start();
+        writerThread.start();
+    }
+}
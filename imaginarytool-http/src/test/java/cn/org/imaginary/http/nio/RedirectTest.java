@@ -0,0 +1,134 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.Header;
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.cookie.CookieJar;
+import cn.org.imaginary.http.server.Reply;
+import cn.org.imaginary.util.CharsetUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * redirects followed by the engine keep credentials on their origin and the body on methods which send it
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RedirectTest {
+    private static final String TEXT = "\u91cd\u5b9a\u5411";
+
+    private NioHttpEngine engine;
+    private LocalServer origin;
+    private LocalServer other;
+
+    @Before
+    public void setUp() throws IOException {
+        engine = NioHttpEngine.create(1);
+        other = LocalServer.create().route("/to", Reply.echo()).start();
+        origin = LocalServer.create()
+                .route("/away", Reply.fixed("").status(302).header("Location", other.url("/to")))
+                .route("/here", Reply.fixed("").status(307).header("Location", "/to"))
+                .route("/see", Reply.fixed("").status(303).header("Location", "/to"))
+                .route("/login", Reply.fixed("").status(302).header("Set-Cookie", "sid=1").header("Location", "/hop"))
+                .route("/hop", Reply.fixed("").status(302).header("Set-Cookie", "hop=2").header("Location", "/to"))
+                .route("/to", Reply.echo())
+                .route("/old", Reply.fixed("").status(301).header("Location", "/text"))
+                .route("/text", Reply.fixed(TEXT.getBytes(CharsetUtils.CHARSET_GBK)).contentType("text/plain"))
+                .start();
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        origin.close();
+        other.close();
+    }
+
+    @Test
+    public void testCrossOrigin() {
+        Assert.assertEquals("0", engine.execute(withSecrets(HttpRequest.post(origin.url("/away")).body("a=1"))).body());
+        Map<String, String> headers = other.getLastHeaders();
+        Assert.assertEquals("GET", other.getLastMethod());
+        Assert.assertNull(headers.get("authorization"));
+        Assert.assertNull(headers.get("proxy-authorization"));
+        Assert.assertNull(headers.get("cookie"));
+        // the request falls back to the default content type
+        Assert.assertNotEquals("text/csv", headers.get("content-type"));
+        Assert.assertNull(headers.get("content-length"));
+        Assert.assertEquals("kept", headers.get("x-trace"));
+    }
+
+    @Test
+    public void testSameOrigin() {
+        Assert.assertEquals("3", engine.execute(withSecrets(HttpRequest.post(origin.url("/here")).body("a=1"))).body());
+        Map<String, String> headers = origin.getLastHeaders();
+        Assert.assertEquals("POST", origin.getLastMethod());
+        Assert.assertEquals("Bearer t", headers.get("authorization"));
+        Assert.assertEquals("id=1", headers.get("cookie"));
+        Assert.assertEquals("text/csv", headers.get("content-type"));
+        Assert.assertEquals("3", headers.get("content-length"));
+    }
+
+    @Test
+    public void testSeeOther() {
+        Assert.assertEquals("0", engine.execute(withSecrets(HttpRequest.post(origin.url("/see")).body("a=1"))).body());
+        Map<String, String> headers = origin.getLastHeaders();
+        Assert.assertEquals("GET", origin.getLastMethod());
+        Assert.assertEquals("Bearer t", headers.get("authorization"));
+        // the request falls back to the default content type
+        Assert.assertNotEquals("text/csv", headers.get("content-type"));
+        Assert.assertNull(headers.get("content-length"));
+    }
+
+    @Test
+    public void testOneShotBody() {
+        HttpRequest request = HttpRequest.post(origin.url("/here")).body(new ByteArrayInputStream(new byte[]{1, 2, 3}), 3);
+        try {
+            engine.execute(request);
+            Assert.fail();
+        } catch (HttpException expected) {
+        }
+        Assert.assertEquals(1, origin.getRequests());
+        // a 303 does not send the body again
+        Assert.assertEquals("0", engine.execute(HttpRequest.post(origin.url("/see")).body(new ByteArrayInputStream(new byte[]{1}), 1)).body());
+    }
+
+    @Test
+    public void testCookieJar() {
+        CookieJar jar = CookieJar.create();
+        engine.execute(HttpRequest.get(origin.url("/login")).setCookieJar(jar));
+        Assert.assertEquals("sid=1; hop=2", origin.getLastHeaders().get("cookie"));
+        Assert.assertEquals(2, jar.size());
+    }
+
+    @Test
+    public void testNoCookieJar() throws Exception {
+        engine.execute(HttpRequest.get(origin.url("/login")).setCookieJar(null));
+        Assert.assertNull(origin.getLastHeaders().get("cookie"));
+        Assert.assertNull(CookieJar.getDefault().cookieHeader(new URL(origin.url("/to"))));
+    }
+
+    @Test
+    public void testCharset() {
+        // the response has no charset,the one of the request decodes it after the redirect too
+        Assert.assertEquals(TEXT, engine.execute(HttpRequest.get(origin.url("/old")).charset(CharsetUtils.CHARSET_GBK)).body());
+    }
+
+    private static HttpRequest withSecrets(HttpRequest request) {
+        return request.header(Header.AUTHORIZATION, "Bearer t")
+                .header(Header.PROXY_AUTHORIZATION, "Basic p")
+                .header(Header.COOKIE, "id=1")
+                .header(Header.CONTENT_TYPE, "text/csv")
+                .header("X-Trace", "kept");
+    }
+}
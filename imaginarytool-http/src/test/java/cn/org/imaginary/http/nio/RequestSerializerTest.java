@@ -0,0 +1,64 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.http.Header;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.RequestTemplate;
+import cn.org.imaginary.http.body.StreamBody;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.URLUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * the encoded head of a template writes the same message as a request built each time
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RequestSerializerTest {
+
+    @Test
+    public void testTemplateHead() {
+        RequestTemplate template = RequestTemplate.create(HttpRequest.post("http://example.com:8080/users/{id}")
+                .header("Authorization", "Bearer t")
+                .header("X-Trace", "1")
+                .header("X-Trace", "2", false)
+                .setCookieJar(null));
+        HttpRequest fromTemplate = template.newRequest("a b").body("{\"n\":1}", "application/json");
+        HttpRequest built = HttpRequest.post("http://example.com:8080/users/a%20b")
+                .header("Authorization", "Bearer t")
+                .header("X-Trace", "1")
+                .header("X-Trace", "2", false)
+                .setCookieJar(null)
+                .body("{\"n\":1}", "application/json");
+        Assert.assertNotNull(fromTemplate.getTemplate());
+
+        URL url = URLUtils.url(built.getUrl());
+        Assert.assertEquals(text(RequestSerializer.serialize(built, null, url, false)),
+                text(RequestSerializer.serialize(fromTemplate, null, url, false)));
+        Assert.assertEquals(text(RequestSerializer.serialize(built, null, url, true)),
+                text(RequestSerializer.serialize(fromTemplate, null, url, true)));
+    }
+
+    @Test
+    public void testUnknownLength() {
+        HttpRequest request = HttpRequest.post("http://example.com/upload").setCookieJar(null)
+                .header(Header.CONTENT_TYPE, "image/png");
+        StreamBody body = StreamBody.create(new ByteArrayInputStream(new byte[3]), -1, null);
+        String head = text(RequestSerializer.serialize(request, body, URLUtils.url(request.getUrl()), false));
+        Assert.assertTrue(head, head.contains("Transfer-Encoding: chunked\r\n"));
+        Assert.assertTrue(head, head.contains("Content-Type: image/png\r\n"));
+        Assert.assertFalse(head, head.contains("Content-Length"));
+    }
+
+    private static String text(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, CharsetUtils.CHARSET_ISO_8859_1);
+    }
+}
@@ -0,0 +1,51 @@
+package cn.org.imaginary.http.nio;
+
+import cn.org.imaginary.util.CharsetUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class ResponseParserTest {
+
+    @Test
+    public void testChunkedAcrossReads() {
+        String response = "HTTP/1.1 100 Continue\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nContent-Type: text/plain\r\n\r\n"
+                + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Trailer: 1\r\n\r\n";
+        ResponseParser parser = new ResponseParser(false);
+        byte[] bytes = response.getBytes(CharsetUtils.CHARSET_ISO_8859_1);
+        boolean isDone = false;
+        // one byte at a time
+        for (byte b : bytes) {
+            Assert.assertFalse(isDone);
+            isDone = parser.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+        Assert.assertTrue(isDone);
+        Assert.assertEquals(200, parser.getStatus());
+        Assert.assertEquals("text/plain", parser.header("content-type"));
+        Assert.assertEquals("hello world", new String(parser.getBody(), CharsetUtils.CHARSET_ISO_8859_1));
+        Assert.assertTrue(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testUntilClose() {
+        ResponseParser parser = new ResponseParser(false);
+        Assert.assertFalse(parser.feed(ByteBuffer.wrap("HTTP/1.0 200 OK\r\n\r\nbody".getBytes(CharsetUtils.CHARSET_ISO_8859_1))));
+        Assert.assertTrue(parser.eof());
+        Assert.assertEquals("body", new String(parser.getBody(), CharsetUtils.CHARSET_ISO_8859_1));
+        Assert.assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testHeadHasNoBody() {
+        ResponseParser parser = new ResponseParser(true);
+        Assert.assertTrue(parser.feed(ByteBuffer.wrap("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n".getBytes(CharsetUtils.CHARSET_ISO_8859_1))));
+        Assert.assertEquals(0, parser.getBody().length);
+    }
+}
@@ -0,0 +1,162 @@
+package cn.org.imaginary.http.pool;
+
+import cn.org.imaginary.http.HttpUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * size classes,reuse,bad releases,leaks and the allocation of reading bodies
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class BufferPoolTest {
+    private static final int BODIES = 200;
+    private static final int BODY_SIZE = 256 * 1024;
+
+    @Test
+    public void testReuse() {
+        final BufferPool pool = BufferPool.create().setLocalCacheSize(1).setMaxPooled(1);
+        final byte[] bytes = pool.acquireBytes(3000);
+        Assert.assertEquals(4096, bytes.length);
+        pool.release(bytes);
+        Assert.assertSame(bytes, pool.acquireBytes(4096));
+
+        // the cache of the thread is full,the second overflows to the shared queue,the third is dropped
+        final ByteBuffer[] buffers = {pool.acquireDirect(100), pool.acquireDirect(100), pool.acquireDirect(100)};
+        Assert.assertTrue(buffers[0].isDirect());
+        Assert.assertEquals(BufferPool.MIN_SIZE, buffers[0].capacity());
+        for (ByteBuffer buffer : buffers) {
+            buffer.position(10);
+            pool.release(buffer);
+        }
+        Assert.assertEquals(1, pool.getPooled());
+        // the cache of the thread first,then the shared queue,cleared either way
+        Assert.assertSame(buffers[0], pool.acquireDirect(1));
+        Assert.assertEquals(0, pool.acquireDirect(1).position());
+        Assert.assertEquals(0, pool.getPooled());
+        Assert.assertEquals(4, pool.getAllocated());
+
+        // heap and direct are kept apart,sizes beyond the classes are not pooled
+        Assert.assertFalse(pool.acquire(1).isDirect());
+        pool.release(new byte[BufferPool.MAX_SIZE * 2]);
+        pool.release(new byte[5000]);
+        Assert.assertEquals(0, pool.getPooled());
+    }
+
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        final BufferPool pool = BufferPool.create().setLeakDetection(true);
+        final byte[] bytes = pool.acquireBytes(1024);
+        pool.release(bytes);
+        // released twice,it is not pooled again
+        pool.release(bytes);
+        Assert.assertNotSame(pool.acquireBytes(1024), pool.acquireBytes(1024));
+
+        pool.acquire(8192);
+        for (int i = 0; i < 50 && 0 == pool.getLeaks(); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(pool.getLeaks() >= 1);
+    }
+
+    @Test
+    public void testAllocationOfBodies() throws IOException {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        final long thread = Thread.currentThread().getId();
+        final BufferPool pool = BufferPool.create();
+        // warm up
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(BODY_SIZE, readAsBefore(new BodyStream()).length);
+            Assert.assertEquals(BODY_SIZE, HttpUtils.readBody(new BodyStream(), -1, pool).length);
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < BODIES; i++) {
+            readAsBefore(new BodyStream());
+        }
+        final long before = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < BODIES; i++) {
+            HttpUtils.readBody(new BodyStream(), -1, pool);
+        }
+        final long pooled = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < BODIES; i++) {
+            HttpUtils.readBody(new BodyStream(), BODY_SIZE, pool);
+        }
+        final long presized = threads.getThreadAllocatedBytes(thread) - start;
+
+        Assert.assertTrue(pooled * 2 < before);
+        Assert.assertTrue(presized * 2 < before);
+    }
+
+    @Test
+    public void testReadBodyLength() throws IOException {
+        final BufferPool pool = BufferPool.create();
+        Assert.assertEquals(BODY_SIZE, HttpUtils.readBody(new BodyStream(), BODY_SIZE, pool).length);
+        try {
+            HttpUtils.readBody(new BodyStream(), BODY_SIZE + 1, pool);
+            Assert.fail();
+        } catch (EOFException e) {
+            Assert.assertEquals("expected " + (BODY_SIZE + 1) + " bytes, got " + BODY_SIZE, e.getMessage());
+        }
+        try {
+            HttpUtils.readBody(new BodyStream(), BODY_SIZE - 1, pool);
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    /**
+     * the way a body was read before,a new buffer and a growing stream
+     */
+    private static byte[] readAsBefore(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while (-1 != (n = in.read(buffer))) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * a body which arrives in pieces as from a socket
+     */
+    private static final class BodyStream extends InputStream {
+        private int remaining = BODY_SIZE;
+
+        @Override
+        public int read() {
+            return remaining-- > 0 ? 'a' : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = Math.min(Math.min(len, 1500), remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = 'a';
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package cn.org.imaginary.http.proxy;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+
+/**
+ * choice,quarantine and max of calls of the proxies
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class ProxyPoolTest {
+
+    @Test
+    public void testQuarantine() throws InterruptedException {
+        ProxyPool pool = ProxyPool.create().setFailureThreshold(2).setQuarantine(100, 150);
+        pool.add(proxy("a", 1));
+        PooledProxy a = pool.acquire();
+        a.onFailure(10);
+        Assert.assertFalse(a.isQuarantined());
+        pool.acquire().onFailure(10);
+        Assert.assertTrue(a.isQuarantined());
+        try {
+            pool.acquire();
+            Assert.fail();
+        } catch (ProxyUnavailableException e) {
+            Assert.assertEquals(1, e.getQuarantined());
+            Assert.assertTrue(e.getRetryAfter() > 0 && e.getRetryAfter() <= 100);
+        }
+
+        // cool-down over,the next failure doubles it up to the max
+        Thread.sleep(120);
+        pool.acquire().onFailure(10);
+        Assert.assertTrue(a.getQuarantineRemaining() > 100);
+        Thread.sleep(170);
+        pool.acquire().onSuccess(10);
+        pool.acquire().onFailure(10);
+        Assert.assertFalse(a.isQuarantined());
+    }
+
+    @Test
+    public void testMaxConcurrent() {
+        ProxyPool pool = ProxyPool.create().setMaxConcurrent(1).add(proxy("a", 1)).add(proxy("b", 1), 2);
+        PooledProxy first = pool.acquire();
+        PooledProxy second = pool.acquire();
+        PooledProxy third = pool.acquire();
+        try {
+            pool.acquire();
+            Assert.fail();
+        } catch (ProxyUnavailableException e) {
+            Assert.assertEquals(0, e.getQuarantined());
+            Assert.assertEquals(0, e.getRetryAfter());
+        }
+        int active = 0;
+        for (PooledProxy pooled : pool.getProxies()) {
+            Assert.assertEquals(pooled.getMaxConcurrent(), pooled.getActive());
+            active += pooled.getActive();
+        }
+        Assert.assertEquals(3, active);
+        second.onIgnored();
+        Assert.assertSame(second, pool.acquire());
+        first.onIgnored();
+        third.onIgnored();
+    }
+
+    @Test
+    public void testWeighting() {
+        ProxyPool pool = ProxyPool.create().add(proxy("fast", 1)).add(proxy("slow", 1)).add(proxy("failing", 1))
+                .setFailureThreshold(Integer.MAX_VALUE);
+        for (PooledProxy pooled : pool.getProxies()) {
+            for (int i = 0; i < 20; i++) {
+                String host = ((InetSocketAddress) pooled.getProxy().address()).getHostString();
+                if ("fast".equals(host)) {
+                    pooled.tryAcquire();
+                    pooled.onSuccess(50);
+                } else if ("slow".equals(host)) {
+                    pooled.tryAcquire();
+                    pooled.onSuccess(3000);
+                } else {
+                    pooled.tryAcquire();
+                    pooled.onFailure(50);
+                }
+            }
+        }
+        int fast = 0;
+        int failing = 0;
+        for (int i = 0; i < 1000; i++) {
+            PooledProxy pooled = pool.acquire();
+            String host = ((InetSocketAddress) pooled.getProxy().address()).getHostString();
+            fast += "fast".equals(host) ? 1 : 0;
+            failing += "failing".equals(host) ? 1 : 0;
+            pooled.onIgnored();
+        }
+        Assert.assertTrue(fast > 700);
+        Assert.assertTrue(failing > 0 && failing < 50);
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        try (LocalServer server = LocalServer.create().route("/ok", Reply.fixed("proxied")).start()) {
+            ProxyPool pool = ProxyPool.create().setFailureThreshold(2).setQuarantine(60000, 60000)
+                    .add(proxy("127.0.0.1", closedPort))
+                    .add(proxy("127.0.0.1", server.getPort()));
+            HttpRequest request = HttpRequest.get("http://origin.invalid/ok").timeout(2000).setProxy(pool);
+            PooledProxy dead = pool.getProxies().get(0);
+            for (int i = 0; i < 100 && !dead.isQuarantined(); i++) {
+                long failures = dead.getFailures();
+                try {
+                    Assert.assertEquals("proxied", request.execute().body());
+                } catch (HttpException e) {
+                    Assert.assertEquals(failures + 1, dead.getFailures());
+                }
+            }
+            Assert.assertTrue(dead.isQuarantined());
+            // the request keeps no proxy of its own
+            Assert.assertNull(request.getProxy());
+            long served = server.getRequests();
+            for (int i = 0; i < 10; i++) {
+                Assert.assertEquals("proxied", request.execute().body());
+            }
+            Assert.assertEquals(served + 10, server.getRequests());
+            Assert.assertEquals(2, dead.getFailures());
+        }
+    }
+
+    @Test
+    public void testOwnProxyKept() throws IOException {
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        try (LocalServer server = LocalServer.create().route("/ok", Reply.fixed("proxied")).start()) {
+            Proxy own = proxy("127.0.0.1", 1);
+            ProxyPool pool = ProxyPool.create().add(proxy("127.0.0.1", server.getPort()));
+            HttpRequest request = HttpRequest.get("http://origin.invalid/ok").setProxy(own).setProxy(pool);
+            Assert.assertEquals("proxied", request.execute().body());
+            Assert.assertEquals("proxied", request.copy().setEngine(engine).execute().body());
+            Assert.assertSame(own, request.getProxy());
+
+            // without the pool the request goes through its own proxy again
+            request.setProxy((ProxyPool) null);
+            try {
+                request.execute();
+                Assert.fail();
+            } catch (HttpException e) {
+                Assert.assertEquals(2, server.getRequests());
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    private static Proxy proxy(String host, int port) {
+        return new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(host, port));
+    }
+}
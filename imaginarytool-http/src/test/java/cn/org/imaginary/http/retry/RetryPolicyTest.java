@@ -0,0 +1,93 @@
+package cn.org.imaginary.http.retry;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * backoff,idempotency and the errors and statuses retried,the percentile of the hedge delay
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = RetryPolicy.create().setBaseDelay(100).setMaxDelay(1000).setJitter(0);
+        Assert.assertEquals(100, policy.backoff(2));
+        Assert.assertEquals(200, policy.backoff(3));
+        Assert.assertEquals(800, policy.backoff(5));
+        Assert.assertEquals(1000, policy.backoff(10));
+
+        policy.setJitter(0.5);
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.backoff(4);
+            Assert.assertTrue(delay >= 200 && delay <= 400);
+        }
+    }
+
+    @Test
+    public void testShouldRetry() {
+        RetryPolicy policy = RetryPolicy.create();
+        HttpRequest get = HttpRequest.get("http://localhost/");
+        HttpRequest post = HttpRequest.post("http://localhost/");
+        Assert.assertTrue(policy.shouldRetry(get, HttpStatus.HTTP_UNAVAILABLE));
+        Assert.assertFalse(policy.shouldRetry(get, HttpStatus.HTTP_INTERNAL_ERROR));
+        Assert.assertFalse(policy.shouldRetry(post, HttpStatus.HTTP_UNAVAILABLE));
+
+        Assert.assertTrue(policy.shouldRetry(get, new HttpException("x", new SocketTimeoutException())));
+        Assert.assertFalse(policy.shouldRetry(post, new HttpException("x", new EOFException())));
+        // never reached the server
+        Assert.assertTrue(policy.shouldRetry(post, new HttpException("x", new ConnectException())));
+        Assert.assertFalse(policy.shouldRetry(get, new HttpException("x", new FileNotFoundException())));
+
+        policy.retryOnStatus(HttpStatus.HTTP_INTERNAL_ERROR).retryOn(FileNotFoundException.class).setRetryNonIdempotent(true);
+        Assert.assertTrue(policy.shouldRetry(post, HttpStatus.HTTP_INTERNAL_ERROR));
+        Assert.assertFalse(policy.shouldRetry(post, HttpStatus.HTTP_UNAVAILABLE));
+        Assert.assertTrue(policy.shouldRetry(get, new HttpException("x", new FileNotFoundException())));
+
+        get.abort();
+        Assert.assertFalse(policy.shouldRetry(get, new HttpException("x", new SocketTimeoutException())));
+    }
+
+    @Test
+    public void testRetryAfter() {
+        Assert.assertEquals(120000, RetryPolicy.retryAfter("120"));
+        Assert.assertEquals(0, RetryPolicy.retryAfter("soon"));
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long delay = RetryPolicy.retryAfter(format.format(new Date(System.currentTimeMillis() + 30000)));
+        Assert.assertTrue(delay > 28000 && delay <= 30000);
+    }
+
+    @Test
+    public void testHedgeDelay() {
+        HedgePolicy policy = HedgePolicy.create(90).setInitialDelay(50).setMinSamples(10);
+        Assert.assertEquals(50, policy.hedgeDelay());
+        for (int i = 1; i <= 100; i++) {
+            policy.record(i);
+        }
+        Assert.assertEquals(90, policy.hedgeDelay());
+        Assert.assertTrue(policy.isHedgeable(HttpRequest.get("http://localhost/")));
+        Assert.assertFalse(policy.isHedgeable(HttpRequest.post("http://localhost/")));
+
+        policy.setDelayBounds(5, 20);
+        for (int i = 0; i < 1024; i++) {
+            policy.record(1);
+        }
+        Assert.assertEquals(5, policy.hedgeDelay());
+    }
+}
@@ -0,0 +1,595 @@
+package cn.org.imaginary.http.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+/**
+ * a scripted http/1.1 server on loopback for tests and benchmarks,each path answers a {@link Reply},
+ * with latency,keep-alive on or off and tls on a self-signed certificate,nothing leaves the machine;
+ * it answers absolute-form targets as well,so it stands in for a http proxy of plain http requests<br>
+ * usage:
+ * <pre>
+ * try (LocalServer server = LocalServer.create()
+ *         .route("/small", Reply.fixed("ok"))
+ *         .route("/large", Reply.bytes(1024 * 1024).gzip().chunked())
+ *         .start()) {
+ *     HttpRequest.get(server.url("/small")).execute();
+ * }
+ * </pre>
+ *
+ * @author Imaginary
+ * @see Reply
+ * @since 1.0
+ */
+public class LocalServer implements Closeable {
+    private static final String KEYSTORE_PASSWORD = "imaginary";
+    private static final int MAX_HEAD_LINE = 8 * 1024;
+    private static final Reply NOT_FOUND = Reply.fixed("not found").status(404);
+
+    // the self-signed certificate,generated once a jvm
+    private static volatile SSLContext sslContext;
+
+    private final Map<String, Reply> routes = new ConcurrentHashMap<>();
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    // method and headers of the last request read,names in lower case
+    private volatile String lastMethod;
+    private volatile Map<String, String> lastHeaders = Collections.emptyMap();
+    private volatile long latencyMillis;
+    private volatile boolean isKeepAlive = true;
+    private boolean isTls;
+    private ServerSocket serverSocket;
+    private ExecutorService workers;
+
+    private LocalServer() {
+    }
+
+    /**
+     * a server without routes,every path answers 404 until routed
+     *
+     * @return LocalServer not started
+     */
+    public static LocalServer create() {
+        return new LocalServer();
+    }
+
+    /**
+     * answer a path,the query is not part of it
+     *
+     * @param path  path as /name
+     * @param reply answer
+     * @return this
+     */
+    public LocalServer route(String path, Reply reply) {
+        routes.put(path, reply);
+        return this;
+    }
+
+    /**
+     * wait before each answer but those with a latency of their own
+     *
+     * @param latencyMillis delay in millis
+     * @return this
+     */
+    public LocalServer latency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * keep connections open between requests,or answer each with Connection close
+     *
+     * @param isKeepAlive default true
+     * @return this
+     */
+    public LocalServer keepAlive(boolean isKeepAlive) {
+        this.isKeepAlive = isKeepAlive;
+        return this;
+    }
+
+    /**
+     * serve https on a self-signed certificate for localhost and 127.0.0.1
+     *
+     * @return this
+     */
+    public LocalServer tls() {
+        this.isTls = true;
+        return this;
+    }
+
+    /**
+     * listen on a free port of 127.0.0.1
+     *
+     * @return this
+     * @throws IOException if the port or the certificate is not available
+     */
+    public synchronized LocalServer start() throws IOException {
+        if (null != serverSocket) {
+            return this;
+        }
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        serverSocket = isTls ? sslContext().getServerSocketFactory().createServerSocket(0, 128, loopback)
+                : new ServerSocket(0, 128, loopback);
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "local-server-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        return this;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            sockets.add(socket);
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            });
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+            while (serveOne(in, out)) {
+                // next request on the connection
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * read a request and answer it
+     *
+     * @return true if the connection is kept for another request
+     */
+    private boolean serveOne(InputStream in, OutputStream out) throws IOException {
+        final String requestLine = readLine(in);
+        if (null == requestLine) {
+            return false;
+        }
+        final String[] parts = requestLine.split(" ");
+        if (parts.length < 3) {
+            throw new IOException("Bad request line " + requestLine);
+        }
+        final String method = parts[0];
+        final Map<String, String> headers = new HashMap<>();
+        String line;
+        while (null != (line = readLine(in)) && !line.isEmpty()) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        if (null == line) {
+            return false;
+        }
+        final long requestLength = readBody(in, headers);
+        lastMethod = method;
+        lastHeaders = headers;
+        requests.incrementAndGet();
+        requestBytes.addAndGet(requestLength);
+
+        final String path = path(parts[1]);
+        final Reply found = routes.get(path);
+        final Reply reply = null == found ? NOT_FOUND : found;
+        final long delay = reply.getLatencyMillis() >= 0 ? reply.getLatencyMillis() : latencyMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        final boolean isKept = isKeepAlive && !"close".equalsIgnoreCase(headers.get("connection"))
+                && !"HTTP/1.0".equals(parts[2]);
+        byte[] body = reply.body(requestLength);
+        int status = reply.getStatus();
+        String contentRange = null;
+        final String range = headers.get("range");
+        final String ifRange = headers.get("if-range");
+        if (reply.isRanges() && 200 == status && null != range
+                && (null == ifRange || ifRange.equals(reply.getHeaders().get("ETag")))) {
+            final long[] bounds = range(range, body.length);
+            if (null == bounds) {
+                status = 416;
+                contentRange = "bytes */" + body.length;
+                body = new byte[0];
+            } else {
+                status = 206;
+                contentRange = "bytes " + bounds[0] + "-" + bounds[1] + "/" + body.length;
+                body = Arrays.copyOfRange(body, (int) bounds[0], (int) bounds[1] + 1);
+            }
+        }
+        final long truncateAfter = reply.takeTruncation();
+        final boolean isHead = "HEAD".equals(method);
+        write(out, reply, status, contentRange, body, isHead, isKept && truncateAfter < 0, truncateAfter);
+        if (!isHead) {
+            responseBytes.addAndGet(truncateAfter < 0 ? body.length : Math.min(truncateAfter, body.length));
+        }
+        return isKept && truncateAfter < 0;
+    }
+
+    /**
+     * the first and last byte of a single range of bytes=first-last,first- or -suffix
+     *
+     * @return bounds,null if the range is not in the body
+     */
+    private static long[] range(String range, long length) {
+        final String spec = range.trim();
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        final String[] bounds = spec.substring("bytes=".length()).split("-", -1);
+        if (2 != bounds.length) {
+            return null;
+        }
+        long first;
+        long last;
+        if (bounds[0].trim().isEmpty()) {
+            first = Math.max(0, length - Long.parseLong(bounds[1].trim()));
+            last = length - 1;
+        } else {
+            first = Long.parseLong(bounds[0].trim());
+            last = bounds[1].trim().isEmpty() ? length - 1 : Math.min(length - 1, Long.parseLong(bounds[1].trim()));
+        }
+        return first >= length || first > last ? null : new long[]{first, last};
+    }
+
+    /**
+     * the path of an origin-form target,or of an absolute-form one sent to a proxy,without the query
+     */
+    private static String path(String target) {
+        String path = target;
+        final int scheme = path.indexOf("://");
+        if (scheme > 0) {
+            final int slash = path.indexOf('/', scheme + 3);
+            path = slash < 0 ? "/" : path.substring(slash);
+        }
+        final int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    /**
+     * write an answer,a truncated one stops after truncateAfter bytes of its body
+     */
+    private static void write(OutputStream out, Reply reply, int status, String contentRange, byte[] body,
+                              boolean isHead, boolean isKept, long truncateAfter) throws IOException {
+        final StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        head.append("Content-Type: ").append(reply.getContentType()).append("\r\n");
+        if (null != contentRange) {
+            head.append("Content-Range: ").append(contentRange).append("\r\n");
+        }
+        if (reply.isGzip()) {
+            head.append("Content-Encoding: gzip\r\n");
+        }
+        if (reply.isChunked()) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        for (Map.Entry<String, String> entry : reply.getHeaders().entrySet()) {
+            head.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+        }
+        head.append("Connection: ").append(isKept ? "keep-alive" : "close").append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (!isHead) {
+            if (truncateAfter >= 0) {
+                out.write(body, 0, (int) Math.min(truncateAfter, body.length));
+            } else if (reply.isChunked()) {
+                for (int from = 0; from < body.length; from += reply.getChunkSize()) {
+                    final int length = Math.min(reply.getChunkSize(), body.length - from);
+                    out.write((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(body, from, length);
+                    out.write('\r');
+                    out.write('\n');
+                }
+                out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            } else {
+                out.write(body);
+            }
+        }
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 404:
+                return "Not Found";
+            case 416:
+                return "Range Not Satisfiable";
+            case 500:
+                return "Internal Server Error";
+            default:
+                return "Status";
+        }
+    }
+
+    /**
+     * read and drop the request body of Content-Length or chunked
+     *
+     * @return its length
+     */
+    private static long readBody(InputStream in, Map<String, String> headers) throws IOException {
+        final String transferEncoding = headers.get("transfer-encoding");
+        if (null != transferEncoding && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+            long total = 0;
+            while (true) {
+                final String sizeLine = readLine(in);
+                if (null == sizeLine) {
+                    throw new IOException("Unexpected end of chunked body");
+                }
+                final int extension = sizeLine.indexOf(';');
+                final long size = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+                if (0 == size) {
+                    // trailers up to the empty line
+                    String trailer;
+                    while (null != (trailer = readLine(in)) && !trailer.isEmpty()) {
+                        // ignore
+                    }
+                    return total;
+                }
+                skipFully(in, size);
+                readLine(in);
+                total += size;
+            }
+        }
+        final String contentLength = headers.get("content-length");
+        if (null == contentLength) {
+            return 0;
+        }
+        final long length = Long.parseLong(contentLength);
+        skipFully(in, length);
+        return length;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        long left = length;
+        while (left > 0) {
+            final long skipped = in.skip(left);
+            if (skipped > 0) {
+                left -= skipped;
+            } else if (-1 == in.read()) {
+                throw new IOException("Unexpected end of body");
+            } else {
+                left--;
+            }
+        }
+    }
+
+    /**
+     * a line without its CRLF,null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while (-1 != (b = in.read())) {
+            if ('\n' == b) {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && '\r' == bytes[bytes.length - 1] ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (line.size() >= MAX_HEAD_LINE) {
+                throw new IOException("Line too long");
+            }
+            line.write(b);
+        }
+        return 0 == line.size() ? null : line.toString("ISO-8859-1");
+    }
+
+    /**
+     * the url of a path on this server
+     *
+     * @param path path as /name
+     * @return http or https url on 127.0.0.1
+     */
+    public String url(String path) {
+        return (isTls ? "https" : "http") + "://127.0.0.1:" + getPort() + path;
+    }
+
+    public int getPort() {
+        if (null == serverSocket) {
+            throw new IllegalStateException("Server is not started");
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * connections accepted since start
+     *
+     * @return count
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * requests read since start
+     *
+     * @return count
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * bytes of request bodies read since start
+     *
+     * @return bytes
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    public String getLastMethod() {
+        return lastMethod;
+    }
+
+    /**
+     * headers of the last request read
+     *
+     * @return headers by lower case name
+     */
+    public Map<String, String> getLastHeaders() {
+        return lastHeaders;
+    }
+
+    /**
+     * bytes of response bodies sent since start
+     *
+     * @return bytes
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * stop listening and cut the open connections
+     */
+    @Override
+    public synchronized void close() {
+        if (null == serverSocket) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * a context on a certificate made by the keytool of the running jdk,offline and once a jvm
+     */
+    private static SSLContext sslContext() throws IOException {
+        if (null == sslContext) {
+            synchronized (LocalServer.class) {
+                if (null == sslContext) {
+                    sslContext = newSslContext();
+                }
+            }
+        }
+        return sslContext;
+    }
+
+    private static SSLContext newSslContext() throws IOException {
+        final File keystore = File.createTempFile("local-server", ".jks");
+        keystore.deleteOnExit();
+        if (!keystore.delete()) {
+            throw new IOException("Can not write " + keystore);
+        }
+        final String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        final Process process = new ProcessBuilder(keytool, "-genkeypair", "-noprompt",
+                "-alias", "local", "-keyalg", "RSA", "-keysize", "2048", "-validity", "3650",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-keystore", keystore.getPath(), "-storetype", "JKS",
+                "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                .redirectErrorStream(true).start();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            final byte[] buffer = new byte[1024];
+            int n;
+            while (-1 != (n = in.read(buffer))) {
+                output.write(buffer, 0, n);
+            }
+        }
+        try {
+            if (0 != process.waitFor()) {
+                throw new IOException("keytool failed: " + output.toString("UTF-8"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while making the certificate", e);
+        }
+        try (InputStream in = new FileInputStream(keystore)) {
+            final KeyStore store = KeyStore.getInstance("JKS");
+            store.load(in, KEYSTORE_PASSWORD.toCharArray());
+            final KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            factory.init(store, KEYSTORE_PASSWORD.toCharArray());
+            final SSLContext context = SSLContext.getInstance("TLS");
+            context.init(factory.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Can not load the certificate", e);
+        } finally {
+            keystore.delete();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package cn.org.imaginary.http.server;
+
+import cn.org.imaginary.http.Header;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * the scripted server answers both transports as told
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class LocalServerTest {
+
+    @Test
+    public void testReplies() throws IOException {
+        byte[] large = new byte[200 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        try (LocalServer server = LocalServer.create()
+                .route("/fixed", Reply.fixed("ok"))
+                .route("/chunked", Reply.fixed(large).chunked(1000))
+                .route("/gzip", Reply.fixed(large).gzip().chunked())
+                .route("/upload", Reply.echo())
+                .start()) {
+            for (Transport transport : new Transport[]{new Transport(null), new Transport(engine)}) {
+                Assert.assertEquals("ok", transport.execute(HttpRequest.get(server.url("/fixed"))).body());
+                Assert.assertArrayEquals(large, transport.execute(HttpRequest.get(server.url("/chunked"))).bodyBytes());
+
+                HttpResponse gzip = transport.execute(HttpRequest.get(server.url("/gzip")));
+                Assert.assertArrayEquals(large, gzip.bodyBytes());
+                Assert.assertNull(gzip.getHeader(Header.CONTENT_ENCODING));
+
+                Assert.assertEquals(String.valueOf(large.length),
+                        transport.execute(HttpRequest.post(server.url("/upload")).body(large)).body());
+                Assert.assertEquals(404, transport.execute(HttpRequest.get(server.url("/none"))).getStatus());
+            }
+            Assert.assertEquals(10, server.getRequests());
+            Assert.assertEquals(2L * large.length, server.getRequestBytes());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        try (LocalServer server = LocalServer.create().route("/", Reply.fixed("ok")).start()) {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals("ok", HttpRequest.get(server.url("/")).execute().body());
+            }
+            Assert.assertEquals(1, server.getConnections());
+        }
+        try (LocalServer server = LocalServer.create().route("/", Reply.fixed("ok")).keepAlive(false).start()) {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals("ok", HttpRequest.get(server.url("/")).execute().body());
+            }
+            Assert.assertEquals(5, server.getConnections());
+        }
+    }
+
+    @Test
+    public void testLatency() throws IOException {
+        try (LocalServer server = LocalServer.create().latency(100)
+                .route("/slow", Reply.fixed("slow"))
+                .route("/fast", Reply.fixed("fast").latency(0))
+                .start()) {
+            long start = System.nanoTime();
+            Assert.assertEquals("slow", HttpRequest.get(server.url("/slow")).execute().body());
+            Assert.assertTrue(System.nanoTime() - start >= 100_000_000L);
+            Assert.assertEquals("fast", HttpRequest.get(server.url("/fast")).execute().body());
+        }
+    }
+
+    @Test
+    public void testTls() throws IOException {
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        try (LocalServer server = LocalServer.create().tls().route("/", Reply.fixed("secure").gzip()).start()) {
+            Assert.assertTrue(server.url("/").startsWith("https://"));
+            Assert.assertEquals("secure", HttpRequest.get(server.url("/")).execute().body());
+            Assert.assertEquals("secure", engine.execute(HttpRequest.get(server.url("/"))).body());
+        }
+        // the server ends each connection with close_notify
+        try (LocalServer server = LocalServer.create().tls().keepAlive(false).route("/", Reply.fixed("secure")).start()) {
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals("secure", engine.execute(HttpRequest.get(server.url("/"))).body());
+            }
+            Assert.assertEquals(2, server.getConnections());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * runs a request on a HttpURLConnection,or on an engine if it has one
+     */
+    private static class Transport {
+        private final NioHttpEngine engine;
+
+        Transport(NioHttpEngine engine) {
+            this.engine = engine;
+        }
+
+        HttpResponse execute(HttpRequest request) {
+            return null == engine ? request.execute() : engine.execute(request);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package cn.org.imaginary.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * the scripted answer of a {@link LocalServer} route,a fixed body sent as is,in chunks or gzipped,
+ * after an optional delay,a single byte range of it when asked,or cut short to break a download
+ *
+ * @author Imaginary
+ * @see LocalServer
+ * @since 1.0
+ */
+public final class Reply {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    private int status = 200;
+    private String contentType = "text/plain;charset=UTF-8";
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final byte[] body;
+    // answer the length of the request body instead of the body
+    private boolean isEcho;
+    private boolean isChunked;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean isGzip;
+    // delay before the answer,-1 for the delay of the server
+    private long latencyMillis = -1;
+    // answer a Range header with 206 or 416
+    private boolean isRanges;
+    // body bytes sent before a truncated answer closes the connection
+    private long truncateAfter;
+    // answers left to truncate
+    private final AtomicInteger truncations = new AtomicInteger();
+    // body as sent,gzipped once
+    private volatile byte[] encoded;
+
+    private Reply(byte[] body) {
+        this.body = body;
+    }
+
+    /**
+     * answer a text
+     *
+     * @param body text,sent as utf-8
+     * @return Reply
+     */
+    public static Reply fixed(String body) {
+        return new Reply(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * answer bytes
+     *
+     * @param body bytes
+     * @return Reply
+     */
+    public static Reply fixed(byte[] body) {
+        return new Reply(body).contentType("application/octet-stream");
+    }
+
+    /**
+     * answer bytes of a repeated pattern,which gzip compresses well
+     *
+     * @param length body length
+     * @return Reply
+     */
+    public static Reply bytes(int length) {
+        final byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        return fixed(body);
+    }
+
+    /**
+     * answer the length of the request body as text,the request body is counted and dropped
+     *
+     * @return Reply
+     */
+    public static Reply echo() {
+        final Reply reply = new Reply(new byte[0]);
+        reply.isEcho = true;
+        return reply;
+    }
+
+    public Reply status(int status) {
+        this.status = status;
+        return this;
+    }
+
+    public Reply contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    public Reply header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * send the body with Transfer-Encoding chunked in chunks of {@link #DEFAULT_CHUNK_SIZE}
+     *
+     * @return Reply
+     */
+    public Reply chunked() {
+        return chunked(DEFAULT_CHUNK_SIZE);
+    }
+
+    public Reply chunked(int chunkSize) {
+        this.isChunked = true;
+        this.chunkSize = Math.max(1, chunkSize);
+        return this;
+    }
+
+    /**
+     * send the body gzipped with Content-Encoding gzip
+     *
+     * @return Reply
+     */
+    public Reply gzip() {
+        this.isGzip = true;
+        this.encoded = null;
+        return this;
+    }
+
+    /**
+     * wait before answering,as a slower server or a longer round trip would
+     *
+     * @param latencyMillis delay in millis,it replaces the delay of the server
+     * @return Reply
+     */
+    public Reply latency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * answer a single byte range of a Range header with 206 and Content-Range,a range out of the body with 416,
+     * an If-Range other than the ETag header gets the whole body
+     *
+     * @return Reply
+     */
+    public Reply ranges() {
+        this.isRanges = true;
+        return this;
+    }
+
+    /**
+     * send the head of the next answers in full but close the connection after some bytes of their body,
+     * as a connection lost in the middle of a download
+     *
+     * @param afterBytes body bytes sent
+     * @param times      answers to truncate
+     * @return Reply
+     */
+    public Reply truncate(long afterBytes, int times) {
+        this.truncateAfter = afterBytes;
+        this.truncations.set(times);
+        return this;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    boolean isChunked() {
+        return isChunked;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    boolean isGzip() {
+        return isGzip;
+    }
+
+    long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    boolean isRanges() {
+        return isRanges;
+    }
+
+    /**
+     * take a truncation of an answer
+     *
+     * @return body bytes to send,-1 to send all
+     */
+    long takeTruncation() {
+        while (true) {
+            final int left = truncations.get();
+            if (left <= 0) {
+                return -1;
+            }
+            if (truncations.compareAndSet(left, left - 1)) {
+                return truncateAfter;
+            }
+        }
+    }
+
+    /**
+     * the body as sent for a request body of a length
+     */
+    byte[] body(long requestLength) throws IOException {
+        if (isEcho) {
+            final byte[] length = String.valueOf(requestLength).getBytes(StandardCharsets.UTF_8);
+            return isGzip ? gzip(length) : length;
+        }
+        if (!isGzip) {
+            return body;
+        }
+        if (null == encoded) {
+            encoded = gzip(body);
+        }
+        return encoded;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+package cn.org.imaginary.http.ssl;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.nio.NioHttpEngine;
+import cn.org.imaginary.http.server.LocalServer;
+import cn.org.imaginary.http.server.Reply;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * contexts are shared per builder settings and their handshakes are counted on the calling thread
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class SSLContextCacheTest {
+
+    @Before
+    public void setUp() {
+        SSLContextCache.clear();
+    }
+
+    @Test
+    public void testContextPerKey() throws Exception {
+        SSLContext context = SSLSocketFactoryBuilder.create().buildSharedContext();
+        Assert.assertSame(context, SSLSocketFactoryBuilder.create().buildSharedContext());
+        Assert.assertSame(SSLSocketFactoryBuilder.create().buildShared(), SSLSocketFactoryBuilder.create().buildShared());
+        Assert.assertEquals(1, SSLContextCache.size());
+
+        Assert.assertNotSame(context, SSLSocketFactoryBuilder.create().setProtocol(SSLSocketFactoryBuilder.TLSv12).buildSharedContext());
+        Assert.assertNotSame(context, SSLSocketFactoryBuilder.create().setSessionCacheSize(10).buildSharedContext());
+        Assert.assertNotSame(context, SSLSocketFactoryBuilder.create().setSessionTimeout(60).buildSharedContext());
+        // managers are compared by identity
+        TrustManager[] trustManagers = {new DefaultTrustManager()};
+        SSLContext own = SSLSocketFactoryBuilder.create().setTrustManager(trustManagers).buildSharedContext();
+        Assert.assertNotSame(context, own);
+        Assert.assertSame(own, SSLSocketFactoryBuilder.create().setTrustManager(trustManagers).buildSharedContext());
+        Assert.assertEquals(5, SSLContextCache.size());
+
+        Assert.assertNotSame(context, SSLSocketFactoryBuilder.create().buildContext());
+        Assert.assertEquals(5, SSLContextCache.size());
+    }
+
+    @Test
+    public void testHandshakes() throws Exception {
+        try (LocalServer server = LocalServer.create().tls().keepAlive(false).route("/", Reply.fixed("secure")).start()) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("secure", HttpRequest.get(server.url("/")).execute().body());
+            }
+            Assert.assertEquals(3, server.getConnections());
+            Assert.assertEquals(1, SSLContextCache.getFullHandshakes());
+            Assert.assertEquals(2, SSLContextCache.getResumedHandshakes());
+        }
+    }
+
+    @Test
+    public void testHandshakesTls12() throws Exception {
+        try (LocalServer server = LocalServer.create().tls().keepAlive(false).route("/", Reply.fixed("secure")).start()) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("secure", HttpRequest.get(server.url("/")).setSSLProtocol(SSLSocketFactoryBuilder.TLSv12).execute().body());
+            }
+            Assert.assertEquals(1, SSLContextCache.getFullHandshakes());
+            Assert.assertEquals(2, SSLContextCache.getResumedHandshakes());
+        }
+    }
+
+    @Test
+    public void testHandshakesNio() throws Exception {
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        try (LocalServer server = LocalServer.create().tls().keepAlive(false).route("/", Reply.fixed("secure")).start()) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals("secure", engine.execute(HttpRequest.get(server.url("/"))).body());
+            }
+            Assert.assertEquals(3, server.getConnections());
+            Assert.assertEquals(1, SSLContextCache.getFullHandshakes());
+            Assert.assertEquals(2, SSLContextCache.getResumedHandshakes());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestContextNio() throws Exception {
+        final AtomicInteger checks = new AtomicInteger();
+        TrustManager[] trustManagers = {new DefaultTrustManager() {
+            @Override
+            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) {
+                checks.incrementAndGet();
+            }
+        }};
+        SSLContext own = SSLSocketFactoryBuilder.create().setTrustManager(trustManagers).buildContext();
+        NioHttpEngine engine = NioHttpEngine.create(1);
+        try (LocalServer server = LocalServer.create().tls().route("/", Reply.fixed("secure")).start()) {
+            Assert.assertEquals("secure", engine.execute(HttpRequest.get(server.url("/"))).body());
+            Assert.assertEquals(0, checks.get());
+            // the context of the request is used,on a connection apart from the one of the engine context
+            for (int i = 0; i < 2; i++) {
+                Assert.assertEquals("secure", engine.execute(HttpRequest.get(server.url("/")).setSSLContext(own)).body());
+            }
+            Assert.assertEquals(1, checks.get());
+            Assert.assertEquals(2, server.getConnections());
+            // a bare socket factory can not be honoured by the engine
+            try {
+                engine.execute(HttpRequest.get(server.url("/")).setSocketFactory(own.getSocketFactory()));
+                Assert.fail();
+            } catch (HttpException e) {
+                Assert.assertEquals(3, server.getRequests());
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoResumptionAcrossContexts() throws Exception {
+        TrustManager[] trustManagers = {new DefaultTrustManager()};
+        try (LocalServer server = LocalServer.create().tls().keepAlive(false).route("/", Reply.fixed("secure")).start()) {
+            Assert.assertEquals("secure", HttpRequest.get(server.url("/")).execute().body());
+            Assert.assertEquals("secure", HttpRequest.get(server.url("/"))
+                    .setSocketFactory(SSLSocketFactoryBuilder.create().setTrustManager(trustManagers).buildShared()).execute().body());
+            Assert.assertEquals(2, SSLContextCache.getFullHandshakes());
+            Assert.assertEquals(0, SSLContextCache.getResumedHandshakes());
+        }
+    }
+}
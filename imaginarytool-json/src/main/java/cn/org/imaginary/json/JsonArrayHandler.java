@@ -0,0 +1,90 @@
+package cn.org.imaginary.json;
+
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.ResponseHandler;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * decode a json array response element by element while the body is read,
+ * only the element being decoded is in memory,so a list of any length can be consumed<br>
+ * usage:
+ * <pre>
+ * long count = HttpRequest.get(url).execute(JsonArrayHandler.of(User.class, new JsonElementHandler&lt;User&gt;() {
+ *     public void handle(User user) {
+ *         save(user);
+ *     }
+ * }));
+ * </pre>
+ *
+ * @param <E> element type
+ * @author Imaginary
+ * @see JsonHandler
+ * @since 1.0
+ */
+public class JsonArrayHandler<E> implements ResponseHandler<Long> {
+    private final Type type;
+    private final JsonElementHandler<? super E> elements;
+
+    private JsonArrayHandler(Type type, JsonElementHandler<? super E> elements) {
+        this.type = type;
+        this.elements = elements;
+    }
+
+    /**
+     * create handler of elements of a class
+     *
+     * @param type     element class
+     * @param elements takes each element
+     * @param <E>      element type
+     * @return JsonArrayHandler
+     */
+    public static <E> JsonArrayHandler<E> of(Class<E> type, JsonElementHandler<? super E> elements) {
+        return new JsonArrayHandler<>(type, elements);
+    }
+
+    /**
+     * create handler of elements of a generic type
+     *
+     * @param type     element type,as new TypeReference&lt;Map&lt;String, User&gt;&gt;() {}
+     * @param elements takes each element
+     * @param <E>      element type
+     * @return JsonArrayHandler
+     */
+    public static <E> JsonArrayHandler<E> of(TypeReference<E> type, JsonElementHandler<? super E> elements) {
+        return new JsonArrayHandler<>(type.getType(), elements);
+    }
+
+    /**
+     * decode the elements of the body
+     *
+     * @param response response,a status but 2xx throws {@link cn.org.imaginary.http.HttpException}
+     * @param body     body stream
+     * @return elements handled,0 if the body is empty
+     * @throws IOException a case of IO error
+     */
+    @Override
+    public Long handle(HttpResponse response, InputStream body) throws IOException {
+        final JSONReader reader = JsonStreams.open(response, body);
+        if (null == reader) {
+            return 0L;
+        }
+        long count = 0;
+        try {
+            reader.startArray();
+            while (reader.hasNext()) {
+                final E element = reader.readObject(type);
+                elements.handle(element);
+                count++;
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+}
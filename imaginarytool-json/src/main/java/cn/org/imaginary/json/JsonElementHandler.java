@@ -0,0 +1,19 @@
+package cn.org.imaginary.json;
+
+/**
+ * take the elements of a json array one by one
+ *
+ * @param <E> element type
+ * @author Imaginary
+ * @see JsonArrayHandler
+ * @since 1.0
+ */
+public interface JsonElementHandler<E> {
+
+    /**
+     * called for each element in order,it is not kept after the call
+     *
+     * @param element element
+     */
+    void handle(E element);
+}
@@ -0,0 +1,74 @@
+package cn.org.imaginary.json;
+
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.http.ResponseHandler;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * decode a json response into an object while the body is read,no string of the whole body is built<br>
+ * usage:
+ * <pre>
+ * User user = HttpRequest.get(url).execute(JsonHandler.of(User.class));
+ * List&lt;User&gt; users = HttpRequest.get(url).execute(JsonHandler.of(new TypeReference&lt;List&lt;User&gt;&gt;() {}));
+ * </pre>
+ *
+ * @param <T> target type
+ * @author Imaginary
+ * @see JsonArrayHandler
+ * @since 1.0
+ */
+public class JsonHandler<T> implements ResponseHandler<T> {
+    private final Type type;
+
+    private JsonHandler(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * create handler of a class
+     *
+     * @param type target class
+     * @param <T>  target type
+     * @return JsonHandler
+     */
+    public static <T> JsonHandler<T> of(Class<T> type) {
+        return new JsonHandler<>(type);
+    }
+
+    /**
+     * create handler of a generic type
+     *
+     * @param type target type,as new TypeReference&lt;List&lt;User&gt;&gt;() {}
+     * @param <T>  target type
+     * @return JsonHandler
+     */
+    public static <T> JsonHandler<T> of(TypeReference<T> type) {
+        return new JsonHandler<>(type.getType());
+    }
+
+    /**
+     * decode the body
+     *
+     * @param response response,a status but 2xx throws {@link cn.org.imaginary.http.HttpException}
+     * @param body     body stream
+     * @return object,null if the body is empty
+     * @throws IOException a case of IO error
+     */
+    @Override
+    public T handle(HttpResponse response, InputStream body) throws IOException {
+        final JSONReader reader = JsonStreams.open(response, body);
+        if (null == reader) {
+            return null;
+        }
+        try {
+            return reader.readObject(type);
+        } finally {
+            reader.close();
+        }
+    }
+}
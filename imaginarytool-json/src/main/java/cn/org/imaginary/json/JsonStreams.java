@@ -0,0 +1,76 @@
+package cn.org.imaginary.json;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpResponse;
+import cn.org.imaginary.util.CharsetUtils;
+import cn.org.imaginary.util.StrUtils;
+import com.alibaba.fastjson.JSONReader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+
+/**
+ * open a response body as a fastjson {@link JSONReader},which decodes it in chunks as it reads
+ *
+ * @author Imaginary
+ * @see JsonHandler
+ * @since 1.0
+ */
+final class JsonStreams {
+
+    private JsonStreams() {
+    }
+
+    /**
+     * open the body in the charset of the response
+     *
+     * @param response response,a status but 2xx is not decoded
+     * @param body     body stream,it is left open for the response to give back the connection
+     * @return JSONReader,null if the body is empty
+     * @throws IOException a case of IO error
+     */
+    static JSONReader open(HttpResponse response, InputStream body) throws IOException {
+        if (!response.isOk()) {
+            throw new HttpException("Response status {} is not 2xx,the body is not decoded as json", response.getStatus());
+        }
+        final PushbackInputStream in = new PushbackInputStream(new UnclosedInputStream(body), 1);
+        final int first = in.read();
+        if (-1 == first) {
+            return null;
+        }
+        in.unread(first);
+        return new JSONReader(new InputStreamReader(in, charset(response.getCharset())));
+    }
+
+    /**
+     * the charset of the response,utf-8 as json defaults to if it is not known
+     */
+    private static Charset charset(String name) {
+        if (StrUtils.isBlank(name)) {
+            return CharsetUtils.CHARSET_UTF_8;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (IllegalArgumentException e) {
+            return CharsetUtils.CHARSET_UTF_8;
+        }
+    }
+
+    /**
+     * the reader is closed to give back its buffers,the body is closed by the response
+     */
+    private static final class UnclosedInputStream extends FilterInputStream {
+
+        private UnclosedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
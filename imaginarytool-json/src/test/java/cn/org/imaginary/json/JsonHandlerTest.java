@@ -0,0 +1,161 @@
+package cn.org.imaginary.json;
+
+import cn.org.imaginary.http.HttpException;
+import cn.org.imaginary.http.HttpRequest;
+import cn.org.imaginary.http.HttpResponse;
+import com.alibaba.fastjson.TypeReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * objects,generic types and elements decoded from the body stream in the charset of the response
+ *
+ * @author Imaginary
+ * @see
+ * @since 1.0
+ */
+public class JsonHandlerTest {
+
+    @Test
+    public void testDecode() throws IOException {
+        final Charset gbk = Charset.forName("GBK");
+        final User user = JsonHandler.of(User.class).handle(response("application/json;charset=GBK"),
+                new ByteArrayInputStream("{\"id\":7,\"name\":\"张三\"}\n".getBytes(gbk)));
+        Assert.assertEquals(7, user.getId());
+        Assert.assertEquals("张三", user.getName());
+
+        final Map<String, List<Integer>> map = JsonHandler.of(new TypeReference<Map<String, List<Integer>>>() {
+        }).handle(response(null), new ByteArrayInputStream("{\"a\":[1,2]}".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(Arrays.asList(1, 2), map.get("a"));
+
+        Assert.assertNull(JsonHandler.of(User.class).handle(response(null), new ByteArrayInputStream(new byte[0])));
+        try {
+            JsonHandler.of(User.class).handle(new HttpResponse(500, null, null, null), new ByteArrayInputStream(new byte[0]));
+            Assert.fail();
+        } catch (HttpException e) {
+            Assert.assertTrue(e.getMessage().contains("500"));
+        }
+    }
+
+    @Test
+    public void testElements() throws IOException {
+        final int count = 20000;
+        final List<Long> ids = new ArrayList<>();
+        final long handled = JsonArrayHandler.of(User.class, new JsonElementHandler<User>() {
+            @Override
+            public void handle(User user) {
+                ids.add(user.getId());
+            }
+        }).handle(response(null), new ByteArrayInputStream(users(count).getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(count, handled);
+        Assert.assertEquals(count - 1, (long) ids.get(count - 1));
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        final String body = users(3000) + "\n";
+        final AtomicInteger connections = new AtomicInteger();
+        try (final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            final Thread acceptor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!server.isClosed()) {
+                        try {
+                            final Socket socket = server.accept();
+                            connections.incrementAndGet();
+                            serve(socket, body.getBytes(StandardCharsets.UTF_8));
+                        } catch (IOException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            final String url = "http://127.0.0.1:" + server.getLocalPort() + "/users";
+            for (int i = 0; i < 3; i++) {
+                final List<User> users = HttpRequest.get(url).execute(JsonHandler.of(new TypeReference<List<User>>() {
+                }));
+                Assert.assertEquals(3000, users.size());
+            }
+            // the newline after the array is read on and the connection is kept alive
+            Assert.assertEquals(1, connections.get());
+        }
+    }
+
+    private static HttpResponse response(String contentType) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        if (null != contentType) {
+            headers.put("Content-Type", Collections.singletonList(contentType));
+        }
+        return new HttpResponse(200, headers, null, "UTF-8");
+    }
+
+    private static String users(int count) {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            sb.append(0 == i ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * answer each request of a keep-alive connection with the body
+     */
+    private static void serve(final Socket socket, final byte[] body) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket s = socket) {
+                    final BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+                    final OutputStream out = s.getOutputStream();
+                    String line;
+                    while (null != (line = in.readLine())) {
+                        if (!line.isEmpty()) {
+                            continue;
+                        }
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+                                + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                        out.write(body);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static class User {
+        private long id;
+        private String name;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}